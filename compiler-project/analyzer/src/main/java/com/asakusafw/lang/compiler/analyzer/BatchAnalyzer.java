@@ -17,9 +17,12 @@ package com.asakusafw.lang.compiler.analyzer;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +31,7 @@ import com.asakusafw.lang.compiler.analyzer.adapter.BatchAdapter;
 import com.asakusafw.lang.compiler.common.BasicDiagnostic;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.util.ConcurrentUtil;
 import com.asakusafw.lang.compiler.model.graph.Batch;
 import com.asakusafw.lang.compiler.model.graph.BatchElement;
 import com.asakusafw.lang.compiler.model.graph.Jobflow;
@@ -41,6 +45,10 @@ import com.asakusafw.vocabulary.flow.FlowDescription;
 
 /**
  * Analyzes a <em>batch class</em> described as <em>Asakusa Batch DSL</em>.
+ * <p>
+ * If the parallelism is greater than {@code 1}, this analyzes the individual jobflows concurrently,
+ * and then reports their diagnostics in the same order as the sequential analysis.
+ * </p>
  */
 public class BatchAnalyzer {
 
@@ -48,12 +56,25 @@ public class BatchAnalyzer {
 
     private final JobflowAnalyzer elementAnalyzer;
 
+    private final int parallelism;
+
     /**
      * Creates a new instance.
      * @param elementAnalyzer the jobflow analyzer
      */
     public BatchAnalyzer(JobflowAnalyzer elementAnalyzer) {
+        this(elementAnalyzer, 1);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param elementAnalyzer the jobflow analyzer, it must be thread-safe if {@code parallelism > 1}
+     * @param parallelism the max number of jobflows which are analyzed concurrently
+     * @since 0.4.0
+     */
+    public BatchAnalyzer(JobflowAnalyzer elementAnalyzer, int parallelism) {
         this.elementAnalyzer = elementAnalyzer;
+        this.parallelism = parallelism;
     }
 
     /**
@@ -74,20 +95,10 @@ public class BatchAnalyzer {
     private Batch analyze(BatchAdapter adapter) {
         LOG.debug("analyzing batch class: {}", adapter.getDescription().getName()); //$NON-NLS-1$
         Graph<Class<?>> jobflowGraph = toJobflowGraph(adapter);
-        List<Diagnostic> diagnostics = new ArrayList<>();
-        Map<Class<?>, Jobflow> jobflowMap = new HashMap<>();
+        Map<Class<?>, Jobflow> jobflowMap = analyzeJobflows(Graphs.sortPostOrder(jobflowGraph));
         Batch result = new Batch(adapter.getInfo());
-        for (Class<?> aClass : Graphs.sortPostOrder(jobflowGraph)) {
-            try {
-                Jobflow analyzed = elementAnalyzer.analyze(aClass);
-                jobflowMap.put(aClass, analyzed);
-                result.addElement(analyzed);
-            } catch (DiagnosticException e) {
-                diagnostics.addAll(e.getDiagnostics());
-            }
-        }
-        if (diagnostics.isEmpty() == false) {
-            throw new DiagnosticException(diagnostics);
+        for (Jobflow jobflow : jobflowMap.values()) {
+            result.addElement(jobflow);
         }
         for (Graph.Vertex<Class<?>> vertex : jobflowGraph) {
             Jobflow currentJobflow = jobflowMap.get(vertex.getNode());
@@ -105,6 +116,71 @@ public class BatchAnalyzer {
         return result;
     }
 
+    private Map<Class<?>, Jobflow> analyzeJobflows(List<Class<?>> jobflowClasses) {
+        int threads = Math.min(parallelism, jobflowClasses.size());
+        if (threads <= 1) {
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            Map<Class<?>, Jobflow> results = new LinkedHashMap<>();
+            for (Class<?> aClass : jobflowClasses) {
+                try {
+                    results.put(aClass, elementAnalyzer.analyze(aClass));
+                } catch (DiagnosticException e) {
+                    diagnostics.addAll(e.getDiagnostics());
+                }
+            }
+            if (diagnostics.isEmpty() == false) {
+                throw new DiagnosticException(diagnostics);
+            }
+            return results;
+        }
+        LOG.debug("analyzing jobflows in parallel: jobflows={}, parallelism={}", //$NON-NLS-1$
+                jobflowClasses.size(), threads);
+        ExecutorService executor = ConcurrentUtil.newWorkerThreadPool(
+                "jobflow-analyzer-%d", //$NON-NLS-1$
+                threads);
+        try {
+            Map<Class<?>, CompletableFuture<Jobflow>> futures = new LinkedHashMap<>();
+            for (Class<?> aClass : jobflowClasses) {
+                futures.put(aClass, CompletableFuture.supplyAsync(() -> elementAnalyzer.analyze(aClass), executor));
+            }
+            return collect(futures);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<Class<?>, Jobflow> collect(Map<Class<?>, CompletableFuture<Jobflow>> futures) {
+        // collects the results in the original order, to keep the diagnostics deterministic
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        RuntimeException failure = null;
+        Map<Class<?>, Jobflow> results = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, CompletableFuture<Jobflow>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                if (cause instanceof DiagnosticException) {
+                    diagnostics.addAll(((DiagnosticException) cause).getDiagnostics());
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else if (failure == null) {
+                    failure = cause instanceof RuntimeException
+                            ? (RuntimeException) cause
+                            : new IllegalStateException(cause);
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (diagnostics.isEmpty() == false) {
+            throw new DiagnosticException(diagnostics);
+        }
+        return results;
+    }
+
     private Graph<Class<?>> toJobflowGraph(BatchAdapter adapter) {
         BatchDescription instance = adapter.newInstance();
         try {
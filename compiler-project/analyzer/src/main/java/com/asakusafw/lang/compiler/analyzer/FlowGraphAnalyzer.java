@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,7 @@ import com.asakusafw.lang.compiler.common.BasicDiagnostic;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.Diagnostic.Level;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.util.ClassMetadataCache;
 import com.asakusafw.lang.compiler.model.PropertyName;
 import com.asakusafw.lang.compiler.model.description.AnnotationDescription;
 import com.asakusafw.lang.compiler.model.description.ClassDescription;
@@ -49,6 +51,7 @@ import com.asakusafw.lang.compiler.model.description.Descriptions;
 import com.asakusafw.lang.compiler.model.description.ImmediateDescription;
 import com.asakusafw.lang.compiler.model.description.MethodDescription;
 import com.asakusafw.lang.compiler.model.description.ReifiableTypeDescription;
+import com.asakusafw.lang.compiler.model.description.UnknownValueDescription;
 import com.asakusafw.lang.compiler.model.description.ValueDescription;
 import com.asakusafw.lang.compiler.model.graph.CoreOperator;
 import com.asakusafw.lang.compiler.model.graph.CoreOperator.CoreOperatorKind;
@@ -62,6 +65,7 @@ import com.asakusafw.lang.compiler.model.graph.OperatorConstraint;
 import com.asakusafw.lang.compiler.model.graph.OperatorGraph;
 import com.asakusafw.lang.compiler.model.graph.OperatorInput;
 import com.asakusafw.lang.compiler.model.graph.OperatorOutput;
+import com.asakusafw.lang.compiler.model.graph.Operators;
 import com.asakusafw.lang.compiler.model.graph.UserOperator;
 import com.asakusafw.lang.compiler.model.info.ExternalInputInfo;
 import com.asakusafw.lang.compiler.model.info.ExternalOutputInfo;
@@ -71,6 +75,7 @@ import com.asakusafw.vocabulary.external.ExporterDescription;
 import com.asakusafw.vocabulary.external.ImporterDescription;
 import com.asakusafw.vocabulary.flow.Export;
 import com.asakusafw.vocabulary.flow.FlowDescription;
+import com.asakusafw.vocabulary.flow.FlowPart;
 import com.asakusafw.vocabulary.flow.Import;
 import com.asakusafw.vocabulary.flow.graph.FlowBoundary;
 import com.asakusafw.vocabulary.flow.graph.FlowElement;
@@ -96,9 +101,14 @@ import com.asakusafw.vocabulary.operator.Restructure;
 
 /**
  * Generates {@link OperatorGraph} from the {@link FlowGraph}.
+ * <p>
+ * This keeps the analyzed flow-parts as templates, which are keyed by the flow-part class and
+ * its port and argument descriptions, and then creates the flow operators from them for
+ * the successive equivalent flow-parts. This class is thread-safe.
+ * </p>
  * @see FlowGraphVerifier
  * @since 0.1.0
- * @version 0.3.0
+ * @version 0.4.0
  */
 public final class FlowGraphAnalyzer {
 
@@ -121,10 +131,17 @@ public final class FlowGraphAnalyzer {
         OPERATOR_ANNOTATION_ALIASES = map;
     }
 
+    private static final ClassMetadataCache<Map<List<Object>, OperatorMethod>> OPERATOR_METHODS =
+            ClassMetadataCache.of(
+                    "operator methods", //$NON-NLS-1$
+                    c -> new ConcurrentHashMap<>());
+
     private final ExternalPortAnalyzer ioAnalyzer;
 
     private final OperatorAttributeAnalyzer attributeAnalyzer;
 
+    private final Map<List<Object>, Operator> flowPartTemplates = new ConcurrentHashMap<>();
+
     /**
      * Creates a new instance.
      * @param ioAnalyzer the external I/O analyzer
@@ -236,7 +253,16 @@ public final class FlowGraphAnalyzer {
 
     private Operator convert(Context context, FlowPartDescription description) {
         Class<? extends FlowDescription> flowClass = description.getFlowGraph().getDescription();
+        List<Object> key = getTemplateKey(description);
+        if (key != null) {
+            Operator template = flowPartTemplates.get(key);
+            if (template != null) {
+                LOG.debug("reusing analyzed flow-part: {}", flowClass.getName()); //$NON-NLS-1$
+                return Operators.duplicate(template);
+            }
+        }
         ClassDescription declaring = Descriptions.classOf(flowClass);
+        int externalPorts = context.getExternalPortCount();
         OperatorGraph inner;
         try {
             inner = analyze0(context, description.getFlowGraph());
@@ -245,7 +271,47 @@ public final class FlowGraphAnalyzer {
             return null;
         }
         OperatorSource source = new OperatorSource(Operator.OperatorKind.FLOW, flowClass);
-        return convert(description, source, FlowOperator.builder(declaring, inner));
+        Operator result = convert(description, source, FlowOperator.builder(declaring, inner));
+        // flow-parts which declare external ports must be analyzed individually to detect conflicts
+        if (key != null && context.getExternalPortCount() == externalPorts) {
+            flowPartTemplates.putIfAbsent(key, Operators.duplicate(result));
+        }
+        return result;
+    }
+
+    private static List<Object> getTemplateKey(FlowPartDescription description) {
+        Class<? extends FlowDescription> flowClass = description.getFlowGraph().getDescription();
+        // only flow-part classes guarantee that their structure is decided from the constructor arguments
+        if (flowClass.isAnnotationPresent(FlowPart.class) == false) {
+            return null;
+        }
+        List<Object> results = new ArrayList<>();
+        results.add(flowClass);
+        results.add(description.getAttribute(ObservationCount.class));
+        try {
+            for (FlowElementPortDescription port : description.getInputPorts()) {
+                results.add(port.getName());
+                results.add(typeOf(port.getDataType()));
+                results.add(convert(port.getShuffleKey()));
+            }
+            for (FlowElementPortDescription port : description.getOutputPorts()) {
+                results.add(port.getName());
+                results.add(typeOf(port.getDataType()));
+            }
+            for (FlowPartDescription.Parameter param : description.getParameters()) {
+                ValueDescription value = convert(param.getType(), param.getValue());
+                if (value instanceof UnknownValueDescription) {
+                    // unknown values are not comparable
+                    return null;
+                }
+                results.add(param.getName());
+                results.add(value);
+            }
+        } catch (DiagnosticException e) {
+            LOG.trace("flow-part is not reusable: {}", description, e); //$NON-NLS-1$
+            return null;
+        }
+        return results;
     }
 
     private Operator convert(Context context, OperatorDescription description) {
@@ -254,8 +320,8 @@ public final class FlowGraphAnalyzer {
         if (core != null) {
             return convert(description, null, CoreOperator.builder(core));
         }
-        Method method = declaration.toMethod();
-        if (method == null) {
+        OperatorMethod resolved = resolve(declaration);
+        if (resolved.method == null) {
             context.error(MessageFormat.format(
                     "failed to resolve operator method: [{0}]{1}#{2}()",
                     declaration.getAnnotationType().getSimpleName(),
@@ -263,8 +329,7 @@ public final class FlowGraphAnalyzer {
                     declaration.getName()));
             return null;
         }
-        Annotation annotation = getOperatorAnnotation(method, declaration.getAnnotationType());
-        if (annotation == null) {
+        if (resolved.annotation == null) {
             context.error(MessageFormat.format(
                     "failed to resolve operator annotation: [{0}]{1}#{2}()",
                     declaration.getAnnotationType().getSimpleName(),
@@ -272,18 +337,34 @@ public final class FlowGraphAnalyzer {
                     declaration.getName()));
             return null;
         }
-        OperatorSource source = getOperatorSource(method);
-        return convert(description, source, UserOperator.builder(
-                AnnotationDescription.of(annotation),
-                MethodDescription.of(method),
+        return convert(description, resolved.source, UserOperator.builder(
+                resolved.annotation,
+                resolved.method,
                 Descriptions.classOf(declaration.getImplementing())));
     }
 
-    private OperatorSource getOperatorSource(Method method) {
-        return new OperatorSource(Operator.OperatorKind.USER, method);
+    private static OperatorMethod resolve(OperatorDescription.Declaration declaration) {
+        List<Object> key = Arrays.asList(
+                declaration.getAnnotationType(),
+                declaration.getName(),
+                declaration.getParameterTypes());
+        return OPERATOR_METHODS.get(declaration.getDeclaring()).computeIfAbsent(key, k -> {
+            Method method = declaration.toMethod();
+            if (method == null) {
+                return new OperatorMethod(null, null, null);
+            }
+            Annotation annotation = getOperatorAnnotation(method, declaration.getAnnotationType());
+            if (annotation == null) {
+                return new OperatorMethod(MethodDescription.of(method), null, null);
+            }
+            return new OperatorMethod(
+                    MethodDescription.of(method),
+                    AnnotationDescription.of(annotation),
+                    new OperatorSource(Operator.OperatorKind.USER, method));
+        });
     }
 
-    private Annotation getOperatorAnnotation(Method method, Class<? extends Annotation> annotationType) {
+    private static Annotation getOperatorAnnotation(Method method, Class<? extends Annotation> annotationType) {
         Annotation annotation = method.getAnnotation(annotationType);
         if (annotation != null) {
             return annotation;
@@ -401,6 +482,21 @@ public final class FlowGraphAnalyzer {
                 type));
     }
 
+    private static final class OperatorMethod {
+
+        final MethodDescription method;
+
+        final AnnotationDescription annotation;
+
+        final OperatorSource source;
+
+        OperatorMethod(MethodDescription method, AnnotationDescription annotation, OperatorSource source) {
+            this.method = method;
+            this.annotation = annotation;
+            this.source = source;
+        }
+    }
+
     private static final class Context {
 
         private final OperatorGraph operators = new OperatorGraph();
@@ -477,6 +573,10 @@ public final class FlowGraphAnalyzer {
             return outputOrigins.get(name);
         }
 
+        int getExternalPortCount() {
+            return inputs.size() + outputs.size();
+        }
+
         public void validate(ExternalPortAnalyzer analyzer) {
             analyzer.validate(inputs, outputs);
         }
@@ -15,6 +15,8 @@
  */
 package com.asakusafw.lang.compiler.analyzer.builtin;
 
+import java.text.MessageFormat;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,14 +27,37 @@ import com.asakusafw.lang.compiler.model.graph.Operator.OperatorKind;
 import com.asakusafw.lang.compiler.model.graph.OperatorInput;
 import com.asakusafw.lang.compiler.model.graph.UserOperator;
 import com.asakusafw.lang.compiler.optimizer.OperatorCharacterizer;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimate;
 import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass;
 import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass.InputAttribute;
 import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass.InputType;
+import com.asakusafw.lang.compiler.optimizer.history.OperatorObservation;
+import com.asakusafw.lang.compiler.optimizer.history.OperatorObservation.Statistics;
 import com.asakusafw.vocabulary.flow.processor.PartialAggregation;
 import com.asakusafw.vocabulary.operator.Fold;
 
 /**
  * Provides {@link OperatorClass} for generic <em>aggregation like</em> operators.
+ * <p>
+ * If {@code operator.aggregation.default} is {@code AUTO}, this enables the partial aggregation only if
+ * the ratio of the output records to the input records is small enough, and the partial aggregation is
+ * estimated to reduce enough shuffle data.
+ * The ratio is computed from the operator history if it is available, or the configured ratio otherwise.
+ * If neither of them is available, this uses the default aggregation type ({@code TOTAL}).
+ * </p>
+ * <h3> compiler options </h3>
+ * <ul>
+ * <li> {@code operator.aggregation.default} -
+ *      {@code TOTAL}, {@code PARTIAL}, or {@code AUTO} </li>
+ * <li> {@code operator.aggregation.auto.ratio} -
+ *      the estimated ratio of the output records to the input records if there is no operator history,
+ *      or not defined to use the default aggregation type for such operators </li>
+ * <li> {@code operator.aggregation.auto.threshold} -
+ *      the max ratio of the output records to the input records to enable the partial aggregation </li>
+ * <li> {@code operator.aggregation.auto.reduction} -
+ *      the min estimated reduction of the shuffle data in bytes to enable the partial aggregation </li>
+ * </ul>
+ * @version 0.4.0
  */
 public class AggregationOperatorClassifier implements OperatorCharacterizer<OperatorClass> {
 
@@ -40,6 +65,8 @@ public class AggregationOperatorClassifier implements OperatorCharacterizer<Oper
 
     private static final String KEY_AGGREGATION_TYPE = "partialAggregation"; //$NON-NLS-1$
 
+    private static final String KEY_AGGREGATION_PREFIX = "operator.aggregation.auto."; //$NON-NLS-1$
+
     private static final PartialAggregation[] OPTIONS_AGGREGATION = {
         PartialAggregation.TOTAL,
         PartialAggregation.PARTIAL,
@@ -55,6 +82,47 @@ public class AggregationOperatorClassifier implements OperatorCharacterizer<Oper
      */
     public static final PartialAggregation DEFAULT_AGGREGATEION = PartialAggregation.TOTAL;
 
+    /**
+     * The value of {@value #KEY_AGGREGATION} to decide whether the partial aggregation is enabled or not
+     * from the operator estimate.
+     * @since 0.4.0
+     */
+    public static final String AUTO_AGGREGATION = "AUTO"; //$NON-NLS-1$
+
+    /**
+     * The compiler option key of the estimated ratio of the output records to the input records,
+     * which is used if there is no operator history.
+     * If this is not defined, operators without history use {@link #DEFAULT_AGGREGATEION}.
+     * @since 0.4.0
+     */
+    public static final String KEY_AUTO_RATIO = KEY_AGGREGATION_PREFIX + "ratio"; //$NON-NLS-1$
+
+    /**
+     * The compiler option key of the max ratio of the output records to the input records
+     * to enable the partial aggregation.
+     * @since 0.4.0
+     */
+    public static final String KEY_AUTO_THRESHOLD = KEY_AGGREGATION_PREFIX + "threshold"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@value #KEY_AUTO_THRESHOLD}.
+     * @since 0.4.0
+     */
+    public static final double DEFAULT_AUTO_THRESHOLD = 0.75;
+
+    /**
+     * The compiler option key of the min estimated reduction of the shuffle data in bytes
+     * to enable the partial aggregation.
+     * @since 0.4.0
+     */
+    public static final String KEY_AUTO_REDUCTION = KEY_AGGREGATION_PREFIX + "reduction"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@value #KEY_AUTO_REDUCTION}.
+     * @since 0.4.0
+     */
+    public static final double DEFAULT_AUTO_REDUCTION = 0.0;
+
     @Override
     public OperatorClass extract(Context context, Operator operator) {
         if (operator.getOperatorKind() != OperatorKind.USER) {
@@ -68,17 +136,96 @@ public class AggregationOperatorClassifier implements OperatorCharacterizer<Oper
         OperatorClass.Builder builder = OperatorClass.builder(operator, InputType.GROUP);
         builder.with(input, InputAttribute.PRIMARY);
         builder.with(input, InputAttribute.AGGREATE);
-        if (isPartialAggregation(context.getOptions(), operator.getAnnotation())) {
+        if (isPartialAggregation(context, operator)) {
             builder.with(input, InputAttribute.PARTIAL_REDUCTION);
         }
         return builder.build();
     }
 
-    private static boolean isPartialAggregation(CompilerOptions options, AnnotationDescription annotation) {
+    private static boolean isPartialAggregation(Context context, UserOperator operator) {
+        CompilerOptions options = context.getOptions();
+        AnnotationDescription annotation = operator.getAnnotation();
         PartialAggregation value = Util.element(annotation, KEY_AGGREGATION_TYPE, PartialAggregation.DEFAULT);
         if (value == PartialAggregation.DEFAULT) {
+            if (AUTO_AGGREGATION.equalsIgnoreCase(options.get(KEY_AGGREGATION, "").trim())) { //$NON-NLS-1$
+                return isPartialAggregationEffective(context, operator);
+            }
             value = Util.resolve(options, KEY_AGGREGATION, OPTIONS_AGGREGATION, DEFAULT_AGGREGATEION);
         }
         return value == PartialAggregation.PARTIAL;
     }
+
+    private static boolean isPartialAggregationEffective(Context context, UserOperator operator) {
+        CompilerOptions options = context.getOptions();
+        OperatorEstimate estimate = context.estimate(operator);
+        double ratio = getObservedRatio(estimate.getAttribute(OperatorObservation.class));
+        if (Double.isNaN(ratio)) {
+            ratio = getOption(options, KEY_AUTO_RATIO, Double.NaN);
+        }
+        if (Double.isNaN(ratio)) {
+            LOG.debug("partial aggregation: {} (no history) => {}", //$NON-NLS-1$
+                    operator, DEFAULT_AGGREGATEION);
+            return DEFAULT_AGGREGATEION == PartialAggregation.PARTIAL;
+        }
+        double threshold = getOption(options, KEY_AUTO_THRESHOLD, DEFAULT_AUTO_THRESHOLD);
+        double inputSize = estimate.getSize(operator.getInputs().get(Fold.ID_INPUT));
+        double reduction = Double.isNaN(inputSize) ? Double.NaN : inputSize * (1.0 - ratio);
+        boolean result = ratio <= threshold;
+        if (result && Double.isNaN(reduction) == false) {
+            result = reduction >= getOption(options, KEY_AUTO_REDUCTION, DEFAULT_AUTO_REDUCTION);
+        }
+        LOG.debug("partial aggregation: {} (ratio={}, input={}, reduction={}) => {}", //$NON-NLS-1$
+                operator, ratio, inputSize, reduction, result);
+        return result;
+    }
+
+    private static double getObservedRatio(OperatorObservation observation) {
+        if (observation == null) {
+            return Double.NaN;
+        }
+        double records = getRatio(observation, true);
+        if (Double.isNaN(records) == false) {
+            return records;
+        }
+        return getRatio(observation, false);
+    }
+
+    private static double getRatio(OperatorObservation observation, boolean records) {
+        double input = sum(observation.getInputs().values(), records);
+        double output = sum(observation.getOutputs().values(), records);
+        if (Double.isNaN(input) || Double.isNaN(output) || input <= 0.0) {
+            return Double.NaN;
+        }
+        return output / input;
+    }
+
+    private static double sum(Iterable<Statistics> statistics, boolean records) {
+        double total = 0.0;
+        boolean found = false;
+        for (Statistics element : statistics) {
+            long value = records ? element.getRecords() : element.getBytes();
+            if (value < 0) {
+                return Double.NaN;
+            }
+            total += value;
+            found = true;
+        }
+        return found ? total : Double.NaN;
+    }
+
+    private static double getOption(CompilerOptions options, String key, double defaultValue) {
+        String string = options.get(key, null);
+        if (string == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(string);
+        } catch (NumberFormatException e) {
+            LOG.warn(MessageFormat.format(
+                    "invalid partial aggregation option: {0}={1}",
+                    key,
+                    string), e);
+            return defaultValue;
+        }
+    }
 }
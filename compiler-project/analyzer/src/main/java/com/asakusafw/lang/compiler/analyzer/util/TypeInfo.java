@@ -17,6 +17,8 @@ package com.asakusafw.lang.compiler.analyzer.util;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.GenericDeclaration;
+import java.lang.reflect.Member;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
@@ -27,22 +29,42 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.asakusafw.lang.compiler.common.util.ClassMetadataCache;
 
 /**
  * Type utilities.
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public final class TypeInfo {
 
+    // each entry is stored under a class whose class loader can see every class in the entry,
+    // so that the entry never prevents the other class loaders from being unloaded
+    private static final ClassMetadataCache<Map<Type, TypeInfo>> CACHE = ClassMetadataCache.of(
+            "type information", //$NON-NLS-1$
+            c -> new ConcurrentHashMap<>());
+
+    private static final ClassMetadataCache<Map<Invocation, Optional<List<Type>>>> INVOCATIONS =
+            ClassMetadataCache.of(
+                    "type invocation", //$NON-NLS-1$
+                    c -> new ConcurrentHashMap<>());
+
     private final Class<?> rawType;
 
     private final List<Type> typeArguments;
 
     private TypeInfo(Class<?> raw, List<? extends Type> arguments) {
         this.rawType = raw;
-        this.typeArguments = new ArrayList<>(arguments);
+        this.typeArguments = Collections.unmodifiableList(new ArrayList<>(arguments));
     }
 
     /**
@@ -60,18 +82,29 @@ public final class TypeInfo {
 
     /**
      * Creates a new instance.
+     * The resulting instances are shared between the equivalent types,
+     * unless the type refers classes of unrelated class loaders.
      * @param type the original type (must be a class or interface type)
      * @return the type information
      */
     public static TypeInfo of(Type type) {
-        if (type instanceof Class<?> == false && isClassOrInterface(type) == false) {
+        Class<?> raw = getRawClass(type);
+        if (raw == null) {
             throw new IllegalArgumentException(MessageFormat.format(
                     "type must be a class or interface type: {0}",
                     type));
         }
+        Class<?> owner = findCacheOwner(type);
+        if (owner == null) {
+            return of0(type);
+        }
+        return CACHE.get(owner).computeIfAbsent(type, TypeInfo::of0);
+    }
+
+    private static TypeInfo of0(Type type) {
         GenericContext generic = toGenericContext(type);
         assert generic != null : "type must be a class or interface type";
-        return new TypeInfo(generic.raw, new ArrayList<>(generic.mapping.values()));
+        return new TypeInfo(generic.raw, generic.getTypeArguments());
     }
 
     /**
@@ -104,7 +137,7 @@ public final class TypeInfo {
 
     /**
      * Returns the type arguments.
-     * @return the type arguments
+     * @return the type arguments (unmodifiable)
      */
     public List<Type> getTypeArguments() {
         return typeArguments;
@@ -176,6 +209,7 @@ public final class TypeInfo {
 
     /**
      * Returns the invocation type.
+     * The results are shared between the equivalent target and context types.
      * @param target the target type
      * @param context the context type
      * @return the invoked type
@@ -184,7 +218,91 @@ public final class TypeInfo {
         if (target == Object.class) {
             return Collections.emptyList();
         }
+        Class<?> owner = getRawClass(context) == null ? null : findCacheOwner(target, context);
+        if (owner == null) {
+            return invoke0(target, context);
+        }
+        Optional<List<Type>> cached = INVOCATIONS.get(owner).computeIfAbsent(
+                new Invocation(target, context),
+                k -> Optional.ofNullable(invoke0(target, context)).map(Collections::unmodifiableList));
+        return cached.isPresent() ? new ArrayList<>(cached.get()) : null;
+    }
+
+    private static Class<?> getRawClass(Type type) {
+        if (type instanceof Class<?>) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return null;
+    }
+
+    /**
+     * Returns a class whose class loader can see every class which is referred from the given types.
+     * @param types the target types
+     * @return the found class, or {@code null} if there is no such a class
+     */
+    static Class<?> findCacheOwner(Type... types) {
+        Set<Class<?>> classes = new LinkedHashSet<>();
+        for (Type type : types) {
+            collectClasses(type, classes);
+        }
+        for (Class<?> candidate : classes) {
+            ClassLoader loader = candidate.getClassLoader();
+            if (classes.stream().allMatch(c -> isVisible(loader, c))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static void collectClasses(Type type, Set<Class<?>> results) {
+        if (type instanceof Class<?>) {
+            results.add((Class<?>) type);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType t = (ParameterizedType) type;
+            collectClasses(t.getRawType(), results);
+            if (t.getOwnerType() != null) {
+                collectClasses(t.getOwnerType(), results);
+            }
+            for (Type arg : t.getActualTypeArguments()) {
+                collectClasses(arg, results);
+            }
+        } else if (type instanceof GenericArrayType) {
+            collectClasses(((GenericArrayType) type).getGenericComponentType(), results);
+        } else if (type instanceof WildcardType) {
+            WildcardType t = (WildcardType) type;
+            for (Type bound : t.getUpperBounds()) {
+                collectClasses(bound, results);
+            }
+            for (Type bound : t.getLowerBounds()) {
+                collectClasses(bound, results);
+            }
+        } else if (type instanceof TypeVariable<?>) {
+            // the bounds are always visible from the declaring class
+            GenericDeclaration declaration = ((TypeVariable<?>) type).getGenericDeclaration();
+            if (declaration instanceof Class<?>) {
+                results.add((Class<?>) declaration);
+            } else if (declaration instanceof Member) {
+                results.add(((Member) declaration).getDeclaringClass());
+            }
+        }
+    }
+
+    private static boolean isVisible(ClassLoader loader, Class<?> aClass) {
+        ClassLoader target = aClass.getClassLoader();
+        if (target == null) {
+            return true;
+        }
+        for (ClassLoader current = loader; current != null; current = current.getParent()) {
+            if (current == target) {
+                return true;
+            }
+        }
+        return false;
+    }
 
+    private static List<Type> invoke0(Class<?> target, Type context) {
         GenericContext generic = toGenericContext(context);
         assert generic != null : "context must be a class or interface type";
         if (target.isAssignableFrom(generic.raw) == false) {
@@ -381,6 +499,42 @@ public final class TypeInfo {
         }
     }
 
+    private static final class Invocation {
+
+        private final Class<?> target;
+
+        private final Type context;
+
+        Invocation(Class<?> target, Type context) {
+            this.target = target;
+            this.context = context;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + target.hashCode();
+            result = prime * result + context.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            Invocation other = (Invocation) obj;
+            return target == other.target && context.equals(other.context);
+        }
+    }
+
     private static class SimpleParameterizedType implements ParameterizedType {
 
         private final Class<?> rawType;
@@ -408,5 +562,27 @@ public final class TypeInfo {
         public Type getOwnerType() {
             return rawType.getDeclaringClass();
         }
+
+        // compatible with the built-in parameterized types
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(getActualTypeArguments())
+                    ^ Objects.hashCode(getOwnerType())
+                    ^ Objects.hashCode(rawType);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof ParameterizedType == false) {
+                return false;
+            }
+            ParameterizedType other = (ParameterizedType) obj;
+            return Objects.equals(rawType, other.getRawType())
+                    && Objects.equals(getOwnerType(), other.getOwnerType())
+                    && Arrays.equals(getActualTypeArguments(), other.getActualTypeArguments());
+        }
     }
 }
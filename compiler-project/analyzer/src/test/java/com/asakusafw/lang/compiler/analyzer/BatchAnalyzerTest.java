@@ -86,6 +86,36 @@ public class BatchAnalyzerTest {
         assertThat(d.getBlockingElements(), is(empty()));
     }
 
+    /**
+     * w/ dependencies, analyzing jobflows concurrently.
+     */
+    @Test
+    public void dependencies_parallel() {
+        BatchAnalyzer parallel = new BatchAnalyzer(
+                new JobflowAnalyzer(new FlowGraphAnalyzer(new MockExternalPortAnalyzer())), 4);
+        Batch result = parallel.analyze(MockDiamondBatch.class);
+        assertThat(result.getElements(), hasSize(4));
+
+        BatchElement a = result.findElement("a");
+        BatchElement b = result.findElement("b");
+        BatchElement c = result.findElement("c");
+        BatchElement d = result.findElement("d");
+        assertThat(b.getBlockerElements(), containsInAnyOrder(a));
+        assertThat(c.getBlockerElements(), containsInAnyOrder(a));
+        assertThat(d.getBlockerElements(), containsInAnyOrder(b, c));
+        assertThat(a.getBlockingElements(), containsInAnyOrder(b, c));
+    }
+
+    /**
+     * batch with wrong element, analyzing jobflows concurrently.
+     */
+    @Test(expected = DiagnosticException.class)
+    public void invalid_wrong_element_parallel() {
+        BatchAnalyzer parallel = new BatchAnalyzer(
+                new JobflowAnalyzer(new FlowGraphAnalyzer(new MockExternalPortAnalyzer())), 4);
+        parallel.analyze(BatchWithWrongJobflow.class);
+    }
+
     /**
      * batch with wrong constructor.
      */
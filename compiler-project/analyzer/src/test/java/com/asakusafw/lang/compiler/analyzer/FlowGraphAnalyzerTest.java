@@ -18,26 +18,35 @@ package com.asakusafw.lang.compiler.analyzer;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
 import com.asakusafw.lang.compiler.analyzer.MockOperatorAttributeAnalyzer.MockAttribute;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
 import com.asakusafw.lang.compiler.model.description.Descriptions;
+import com.asakusafw.lang.compiler.model.description.ValueDescription;
 import com.asakusafw.lang.compiler.model.graph.CoreOperator.CoreOperatorKind;
 import com.asakusafw.lang.compiler.model.graph.ExternalInput;
 import com.asakusafw.lang.compiler.model.graph.ExternalOutput;
+import com.asakusafw.lang.compiler.model.graph.FlowOperator;
 import com.asakusafw.lang.compiler.model.graph.Groups;
+import com.asakusafw.lang.compiler.model.graph.Operator;
 import com.asakusafw.lang.compiler.model.graph.OperatorConstraint;
+import com.asakusafw.lang.compiler.model.graph.OperatorGraph;
 import com.asakusafw.lang.compiler.model.graph.UserOperator;
 import com.asakusafw.runtime.core.Result;
 import com.asakusafw.vocabulary.external.ExporterDescription;
 import com.asakusafw.vocabulary.external.ImporterDescription;
 import com.asakusafw.vocabulary.flow.FlowDescription;
+import com.asakusafw.vocabulary.flow.FlowPart;
 import com.asakusafw.vocabulary.flow.graph.FlowBoundary;
 import com.asakusafw.vocabulary.flow.graph.FlowElementDescription;
 import com.asakusafw.vocabulary.flow.graph.FlowGraph;
@@ -350,6 +359,58 @@ public class FlowGraphAnalyzerTest {
         assertThat(inspector.getArgument("o0.argument").getValue(), is(Descriptions.valueOf(100)));
     }
 
+    /**
+     * w/ equivalent flow-parts.
+     */
+    @Test
+    public void flowpart_reuse() {
+        FlowGraph g = new MockFlowGraph()
+            .add("s0", new InputDescription("p", String.class))
+            .add("o0", reusableFlowPart(100))
+            .add("o1", reusableFlowPart(100))
+            .add("o2", reusableFlowPart(200))
+            .add("d0", new OutputDescription("p", String.class))
+            .connect("s0", "o0")
+            .connect("o0", "o1")
+            .connect("o1", "o2")
+            .connect("o2", "d0")
+            .toGraph();
+
+        OperatorGraph graph = converter.analyze(g);
+        new OperatorGraphInspector(graph)
+            .operators(5)
+            .connections(4);
+
+        List<FlowOperator> flows = graph.getOperators().stream()
+                .filter(FlowOperator.class::isInstance)
+                .map(FlowOperator.class::cast)
+                .collect(Collectors.toList());
+        assertThat(flows, hasSize(3));
+
+        Set<Long> origins = new HashSet<>();
+        List<ValueDescription> arguments = new ArrayList<>();
+        for (FlowOperator flow : flows) {
+            assertThat(origins.add(flow.getOriginalSerialNumber()), is(true));
+            arguments.add(flow.findArgument("argument").getValue());
+            OperatorGraph inner = flow.getOperatorGraph();
+            assertThat(inner.getOperators(), hasSize(2));
+            for (Operator operator : inner.getOperators()) {
+                assertThat(origins.add(operator.getOriginalSerialNumber()), is(true));
+            }
+        }
+        assertThat(arguments, containsInAnyOrder(
+                Descriptions.valueOf(100), Descriptions.valueOf(100), Descriptions.valueOf(200)));
+    }
+
+    private static FlowPartDescription reusableFlowPart(int argument) {
+        return new FlowPartDescription(new MockFlowGraph()
+                .add("s1", new InputDescription("p", String.class))
+                .add("d1", new OutputDescription("p", String.class))
+                .connect("s1", "d1")
+                .toGraph(MockFlowPart.class),
+                Arrays.asList(new FlowPartDescription.Parameter("argument", int.class, argument)));
+    }
+
     /**
      * w/ aliases.
      */
@@ -526,6 +587,15 @@ public class FlowGraphAnalyzerTest {
         converter.analyze(g);
     }
 
+    @FlowPart
+    private static class MockFlowPart extends FlowDescription {
+
+        @Override
+        protected void describe() {
+            return;
+        }
+    }
+
     private static abstract class Mock {
 
         @MockOperator
@@ -275,6 +275,99 @@ public class BuiltInOperatorClassifierTest extends BuiltInOptimizerTestRoot {
         assertThat(result.getAttributes(input), hasItem(InputAttribute.PARTIAL_REDUCTION));
     }
 
+    /**
+     * test for aggregate kind.
+     */
+    @Test
+    public void aggregate_auto() {
+        Operator operator = OperatorExtractor.extract(Fold.class, Ops.class, "aggregate")
+                .input("p", typeOf(String.class))
+                .output("p", typeOf(String.class))
+                .build();
+        OptimizerContext context = context(
+                AggregationOperatorClassifier.KEY_AGGREGATION, "auto",
+                AggregationOperatorClassifier.KEY_AUTO_RATIO, "0.5");
+        OperatorClass result = apply(context, operator, DataSize.TINY);
+
+        OperatorInput input = operator.getInputs().get(0);
+        assertThat(result.getAttributes(input), hasItem(InputAttribute.AGGREATE));
+        assertThat(result.getAttributes(input), hasItem(InputAttribute.PARTIAL_REDUCTION));
+    }
+
+    /**
+     * AUTO uses the default aggregation type if there is neither operator history nor the estimated ratio.
+     */
+    @Test
+    public void aggregate_auto_no_history() {
+        Operator operator = OperatorExtractor.extract(Fold.class, Ops.class, "aggregate")
+                .input("p", typeOf(String.class))
+                .output("p", typeOf(String.class))
+                .build();
+        OptimizerContext context = context(
+                AggregationOperatorClassifier.KEY_AGGREGATION, "auto");
+        OperatorClass result = apply(context, operator, DataSize.TINY);
+
+        OperatorInput input = operator.getInputs().get(0);
+        assertThat(result.getAttributes(input), hasItem(InputAttribute.AGGREATE));
+        assertThat(result.getAttributes(input), not(hasItem(InputAttribute.PARTIAL_REDUCTION)));
+    }
+
+    /**
+     * test for aggregate kind.
+     */
+    @Test
+    public void aggregate_auto_ratio() {
+        Operator operator = OperatorExtractor.extract(Fold.class, Ops.class, "aggregate")
+                .input("p", typeOf(String.class))
+                .output("p", typeOf(String.class))
+                .build();
+        OptimizerContext context = context(
+                AggregationOperatorClassifier.KEY_AGGREGATION, "auto",
+                AggregationOperatorClassifier.KEY_AUTO_RATIO, "0.9");
+        OperatorClass result = apply(context, operator, DataSize.TINY);
+
+        OperatorInput input = operator.getInputs().get(0);
+        assertThat(result.getAttributes(input), hasItem(InputAttribute.AGGREATE));
+        assertThat(result.getAttributes(input), not(hasItem(InputAttribute.PARTIAL_REDUCTION)));
+    }
+
+    /**
+     * test for aggregate kind.
+     */
+    @Test
+    public void aggregate_auto_reduction() {
+        Operator operator = OperatorExtractor.extract(Fold.class, Ops.class, "aggregate")
+                .input("p", typeOf(String.class))
+                .output("p", typeOf(String.class))
+                .build();
+        OptimizerContext context = context(
+                AggregationOperatorClassifier.KEY_AGGREGATION, "auto",
+                AggregationOperatorClassifier.KEY_AUTO_RATIO, "0.5",
+                AggregationOperatorClassifier.KEY_AUTO_REDUCTION, String.valueOf(1L << 40));
+        OperatorClass result = apply(context, operator, DataSize.TINY);
+
+        OperatorInput input = operator.getInputs().get(0);
+        assertThat(result.getAttributes(input), hasItem(InputAttribute.AGGREATE));
+        assertThat(result.getAttributes(input), not(hasItem(InputAttribute.PARTIAL_REDUCTION)));
+    }
+
+    /**
+     * explicit annotation overrides AUTO.
+     */
+    @Test
+    public void aggregate_auto_total() {
+        Operator operator = OperatorExtractor.extract(Fold.class, Ops.class, "aggregate_total")
+                .input("p", typeOf(String.class))
+                .output("p", typeOf(String.class))
+                .build();
+        OptimizerContext context = context(
+                AggregationOperatorClassifier.KEY_AGGREGATION, "auto");
+        OperatorClass result = apply(context, operator, DataSize.TINY);
+
+        OperatorInput input = operator.getInputs().get(0);
+        assertThat(result.getAttributes(input), not(hasItem(InputAttribute.PARTIAL_REDUCTION)));
+    }
+
     private OperatorClass apply(OptimizerContext context, Operator operator, DataSize... inputSizes) {
         List<OperatorInput> inputs = operator.getInputs();
         assertThat(inputs, hasSize(inputSizes.length));
@@ -18,6 +18,9 @@ package com.asakusafw.lang.compiler.analyzer.util;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
@@ -147,6 +150,28 @@ public class TypeInfoTest {
         assertThat(info.getErasedTypeArguments(), contains((Object) String.class));
     }
 
+    /**
+     * invoke w/ cached results.
+     */
+    @Test
+    public void invoke_cached() {
+        List<Type> first = TypeInfo.invoke(Collection.class, StringList.class);
+        first.clear();
+        List<Type> second = TypeInfo.invoke(Collection.class, StringList.class);
+        assertThat(second, contains((Object) String.class));
+        assertThat(TypeInfo.invoke(Set.class, StringList.class), is(nullValue()));
+        assertThat(TypeInfo.invoke(Set.class, StringList.class), is(nullValue()));
+    }
+
+    /**
+     * of w/ equivalent types.
+     */
+    @Test
+    public void of_cached() {
+        Type type = StringList.class.getGenericSuperclass();
+        assertThat(TypeInfo.of(type), is(sameInstance(TypeInfo.of(type))));
+    }
+
     /**
      * of build.
      */
@@ -158,6 +183,47 @@ public class TypeInfoTest {
         assertThat(info.getErasedTypeArguments(), contains((Object) Integer.class));
     }
 
+    /**
+     * cache owner must see every class in the cache entry.
+     * @throws Exception if failed
+     */
+    @Test
+    public void cache_owner() throws Exception {
+        assertThat(TypeInfo.findCacheOwner(List.class, String.class), is((Object) List.class));
+        assertThat(TypeInfo.findCacheOwner(List.class, StringList.class), is((Object) StringList.class));
+        assertThat(TypeInfo.findCacheOwner(StringList.class.getGenericSuperclass()), is((Object) ArrayList.class));
+
+        Class<?> a = new IsolatedClassLoader(getClass().getClassLoader()).define(StringList.class);
+        Class<?> b = new IsolatedClassLoader(getClass().getClassLoader()).define(StringList.class);
+        assertThat(TypeInfo.findCacheOwner(List.class, a), is((Object) a));
+        assertThat(TypeInfo.findCacheOwner(a, b), is(nullValue()));
+        assertThat(TypeInfo.findCacheOwner(a, StringList.class), is((Object) a));
+    }
+
+    private static class IsolatedClassLoader extends ClassLoader {
+
+        IsolatedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(Class<?> aClass) throws IOException {
+            String path = aClass.getName().replace('.', '/') + ".class";
+            try (InputStream input = aClass.getClassLoader().getResourceAsStream(path)) {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                while (true) {
+                    int read = input.read(buffer);
+                    if (read < 0) {
+                        break;
+                    }
+                    buf.write(buffer, 0, read);
+                }
+                byte[] bytes = buf.toByteArray();
+                return defineClass(aClass.getName(), bytes, 0, bytes.length);
+            }
+        }
+    }
+
     private static class StringList extends ArrayList<String> {
 
         private static final long serialVersionUID = 1L;
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.planning.benchmark;
+
+import com.asakusafw.lang.compiler.model.graph.OperatorGraph;
+import com.asakusafw.lang.compiler.model.testing.MockOperators;
+import com.asakusafw.lang.compiler.planning.PlanMarker;
+
+/**
+ * Shapes of synthetic operator graphs for planning benchmarks.
+ * Each graph consists of the given number of user operators, and plan markers between them.
+ * @since 0.4.0
+ */
+public enum GraphShape {
+
+    /**
+     * Fans out a single input into independent branches, and then merges them into a single output.
+     * Each branch has a {@link PlanMarker#CHECKPOINT CHECKPOINT} in the middle.
+     */
+    WIDE {
+        @Override
+        void build(MockOperators mock, int size) {
+            mock.input("in0").output("out0"); //$NON-NLS-1$ //$NON-NLS-2$
+            for (int i = 0, n = half(size); i < n; i++) {
+                mock.operator(id("a", i)) //$NON-NLS-1$
+                    .marker(id("c", i), PlanMarker.CHECKPOINT) //$NON-NLS-1$
+                    .operator(id("b", i)) //$NON-NLS-1$
+                    .connect("in0", id("a", i)) //$NON-NLS-1$ //$NON-NLS-2$
+                    .connect(id("a", i), id("c", i)) //$NON-NLS-1$ //$NON-NLS-2$
+                    .connect(id("c", i), id("b", i)) //$NON-NLS-1$ //$NON-NLS-2$
+                    .connect(id("b", i), "out0"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+    },
+
+    /**
+     * A single chain of operators, which has a {@link PlanMarker#CHECKPOINT CHECKPOINT}
+     * every {@value GraphShape#CHAIN_LENGTH} operators.
+     */
+    DEEP {
+        @Override
+        void build(MockOperators mock, int size) {
+            mock.input("in0").output("out0"); //$NON-NLS-1$ //$NON-NLS-2$
+            String last = "in0"; //$NON-NLS-1$
+            for (int i = 0; i < size; i++) {
+                if (i > 0 && i % CHAIN_LENGTH == 0) {
+                    mock.marker(id("c", i), PlanMarker.CHECKPOINT).connect(last, id("c", i)); //$NON-NLS-1$ //$NON-NLS-2$
+                    last = id("c", i); //$NON-NLS-1$
+                }
+                mock.operator(id("o", i)).connect(last, id("o", i)); //$NON-NLS-1$ //$NON-NLS-2$
+                last = id("o", i); //$NON-NLS-1$
+            }
+            mock.connect(last, "out0"); //$NON-NLS-1$
+        }
+    },
+
+    /**
+     * A chain of co-group like operators, whose inputs are {@link PlanMarker#GATHER GATHER} markers.
+     * One side of each operator comes from the previous operator, and the other comes from the shared input.
+     */
+    GATHER {
+        @Override
+        void build(MockOperators mock, int size) {
+            mock.input("in0").input("in1").output("out0"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            String last = "in0"; //$NON-NLS-1$
+            for (int i = 0; i < size; i++) {
+                String id = id("o", i); //$NON-NLS-1$
+                mock.operator(id, "left,right", "out") //$NON-NLS-1$ //$NON-NLS-2$
+                    .marker(id("l", i), PlanMarker.GATHER) //$NON-NLS-1$
+                    .marker(id("r", i), PlanMarker.GATHER) //$NON-NLS-1$
+                    .connect(last, id("l", i)) //$NON-NLS-1$
+                    .connect("in1", id("r", i)) //$NON-NLS-1$ //$NON-NLS-2$
+                    .connect(id("l", i), id + ".left") //$NON-NLS-1$ //$NON-NLS-2$
+                    .connect(id("r", i), id + ".right"); //$NON-NLS-1$ //$NON-NLS-2$
+                last = id;
+            }
+            mock.connect(last, "out0"); //$NON-NLS-1$
+        }
+    },
+
+    /**
+     * A chain of join like operators, whose side inputs are {@link PlanMarker#BROADCAST BROADCAST} markers.
+     * Every side input comes from the shared input.
+     */
+    BROADCAST {
+        @Override
+        void build(MockOperators mock, int size) {
+            mock.input("in0").input("in1").output("out0"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            String last = "in0"; //$NON-NLS-1$
+            for (int i = 0; i < size; i++) {
+                String id = id("o", i); //$NON-NLS-1$
+                mock.operator(id, "in,side", "out") //$NON-NLS-1$ //$NON-NLS-2$
+                    .marker(id("b", i), PlanMarker.BROADCAST) //$NON-NLS-1$
+                    .connect("in1", id("b", i)) //$NON-NLS-1$ //$NON-NLS-2$
+                    .connect(last, id + ".in") //$NON-NLS-1$
+                    .connect(id("b", i), id + ".side"); //$NON-NLS-1$ //$NON-NLS-2$
+                last = id;
+            }
+            mock.connect(last, "out0"); //$NON-NLS-1$
+        }
+    },
+    ;
+
+    static final int CHAIN_LENGTH = 8;
+
+    /**
+     * Builds a new operator graph of this shape.
+     * @param size the number of user operators
+     * @return the created graph
+     */
+    public OperatorGraph build(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive"); //$NON-NLS-1$
+        }
+        MockOperators mock = new MockOperators();
+        build(mock, size);
+        return mock.toGraph();
+    }
+
+    abstract void build(MockOperators mock, int size);
+
+    static String id(String prefix, int index) {
+        return prefix + index;
+    }
+
+    static int half(int size) {
+        return Math.max(1, size / 2);
+    }
+}
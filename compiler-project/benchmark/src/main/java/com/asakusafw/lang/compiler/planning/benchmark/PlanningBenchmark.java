@@ -0,0 +1,354 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.planning.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.graph.OperatorGraph;
+import com.asakusafw.lang.compiler.planning.PlanAssembler;
+import com.asakusafw.lang.compiler.planning.PlanDetail;
+import com.asakusafw.lang.compiler.planning.Planning;
+import com.asakusafw.lang.compiler.planning.SubPlan;
+import com.asakusafw.lang.compiler.planning.basic.BasicPlan;
+import com.asakusafw.lang.compiler.planning.basic.BasicPlanOptimizer;
+import com.asakusafw.lang.compiler.planning.basic.SubPlanMerger;
+
+/**
+ * Benchmarks for each phase of execution planning.
+ * <p>
+ * The individual phases are measured separately, on synthetic operator graphs of {@link GraphShape}:
+ * </p>
+ * <ol>
+ * <li> {@link Planning#normalize(OperatorGraph)} </li>
+ * <li> {@link Planning#simplifyTerminators(OperatorGraph)} </li>
+ * <li> {@link Planning#createPrimitivePlan(OperatorGraph)} </li>
+ * <li> {@link SubPlanMerger} </li>
+ * <li> {@link BasicPlanOptimizer} </li>
+ * </ol>
+ * <p>
+ * The phases which modify their inputs are measured as single shots of {@link #BATCH_SIZE} invocations,
+ * and their inputs are prepared before each batch.
+ * Their scores are the elapsed time of the whole batch.
+ * </p>
+ * <p>
+ * Run it with {@code java -jar asakusa-compiler-benchmark-<version>-benchmarks.jar}.
+ * </p>
+ * @since 0.4.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PlanningBenchmark {
+
+    /**
+     * The number of invocations in each batch of the benchmarks which modify their inputs.
+     */
+    static final int BATCH_SIZE = 20;
+
+    static final Set<BasicPlanOptimizer.Option> OPTIMIZATIONS = EnumSet.of(
+            BasicPlanOptimizer.Option.TRIVIAL_OUTPUT_ELIMINATION,
+            BasicPlanOptimizer.Option.REDUNDANT_OUTPUT_ELIMINATION,
+            BasicPlanOptimizer.Option.DUPLICATE_CHECKPOINT_ELIMINATION,
+            BasicPlanOptimizer.Option.UNION_PUSH_DOWN);
+
+    /**
+     * Benchmarks {@link Planning#normalize(OperatorGraph)}.
+     * @param state the current state
+     * @return the normalized graph
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = BATCH_SIZE)
+    public OperatorGraph normalize(RawGraphs state) {
+        OperatorGraph graph = state.next();
+        Planning.normalize(graph);
+        return graph;
+    }
+
+    /**
+     * Benchmarks {@link Planning#simplifyTerminators(OperatorGraph)}.
+     * @param state the current state
+     * @return the simplified graph
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = BATCH_SIZE)
+    public OperatorGraph simplifyTerminators(NormalizedGraphs state) {
+        OperatorGraph graph = state.next();
+        Planning.simplifyTerminators(graph);
+        return graph;
+    }
+
+    /**
+     * Benchmarks {@link Planning#createPrimitivePlan(OperatorGraph)}.
+     * @param state the current state
+     * @return the primitive plan
+     */
+    @Benchmark
+    public PlanDetail createPrimitivePlan(SimplifiedGraph state) {
+        return Planning.createPrimitivePlan(state.graph);
+    }
+
+    /**
+     * Benchmarks {@link SubPlanMerger}.
+     * @param state the current state
+     * @return the merged plan
+     */
+    @Benchmark
+    public PlanDetail merge(PrimitivePlan state) {
+        return state.merge();
+    }
+
+    /**
+     * Benchmarks {@link BasicPlanOptimizer} with all optimizations.
+     * @param state the current state
+     * @return the optimized plan
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = BATCH_SIZE)
+    public BasicPlan optimize(MergedPlans state) {
+        BasicPlan plan = state.next();
+        new BasicPlanOptimizer(PlanAssembler.DEFAULT_EQUIVALENCE, OPTIMIZATIONS).optimize(plan);
+        return plan;
+    }
+
+    /**
+     * Benchmarks the whole planning phases.
+     * @param state the current state
+     * @return the assembled plan
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = BATCH_SIZE)
+    public PlanDetail total(RawGraphs state) {
+        OperatorGraph graph = state.next();
+        Planning.normalize(graph);
+        Planning.simplifyTerminators(graph);
+        PlanDetail primitive = Planning.createPrimitivePlan(graph);
+        PlanAssembler assembler = Planning.startAssemblePlan(primitive)
+                .withTrivialOutputElimination(true)
+                .withRedundantOutputElimination(true)
+                .withDuplicateCheckpointElimination(true)
+                .withUnionPushDown(true);
+        for (List<SubPlan> group : groupByInputs(primitive)) {
+            assembler.add(group);
+        }
+        return assembler.build();
+    }
+
+    /**
+     * Groups the primitive sub-plans which have the same input sources, like as the major planners do.
+     * @param primitive the primitive plan
+     * @return the sub-plan groups
+     */
+    static List<List<SubPlan>> groupByInputs(PlanDetail primitive) {
+        Map<Set<Operator>, List<SubPlan>> groups = new LinkedHashMap<>();
+        for (SubPlan sub : primitive.getPlan().getElements()) {
+            Set<Operator> key = new HashSet<>();
+            for (SubPlan.Input input : sub.getInputs()) {
+                key.add(primitive.getSource(input.getOperator()));
+            }
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(sub);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * The benchmark parameters.
+     */
+    @State(Scope.Benchmark)
+    public static class Parameters {
+
+        /**
+         * The graph shape.
+         */
+        @Param({ "WIDE", "DEEP", "GATHER", "BROADCAST" })
+        public GraphShape shape;
+
+        /**
+         * The number of user operators.
+         */
+        @Param({ "10", "100", "1000" })
+        public int size;
+    }
+
+    /**
+     * A simplified operator graph, which is shared between invocations because the target phase never modifies it.
+     */
+    @State(Scope.Thread)
+    public static class SimplifiedGraph {
+
+        OperatorGraph graph;
+
+        /**
+         * Prepares the input.
+         * @param parameters the benchmark parameters
+         */
+        @Setup(Level.Trial)
+        public void setup(Parameters parameters) {
+            graph = parameters.shape.build(parameters.size);
+            Planning.normalize(graph);
+            Planning.simplifyTerminators(graph);
+        }
+    }
+
+    /**
+     * A primitive plan, which is shared between invocations because the target phase never modifies it.
+     */
+    @State(Scope.Thread)
+    public static class PrimitivePlan {
+
+        PlanDetail primitive;
+
+        List<List<SubPlan>> groups;
+
+        /**
+         * Prepares the input.
+         * @param parameters the benchmark parameters
+         */
+        @Setup(Level.Trial)
+        public void setup(Parameters parameters) {
+            OperatorGraph graph = parameters.shape.build(parameters.size);
+            Planning.normalize(graph);
+            Planning.simplifyTerminators(graph);
+            primitive = Planning.createPrimitivePlan(graph);
+            groups = groupByInputs(primitive);
+        }
+
+        PlanDetail merge() {
+            SubPlanMerger merger = new SubPlanMerger(primitive);
+            for (List<SubPlan> group : groups) {
+                merger.add(group);
+            }
+            return merger.build();
+        }
+    }
+
+    /**
+     * Raw operator graphs, which are re-created for each batch because the target phases modify them.
+     */
+    @State(Scope.Thread)
+    public static class RawGraphs {
+
+        final Deque<OperatorGraph> graphs = new ArrayDeque<>();
+
+        /**
+         * Prepares the inputs.
+         * @param parameters the benchmark parameters
+         */
+        @Setup(Level.Iteration)
+        public void setup(Parameters parameters) {
+            graphs.clear();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                graphs.add(parameters.shape.build(parameters.size));
+            }
+        }
+
+        OperatorGraph next() {
+            return take(graphs);
+        }
+    }
+
+    /**
+     * Normalized operator graphs, which are re-created for each batch because the target phase modifies them.
+     */
+    @State(Scope.Thread)
+    public static class NormalizedGraphs {
+
+        final Deque<OperatorGraph> graphs = new ArrayDeque<>();
+
+        /**
+         * Prepares the inputs.
+         * @param parameters the benchmark parameters
+         */
+        @Setup(Level.Iteration)
+        public void setup(Parameters parameters) {
+            graphs.clear();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                OperatorGraph graph = parameters.shape.build(parameters.size);
+                Planning.normalize(graph);
+                graphs.add(graph);
+            }
+        }
+
+        OperatorGraph next() {
+            return take(graphs);
+        }
+    }
+
+    /**
+     * Merged plans, which are re-created for each batch because the target phase modifies them.
+     */
+    @State(Scope.Thread)
+    public static class MergedPlans {
+
+        final Deque<BasicPlan> plans = new ArrayDeque<>();
+
+        /**
+         * Prepares the inputs.
+         * @param primitive the primitive plan
+         */
+        @Setup(Level.Iteration)
+        public void setup(PrimitivePlan primitive) {
+            plans.clear();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                plans.add((BasicPlan) primitive.merge().getPlan());
+            }
+        }
+
+        BasicPlan next() {
+            return take(plans);
+        }
+    }
+
+    static <T> T take(Deque<T> inputs) {
+        T next = inputs.pollFirst();
+        if (next == null) {
+            throw new IllegalStateException("benchmark inputs are exhausted in the current batch"); //$NON-NLS-1$
+        }
+        return next;
+    }
+}
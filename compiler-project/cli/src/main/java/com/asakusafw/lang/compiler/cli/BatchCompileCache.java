@@ -0,0 +1,447 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.api.CompilerOptions;
+import com.asakusafw.lang.compiler.core.ProjectRepository;
+import com.asakusafw.lang.compiler.packaging.FileRepository;
+import com.asakusafw.lang.compiler.packaging.FileSink;
+import com.asakusafw.lang.compiler.packaging.ResourceUtil;
+
+/**
+ * A persistent cache of batch compilation results.
+ * <p>
+ * Each cache entry is a copy of the batch output directory, and it is identified by a digest of:
+ * </p>
+ * <ul>
+ * <li> the batch class and the project classes which are transitively referred from it </li>
+ * <li> the other non-class resources in the project contents </li>
+ * <li> the other libraries (embedded, attached, or external ones) </li>
+ * <li> the compiler options, except the build ID </li>
+ * <li> the compiler tools </li>
+ * </ul>
+ * <p>
+ * The build ID is embedded into some batch outputs (e.g. YAESS verification code, or runtime context properties
+ * in jobflow packages), so that it is rewritten to the current one on restoring the cache entry.
+ * The build ID is only included in the cache key if it is too short to be rewritten safely
+ * (less than {@value #MIN_REWRITE_BUILD_ID_LENGTH} characters),
+ * and the batch outputs which have the build ID in their class files are never cached.
+ * </p>
+ * <p>
+ * Note that, jobflow packages in the restored batch may still contain the earlier version of
+ * embedded project classes which are not reachable from the batch class.
+ * </p>
+ * @since 0.4.0
+ */
+public class BatchCompileCache {
+
+    static final Logger LOG = LoggerFactory.getLogger(BatchCompileCache.class);
+
+    static final String ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+    /**
+     * The cache format version, which must be changed if the cache key or contents layout was changed.
+     */
+    static final String FORMAT_VERSION = "2"; //$NON-NLS-1$
+
+    /**
+     * The minimum length of build IDs which can be rewritten on restoring cache entries.
+     */
+    static final int MIN_REWRITE_BUILD_ID_LENGTH = 16;
+
+    private static final String PREFIX_TEMPORARY = ".tmp-"; //$NON-NLS-1$
+
+    private static final String PATH_CONTENTS = "contents"; //$NON-NLS-1$
+
+    private static final String PATH_METADATA = "entry.properties"; //$NON-NLS-1$
+
+    private static final String KEY_BUILD_ID = "buildId"; //$NON-NLS-1$
+
+    private static final String PREFIX_KEY_TARGET = "target."; //$NON-NLS-1$
+
+    private static final String EXTENSION_CLASS = ".class"; //$NON-NLS-1$
+
+    private static final String[] EXTENSIONS_ARCHIVE = {
+            ".jar", //$NON-NLS-1$
+            ".zip", //$NON-NLS-1$
+    };
+
+    private final File root;
+
+    private final ProjectClassIndex index;
+
+    private final byte[] environment;
+
+    BatchCompileCache(File root, ProjectClassIndex index, byte[] environment) {
+        this.root = root;
+        this.index = index;
+        this.environment = environment.clone();
+    }
+
+    /**
+     * Opens a cache.
+     * @param root the cache root directory
+     * @param project the current project
+     * @param libraries the other library files
+     * @param tools the compiler tool information
+     * @return the opened cache
+     * @throws IOException if failed to analyze the current project
+     */
+    public static BatchCompileCache open(
+            File root,
+            ProjectRepository project,
+            Collection<File> libraries,
+            Collection<String> tools) throws IOException {
+        LOG.debug("analyzing project contents for compile cache: {}", root); //$NON-NLS-1$
+        ProjectClassIndex index = ProjectClassIndex.build(project.getProjectContents(), ALGORITHM);
+        MessageDigest digest = Util.newDigest(ALGORITHM);
+        update(digest, FORMAT_VERSION);
+        digest.update(index.getResourceDigest());
+        for (File file : libraries) {
+            updateStat(digest, file.getAbsoluteFile());
+        }
+        for (String tool : tools) {
+            update(digest, tool);
+        }
+        return new BatchCompileCache(root, index, digest.digest());
+    }
+
+    /**
+     * Computes the cache key of the target batch.
+     * @param batchClassName the batch class name
+     * @param batchId the target batch ID
+     * @param options the compiler options for the target batch
+     * @return the cache key
+     */
+    public String computeKey(String batchClassName, String batchId, CompilerOptions options) {
+        MessageDigest digest = Util.newDigest(ALGORITHM);
+        digest.update(environment);
+        update(digest, batchClassName);
+        update(digest, batchId);
+        update(digest, options.getRuntimeWorkingDirectory());
+        if (isRewritable(options.getBuildId()) == false) {
+            update(digest, options.getBuildId());
+        }
+        for (Map.Entry<String, String> entry : new TreeMap<>(options.getRawProperties()).entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue());
+        }
+        int classes = index.update(digest, batchClassName);
+        String key = Util.toHexString(digest.digest());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("compile cache key: {} (batch={}, classes={})", //$NON-NLS-1$
+                    key, batchId, classes);
+        }
+        return key;
+    }
+
+    /**
+     * Restores the cached batch output.
+     * The build ID in the cached batch output will be replaced with the given one.
+     * @param key the cache key
+     * @param output the batch output directory, which must be empty or not exist
+     * @param buildId the current build ID
+     * @return {@code true} if the cached batch output was restored, otherwise {@code false}
+     */
+    public boolean restore(String key, File output, String buildId) {
+        File entry = new File(root, key);
+        if (entry.isDirectory() == false) {
+            LOG.debug("compile cache miss: {}", key); //$NON-NLS-1$
+            return false;
+        }
+        LOG.debug("compile cache hit: {} -> {}", key, output); //$NON-NLS-1$
+        try {
+            Properties metadata = load(new File(entry, PATH_METADATA));
+            String cachedBuildId = metadata.getProperty(KEY_BUILD_ID);
+            if (cachedBuildId == null) {
+                throw new IOException(MessageFormat.format(
+                        "invalid compile cache entry: {0}",
+                        entry));
+            }
+            copy(new File(entry, PATH_CONTENTS), output);
+            if (cachedBuildId.equals(buildId) == false) {
+                for (String path : getTargets(metadata)) {
+                    LOG.debug("rewriting build ID: {} ({} -> {})", path, cachedBuildId, buildId); //$NON-NLS-1$
+                    rewrite(new File(output, path), cachedBuildId, buildId);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to restore compile cache: {0} -> {1}",
+                    entry,
+                    output), e);
+            if (output.exists() && ResourceUtil.delete(output) == false) {
+                throw new IllegalStateException(MessageFormat.format(
+                        "failed to delete output target: {0}",
+                        output), e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Stores the batch output into this cache.
+     * This does nothing if the target entry already exists, or the build ID cannot be rewritten in the batch output.
+     * @param key the cache key
+     * @param output the batch output directory
+     * @param buildId the build ID of the batch output
+     */
+    public void store(String key, File output, String buildId) {
+        File entry = new File(root, key);
+        if (entry.exists()) {
+            return;
+        }
+        File temporary = new File(root, PREFIX_TEMPORARY + UUID.randomUUID());
+        try {
+            Properties metadata = new Properties();
+            metadata.setProperty(KEY_BUILD_ID, buildId);
+            if (isRewritable(buildId)) {
+                List<String> targets = new ArrayList<>();
+                if (collectTargets(output, null, buildId.getBytes(StandardCharsets.UTF_8), targets) == false) {
+                    LOG.debug("compile cache is not available: {} (build ID is in class files)", output); //$NON-NLS-1$
+                    return;
+                }
+                for (int i = 0, n = targets.size(); i < n; i++) {
+                    metadata.setProperty(PREFIX_KEY_TARGET + i, targets.get(i));
+                }
+            }
+            copy(output, new File(temporary, PATH_CONTENTS));
+            try (OutputStream out = new FileOutputStream(new File(temporary, PATH_METADATA))) {
+                metadata.store(out, null);
+            }
+            if (temporary.renameTo(entry) == false && entry.isDirectory() == false) {
+                throw new IOException(MessageFormat.format(
+                        "failed to move compile cache entry: {0} -> {1}",
+                        temporary,
+                        entry));
+            }
+            LOG.debug("stored compile cache: {} <- {}", key, output); //$NON-NLS-1$
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to store compile cache: {0} -> {1}",
+                    output,
+                    entry), e);
+        } finally {
+            if (temporary.exists() && ResourceUtil.delete(temporary) == false) {
+                LOG.warn(MessageFormat.format(
+                        "failed to delete temporary file: {0}",
+                        temporary));
+            }
+        }
+    }
+
+    private static boolean isRewritable(String buildId) {
+        return buildId.length() >= MIN_REWRITE_BUILD_ID_LENGTH;
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static List<String> getTargets(Properties metadata) {
+        List<String> results = new ArrayList<>();
+        for (int i = 0;; i++) {
+            String path = metadata.getProperty(PREFIX_KEY_TARGET + i);
+            if (path == null) {
+                break;
+            }
+            results.add(path);
+        }
+        return results;
+    }
+
+    private static boolean collectTargets(
+            File file, String path, byte[] pattern, List<String> targets) throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    String childPath = path == null ? child.getName() : path + '/' + child.getName();
+                    if (collectTargets(child, childPath, pattern, targets) == false) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        boolean found = false;
+        if (isArchive(file.getName())) {
+            try (ZipInputStream input = new ZipInputStream(new FileInputStream(file))) {
+                while (true) {
+                    ZipEntry entry = input.getNextEntry();
+                    if (entry == null) {
+                        break;
+                    }
+                    if (indexOf(Util.toBytes(input), pattern, 0) >= 0) {
+                        if (entry.getName().endsWith(EXTENSION_CLASS)) {
+                            return false;
+                        }
+                        found = true;
+                    }
+                }
+            }
+        } else {
+            byte[] contents = Files.readAllBytes(file.toPath());
+            if (indexOf(contents, pattern, 0) >= 0) {
+                if (file.getName().endsWith(EXTENSION_CLASS)) {
+                    return false;
+                }
+                found = true;
+            }
+        }
+        if (found) {
+            targets.add(path);
+        }
+        return true;
+    }
+
+    private static void rewrite(File file, String from, String to) throws IOException {
+        byte[] pattern = from.getBytes(StandardCharsets.UTF_8);
+        byte[] replacement = to.getBytes(StandardCharsets.UTF_8);
+        byte[] contents = Files.readAllBytes(file.toPath());
+        if (isArchive(file.getName())) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(contents.length);
+            try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(contents));
+                    ZipOutputStream output = new ZipOutputStream(buffer)) {
+                while (true) {
+                    ZipEntry entry = input.getNextEntry();
+                    if (entry == null) {
+                        break;
+                    }
+                    ZipEntry rewritten = new ZipEntry(entry.getName());
+                    if (entry.getTime() >= 0) {
+                        rewritten.setTime(entry.getTime());
+                    }
+                    output.putNextEntry(rewritten);
+                    output.write(replace(Util.toBytes(input), pattern, replacement));
+                    output.closeEntry();
+                }
+            }
+            contents = buffer.toByteArray();
+        } else {
+            contents = replace(contents, pattern, replacement);
+        }
+        Files.write(file.toPath(), contents);
+    }
+
+    private static boolean isArchive(String name) {
+        for (String extension : EXTENSIONS_ARCHIVE) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] replace(byte[] contents, byte[] pattern, byte[] replacement) {
+        int found = indexOf(contents, pattern, 0);
+        if (found < 0) {
+            return contents;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(contents.length);
+        int offset = 0;
+        while (found >= 0) {
+            output.write(contents, offset, found - offset);
+            output.write(replacement, 0, replacement.length);
+            offset = found + pattern.length;
+            found = indexOf(contents, pattern, offset);
+        }
+        output.write(contents, offset, contents.length - offset);
+        return output.toByteArray();
+    }
+
+    private static int indexOf(byte[] contents, byte[] pattern, int start) {
+        for (int i = start, n = contents.length - pattern.length; i <= n; i++) {
+            boolean matched = true;
+            for (int j = 0; j < pattern.length; j++) {
+                if (contents[i + j] != pattern[j]) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void copy(File source, File destination) throws IOException {
+        if (destination.mkdirs() == false && destination.isDirectory() == false) {
+            throw new IOException(MessageFormat.format(
+                    "failed to create directory: {0}",
+                    destination));
+        }
+        if (source.isDirectory()) {
+            ResourceUtil.copy(new FileRepository(source), new FileSink(destination));
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static void updateStat(MessageDigest digest, File file) {
+        update(digest, file.getPath());
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    updateStat(digest, child);
+                }
+            }
+        } else {
+            update(digest, String.format("%d:%d", file.length(), file.lastModified())); //$NON-NLS-1$
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.asakusafw.lang.compiler.cli;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Field;
 import java.net.URLClassLoader;
 import java.text.MessageFormat;
@@ -24,12 +25,18 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
@@ -51,6 +58,8 @@ import com.asakusafw.lang.compiler.api.JobflowProcessor;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
 import com.asakusafw.lang.compiler.common.Predicates;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler;
+import com.asakusafw.lang.compiler.common.util.ConcurrentUtil;
 import com.asakusafw.lang.compiler.core.AnalyzerContext;
 import com.asakusafw.lang.compiler.core.BatchCompiler;
 import com.asakusafw.lang.compiler.core.ClassAnalyzer;
@@ -60,6 +69,7 @@ import com.asakusafw.lang.compiler.core.ProjectRepository;
 import com.asakusafw.lang.compiler.core.ToolRepository;
 import com.asakusafw.lang.compiler.core.basic.BasicBatchCompiler;
 import com.asakusafw.lang.compiler.core.basic.JobflowPackager;
+import com.asakusafw.lang.compiler.core.participant.CompilerProfilerParticipant;
 import com.asakusafw.lang.compiler.core.util.CompositeClassAnalyzer;
 import com.asakusafw.lang.compiler.core.util.DiagnosticUtil;
 import com.asakusafw.lang.compiler.model.description.ClassDescription;
@@ -136,6 +146,14 @@ import com.asakusafw.lang.compiler.packaging.ResourceUtil;
  * <dd>whether fails on compilation errors or not</dd>
  * <dd>default: <em>(skip on errors)</em></dd>
  *
+ * <dt><code>--cacheDirectory &lt;/path/to/cache&gt;</code> <em>(optional)</em></dt>
+ * <dd>directory of compile cache, which enables to reuse the earlier results for unchanged batches</dd>
+ * <dd>default: <em>(disables compile cache)</em></dd>
+ *
+ * <dt><code>--parallel &lt;number-of-threads&gt;</code> <em>(optional)</em></dt>
+ * <dd>the max number of batches which are compiled concurrently ({@code 0} - number of available processors)</dd>
+ * <dd>default: {@code 1}</dd>
+ *
  *
  * <dt><code>--batchCompiler &lt;class-name&gt;</code> <em>(optional)</em></dt>
  * <dd>custom batch compiler class</dd>
@@ -148,7 +166,7 @@ import com.asakusafw.lang.compiler.packaging.ResourceUtil;
  * </dl>
  * <!-- CHECKSTYLE:ON JavadocStyle -->
  * @since 0.1.0
- * @version 0.3.0
+ * @version 0.4.0
  */
 public final class BatchCompilerCli {
 
@@ -158,6 +176,8 @@ public final class BatchCompilerCli {
 
     static final ClassDescription DEFAULT_CLASS_ANALYZER = Descriptions.classOf(CompositeClassAnalyzer.class);
 
+    static final String PHASE_ANALYSIS = "analysis"; //$NON-NLS-1$
+
     /**
      * The default runtime working directory.
      */
@@ -243,6 +263,8 @@ public final class BatchCompilerCli {
         results.properties.putAll(parseProperties(cmd, opts.properties));
         results.failOnError.set(cmd.hasOption(opts.failOnError.getLongOpt()));
         results.batchIdPrefix.set(parse(cmd, opts.batchIdPrefix));
+        results.parallel.set(parseParallelism(cmd, opts.parallel));
+        results.cacheDirectory.set(parseFile(cmd, opts.cacheDirectory, false));
         return results;
     }
 
@@ -332,6 +354,21 @@ public final class BatchCompilerCli {
         return results;
     }
 
+    private static Integer parseParallelism(CommandLine cmd, Option option) {
+        String value = parse(cmd, option);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return ConcurrentUtil.parseParallelism(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "value must be a non-negative integer: {1} (--{0})",
+                    option.getLongOpt(),
+                    value), e);
+        }
+    }
+
     private static Map<String, String> parseProperties(CommandLine cmd, Option option) {
         Properties properties = cmd.getOptionProperties(option.getLongOpt());
         Map<String, String> results = new TreeMap<>();
@@ -480,62 +517,223 @@ public final class BatchCompilerCli {
             LOG.debug("  compiler: {}", compiler.getClass().getName()); //$NON-NLS-1$
         }
         Predicate<? super Class<?>> predicate = loadPredicate(root.getRoot(), configuration, analyzer);
-        Map<Class<?>, DiagnosticException> errors = new LinkedHashMap<>();
+        List<Class<?>> targets = new ArrayList<>(root.getRoot().getProject().getProjectClasses(predicate));
+        Map<Class<?>, DiagnosticException> errors = new HashMap<>();
         Map<String, ClassDescription> sawBatch = new HashMap<>();
-        for (Class<?> aClass : root.getRoot().getProject().getProjectClasses(predicate)) {
-            if (LOG.isInfoEnabled()) {
-                LOG.info(MessageFormat.format(
-                        "compiling batch class: {0}",
-                        aClass.getName()));
-            }
-            try {
-                Batch batch = analyzer.analyzeBatch(new ClassAnalyzer.Context(root.getRoot()), aClass);
-                CompilerContext scoped = root.getScopedContext(batch);
-                if (configuration.batchIdPrefix.isEmpty() == false) {
-                    batch = transformBatchId(batch, configuration.batchIdPrefix.get());
-                }
-                if (sawBatch.containsKey(batch.getBatchId())) {
-                    throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
-                            "conflict batch ID: {0} ({1} <=> {2})",
-                            batch.getBatchId(),
-                            sawBatch.get(batch.getBatchId()),
-                            batch.getDescriptionClass()));
+        Map<Class<?>, Future<?>> running = new LinkedHashMap<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        BatchCompileCache cache = openCache(root.getRoot(), configuration, analyzer, compiler);
+        ExecutorService executor = createExecutor(configuration.parallel.get(), targets.size());
+        try {
+            for (Class<?> aClass : targets) {
+                // stops scheduling as soon as any previous batch has failed
+                collect(configuration, errors, running, false);
+                if (LOG.isInfoEnabled()) {
+                    LOG.info(MessageFormat.format(
+                            "compiling batch class: {0}",
+                            aClass.getName()));
                 }
-                sawBatch.put(batch.getBatchId(), batch.getDescriptionClass());
-                File output = new File(configuration.output.get(), batch.getBatchId());
-                if (output.exists()) {
-                    LOG.debug("cleaning output target: {}", output); //$NON-NLS-1$
-                    if (ResourceUtil.delete(output) == false) {
-                        throw new IOException(MessageFormat.format(
-                                "failed to delete output target: {0}",
-                                output));
+                try {
+                    CompilerProfiler profiler = createProfiler(root.getRoot());
+                    Batch batch;
+                    try (CompilerProfiler.Phase phase = profiler == null
+                            ? null
+                            : profiler.start(null, PHASE_ANALYSIS)) {
+                        batch = analyzer.analyzeBatch(new ClassAnalyzer.Context(root.getRoot()), aClass);
                     }
+                    CompilerContext scoped = root.getScopedContext(batch);
+                    if (configuration.batchIdPrefix.isEmpty() == false) {
+                        batch = transformBatchId(batch, configuration.batchIdPrefix.get());
+                    }
+                    if (sawBatch.containsKey(batch.getBatchId())) {
+                        throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                                "conflict batch ID: {0} ({1} <=> {2})",
+                                batch.getBatchId(),
+                                sawBatch.get(batch.getBatchId()),
+                                batch.getDescriptionClass()));
+                    }
+                    sawBatch.put(batch.getBatchId(), batch.getDescriptionClass());
+                    File output = new File(configuration.output.get(), batch.getBatchId());
+                    if (output.exists()) {
+                        LOG.debug("cleaning output target: {}", output); //$NON-NLS-1$
+                        if (ResourceUtil.delete(output) == false) {
+                            throw new IOException(MessageFormat.format(
+                                    "failed to delete output target: {0}",
+                                    output));
+                        }
+                    }
+                    String cacheKey = cache == null
+                            ? null
+                            : cache.computeKey(aClass.getName(), batch.getBatchId(), scoped.getOptions());
+                    if (cacheKey != null && cache.restore(cacheKey, output, scoped.getOptions().getBuildId())) {
+                        LOG.info(MessageFormat.format(
+                                "reusing cached batch: {0} ({1})",
+                                aClass.getName(),
+                                cacheKey));
+                        continue;
+                    }
+                    BatchCompiler.Context context = new BatchCompiler.Context(scoped, new FileContainer(output));
+                    if (profiler != null) {
+                        context.registerExtension(CompilerProfiler.class, profiler);
+                    }
+                    Batch target = batch;
+                    Runnable task = () -> {
+                        if (configuration.failOnError.get() && failed.get()) {
+                            LOG.debug("skipped compiling batch class: {}", aClass.getName()); //$NON-NLS-1$
+                            return;
+                        }
+                        try {
+                            compiler.compile(context, target);
+                        } catch (RuntimeException | Error e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                        if (cacheKey != null) {
+                            cache.store(cacheKey, output, scoped.getOptions().getBuildId());
+                        }
+                    };
+                    if (executor == null) {
+                        task.run();
+                    } else {
+                        running.put(aClass, executor.submit(task));
+                    }
+                } catch (DiagnosticException e) {
+                    handleError(configuration, errors, aClass, e);
                 }
-                BatchCompiler.Context context = new BatchCompiler.Context(scoped, new FileContainer(output));
-                compiler.compile(context, batch);
-            } catch (DiagnosticException e) {
-                errors.put(aClass, e);
-                for (Diagnostic diagnostic : e.getDiagnostics()) {
-                    DiagnosticUtil.log(LOG, diagnostic);
-                }
-                if (configuration.failOnError.get()) {
-                    throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
-                            "error occurred while compiling batch: {0}",
-                            aClass.getName()));
-                }
+            }
+            collect(configuration, errors, running, true);
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("interrupted while compiling batch classes").initCause(e);
+        } finally {
+            if (executor != null) {
+                shutdown(executor, running.values());
             }
         }
         if (errors.isEmpty() == false) {
-            for (Map.Entry<Class<?>, DiagnosticException> entry : errors.entrySet()) {
-                LOG.error(MessageFormat.format(
-                        "error occurred while compiling batch: {0}",
-                        entry.getKey().getName()), entry.getValue());
+            for (Class<?> aClass : targets) {
+                DiagnosticException error = errors.get(aClass);
+                if (error != null) {
+                    LOG.error(MessageFormat.format(
+                            "error occurred while compiling batch: {0}",
+                            aClass.getName()), error);
+                }
             }
             return false;
         }
         return true;
     }
 
+    private static CompilerProfiler createProfiler(CompilerContext context) {
+        boolean enabled = context.getOptions().get(
+                CompilerProfilerParticipant.KEY_ENABLED,
+                CompilerProfilerParticipant.DEFAULT_ENABLED);
+        return enabled ? new CompilerProfiler() : null;
+    }
+
+    private static void collect(
+            Configuration configuration,
+            Map<Class<?>, DiagnosticException> errors,
+            Map<Class<?>, Future<?>> running,
+            boolean wait) throws InterruptedException {
+        for (Iterator<Map.Entry<Class<?>, Future<?>>> iter = running.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<Class<?>, Future<?>> entry = iter.next();
+            Future<?> future = entry.getValue();
+            if (wait == false && future.isDone() == false) {
+                continue;
+            }
+            Throwable cause = null;
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                cause = e.getCause();
+            }
+            iter.remove();
+            if (cause == null) {
+                continue;
+            } else if (cause instanceof DiagnosticException) {
+                handleError(configuration, errors, entry.getKey(), (DiagnosticException) cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private static void handleError(
+            Configuration configuration,
+            Map<Class<?>, DiagnosticException> errors,
+            Class<?> aClass, DiagnosticException exception) {
+        errors.put(aClass, exception);
+        for (Diagnostic diagnostic : exception.getDiagnostics()) {
+            DiagnosticUtil.log(LOG, diagnostic);
+        }
+        if (configuration.failOnError.get()) {
+            throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                    "error occurred while compiling batch: {0}",
+                    aClass.getName()));
+        }
+    }
+
+    private static BatchCompileCache openCache(
+            CompilerContext root,
+            Configuration configuration,
+            ClassAnalyzer analyzer,
+            BatchCompiler compiler) throws IOException {
+        if (configuration.cacheDirectory.isEmpty()) {
+            return null;
+        }
+        List<File> libraries = new ArrayList<>();
+        libraries.addAll(configuration.embed.get());
+        libraries.addAll(configuration.attach.get());
+        libraries.addAll(configuration.external.get());
+        List<String> tools = new ArrayList<>();
+        tools.add(DiagnosticUtil.getArtifactInfo(BatchCompilerCli.class));
+        tools.add(info(analyzer).toString());
+        tools.add(info(compiler).toString());
+        tools.add(info(root.getTools().getDataModelProcessor()).toString());
+        tools.add(info(root.getTools().getExternalPortProcessor()).toString());
+        tools.add(info(root.getTools().getBatchProcessor()).toString());
+        tools.add(info(root.getTools().getJobflowProcessor()).toString());
+        tools.add(info(root.getTools().getParticipant()).toString());
+        return BatchCompileCache.open(configuration.cacheDirectory.get(), root.getProject(), libraries, tools);
+    }
+
+    private static ExecutorService createExecutor(int parallel, int tasks) {
+        int threads = Math.min(parallel, tasks);
+        if (threads <= 1) {
+            return null;
+        }
+        LOG.debug("compiling batch classes in parallel: threads={}", threads); //$NON-NLS-1$
+        return ConcurrentUtil.newWorkerThreadPool(
+                "batch-compiler-%d", //$NON-NLS-1$
+                threads);
+    }
+
+    private static void shutdown(ExecutorService executor, Iterable<Future<?>> futures) {
+        // cancels only pending batches, and waits for the running ones to release their temporary files
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+                LOG.debug("waiting for running batch compilers"); //$NON-NLS-1$
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static Batch transformBatchId(Batch batch, String prefix) {
         BatchInfo transformed = new BatchInfo.Basic(
                 prefix + batch.getBatchId(),
@@ -654,6 +852,14 @@ public final class BatchCompilerCli {
         final Option failOnError = optional("failOnError", 0) //$NON-NLS-1$
                 .withDescription("whether fails on compilation errors or not");
 
+        final Option cacheDirectory = optional("cacheDirectory", 1) //$NON-NLS-1$
+                .withDescription("compile cache directory")
+                .withArgumentDescription("/path/to/cache"); //$NON-NLS-1$
+
+        final Option parallel = optional("parallel", 1) //$NON-NLS-1$
+                .withDescription("max number of batches which are compiled concurrently")
+                .withArgumentDescription("number-of-threads"); //$NON-NLS-1$
+
         final Options options = new Options();
 
         Opts() {
@@ -729,6 +935,10 @@ public final class BatchCompilerCli {
 
         final ValueHolder<Boolean> failOnError = new ValueHolder<>(Boolean.FALSE);
 
+        final ValueHolder<Integer> parallel = new ValueHolder<>(1);
+
+        final ValueHolder<File> cacheDirectory = new ValueHolder<>();
+
         Configuration() {
             return;
         }
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.packaging.ResourceRepository;
+
+/**
+ * An index of class files in project contents, which tracks class references between them.
+ * @since 0.4.0
+ */
+final class ProjectClassIndex {
+
+    static final Logger LOG = LoggerFactory.getLogger(ProjectClassIndex.class);
+
+    static final String EXTENSION_CLASS = ".class"; //$NON-NLS-1$
+
+    /**
+     * The suffix of operator implementation classes, which are only referred by their names.
+     */
+    static final String SUFFIX_IMPLEMENTATION = "Impl"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0xcafebabe;
+
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([^;<>()\\[]+)[;<]"); //$NON-NLS-1$
+
+    private final TreeMap<String, Entry> classes;
+
+    private final byte[] resourceDigest;
+
+    private ProjectClassIndex(TreeMap<String, Entry> classes, byte[] resourceDigest) {
+        this.classes = classes;
+        this.resourceDigest = resourceDigest;
+    }
+
+    /**
+     * Builds an index from the project contents.
+     * @param contents the project contents
+     * @param algorithm the message digest algorithm name
+     * @return the built index
+     * @throws IOException if failed to read the project contents
+     */
+    static ProjectClassIndex build(
+            Collection<? extends ResourceRepository> contents,
+            String algorithm) throws IOException {
+        TreeMap<String, Entry> classes = new TreeMap<>();
+        MessageDigest resources = Util.newDigest(algorithm);
+        for (ResourceRepository repository : contents) {
+            try (ResourceRepository.Cursor cursor = repository.createCursor()) {
+                while (cursor.next()) {
+                    Location location = cursor.getLocation();
+                    byte[] bytes;
+                    try (InputStream input = cursor.openResource()) {
+                        bytes = Util.toBytes(input);
+                    }
+                    String path = location.toPath();
+                    if (path.endsWith(EXTENSION_CLASS)) {
+                        String name = path.substring(0, path.length() - EXTENSION_CLASS.length());
+                        if (classes.containsKey(name)) {
+                            // former one wins as well as the class loader
+                            continue;
+                        }
+                        byte[] digest = Util.newDigest(algorithm).digest(bytes);
+                        classes.put(name, new Entry(digest, parseReferences(name, bytes)));
+                    } else {
+                        resources.update(path.getBytes(StandardCharsets.UTF_8));
+                        resources.update(Util.newDigest(algorithm).digest(bytes));
+                    }
+                }
+            }
+        }
+        for (Entry entry : classes.values()) {
+            if (entry.references == null) {
+                // conservatively depends on every project class if we cannot analyze its references
+                entry.references = new HashSet<>(classes.keySet());
+            } else {
+                entry.references.retainAll(classes.keySet());
+            }
+        }
+        return new ProjectClassIndex(classes, resources.digest());
+    }
+
+    /**
+     * Returns the digest of the non-class resources in the project contents.
+     * @return the digest
+     */
+    byte[] getResourceDigest() {
+        return resourceDigest.clone();
+    }
+
+    /**
+     * Returns whether this index contains the target class or not.
+     * @param className the binary name of the target class
+     * @return {@code true} if this contains the target class, otherwise {@code false}
+     */
+    boolean contains(String className) {
+        return classes.containsKey(toInternalName(className));
+    }
+
+    /**
+     * Feeds the digest of the target class and its transitively referred project classes.
+     * @param digest the target digest
+     * @param className the binary name of the target class
+     * @return the number of classes which were fed to the digest
+     */
+    int update(MessageDigest digest, String className) {
+        Set<String> closure = collect(toInternalName(className));
+        for (String name : closure) {
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update(classes.get(name).digest);
+        }
+        return closure.size();
+    }
+
+    private Set<String> collect(String root) {
+        Set<String> results = new TreeSet<>();
+        LinkedList<String> work = new LinkedList<>();
+        work.add(root);
+        while (work.isEmpty() == false) {
+            String next = work.removeFirst();
+            Entry entry = classes.get(next);
+            if (entry == null || results.contains(next)) {
+                continue;
+            }
+            results.add(next);
+            work.addAll(entry.references);
+            // nested classes, and implementations which are bound only by naming convention
+            work.addAll(classes.subMap(next + '$', true, next + '$' + Character.MAX_VALUE, true).keySet());
+            work.add(next + SUFFIX_IMPLEMENTATION);
+        }
+        return results;
+    }
+
+    private static String toInternalName(String name) {
+        return name.replace('.', '/');
+    }
+
+    private static Set<String> parseReferences(String name, byte[] bytes) {
+        // returns null if the class file cannot be analyzed
+        Set<String> results = new HashSet<>();
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (input.readInt() != MAGIC) {
+                throw new IOException("invalid magic number"); //$NON-NLS-1$
+            }
+            input.readUnsignedShort(); // minor version
+            input.readUnsignedShort(); // major version
+            int count = input.readUnsignedShort();
+            for (int i = 1; i < count; i++) {
+                int tag = input.readUnsignedByte();
+                switch (tag) {
+                case 1: // Utf8
+                    collectNames(input.readUTF(), results);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    skip(input, 4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    skip(input, 8);
+                    i++;
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    skip(input, 2);
+                    break;
+                case 15: // MethodHandle
+                    skip(input, 3);
+                    break;
+                default:
+                    throw new IOException(MessageFormat.format(
+                            "unknown constant pool tag: {0}", //$NON-NLS-1$
+                            tag));
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to analyze class file, it may depend on any other project classes: {0}",
+                    name), e);
+            return null;
+        }
+        results.remove(name);
+        return results;
+    }
+
+    private static void skip(DataInputStream input, int bytes) throws IOException {
+        if (input.skipBytes(bytes) != bytes) {
+            throw new IOException("unexpected end of class file"); //$NON-NLS-1$
+        }
+    }
+
+    private static void collectNames(String value, Set<String> results) {
+        // class constants, class literals in strings, and descriptors/signatures
+        results.add(toInternalName(value));
+        if (value.indexOf('L') >= 0 && value.indexOf(';') >= 0) {
+            Matcher matcher = DESCRIPTOR_CLASS.matcher(value);
+            while (matcher.find()) {
+                results.add(matcher.group(1));
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        final byte[] digest;
+
+        Set<String> references;
+
+        Entry(byte[] digest, Set<String> references) {
+            this.digest = digest;
+            this.references = references;
+        }
+    }
+}
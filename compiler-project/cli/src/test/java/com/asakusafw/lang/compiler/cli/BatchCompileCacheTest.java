@@ -0,0 +1,289 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.cli;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.api.CompilerOptions;
+import com.asakusafw.lang.compiler.common.testing.FileDeployer;
+import com.asakusafw.lang.compiler.core.ProjectRepository;
+
+/**
+ * Test for {@link BatchCompileCache}.
+ */
+public class BatchCompileCacheTest {
+
+    /**
+     * deployer.
+     */
+    @Rule
+    public FileDeployer deployer = new FileDeployer();
+
+    private final CompilerOptions options = CompilerOptions.builder().build();
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        File project = deployer.newFolder();
+        put(project, Root.class, Root.class);
+        put(project, Leaf.class, Leaf.class);
+        put(project, Other.class, Other.class);
+        String k0 = key(project, options);
+        String k1 = key(project, options);
+        assertThat(k1, is(k0));
+    }
+
+    /**
+     * modify reachable classes.
+     * @throws Exception if failed
+     */
+    @Test
+    public void modify_reachable() throws Exception {
+        File project = deployer.newFolder();
+        put(project, Root.class, Root.class);
+        put(project, Leaf.class, Leaf.class);
+        put(project, Other.class, Other.class);
+        String k0 = key(project, options);
+
+        put(project, Leaf.class, Other.class);
+        String k1 = key(project, options);
+        assertThat(k1, is(not(k0)));
+    }
+
+    /**
+     * modify unreachable classes.
+     * @throws Exception if failed
+     */
+    @Test
+    public void modify_unreachable() throws Exception {
+        File project = deployer.newFolder();
+        put(project, Root.class, Root.class);
+        put(project, Leaf.class, Leaf.class);
+        put(project, Other.class, Other.class);
+        String k0 = key(project, options);
+
+        put(project, Other.class, Leaf.class);
+        String k1 = key(project, options);
+        assertThat(k1, is(k0));
+    }
+
+    /**
+     * modify any classes which may be referred from broken classes.
+     * @throws Exception if failed
+     */
+    @Test
+    public void modify_unknown_references() throws Exception {
+        File project = deployer.newFolder();
+        write(new File(project, Root.class.getName().replace('.', '/') + ".class"), "broken");
+        put(project, Leaf.class, Leaf.class);
+        put(project, Other.class, Other.class);
+        String k0 = key(project, options);
+
+        put(project, Other.class, Leaf.class);
+        String k1 = key(project, options);
+        assertThat(k1, is(not(k0)));
+    }
+
+    /**
+     * modify compiler options.
+     * @throws Exception if failed
+     */
+    @Test
+    public void modify_options() throws Exception {
+        File project = deployer.newFolder();
+        put(project, Root.class, Root.class);
+        String k0 = key(project, options);
+        String k1 = key(project, CompilerOptions.builder().build());
+        String k2 = key(project, CompilerOptions.builder().withProperty("a", "b").build());
+        assertThat(k1, is(k0));
+        assertThat(k2, is(not(k0)));
+    }
+
+    /**
+     * store and restore.
+     * @throws Exception if failed
+     */
+    @Test
+    public void store_restore() throws Exception {
+        File project = deployer.newFolder();
+        put(project, Root.class, Root.class);
+        File root = deployer.newFolder();
+        BatchCompileCache cache = open(root, project);
+        String key = cache.computeKey(Root.class.getName(), "testing", options);
+
+        File restored = new File(deployer.newFolder(), "restored");
+        assertThat(cache.restore(key, restored, options.getBuildId()), is(false));
+        assertThat(restored.exists(), is(false));
+
+        File output = deployer.newFolder();
+        Files.write(new File(output, "a.txt").toPath(), "Hello, world!".getBytes("UTF-8"));
+        cache.store(key, output, options.getBuildId());
+
+        assertThat(cache.restore(key, restored, options.getBuildId()), is(true));
+        File file = new File(restored, "a.txt");
+        assertThat(file.isFile(), is(true));
+        assertThat(new String(Files.readAllBytes(file.toPath()), "UTF-8"), is("Hello, world!"));
+    }
+
+    /**
+     * restore with another build ID.
+     * @throws Exception if failed
+     */
+    @Test
+    public void restore_rewrite_build_id() throws Exception {
+        File project = deployer.newFolder();
+        put(project, Root.class, Root.class);
+        File root = deployer.newFolder();
+        BatchCompileCache cache = open(root, project);
+        CompilerOptions other = CompilerOptions.builder().build();
+        String key = cache.computeKey(Root.class.getName(), "testing", options);
+        assertThat(cache.computeKey(Root.class.getName(), "testing", other), is(key));
+
+        File output = deployer.newFolder();
+        write(new File(output, "etc/build.properties"), "id=" + options.getBuildId());
+        write(new File(output, "a.txt"), "Hello, world!");
+        File jar = new File(output, "lib/a.jar");
+        assertThat(jar.getParentFile().mkdirs(), is(true));
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            zip.putNextEntry(new ZipEntry("META-INF/runtime.properties"));
+            zip.write(("id=" + options.getBuildId()).getBytes("UTF-8"));
+            zip.putNextEntry(new ZipEntry("b.txt"));
+            zip.write("Hello, world!".getBytes("UTF-8"));
+        }
+        cache.store(key, output, options.getBuildId());
+
+        File restored = new File(deployer.newFolder(), "restored");
+        assertThat(cache.restore(key, restored, other.getBuildId()), is(true));
+        assertThat(read(new File(restored, "etc/build.properties")), is("id=" + other.getBuildId()));
+        assertThat(read(new File(restored, "a.txt")), is("Hello, world!"));
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new FileInputStream(new File(restored, "lib/a.jar")))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), new String(Util.toBytes(zip), "UTF-8"));
+            }
+        }
+        assertThat(entries.keySet(), contains("META-INF/runtime.properties", "b.txt"));
+        assertThat(entries, hasEntry("META-INF/runtime.properties", "id=" + other.getBuildId()));
+        assertThat(entries, hasEntry("b.txt", "Hello, world!"));
+    }
+
+    /**
+     * build IDs which are too short to rewrite.
+     * @throws Exception if failed
+     */
+    @Test
+    public void short_build_id() throws Exception {
+        File project = deployer.newFolder();
+        put(project, Root.class, Root.class);
+        String k0 = key(project, CompilerOptions.builder().withBuildId("a").build());
+        String k1 = key(project, CompilerOptions.builder().withBuildId("a").build());
+        String k2 = key(project, CompilerOptions.builder().withBuildId("b").build());
+        assertThat(k1, is(k0));
+        assertThat(k2, is(not(k0)));
+    }
+
+    /**
+     * batch outputs which have the build ID in their class files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void store_build_id_in_class() throws Exception {
+        File project = deployer.newFolder();
+        put(project, Root.class, Root.class);
+        File root = deployer.newFolder();
+        BatchCompileCache cache = open(root, project);
+        String key = cache.computeKey(Root.class.getName(), "testing", options);
+
+        File output = deployer.newFolder();
+        write(new File(output, "Testing.class"), "id=" + options.getBuildId());
+        cache.store(key, output, options.getBuildId());
+
+        File restored = new File(deployer.newFolder(), "restored");
+        assertThat(cache.restore(key, restored, options.getBuildId()), is(false));
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        assertThat(file.getParentFile().mkdirs() || file.getParentFile().isDirectory(), is(true));
+        Files.write(file.toPath(), contents.getBytes("UTF-8"));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+
+    private String key(File project, CompilerOptions opts) throws IOException {
+        BatchCompileCache cache = open(deployer.newFolder(), project);
+        return cache.computeKey(Root.class.getName(), "testing", opts);
+    }
+
+    private BatchCompileCache open(File root, File project) throws IOException {
+        try (ProjectRepository repository = ProjectRepository.builder(getClass().getClassLoader())
+                .explore(project)
+                .build()) {
+            return BatchCompileCache.open(
+                    root, repository,
+                    Collections.emptyList(),
+                    Collections.singletonList("testing"));
+        }
+    }
+
+    private static void put(File project, Class<?> target, Class<?> contents) throws IOException {
+        File file = new File(project, target.getName().replace('.', '/') + ".class");
+        assertThat(file.getParentFile().mkdirs() || file.getParentFile().isDirectory(), is(true));
+        try (InputStream input = contents.getClassLoader().getResourceAsStream(
+                contents.getName().replace('.', '/') + ".class")) {
+            Files.write(file.toPath(), Util.toBytes(input));
+        }
+    }
+
+    @SuppressWarnings("javadoc")
+    public static class Root {
+
+        public Leaf leaf;
+    }
+
+    @SuppressWarnings("javadoc")
+    public static class Leaf {
+
+        public int value;
+    }
+
+    @SuppressWarnings("javadoc")
+    public static class Other {
+
+        public long value;
+    }
+}
@@ -23,8 +23,17 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -40,6 +49,7 @@ import org.junit.Test;
 import com.asakusafw.lang.compiler.api.CompilerOptions;
 import com.asakusafw.lang.compiler.cli.BatchCompilerCli.Configuration;
 import com.asakusafw.lang.compiler.cli.mock.DelegateBatchCompiler;
+import com.asakusafw.lang.compiler.cli.mock.DummyAnotherBatch;
 import com.asakusafw.lang.compiler.cli.mock.DummyBatch;
 import com.asakusafw.lang.compiler.cli.mock.DummyBatchCompiler;
 import com.asakusafw.lang.compiler.cli.mock.DummyBatchProcessor;
@@ -48,6 +58,7 @@ import com.asakusafw.lang.compiler.cli.mock.DummyCompilerParticipant;
 import com.asakusafw.lang.compiler.cli.mock.DummyDataModelProcessor;
 import com.asakusafw.lang.compiler.cli.mock.DummyExternalPortProcessor;
 import com.asakusafw.lang.compiler.cli.mock.DummyJobflowProcessor;
+import com.asakusafw.lang.compiler.cli.mock.HookClassAnalyzer;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
 import com.asakusafw.lang.compiler.common.Location;
@@ -102,6 +113,8 @@ public class BatchCompilerCliTest {
         assertThat(conf.properties.entrySet(), is(empty()));
         assertThat(conf.failOnError, contains(false));
         assertThat(conf.batchIdPrefix, isEmpty());
+        assertThat(conf.parallel, contains(1));
+        assertThat(conf.cacheDirectory, isEmpty());
     }
 
     /**
@@ -118,6 +131,7 @@ public class BatchCompilerCliTest {
         File embed2 = deployer.newFolder();
         File attach1 = deployer.newFolder();
         File attach2 = deployer.newFolder();
+        File cache = deployer.newFolder();
         Configuration conf = BatchCompilerCli.parse(strings(new Object[] {
                 "--explore", input,
                 "--output", output,
@@ -136,6 +150,8 @@ public class BatchCompilerCliTest {
                 "--runtimeWorkingDirectory", "testRuntimeWorkingDirectory",
                 "--failOnError", true,
                 "--batchIdPrefix", "prefix.",
+                "--parallel", 2,
+                "--cacheDirectory", cache,
                 "-P", "a=b",
                 "-property", "c=d",
         }));
@@ -156,6 +172,8 @@ public class BatchCompilerCliTest {
         assertThat(conf.properties.entrySet(), hasSize(2));
         assertThat(conf.failOnError, contains(true));
         assertThat(conf.batchIdPrefix, contains("prefix."));
+        assertThat(conf.parallel, contains(2));
+        assertThat(conf.cacheDirectory, contains(cache));
 
         Predicate<? super Class<?>> p = predicate(conf.sourcePredicate);
         assertThat(p.test(ByteBuffer.class), is(true));
@@ -364,6 +382,187 @@ public class BatchCompilerCliTest {
         assertThat(status, is(not(0)));
     }
 
+    /**
+     * w/ parallel compilation.
+     * @throws Exception if failed
+     */
+    @Test
+    public void execute_parallel() throws Exception {
+        File output = deployer.newFolder();
+        String[] args = strings(new Object[] {
+                "--explore", files(ResourceUtil.findLibraryByClass(DummyBatch.class)),
+                "--output", output,
+                "--classAnalyzer", classes(DummyClassAnalyzer.class),
+                "--batchCompiler", classes(DelegateBatchCompiler.class),
+                "--include", classes(DummyBatch.class),
+                "--externalPortProcessors", classes(DummyExternalPortProcessor.class),
+                "--parallel", 2,
+        });
+        AtomicInteger count = new AtomicInteger();
+        int status = execute(args, (context, batch) -> {
+            count.incrementAndGet();
+            assertThat(batch.getBatchId(), is("DummyBatch"));
+            assertThat(context.getOutput().getBasePath(), is(new File(output, batch.getBatchId())));
+        });
+        assertThat(status, is(0));
+        assertThat(count.get(), is(1));
+    }
+
+    /**
+     * w/ parallel compilation of multiple batches.
+     * @throws Exception if failed
+     */
+    @Test
+    public void execute_parallel_multiple() throws Exception {
+        File output = deployer.newFolder();
+        String[] args = strings(new Object[] {
+                "--explore", files(ResourceUtil.findLibraryByClass(DummyBatch.class)),
+                "--output", output,
+                "--classAnalyzer", classes(DummyClassAnalyzer.class),
+                "--batchCompiler", classes(DelegateBatchCompiler.class),
+                "--include", classes(DummyBatch.class, DummyAnotherBatch.class),
+                "--externalPortProcessors", classes(DummyExternalPortProcessor.class),
+                "--parallel", 2,
+        });
+        // both batches must be in compilation at the same time to pass the barrier
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        Set<String> batches = Collections.synchronizedSet(new HashSet<>());
+        int status = execute(args, (context, batch) -> {
+            threads.add(Thread.currentThread().getName());
+            batches.add(batch.getBatchId());
+            assertThat(context.getOutput().getBasePath(), is(new File(output, batch.getBatchId())));
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                throw new AssertionError(e);
+            }
+        });
+        assertThat(status, is(0));
+        assertThat(batches, containsInAnyOrder("DummyBatch", "DummyAnotherBatch"));
+        assertThat(threads, hasSize(2));
+    }
+
+    /**
+     * w/ parallel compilation and fail on error.
+     * @throws Exception if failed
+     */
+    @Test
+    public void execute_parallel_fail_on_error() throws Exception {
+        File output = deployer.newFolder();
+        String[] args = strings(new Object[] {
+                "--explore", files(ResourceUtil.findLibraryByClass(DummyBatch.class)),
+                "--output", output,
+                "--classAnalyzer", classes(HookClassAnalyzer.class),
+                "--batchCompiler", classes(DelegateBatchCompiler.class),
+                "--include", classes(DummyBatch.class, DummyAnotherBatch.class),
+                "--externalPortProcessors", classes(DummyExternalPortProcessor.class),
+                "--parallel", 2,
+                "--failOnError", true,
+        });
+        CountDownLatch failing = new CountDownLatch(1);
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        AtomicInteger analyzed = new AtomicInteger();
+        HookClassAnalyzer.HOOK.set(aClass -> {
+            if (analyzed.incrementAndGet() == 2) {
+                // waits until the first batch has completely failed
+                awaitIdle(failing, worker);
+            }
+        });
+        Set<String> batches = Collections.synchronizedSet(new HashSet<>());
+        int status;
+        try {
+            status = execute(args, (context, batch) -> {
+                batches.add(batch.getBatchId());
+                worker.set(Thread.currentThread());
+                failing.countDown();
+                throw new DiagnosticException(Diagnostic.Level.ERROR, "testing");
+            });
+        } finally {
+            HookClassAnalyzer.HOOK.remove();
+        }
+        assertThat(status, is(not(0)));
+        assertThat(batches, hasSize(1));
+    }
+
+    /**
+     * execute w/ conflict batch ID in parallel.
+     * @throws Exception if failed
+     */
+    @Test
+    public void execute_parallel_conflict_batch() throws Exception {
+        File output = deployer.newFolder();
+        String[] args = strings(new Object[] {
+                "--explore", files(ResourceUtil.findLibraryByClass(DummyBatch.class)),
+                "--output", output,
+                "--classAnalyzer", classes(DummyClassAnalyzer.class),
+                "--batchCompiler", classes(DelegateBatchCompiler.class),
+                "--include", DummyBatch.class.getName() + "*",
+                "--externalPortProcessors", classes(DummyExternalPortProcessor.class),
+                "--parallel", 2,
+        });
+        AtomicInteger count = new AtomicInteger();
+        int status = execute(args, (context, batch) -> {
+            count.incrementAndGet();
+        });
+        assertThat(status, is(not(0)));
+        assertThat(count.get(), is(1));
+    }
+
+    /**
+     * w/ compile cache.
+     * @throws Exception if failed
+     */
+    @Test
+    public void execute_cache() throws Exception {
+        File output = deployer.newFolder();
+        File cache = deployer.newFolder();
+        String[] args = strings(new Object[] {
+                "--explore", files(ResourceUtil.findLibraryByClass(DummyBatch.class)),
+                "--output", output,
+                "--classAnalyzer", classes(DummyClassAnalyzer.class),
+                "--batchCompiler", classes(DelegateBatchCompiler.class),
+                "--include", classes(DummyBatch.class),
+                "--externalPortProcessors", classes(DummyExternalPortProcessor.class),
+                "--cacheDirectory", cache,
+        });
+        AtomicInteger count = new AtomicInteger();
+        BatchCompiler compiler = (context, batch) -> {
+            count.incrementAndGet();
+            File file = new File(context.getOutput().getBasePath(), "testing");
+            file.getParentFile().mkdirs();
+            try {
+                assertThat(file.createNewFile(), is(true));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        };
+        assertThat(execute(args, compiler), is(0));
+        assertThat(count.get(), is(1));
+
+        assertThat(ResourceUtil.delete(output), is(true));
+        assertThat(execute(args, compiler), is(0));
+        assertThat(count.get(), is(1));
+        assertThat(new File(output, "DummyBatch/testing").isFile(), is(true));
+    }
+
+    private static void awaitIdle(CountDownLatch latch, AtomicReference<Thread> worker) {
+        try {
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+            long limit = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (true) {
+                Thread.State state = worker.get().getState();
+                if (state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING) {
+                    return;
+                }
+                assertThat(System.currentTimeMillis(), lessThan(limit));
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     private File prepareLibrary(String id) {
         File base = deployer.newFolder();
         try {
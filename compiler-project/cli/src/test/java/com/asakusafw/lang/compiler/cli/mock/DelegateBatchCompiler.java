@@ -30,8 +30,10 @@ public class DelegateBatchCompiler implements BatchCompiler {
         throw new AssertionError();
     });
 
+    private final BatchCompiler delegate = DELEGATE.get();
+
     @Override
     public void compile(Context context, Batch batch) {
-        DELEGATE.get().compile(context, batch);
+        delegate.compile(context, batch);
     }
 }
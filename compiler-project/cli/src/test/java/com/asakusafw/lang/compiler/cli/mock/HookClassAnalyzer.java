@@ -0,0 +1,41 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.cli.mock;
+
+import java.util.function.Consumer;
+
+import com.asakusafw.lang.compiler.model.graph.Batch;
+
+/**
+ * {@link DummyClassAnalyzer} with a hook before analyzing batch classes.
+ */
+public class HookClassAnalyzer extends DummyClassAnalyzer {
+
+    /**
+     * hook.
+     */
+    public static final ThreadLocal<Consumer<Class<?>>> HOOK = ThreadLocal.withInitial(() -> aClass -> {
+        return;
+    });
+
+    private final Consumer<Class<?>> hook = HOOK.get();
+
+    @Override
+    public Batch analyzeBatch(Context context, Class<?> batchClass) {
+        hook.accept(batchClass);
+        return super.analyzeBatch(context, batchClass);
+    }
+}
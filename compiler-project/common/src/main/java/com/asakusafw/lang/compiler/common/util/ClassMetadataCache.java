@@ -0,0 +1,131 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.common.util;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache of metadata which is computed from individual classes.
+ * <p>
+ * Each metadata is bound to its class via {@link ClassValue}, so that this cache never prevents
+ * the classes and their class loaders from being unloaded.
+ * The computation must not have any side effects, because it may be performed more than once for the same class
+ * under contention. If the computation was failed, its exception is thrown to the caller, and it will be
+ * computed again at the next time.
+ * </p>
+ * <p>
+ * Every cache created via {@link #of(String, Function)} records the number of hits and misses,
+ * and is listed in {@link #getCaches()}.
+ * </p>
+ * @param <T> the metadata type
+ * @since 0.4.0
+ */
+public final class ClassMetadataCache<T> {
+
+    private static final List<ClassMetadataCache<?>> CACHES = new CopyOnWriteArrayList<>();
+
+    private final String name;
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final ClassValue<T> values;
+
+    private ClassMetadataCache(String name, Function<? super Class<?>, ? extends T> computer) {
+        this.name = name;
+        this.values = new ClassValue<T>() {
+            @Override
+            protected T computeValue(Class<?> type) {
+                misses.increment();
+                return computer.apply(type);
+            }
+        };
+    }
+
+    /**
+     * Creates a new cache.
+     * @param <T> the metadata type
+     * @param name the cache name
+     * @param computer computes the metadata of the given class
+     * @return the created cache
+     */
+    public static <T> ClassMetadataCache<T> of(String name, Function<? super Class<?>, ? extends T> computer) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(computer);
+        ClassMetadataCache<T> result = new ClassMetadataCache<>(name, computer);
+        CACHES.add(result);
+        return result;
+    }
+
+    /**
+     * Returns the all caches which were created in this class loader.
+     * @return the caches
+     */
+    public static List<ClassMetadataCache<?>> getCaches() {
+        return Collections.unmodifiableList(new ArrayList<>(CACHES));
+    }
+
+    /**
+     * Returns the metadata of the given class.
+     * @param aClass the target class
+     * @return the metadata
+     */
+    public T get(Class<?> aClass) {
+        requests.increment();
+        return values.get(aClass);
+    }
+
+    /**
+     * Returns the cache name.
+     * @return the cache name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of requests which were served from this cache.
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return Math.max(0L, requests.sum() - misses.sum());
+    }
+
+    /**
+     * Returns the number of requests which computed the metadata.
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "ClassMetadataCache(name={0}, hit={1}, miss={2})", //$NON-NLS-1$
+                name,
+                getHitCount(),
+                getMissCount());
+    }
+}
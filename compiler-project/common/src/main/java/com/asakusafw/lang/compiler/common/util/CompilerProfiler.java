@@ -0,0 +1,255 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.common.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.asakusafw.lang.compiler.common.ExtensionContainer;
+
+/**
+ * Records elapsed time, allocated memory, and some metrics of individual compiler phases.
+ * <p>
+ * Compiler elements can record their phases via {@link #start(ExtensionContainer, String, String)}
+ * only if the profiler is registered as an extension of the current context.
+ * The allocated memory is available only if the Java VM supports thread allocated memory measurement.
+ * </p>
+ * <p>
+ * Each phase must be finished in the same thread which started it.
+ * </p>
+ * @since 0.4.0
+ */
+public final class CompilerProfiler {
+
+    /**
+     * Represents that the value is not available.
+     */
+    public static final long UNKNOWN = -1L;
+
+    static final ThreadMXBean THREADS;
+    static final boolean ALLOCATION_SUPPORTED;
+    static {
+        ThreadMXBean threads = null;
+        boolean supported = false;
+        try {
+            threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean ext = (com.sun.management.ThreadMXBean) threads;
+                supported = ext.isThreadAllocatedMemorySupported() && ext.isThreadAllocatedMemoryEnabled();
+            }
+        } catch (LinkageError | RuntimeException e) {
+            // the Java VM does not support the extended thread MX bean
+            supported = false;
+        }
+        THREADS = threads;
+        ALLOCATION_SUPPORTED = supported;
+    }
+
+    private static final Phase NULL_PHASE = new Phase(null, null, null);
+
+    private final List<Record> records = new ArrayList<>();
+
+    /**
+     * Starts a phase only if a profiler is registered to the given extension container.
+     * @param extensions the extension container
+     * @param scope the phase scope (e.g. jobflow ID), or {@code null} if it is global
+     * @param name the phase name
+     * @return the started phase, which finishes when it is closed
+     */
+    public static Phase start(ExtensionContainer extensions, String scope, String name) {
+        CompilerProfiler profiler = extensions.getExtension(CompilerProfiler.class);
+        if (profiler == null) {
+            return NULL_PHASE;
+        }
+        return profiler.start(scope, name);
+    }
+
+    /**
+     * Starts a phase.
+     * @param scope the phase scope (e.g. jobflow ID), or {@code null} if it is global
+     * @param name the phase name
+     * @return the started phase, which finishes when it is closed
+     */
+    public Phase start(String scope, String name) {
+        Objects.requireNonNull(name);
+        return new Phase(this, scope, name);
+    }
+
+    /**
+     * Returns the finished phases.
+     * @return the records of the finished phases
+     */
+    public synchronized List<Record> getRecords() {
+        return Collections.unmodifiableList(new ArrayList<>(records));
+    }
+
+    synchronized void add(Record record) {
+        records.add(record);
+    }
+
+    static long getAllocatedBytes() {
+        if (ALLOCATION_SUPPORTED == false) {
+            return UNKNOWN;
+        }
+        com.sun.management.ThreadMXBean ext = (com.sun.management.ThreadMXBean) THREADS;
+        return ext.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Represents a running phase.
+     * @since 0.4.0
+     */
+    public static final class Phase implements AutoCloseable {
+
+        private final CompilerProfiler owner;
+
+        private final String scope;
+
+        private final String name;
+
+        private final long startTime;
+
+        private final long startAllocated;
+
+        private final Map<String, Long> metrics = new LinkedHashMap<>();
+
+        private boolean closed;
+
+        Phase(CompilerProfiler owner, String scope, String name) {
+            this.owner = owner;
+            this.scope = scope;
+            this.name = name;
+            this.startTime = owner == null ? 0L : System.nanoTime();
+            this.startAllocated = owner == null ? UNKNOWN : getAllocatedBytes();
+        }
+
+        /**
+         * Puts a metric of this phase (e.g. the number of operators).
+         * @param key the metric name
+         * @param value the metric value
+         * @return this
+         */
+        public Phase put(String key, long value) {
+            if (owner != null) {
+                metrics.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Finishes this phase.
+         */
+        @Override
+        public void close() {
+            if (owner == null || closed) {
+                return;
+            }
+            closed = true;
+            long elapsed = System.nanoTime() - startTime;
+            long allocated = UNKNOWN;
+            if (startAllocated >= 0) {
+                long current = getAllocatedBytes();
+                if (current >= 0) {
+                    allocated = current - startAllocated;
+                }
+            }
+            owner.add(new Record(scope, name, elapsed, allocated, metrics));
+        }
+    }
+
+    /**
+     * Represents a finished phase.
+     * @since 0.4.0
+     */
+    public static final class Record {
+
+        private final String scope;
+
+        private final String name;
+
+        private final long elapsedNanos;
+
+        private final long allocatedBytes;
+
+        private final Map<String, Long> metrics;
+
+        Record(String scope, String name, long elapsedNanos, long allocatedBytes, Map<String, Long> metrics) {
+            this.scope = scope;
+            this.name = name;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.metrics = Collections.unmodifiableMap(new LinkedHashMap<>(metrics));
+        }
+
+        /**
+         * Returns the phase scope.
+         * @return the phase scope, or {@code null} if it is global
+         */
+        public String getScope() {
+            return scope;
+        }
+
+        /**
+         * Returns the phase name.
+         * @return the phase name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the elapsed time in nanoseconds.
+         * @return the elapsed time
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns the allocated memory in bytes.
+         * @return the allocated memory, or {@link CompilerProfiler#UNKNOWN} if it is not available
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Returns the phase metrics.
+         * @return the phase metrics
+         */
+        public Map<String, Long> getMetrics() {
+            return metrics;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format(
+                    "Record(scope={0}, name={1}, elapsed={2}ns, allocated={3}bytes, metrics={4})", //$NON-NLS-1$
+                    scope,
+                    name,
+                    String.valueOf(elapsedNanos),
+                    String.valueOf(allocatedBytes),
+                    metrics);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.common.util;
+
+import java.text.MessageFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utilities about concurrent compilation.
+ * @since 0.4.0
+ */
+public final class ConcurrentUtil {
+
+    private ConcurrentUtil() {
+        return;
+    }
+
+    /**
+     * Parses a parallelism value.
+     * {@code 0} represents the number of available processors.
+     * @param value the parallelism value
+     * @return the parsed parallelism (always positive)
+     * @throws IllegalArgumentException if the value is not a non-negative integer
+     */
+    public static int parseParallelism(String value) {
+        int result;
+        try {
+            result = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "parallelism must be a non-negative integer: {0}",
+                    value), e);
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "parallelism must be a non-negative integer: {0}",
+                    value));
+        } else if (result == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new thread factory for worker threads.
+     * The created threads are daemon, and inherit the context class loader of the calling thread.
+     * @param namePattern the thread name pattern in {@link String#format(String, Object...)},
+     *     which takes a serial number
+     * @return the created factory
+     */
+    public static ThreadFactory newWorkerThreadFactory(String namePattern) {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, String.format(namePattern, counter.incrementAndGet()));
+            thread.setDaemon(true);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a new thread pool of worker threads.
+     * @param namePattern the thread name pattern in {@link String#format(String, Object...)},
+     *     which takes a serial number
+     * @param threads the number of threads
+     * @return the created thread pool
+     * @see #newWorkerThreadFactory(String)
+     */
+    public static ExecutorService newWorkerThreadPool(String namePattern, int threads) {
+        return Executors.newFixedThreadPool(threads, newWorkerThreadFactory(namePattern));
+    }
+}
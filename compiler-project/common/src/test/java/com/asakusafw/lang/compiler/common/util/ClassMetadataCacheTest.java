@@ -0,0 +1,70 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.common.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ClassMetadataCache}.
+ */
+public class ClassMetadataCacheTest {
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        AtomicInteger count = new AtomicInteger();
+        ClassMetadataCache<String> cache = ClassMetadataCache.of("testing", c -> {
+            count.incrementAndGet();
+            return c.getSimpleName();
+        });
+        assertThat(cache.get(String.class), is("String"));
+        assertThat(cache.get(String.class), is("String"));
+        assertThat(cache.get(Integer.class), is("Integer"));
+        assertThat(count.get(), is(2));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(2L));
+        assertThat(ClassMetadataCache.getCaches(), hasItem(sameInstance(cache)));
+    }
+
+    /**
+     * failed computation is not cached.
+     */
+    @Test
+    public void failure() {
+        AtomicInteger count = new AtomicInteger();
+        ClassMetadataCache<String> cache = ClassMetadataCache.of("testing", c -> {
+            if (count.getAndIncrement() == 0) {
+                throw new IllegalStateException();
+            }
+            return c.getSimpleName();
+        });
+        try {
+            cache.get(String.class);
+            fail();
+        } catch (IllegalStateException e) {
+            // ok.
+        }
+        assertThat(cache.get(String.class), is("String"));
+        assertThat(count.get(), is(2));
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.common.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.common.BasicExtensionContainer;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler.Phase;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler.Record;
+
+/**
+ * Test for {@link CompilerProfiler}.
+ */
+public class CompilerProfilerTest {
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        CompilerProfiler profiler = new CompilerProfiler();
+        try (Phase phase = profiler.start("f", "testing")) {
+            phase.put("operators", 10);
+        }
+        List<Record> records = profiler.getRecords();
+        assertThat(records, hasSize(1));
+
+        Record record = records.get(0);
+        assertThat(record.getScope(), is("f"));
+        assertThat(record.getName(), is("testing"));
+        assertThat(record.getElapsedNanos(), is(greaterThanOrEqualTo(0L)));
+        assertThat(record.getAllocatedBytes(), is(greaterThanOrEqualTo(CompilerProfiler.UNKNOWN)));
+        assertThat(record.getMetrics(), hasEntry("operators", 10L));
+    }
+
+    /**
+     * via extension container.
+     */
+    @Test
+    public void extension() {
+        BasicExtensionContainer extensions = new BasicExtensionContainer();
+        try (Phase phase = CompilerProfiler.start(extensions, null, "disabled")) {
+            phase.put("operators", 10);
+        }
+        CompilerProfiler profiler = new CompilerProfiler();
+        extensions.registerExtension(CompilerProfiler.class, profiler);
+        try (Phase phase = CompilerProfiler.start(extensions, null, "enabled")) {
+            phase.put("operators", 10);
+        }
+        List<Record> records = profiler.getRecords();
+        assertThat(records, hasSize(1));
+        assertThat(records.get(0).getName(), is("enabled"));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.common.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ConcurrentUtil}.
+ */
+public class ConcurrentUtilTest {
+
+    /**
+     * parses parallelism.
+     */
+    @Test
+    public void parseParallelism() {
+        assertThat(ConcurrentUtil.parseParallelism("1"), is(1));
+        assertThat(ConcurrentUtil.parseParallelism(" 4 "), is(4));
+        assertThat(ConcurrentUtil.parseParallelism("0"), is(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * parses negative parallelism.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parseParallelism_negative() {
+        ConcurrentUtil.parseParallelism("-1");
+    }
+
+    /**
+     * parses invalid parallelism.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parseParallelism_invalid() {
+        ConcurrentUtil.parseParallelism("x");
+    }
+
+    /**
+     * worker threads.
+     * @throws Exception if failed
+     */
+    @Test
+    public void newWorkerThreadPool() throws Exception {
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+            // no special members
+        };
+        ClassLoader escape = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor;
+        Thread.currentThread().setContextClassLoader(loader);
+        try {
+            executor = ConcurrentUtil.newWorkerThreadPool("testing-%d", 1);
+        } finally {
+            Thread.currentThread().setContextClassLoader(escape);
+        }
+        try {
+            Future<Thread> future = executor.submit(() -> Thread.currentThread());
+            Thread thread = future.get();
+            assertThat(thread.getName(), is("testing-1"));
+            assertThat(thread.isDaemon(), is(true));
+            assertThat(thread.getContextClassLoader(), is(sameInstance(loader)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.asakusafw.lang.compiler.core;
 
+import com.asakusafw.lang.compiler.api.CompilerOptions;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
 import com.asakusafw.lang.compiler.model.graph.Batch;
 import com.asakusafw.lang.compiler.model.graph.Jobflow;
@@ -84,12 +85,16 @@ public interface ClassAnalyzer {
      */
     class Context extends AnalyzerContext.Basic {
 
+        private final CompilerOptions options;
+
         /**
          * Creates a new instance.
+         * If the parent is a {@link CompilerContext}, this also inherits its compiler options.
          * @param parent the parent context
          */
         public Context(AnalyzerContext parent) {
-            this(parent.getProject(), parent.getTools());
+            this(parent.getProject(), parent.getTools(),
+                    parent instanceof CompilerContext ? ((CompilerContext) parent).getOptions() : null);
         }
 
         /**
@@ -98,7 +103,28 @@ public interface ClassAnalyzer {
          * @param tools the compiler tools
          */
         public Context(ProjectRepository project, ToolRepository tools) {
+            this(project, tools, null);
+        }
+
+        /**
+         * Creates a new instance.
+         * @param project the project information
+         * @param tools the compiler tools
+         * @param options the compiler options, or {@code null} if they are not available
+         * @since 0.4.0
+         */
+        public Context(ProjectRepository project, ToolRepository tools, CompilerOptions options) {
             super(project, tools);
+            this.options = options == null ? CompilerOptions.builder().build() : options;
+        }
+
+        /**
+         * Returns the compiler options.
+         * @return the compiler options
+         * @since 0.4.0
+         */
+        public CompilerOptions getOptions() {
+            return options;
         }
     }
 }
@@ -44,6 +44,17 @@ public interface CompilerParticipant {
         return;
     }
 
+    /**
+     * Run after compiling batch was aborted by an error.
+     * Note that, {@link #afterBatch(BatchCompiler.Context, Batch, BatchReference)} is not called in this case.
+     * @param context the current context
+     * @param batch the target batch
+     * @since 0.4.0
+     */
+    default void abortBatch(BatchCompiler.Context context, Batch batch) {
+        return;
+    }
+
     /**
      * Run before compiling jobflow.
      * @param context the current context
@@ -17,7 +17,6 @@ package com.asakusafw.lang.compiler.core;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -32,7 +31,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Predicate;
-import java.util.jar.JarOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -378,8 +376,7 @@ public class ProjectRepository implements Closeable {
             File temporary = File.createTempFile(TEMP_FILE_PREFIX, EXTENSION_ARCHIVE);
             boolean success = false;
             try {
-                try (JarOutputStream output = new JarOutputStream(new FileOutputStream(temporary));
-                        ResourceSink sink = new ZipSink(output)) {
+                try (ResourceSink sink = new ZipSink(temporary)) {
                     ResourceUtil.copy(source, sink);
                 }
                 success = true;
@@ -16,12 +16,9 @@
 package com.asakusafw.lang.compiler.core.adapter;
 
 import java.io.File;
-import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import com.asakusafw.lang.compiler.api.BatchProcessor;
 import com.asakusafw.lang.compiler.api.CompilerOptions;
@@ -30,6 +27,7 @@ import com.asakusafw.lang.compiler.common.Location;
 import com.asakusafw.lang.compiler.core.BatchCompiler;
 import com.asakusafw.lang.compiler.core.basic.JobflowPackager;
 import com.asakusafw.lang.compiler.packaging.FileContainer;
+import com.asakusafw.lang.compiler.packaging.ZipRepository;
 
 /**
  * An adapter for {@link BatchProcessor}.
@@ -64,33 +62,20 @@ public class BatchProcessorAdapter implements BatchProcessor.Context {
     @Override
     public InputStream findResourceFile(JobflowReference jobflow, Location location) throws IOException {
         FileContainer root = delegate.getOutput();
-        File library = root.toFile(JobflowPackager.getLibraryLocation(jobflow.getFlowId()));
+        InputStream result = findResourceFile(
+                root.toFile(JobflowPackager.getLibraryLocation(jobflow.getFlowId())), location);
+        if (result == null) {
+            // embedded contents may be packaged into the library shared between jobflows
+            result = findResourceFile(root.toFile(JobflowPackager.EMBEDDED_LIBRARY), location);
+        }
+        return result;
+    }
+
+    private static InputStream findResourceFile(File library, Location location) throws IOException {
         if (library.isFile() == false) {
             return null;
         }
-        ZipFile zip = new ZipFile(library);
-        boolean success = false;
-        try {
-            ZipEntry entry = zip.getEntry(location.toPath());
-            if (entry == null) {
-                return null;
-            }
-            success = true;
-            return new FilterInputStream(zip.getInputStream(entry)) {
-                @Override
-                public void close() throws IOException {
-                    try {
-                        super.close();
-                    } finally {
-                        zip.close();
-                    }
-                }
-            };
-        } finally {
-            if (success == false) {
-                zip.close();
-            }
-        }
+        return new ZipRepository(library).openResource(location);
     }
 
     @Override
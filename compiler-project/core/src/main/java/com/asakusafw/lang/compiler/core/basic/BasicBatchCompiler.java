@@ -18,13 +18,23 @@ package com.asakusafw.lang.compiler.core.basic;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.asakusafw.lang.compiler.api.BatchProcessor;
+import com.asakusafw.lang.compiler.api.CompilerOptions;
 import com.asakusafw.lang.compiler.api.basic.BasicBatchReference;
 import com.asakusafw.lang.compiler.api.basic.BasicJobflowReference;
 import com.asakusafw.lang.compiler.api.basic.JobflowContainer;
@@ -33,6 +43,9 @@ import com.asakusafw.lang.compiler.api.reference.JobflowReference;
 import com.asakusafw.lang.compiler.api.reference.TaskReferenceMap;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.util.ClassMetadataCache;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler;
+import com.asakusafw.lang.compiler.common.util.ConcurrentUtil;
 import com.asakusafw.lang.compiler.core.BatchCompiler;
 import com.asakusafw.lang.compiler.core.CompilerParticipant;
 import com.asakusafw.lang.compiler.core.JobflowCompiler;
@@ -41,20 +54,112 @@ import com.asakusafw.lang.compiler.core.util.FileContainerCleaner;
 import com.asakusafw.lang.compiler.model.graph.Batch;
 import com.asakusafw.lang.compiler.model.graph.BatchElement;
 import com.asakusafw.lang.compiler.packaging.FileContainer;
+import com.asakusafw.lang.compiler.packaging.ResourceRepository;
+import com.asakusafw.lang.compiler.packaging.ResourceSinkFilter;
 import com.asakusafw.utils.graph.Graph;
 import com.asakusafw.utils.graph.Graphs;
 
 /**
  * A basic implementation of {@link BatchCompiler}.
+ *
+ * <h3> compiler options </h3>
+ * <ul>
+ * <li> {@code compiler.jobflow.parallelism} (optional)
+ *   <ul>
+ *   <li> the max number of jobflows which are compiled concurrently </li>
+ *   <li> each jobflow is compiled only after all of its blocker jobflows were compiled </li>
+ *   <li> {@code 0} - uses the number of available processors </li>
+ *   <li> <em>default value</em>: {@code 1} (compiles jobflows one by one) </li>
+ *   </ul>
+ * </li>
+ * <li> {@code compiler.jobflow.reuse} (optional)
+ *   <ul>
+ *   <li> whether or not the compiled jobflows are reused in the later batches </li>
+ *   <li> a jobflow is reused only if its class, flow ID, and compiler options are same,
+ *        and then its batch ID is rewritten into the current one </li>
+ *   <li> compiler participants do not receive the reused jobflows </li>
+ *   <li> <em>default value</em>: {@code false} </li>
+ *   </ul>
+ * </li>
+ * <li> {@code compiler.packaging.parallelism} (optional)
+ *   <ul>
+ *   <li> the max number of threads which compress entries of jobflow packages </li>
+ *   <li> {@code 0} - uses the number of available processors </li>
+ *   <li> <em>default value</em>: {@code 1} (compresses entries in the packaging thread) </li>
+ *   </ul>
+ * </li>
+ * <li> {@code compiler.packaging.embedded.shared} (optional)
+ *   <ul>
+ *   <li> whether or not the project embedded contents are packaged only once per batch,
+ *        into {@link JobflowPackager#EMBEDDED_LIBRARY a library shared between jobflows},
+ *        instead of embedding them into every jobflow package </li>
+ *   <li> <em>default value</em>: {@code false} </li>
+ *   </ul>
+ * </li>
+ * </ul>
+ *
+ * <p>
+ * If a {@link ResourceSinkFilter} is registered as an extension of the batch compiler context
+ * (e.g. by {@link CompilerParticipant#beforeBatch(Context, Batch)}),
+ * it is applied to the individual packages while they are being written.
+ * </p>
  */
 public class BasicBatchCompiler implements BatchCompiler {
 
     static final Logger LOG = LoggerFactory.getLogger(BasicBatchCompiler.class);
 
+    /**
+     * The compiler option key of the max number of jobflows which are compiled concurrently.
+     */
+    public static final String KEY_PARALLELISM = "compiler.jobflow.parallelism"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_PARALLELISM}.
+     */
+    public static final int DEFAULT_PARALLELISM = 1;
+
+    /**
+     * The compiler option key of whether or not the compiled jobflows are reused in the later batches.
+     * @since 0.4.0
+     */
+    public static final String KEY_REUSE = "compiler.jobflow.reuse"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_REUSE}.
+     * @since 0.4.0
+     */
+    public static final boolean DEFAULT_REUSE = false;
+
+    /**
+     * The compiler option key of the max number of threads which compress entries of jobflow packages.
+     * @since 0.4.0
+     */
+    public static final String KEY_PACKAGING_PARALLELISM = "compiler.packaging.parallelism"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_PACKAGING_PARALLELISM}.
+     * @since 0.4.0
+     */
+    public static final int DEFAULT_PACKAGING_PARALLELISM = 1;
+
+    /**
+     * The compiler option key of whether or not the project embedded contents are shared between jobflows.
+     * @since 0.4.0
+     */
+    public static final String KEY_SHARED_EMBEDDED = "compiler.packaging.embedded.shared"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_SHARED_EMBEDDED}.
+     * @since 0.4.0
+     */
+    public static final boolean DEFAULT_SHARED_EMBEDDED = false;
+
     private final JobflowCompiler jobflowCompiler;
 
     private final JobflowPackager jobflowPackager = new JobflowPackager();
 
+    private final JobflowArtifactCache artifacts = new JobflowArtifactCache();
+
     /**
      * Creates a new instance.
      */
@@ -74,17 +179,19 @@ public class BasicBatchCompiler implements BatchCompiler {
     public void compile(Context context, Batch batch) {
         LOG.debug("start batch compiler: {}={}", batch.getBatchId(), batch.getDescriptionClass()); //$NON-NLS-1$
         before(context, batch);
-        JobflowContainer container = new JobflowContainer();
-        for (BatchElement element : sort(batch.getElements())) {
-            TaskReferenceMap tasks = compileJobflow(context, element);
-            container.add(new BasicJobflowReference(
-                    element.getJobflow(),
-                    tasks,
-                    getBlockerJobflows(container, element)));
+        BatchReference reference;
+        try {
+            reference = compileElements(context, batch);
+        } catch (RuntimeException | Error e) {
+            abort(context, batch, e);
+            throw e;
         }
-        BatchReference reference = new BasicBatchReference(batch, container);
-        runBatchProcessor(context, batch, reference);
         after(context, batch, reference);
+        if (LOG.isDebugEnabled()) {
+            for (ClassMetadataCache<?> cache : ClassMetadataCache.getCaches()) {
+                LOG.debug("class metadata cache: {}", cache); //$NON-NLS-1$
+            }
+        }
     }
 
     private List<BatchElement> sort(Set<BatchElement> elements) {
@@ -99,7 +206,164 @@ public class BasicBatchCompiler implements BatchCompiler {
         return sorted;
     }
 
-    private TaskReferenceMap compileJobflow(Context context, BatchElement element) {
+    private BatchReference compileElements(Context context, Batch batch) {
+        List<BatchElement> elements = sort(batch.getElements());
+        Map<BatchElement, TaskReferenceMap> tasks;
+        ExecutorService packager = createPackagingExecutor(context);
+        try {
+            ResourceSinkFilter filter = context.getExtension(ResourceSinkFilter.class);
+            List<? extends ResourceRepository> embedded = packageEmbeddedContents(context, batch, packager, filter);
+            tasks = compileJobflows(context, elements, new Packaging(packager, embedded, filter));
+        } finally {
+            if (packager != null) {
+                packager.shutdownNow();
+            }
+        }
+        JobflowContainer container = new JobflowContainer();
+        for (BatchElement element : elements) {
+            container.add(new BasicJobflowReference(
+                    element.getJobflow(),
+                    tasks.get(element),
+                    getBlockerJobflows(container, element)));
+        }
+        BatchReference reference = new BasicBatchReference(batch, container);
+        runBatchProcessor(context, batch, reference);
+        return reference;
+    }
+
+    private static ExecutorService createPackagingExecutor(Context context) {
+        int parallelism = getParallelism(
+                context.getOptions(), KEY_PACKAGING_PARALLELISM, DEFAULT_PACKAGING_PARALLELISM);
+        if (parallelism <= 1) {
+            return null;
+        }
+        LOG.debug("compressing jobflow packages in parallel: parallelism={}", parallelism); //$NON-NLS-1$
+        return ConcurrentUtil.newWorkerThreadPool(
+                "jobflow-packager-%d", //$NON-NLS-1$
+                parallelism);
+    }
+
+    private List<? extends ResourceRepository> packageEmbeddedContents(
+            Context context, Batch batch, Executor packager, ResourceSinkFilter filter) {
+        List<ResourceRepository> embedded = context.getProject().getEmbeddedContents();
+        if (context.getOptions().get(KEY_SHARED_EMBEDDED, DEFAULT_SHARED_EMBEDDED) == false) {
+            return embedded;
+        }
+        try (CompilerProfiler.Phase phase = CompilerProfiler.start(
+                context, batch.getBatchId(), "packaging")) { //$NON-NLS-1$
+            if (jobflowPackager.processEmbedded(context.getOutput(), embedded, packager, filter)) {
+                return Collections.emptyList();
+            }
+            return embedded;
+        } catch (IOException e) {
+            throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                    "error occurred while packaging embedded contents: batch={0}",
+                    batch.getDescriptionClass().getClassName()), e);
+        }
+    }
+
+    private Map<BatchElement, TaskReferenceMap> compileJobflows(
+            Context context, List<BatchElement> elements, Packaging packaging) {
+        int parallelism = Math.min(
+                getParallelism(context.getOptions(), KEY_PARALLELISM, DEFAULT_PARALLELISM),
+                elements.size());
+        if (parallelism <= 1) {
+            Map<BatchElement, TaskReferenceMap> results = new HashMap<>();
+            for (BatchElement element : elements) {
+                results.put(element, compileJobflow(context, element, packaging));
+            }
+            return results;
+        }
+        LOG.debug("compiling jobflows in parallel: jobflows={}, parallelism={}", //$NON-NLS-1$
+                elements.size(), parallelism);
+        ExecutorService executor = ConcurrentUtil.newWorkerThreadPool(
+                "jobflow-compiler-%d", //$NON-NLS-1$
+                parallelism);
+        try {
+            // elements are sorted in post-order, so that blockers always precede their successors
+            Map<BatchElement, CompletableFuture<TaskReferenceMap>> futures = new HashMap<>();
+            for (BatchElement element : elements) {
+                CompletableFuture<?>[] blockers = element.getBlockerElements().stream()
+                        .map(futures::get)
+                        .toArray(CompletableFuture<?>[]::new);
+                futures.put(element, CompletableFuture.allOf(blockers)
+                        .thenApplyAsync(v -> compileJobflow(context, element, packaging), executor));
+            }
+            return collect(elements, futures);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<BatchElement, TaskReferenceMap> collect(
+            List<BatchElement> elements,
+            Map<BatchElement, CompletableFuture<TaskReferenceMap>> futures) {
+        Map<BatchElement, TaskReferenceMap> results = new HashMap<>();
+        Set<Throwable> failures = new LinkedHashSet<>();
+        for (BatchElement element : elements) {
+            try {
+                results.put(element, futures.get(element).join());
+            } catch (CompletionException e) {
+                // successors of the failed jobflow also report the same cause
+                failures.add(e.getCause() == null ? e : e.getCause());
+            }
+        }
+        if (failures.isEmpty()) {
+            return results;
+        }
+        throw merge(failures);
+    }
+
+    private static RuntimeException merge(Collection<Throwable> failures) {
+        assert failures.isEmpty() == false;
+        Throwable first = failures.iterator().next();
+        if (failures.size() >= 2 && failures.stream().allMatch(DiagnosticException.class::isInstance)) {
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            for (Throwable failure : failures) {
+                diagnostics.addAll(((DiagnosticException) failure).getDiagnostics());
+            }
+            return new DiagnosticException(diagnostics);
+        }
+        for (Throwable failure : failures) {
+            if (failure != first) {
+                first.addSuppressed(failure);
+            }
+        }
+        if (first instanceof RuntimeException) {
+            return (RuntimeException) first;
+        } else if (first instanceof Error) {
+            throw (Error) first;
+        } else {
+            return new IllegalStateException(first);
+        }
+    }
+
+    private static int getParallelism(CompilerOptions options, String key, int defaultValue) {
+        String string = options.get(key, null);
+        if (string == null || string.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return ConcurrentUtil.parseParallelism(string);
+        } catch (IllegalArgumentException e) {
+            LOG.trace("invalid parallelism", e); //$NON-NLS-1$
+        }
+        LOG.warn(MessageFormat.format(
+                "parallelism must be a non-negative integer: {0}={1}",
+                key,
+                string));
+        return defaultValue;
+    }
+
+    private TaskReferenceMap compileJobflow(Context context, BatchElement element, Packaging packaging) {
+        JobflowArtifactCache.Key key = null;
+        if (context.getOptions().get(KEY_REUSE, DEFAULT_REUSE)) {
+            key = JobflowArtifactCache.Key.of(context, element.getJobflow());
+            TaskReferenceMap reused = reuseJobflow(context, element, key, packaging);
+            if (reused != null) {
+                return reused;
+            }
+        }
         try (FileContainerCleaner cleaner = new FileContainerCleaner(createJobflowOutput(context, element))) {
             FileContainer jobflowOutput = cleaner.getContainer();
             JobflowCompiler.Context jobflowContext = new JobflowCompiler.Context(context, jobflowOutput);
@@ -107,15 +371,50 @@ public class BasicBatchCompiler implements BatchCompiler {
                     jobflowContext,
                     element.getOwner(),
                     element.getJobflow());
+            try (CompilerProfiler.Phase phase = CompilerProfiler.start(
+                    context, element.getJobflow().getFlowId(), "packaging")) { //$NON-NLS-1$
+                jobflowPackager.process(
+                        element.getJobflow().getFlowId(),
+                        context.getOutput(),
+                        jobflowOutput,
+                        packaging.embedded,
+                        packaging.executor,
+                        packaging.filter);
+            }
+            if (key != null) {
+                artifacts.put(key, element.getOwner().getBatchId(),
+                        jobflowOutput, jobflowContext.getTaskContainerMap(),
+                        createJobflowOutput(context, element));
+            }
+            return jobflowContext.getTaskContainerMap();
+        } catch (IOException e) {
+            throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                    "error occurred while compiling jobflow: batch={0}, jobflow={1}",
+                    element.getOwner().getDescriptionClass().getClassName(),
+                    element.getJobflow().getDescriptionClass().getClassName()), e);
+        }
+    }
+
+    private TaskReferenceMap reuseJobflow(
+            Context context, BatchElement element, JobflowArtifactCache.Key key, Packaging packaging) {
+        try (FileContainerCleaner cleaner = new FileContainerCleaner(createJobflowOutput(context, element))) {
+            FileContainer jobflowOutput = cleaner.getContainer();
+            TaskReferenceMap tasks = artifacts.restore(key, element.getOwner().getBatchId(), jobflowOutput);
+            if (tasks == null) {
+                return null;
+            }
+            LOG.debug("reusing compiled jobflow: {}", key); //$NON-NLS-1$
             jobflowPackager.process(
                     element.getJobflow().getFlowId(),
                     context.getOutput(),
                     jobflowOutput,
-                    context.getProject().getEmbeddedContents());
-            return jobflowContext.getTaskContainerMap();
+                    packaging.embedded,
+                    packaging.executor,
+                    packaging.filter);
+            return tasks;
         } catch (IOException e) {
             throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
-                    "error occurred while compiling jobflow: batch={0}, jobflow={1}",
+                    "error occurred while reusing jobflow: batch={0}, jobflow={1}",
                     element.getOwner().getDescriptionClass().getClassName(),
                     element.getJobflow().getDescriptionClass().getClassName()), e);
         }
@@ -165,4 +464,28 @@ public class BasicBatchCompiler implements BatchCompiler {
         CompilerParticipant participant = context.getTools().getParticipant();
         participant.afterBatch(context, batch, reference);
     }
+
+    private void abort(Context context, Batch batch, Throwable cause) {
+        CompilerParticipant participant = context.getTools().getParticipant();
+        try {
+            participant.abortBatch(context, batch);
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static final class Packaging {
+
+        final Executor executor;
+
+        final List<? extends ResourceRepository> embedded;
+
+        final ResourceSinkFilter filter;
+
+        Packaging(Executor executor, List<? extends ResourceRepository> embedded, ResourceSinkFilter filter) {
+            this.executor = executor;
+            this.embedded = embedded;
+            this.filter = filter;
+        }
+    }
 }
@@ -17,6 +17,9 @@ package com.asakusafw.lang.compiler.core.basic;
 
 import java.text.MessageFormat;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.asakusafw.lang.compiler.analyzer.BatchAnalyzer;
 import com.asakusafw.lang.compiler.analyzer.ExternalPortAnalyzer;
 import com.asakusafw.lang.compiler.analyzer.FlowGraphAnalyzer;
@@ -24,8 +27,10 @@ import com.asakusafw.lang.compiler.analyzer.FlowPartBuilder;
 import com.asakusafw.lang.compiler.analyzer.JobflowAnalyzer;
 import com.asakusafw.lang.compiler.analyzer.adapter.BatchAdapter;
 import com.asakusafw.lang.compiler.analyzer.adapter.JobflowAdapter;
+import com.asakusafw.lang.compiler.api.CompilerOptions;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.util.ConcurrentUtil;
 import com.asakusafw.lang.compiler.core.AnalyzerContext;
 import com.asakusafw.lang.compiler.core.ClassAnalyzer;
 import com.asakusafw.lang.compiler.core.adapter.ExternalPortAnalyzerAdapter;
@@ -36,9 +41,34 @@ import com.asakusafw.vocabulary.flow.graph.FlowGraph;
 
 /**
  * Analyzes Asakusa DSL elements.
+ *
+ * <h3> compiler options </h3>
+ * <ul>
+ * <li> {@code analyzer.jobflow.parallelism} (optional)
+ *   <ul>
+ *   <li> the max number of jobflows in a batch which are analyzed concurrently </li>
+ *   <li> {@code 0} - uses the number of available processors </li>
+ *   <li> <em>default value</em>: {@code 1} (analyzes jobflows one by one) </li>
+ *   </ul>
+ * </li>
+ * </ul>
  */
 public class BasicClassAnalyzer implements ClassAnalyzer {
 
+    static final Logger LOG = LoggerFactory.getLogger(BasicClassAnalyzer.class);
+
+    /**
+     * The compiler option key of the max number of jobflows which are analyzed concurrently.
+     * @since 0.4.0
+     */
+    public static final String KEY_PARALLELISM = "analyzer.jobflow.parallelism"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_PARALLELISM}.
+     * @since 0.4.0
+     */
+    public static final int DEFAULT_PARALLELISM = 1;
+
     @Override
     public boolean isBatchClass(Context context, Class<?> aClass) {
         return BatchAdapter.isBatch(aClass);
@@ -87,8 +117,25 @@ public class BasicClassAnalyzer implements ClassAnalyzer {
         return new FlowPartBuilder(createFlowGraphAnalyzer(context));
     }
 
-    static BatchAnalyzer createBatchAnalyzer(AnalyzerContext context) {
-        return new BatchAnalyzer(createJobflowAnalyzer(context));
+    static BatchAnalyzer createBatchAnalyzer(Context context) {
+        return new BatchAnalyzer(createJobflowAnalyzer(context), getParallelism(context.getOptions()));
+    }
+
+    private static int getParallelism(CompilerOptions options) {
+        String string = options.get(KEY_PARALLELISM, null);
+        if (string == null || string.trim().isEmpty()) {
+            return DEFAULT_PARALLELISM;
+        }
+        try {
+            return ConcurrentUtil.parseParallelism(string);
+        } catch (IllegalArgumentException e) {
+            LOG.trace("invalid parallelism", e); //$NON-NLS-1$
+        }
+        LOG.warn(MessageFormat.format(
+                "jobflow analyzer parallelism must be a non-negative integer: {0}={1}",
+                KEY_PARALLELISM,
+                string));
+        return DEFAULT_PARALLELISM;
     }
 
     static JobflowAnalyzer createJobflowAnalyzer(AnalyzerContext context) {
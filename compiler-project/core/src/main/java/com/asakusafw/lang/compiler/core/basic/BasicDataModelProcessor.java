@@ -19,6 +19,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -33,6 +34,7 @@ import com.asakusafw.lang.compiler.api.basic.BasicDataModelReference;
 import com.asakusafw.lang.compiler.api.reference.DataModelReference;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.util.ClassMetadataCache;
 import com.asakusafw.lang.compiler.model.PropertyName;
 import com.asakusafw.lang.compiler.model.description.ClassDescription;
 import com.asakusafw.lang.compiler.model.description.Descriptions;
@@ -50,6 +52,10 @@ public class BasicDataModelProcessor implements DataModelProcessor {
 
     static final Logger LOG = LoggerFactory.getLogger(BasicDataModelProcessor.class);
 
+    private static final ClassMetadataCache<Map<PropertyName, Method>> PROPERTIES = ClassMetadataCache.of(
+            "data model properties", //$NON-NLS-1$
+            BasicDataModelProcessor::extractProperties);
+
     private Class<?> resolve(Context context, TypeDescription type) {
         if (type.getTypeKind() == TypeKind.CLASS) {
             Class<?> aClass;
@@ -78,18 +84,27 @@ public class BasicDataModelProcessor implements DataModelProcessor {
                     "unsupported data model: {0}",
                     type));
         }
+        BasicDataModelReference.Builder builder = BasicDataModelReference.builder(Descriptions.classOf(aClass));
+        for (Map.Entry<PropertyName, Method> entry : PROPERTIES.get(aClass).entrySet()) {
+            Method method = entry.getValue();
+            builder.property(entry.getKey(), Descriptions.typeOf(method.getReturnType()), MethodDescription.of(method));
+        }
+        return builder.build();
+    }
+
+    private static Map<PropertyName, Method> extractProperties(Class<?> aClass) {
         Map<PropertyName, Method> map = extractPropertyMap(aClass);
         List<PropertyName> order = extractPropertyOrder(aClass, map);
-        BasicDataModelReference.Builder builder = BasicDataModelReference.builder(Descriptions.classOf(aClass));
+        Map<PropertyName, Method> results = new LinkedHashMap<>();
         for (PropertyName name : order) {
             Method method = map.get(name);
             assert method != null;
-            builder.property(name, Descriptions.typeOf(method.getReturnType()), MethodDescription.of(method));
+            results.put(name, method);
         }
-        return builder.build();
+        return Collections.unmodifiableMap(results);
     }
 
-    private Map<PropertyName, Method> extractPropertyMap(Class<?> aClass) {
+    private static Map<PropertyName, Method> extractPropertyMap(Class<?> aClass) {
         Map<PropertyName, Method> results = new LinkedHashMap<>();
         for (Method method : aClass.getMethods()) {
             if (Modifier.isStatic(method.getModifiers())) {
@@ -116,7 +131,7 @@ public class BasicDataModelProcessor implements DataModelProcessor {
         return results;
     }
 
-    private List<PropertyName> extractPropertyOrder(Class<?> aClass, Map<PropertyName, Method> methods) {
+    private static List<PropertyName> extractPropertyOrder(Class<?> aClass, Map<PropertyName, Method> methods) {
         PropertyOrder order = aClass.getAnnotation(PropertyOrder.class);
         if (order == null) {
             return new ArrayList<>(methods.keySet());
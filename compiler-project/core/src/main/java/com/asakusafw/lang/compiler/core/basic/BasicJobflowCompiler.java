@@ -26,6 +26,7 @@ import com.asakusafw.lang.compiler.api.JobflowProcessor;
 import com.asakusafw.lang.compiler.api.basic.ExternalPortContainer;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler;
 import com.asakusafw.lang.compiler.core.CompilerParticipant;
 import com.asakusafw.lang.compiler.core.JobflowCompiler;
 import com.asakusafw.lang.compiler.core.adapter.ExternalPortProcessorAdapter;
@@ -52,7 +53,8 @@ public class BasicJobflowCompiler implements JobflowCompiler {
     private void runOperatorGraphProcessor(Context context, BatchInfo batch, Jobflow jobflow) {
         JobflowProcessorAdapter adapter = new JobflowProcessorAdapter(context, batch, jobflow);
         JobflowProcessor processor = context.getTools().getJobflowProcessor();
-        try {
+        try (CompilerProfiler.Phase phase = CompilerProfiler.start(
+                context, jobflow.getFlowId(), "jobflowProcessor")) { //$NON-NLS-1$
             processor.process(adapter, jobflow);
         } catch (IOException e) {
             throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
@@ -68,7 +70,8 @@ public class BasicJobflowCompiler implements JobflowCompiler {
         }
         ExternalPortProcessorAdapter adapter = new ExternalPortProcessorAdapter(context, batch, jobflow);
         ExternalPortProcessor processor = context.getTools().getExternalPortProcessor();
-        try {
+        try (CompilerProfiler.Phase phase = CompilerProfiler.start(
+                context, jobflow.getFlowId(), "externalPortProcessor")) { //$NON-NLS-1$
             processor.process(adapter, externals.getInputs(), externals.getOutputs());
         } catch (IOException e) {
             throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
@@ -0,0 +1,519 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.core.basic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.api.CompilerOptions;
+import com.asakusafw.lang.compiler.api.reference.CommandTaskReference;
+import com.asakusafw.lang.compiler.api.reference.CommandToken;
+import com.asakusafw.lang.compiler.api.reference.TaskReference;
+import com.asakusafw.lang.compiler.api.reference.TaskReferenceMap;
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.core.CompilerContext;
+import com.asakusafw.lang.compiler.model.graph.Jobflow;
+import com.asakusafw.lang.compiler.packaging.FileContainer;
+import com.asakusafw.lang.compiler.packaging.ResourceRepository;
+import com.asakusafw.lang.compiler.packaging.ResourceUtil;
+
+/**
+ * Keeps the compiled jobflow artifacts, and reuses them for the same jobflows in the other batches.
+ * <p>
+ * Each artifact is a snapshot of the jobflow output (before packaging) and its task references.
+ * On reuse, the original batch ID in the snapshot is rewritten into the current one:
+ * </p>
+ * <ul>
+ * <li> string constants in class files, which are equivalent to the batch ID
+ *      (and the batch ID is not used as any identifiers, descriptors, nor annotation values) </li>
+ * <li> property values in {@code *.properties} files, which are equivalent to the batch ID </li>
+ * </ul>
+ * <p>
+ * If the batch ID appears in any other form, the artifact is never reused.
+ * </p>
+ * @since 0.4.0
+ */
+final class JobflowArtifactCache {
+
+    static final Logger LOG = LoggerFactory.getLogger(JobflowArtifactCache.class);
+
+    static final String EXTENSION_CLASS = ".class"; //$NON-NLS-1$
+
+    static final String EXTENSION_PROPERTIES = ".properties"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0xcafebabe;
+
+    /**
+     * Names of class file attributes which never refer Utf8 constants in their body.
+     */
+    private static final Set<String> ATTRIBUTES_WITHOUT_UTF8 = new HashSet<>(Arrays.asList(new String[] {
+            "ConstantValue", //$NON-NLS-1$
+            "Exceptions", //$NON-NLS-1$
+            "LineNumberTable", //$NON-NLS-1$
+            "StackMapTable", //$NON-NLS-1$
+            "EnclosingMethod", //$NON-NLS-1$
+            "BootstrapMethods", //$NON-NLS-1$
+            "NestHost", //$NON-NLS-1$
+            "NestMembers", //$NON-NLS-1$
+            "Synthetic", //$NON-NLS-1$
+            "Deprecated", //$NON-NLS-1$
+    }));
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Stores a snapshot of the compiled jobflow.
+     * This does nothing if the target artifact already exists.
+     * @param key the artifact key
+     * @param batchId the original batch ID
+     * @param output the jobflow output
+     * @param tasks the jobflow tasks
+     * @param snapshot the snapshot container, which must be empty
+     * @throws IOException if failed to create a snapshot
+     */
+    void put(
+            Key key, String batchId,
+            FileContainer output, TaskReferenceMap tasks,
+            FileContainer snapshot) throws IOException {
+        if (entries.containsKey(key)) {
+            ResourceUtil.delete(snapshot.getBasePath());
+            return;
+        }
+        ResourceUtil.copy(output, snapshot.createSink());
+        if (entries.putIfAbsent(key, new Entry(batchId, snapshot, tasks)) != null) {
+            ResourceUtil.delete(snapshot.getBasePath());
+        }
+    }
+
+    /**
+     * Restores the compiled jobflow into the given output.
+     * @param key the artifact key
+     * @param batchId the current batch ID
+     * @param output the jobflow output, which must be empty
+     * @return the restored jobflow tasks, or {@code null} if the artifact is not available
+     * @throws IOException if failed to restore the artifact
+     */
+    TaskReferenceMap restore(Key key, String batchId, FileContainer output) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.reusable == false) {
+            return null;
+        }
+        if (entry.snapshot.getBasePath().isDirectory() == false) {
+            LOG.debug("jobflow artifact was lost: {}", entry.snapshot); //$NON-NLS-1$
+            entries.remove(key, entry);
+            return null;
+        }
+        if (batchId.equals(entry.batchId) == false && containsLiteral(entry.tasks, entry.batchId)) {
+            LOG.debug("jobflow tasks depend on batch ID: {}", key); //$NON-NLS-1$
+            entry.reusable = false;
+            return null;
+        }
+        try (ResourceRepository.Cursor cursor = entry.snapshot.createCursor()) {
+            while (cursor.next()) {
+                Location location = cursor.getLocation();
+                byte[] contents;
+                try (InputStream input = cursor.openResource()) {
+                    contents = toBytes(input);
+                }
+                if (batchId.equals(entry.batchId) == false) {
+                    contents = rewrite(location, contents, entry.batchId, batchId);
+                    if (contents == null) {
+                        LOG.debug("jobflow resource depends on batch ID: {} ({})", location, key); //$NON-NLS-1$
+                        entry.reusable = false;
+                        return null;
+                    }
+                }
+                try (OutputStream target = output.addResource(location)) {
+                    target.write(contents);
+                }
+            }
+        }
+        return entry.tasks;
+    }
+
+    private static boolean containsLiteral(TaskReferenceMap tasks, String value) {
+        for (TaskReference.Phase phase : TaskReference.Phase.values()) {
+            for (TaskReference task : tasks.getTasks(phase)) {
+                if (task instanceof CommandTaskReference) {
+                    for (CommandToken token : ((CommandTaskReference) task).getArguments()) {
+                        String image = token.getImage();
+                        if (image != null && image.contains(value)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    static byte[] rewrite(Location location, byte[] contents, String from, String to) throws IOException {
+        String path = location.toPath();
+        if (path.endsWith(EXTENSION_CLASS)) {
+            return rewriteClass(contents, from, to);
+        } else if (path.endsWith(EXTENSION_PROPERTIES)) {
+            return rewriteProperties(contents, from, to);
+        } else if (indexOf(contents, from.getBytes(StandardCharsets.UTF_8)) >= 0) {
+            return null;
+        }
+        return contents;
+    }
+
+    private static byte[] rewriteClass(byte[] contents, String from, String to) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(contents));
+        if (input.readInt() != MAGIC) {
+            return null;
+        }
+        int minorVersion = input.readUnsignedShort();
+        int majorVersion = input.readUnsignedShort();
+        int count = input.readUnsignedShort();
+        int[] tags = new int[count];
+        byte[][] constants = new byte[count][];
+        String[] values = new String[count];
+        BitSet targets = new BitSet(count);
+        BitSet literals = new BitSet(count);
+        BitSet others = new BitSet(count);
+        for (int i = 1; i < count; i++) {
+            int tag = input.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+            case 1: // Utf8
+                String value = input.readUTF();
+                if (value.equals(from)) {
+                    targets.set(i);
+                } else if (value.contains(from)) {
+                    return null;
+                }
+                values[i] = value;
+                break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                constants[i] = read(input, 4);
+                break;
+            case 12: // NameAndType
+                constants[i] = read(input, 4);
+                others.set(u2(constants[i], 0));
+                others.set(u2(constants[i], 2));
+                break;
+            case 5: // Long
+            case 6: // Double
+                constants[i] = read(input, 8);
+                i++;
+                break;
+            case 8: // String
+                constants[i] = read(input, 2);
+                literals.set(u2(constants[i], 0));
+                break;
+            case 7: // Class
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                constants[i] = read(input, 2);
+                others.set(u2(constants[i], 0));
+                break;
+            case 15: // MethodHandle
+                constants[i] = read(input, 3);
+                break;
+            default:
+                return null;
+            }
+        }
+        if (targets.isEmpty()) {
+            return contents;
+        }
+        byte[] body = read(input, input.available());
+        collectUtf8References(new DataInputStream(new ByteArrayInputStream(body)), values, others);
+        for (int i = targets.nextSetBit(0); i >= 0; i = targets.nextSetBit(i + 1)) {
+            // the batch ID is also used as an identifier, descriptor, or annotation value
+            if (literals.get(i) == false || others.get(i)) {
+                return null;
+            }
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(contents.length + to.length());
+        DataOutputStream output = new DataOutputStream(buffer);
+        output.writeInt(MAGIC);
+        output.writeShort(minorVersion);
+        output.writeShort(majorVersion);
+        output.writeShort(count);
+        for (int i = 1; i < count; i++) {
+            if (tags[i] == 0) {
+                // the second slot of Long or Double
+                continue;
+            }
+            output.writeByte(tags[i]);
+            if (tags[i] == 1) {
+                output.writeUTF(targets.get(i) ? to : values[i]);
+            } else {
+                output.write(constants[i]);
+            }
+        }
+        output.write(body);
+        output.flush();
+        return buffer.toByteArray();
+    }
+
+    private static void collectUtf8References(
+            DataInputStream input, String[] constants, BitSet references) throws IOException {
+        input.skipBytes(6); // access_flags, this_class, super_class
+        input.skipBytes(input.readUnsignedShort() * 2); // interfaces
+        for (int members = 0; members < 2; members++) {
+            // fields, and then methods
+            int count = input.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                input.skipBytes(2); // access_flags
+                references.set(input.readUnsignedShort()); // name_index
+                references.set(input.readUnsignedShort()); // descriptor_index
+                collectAttributeReferences(input, constants, references);
+            }
+        }
+        collectAttributeReferences(input, constants, references);
+    }
+
+    private static void collectAttributeReferences(
+            DataInputStream input, String[] constants, BitSet references) throws IOException {
+        int count = input.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int nameIndex = input.readUnsignedShort();
+            references.set(nameIndex);
+            byte[] body = read(input, input.readInt());
+            String name = nameIndex < constants.length ? constants[nameIndex] : null;
+            DataInputStream attribute = new DataInputStream(new ByteArrayInputStream(body));
+            if (name == null) {
+                collectRawReferences(body, references);
+            } else if (name.equals("Code")) { //$NON-NLS-1$
+                // instructions never refer Utf8 constants directly
+                attribute.skipBytes(4); // max_stack, max_locals
+                attribute.skipBytes(attribute.readInt()); // code
+                attribute.skipBytes(attribute.readUnsignedShort() * 8); // exception_table
+                collectAttributeReferences(attribute, constants, references);
+            } else if (name.equals("SourceFile") || name.equals("Signature")) { //$NON-NLS-1$ //$NON-NLS-2$
+                references.set(attribute.readUnsignedShort());
+            } else if (name.equals("InnerClasses")) { //$NON-NLS-1$
+                for (int j = 0, n = attribute.readUnsignedShort(); j < n; j++) {
+                    attribute.skipBytes(4); // inner_class_info_index, outer_class_info_index
+                    references.set(attribute.readUnsignedShort()); // inner_name_index
+                    attribute.skipBytes(2); // inner_class_access_flags
+                }
+            } else if (name.equals("LocalVariableTable") //$NON-NLS-1$
+                    || name.equals("LocalVariableTypeTable")) { //$NON-NLS-1$
+                for (int j = 0, n = attribute.readUnsignedShort(); j < n; j++) {
+                    attribute.skipBytes(4); // start_pc, length
+                    references.set(attribute.readUnsignedShort()); // name_index
+                    references.set(attribute.readUnsignedShort()); // descriptor_index or signature_index
+                    attribute.skipBytes(2); // index
+                }
+            } else if (name.equals("MethodParameters")) { //$NON-NLS-1$
+                for (int j = 0, n = attribute.readUnsignedByte(); j < n; j++) {
+                    references.set(attribute.readUnsignedShort()); // name_index
+                    attribute.skipBytes(2); // access_flags
+                }
+            } else if (ATTRIBUTES_WITHOUT_UTF8.contains(name) == false) {
+                // conservatively assumes that every 2-byte sequence may refer a Utf8 constant
+                collectRawReferences(body, references);
+            }
+        }
+    }
+
+    private static void collectRawReferences(byte[] body, BitSet references) {
+        for (int i = 0, n = body.length - 1; i < n; i++) {
+            references.set(u2(body, i));
+        }
+    }
+
+    private static byte[] read(DataInputStream input, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static int u2(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+    }
+
+    private static byte[] rewriteProperties(byte[] contents, String from, String to) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(contents));
+        boolean changed = false;
+        for (String name : properties.stringPropertyNames()) {
+            String value = properties.getProperty(name);
+            if (value.equals(from)) {
+                properties.setProperty(name, to);
+                changed = true;
+            } else if (name.contains(from) || value.contains(from)) {
+                return null;
+            }
+        }
+        if (changed == false) {
+            return contents;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        properties.store(output, null);
+        return output.toByteArray();
+    }
+
+    private static int indexOf(byte[] contents, byte[] pattern) {
+        for (int i = 0, n = contents.length - pattern.length; i <= n; i++) {
+            boolean matched = true;
+            for (int j = 0; j < pattern.length; j++) {
+                if (contents[i + j] != pattern[j]) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] toBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        while (true) {
+            int read = input.read(buf);
+            if (read < 0) {
+                break;
+            }
+            output.write(buf, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * A key of jobflow artifacts.
+     */
+    static final class Key {
+
+        private final ClassLoader classLoader;
+
+        private final String descriptionClass;
+
+        private final String flowId;
+
+        private final Map<String, String> options;
+
+        private Key(ClassLoader classLoader, String descriptionClass, String flowId, Map<String, String> options) {
+            this.classLoader = classLoader;
+            this.descriptionClass = descriptionClass;
+            this.flowId = flowId;
+            this.options = options;
+        }
+
+        /**
+         * Returns a key for the target jobflow.
+         * The jobflow class and its flow-part/operator classes are identified by the project class loader.
+         * @param context the current context
+         * @param jobflow the target jobflow
+         * @return the key
+         */
+        static Key of(CompilerContext context, Jobflow jobflow) {
+            CompilerOptions options = context.getOptions();
+            Map<String, String> values = new TreeMap<>(options.getRawProperties());
+            values.put("<buildId>", options.getBuildId()); //$NON-NLS-1$
+            values.put("<runtimeWorkingDirectory>", options.getRuntimeWorkingDirectory()); //$NON-NLS-1$
+            return new Key(
+                    context.getProject().getClassLoader(),
+                    jobflow.getDescriptionClass().getBinaryName(),
+                    jobflow.getFlowId(),
+                    values);
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + System.identityHashCode(classLoader);
+            result = prime * result + descriptionClass.hashCode();
+            result = prime * result + flowId.hashCode();
+            result = prime * result + options.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (classLoader != other.classLoader) {
+                return false;
+            }
+            if (!descriptionClass.equals(other.descriptionClass)) {
+                return false;
+            }
+            if (!flowId.equals(other.flowId)) {
+                return false;
+            }
+            if (!Objects.equals(options, other.options)) {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(%s)", flowId, descriptionClass); //$NON-NLS-1$
+        }
+    }
+
+    private static final class Entry {
+
+        final String batchId;
+
+        final FileContainer snapshot;
+
+        final TaskReferenceMap tasks;
+
+        volatile boolean reusable = true;
+
+        Entry(String batchId, FileContainer snapshot, TaskReferenceMap tasks) {
+            this.batchId = batchId;
+            this.snapshot = snapshot;
+            this.tasks = tasks;
+        }
+    }
+}
@@ -18,9 +18,9 @@ package com.asakusafw.lang.compiler.core.basic;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Collection;
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +30,7 @@ import com.asakusafw.lang.compiler.common.ResourceContainer;
 import com.asakusafw.lang.compiler.packaging.ResourceAssembler;
 import com.asakusafw.lang.compiler.packaging.ResourceRepository;
 import com.asakusafw.lang.compiler.packaging.ResourceSink;
+import com.asakusafw.lang.compiler.packaging.ResourceSinkFilter;
 import com.asakusafw.lang.compiler.packaging.ResourceUtil;
 import com.asakusafw.lang.compiler.packaging.ZipSink;
 
@@ -70,6 +71,13 @@ public class JobflowPackager {
      */
     static final String PATTERN_JOBFLOW_LIBRARY = "jobflow-{0}.jar"; //$NON-NLS-1$
 
+    /**
+     * The batch element location of the embedded contents library, which is shared between jobflows.
+     * This is placed on the attached libraries directory so that it is included in each jobflow class path.
+     * @since 0.4.0
+     */
+    public static final Location EMBEDDED_LIBRARY = Location.of("usr/lib/embedded-contents.jar"); //$NON-NLS-1$
+
     private static final Predicate<Location> EMBEDDED_CONTENT_ACCEPTOR = location -> {
         if (location.equals(MANIFEST_FILE)) {
             return false;
@@ -93,14 +101,75 @@ public class JobflowPackager {
             ResourceContainer batchOutput,
             ResourceRepository jobflowOutput,
             Collection<? extends ResourceRepository> jobflowEmbedded) throws IOException {
+        process(flowId, batchOutput, jobflowOutput, jobflowEmbedded, null, null);
+    }
+
+    /**
+     * Creates a jobflow package into batch output container.
+     * @param flowId the target flow ID
+     * @param batchOutput the target batch output container
+     * @param jobflowOutput the source jobflow output container
+     * @param jobflowEmbedded the jobflow embedded contents
+     * @param executor the executor for compressing package entries, or {@code null} to compress them sequentially
+     * @param filter the filter for package entries, or {@code null} to package them as is
+     * @throws IOException if failed to create a jobflow package
+     * @since 0.4.0
+     */
+    public void process(
+            String flowId,
+            ResourceContainer batchOutput,
+            ResourceRepository jobflowOutput,
+            Collection<? extends ResourceRepository> jobflowEmbedded,
+            Executor executor,
+            ResourceSinkFilter filter) throws IOException {
         LOG.debug("building jobflow package: {}->{}", flowId, batchOutput); //$NON-NLS-1$
         ResourceRepository result = assemble(jobflowOutput, jobflowEmbedded);
         Location location = getLibraryLocation(flowId);
-        try (ResourceSink sink = new ZipSink(new JarOutputStream(batchOutput.addResource(location)))) {
+        try (ResourceSink sink = open(batchOutput, location, executor, filter)) {
             ResourceUtil.copy(result, sink);
         }
     }
 
+    /**
+     * Creates a library of the embedded contents into batch output container.
+     * Jobflow packages can omit their embedded contents if this library is available.
+     * @param batchOutput the target batch output container
+     * @param embedded the embedded contents
+     * @param executor the executor for compressing package entries, or {@code null} to compress them sequentially
+     * @param filter the filter for package entries, or {@code null} to package them as is
+     * @return {@code true} if the library was created, or {@code false} if there are no embedded contents
+     * @throws IOException if failed to create the library
+     * @see #EMBEDDED_LIBRARY
+     * @since 0.4.0
+     */
+    public boolean processEmbedded(
+            ResourceContainer batchOutput,
+            Collection<? extends ResourceRepository> embedded,
+            Executor executor,
+            ResourceSinkFilter filter) throws IOException {
+        if (embedded.isEmpty()) {
+            return false;
+        }
+        LOG.debug("building embedded contents library: {}", batchOutput); //$NON-NLS-1$
+        ResourceAssembler assembler = new ResourceAssembler();
+        for (ResourceRepository repository : embedded) {
+            assembler.addRepository(repository, EMBEDDED_CONTENT_ACCEPTOR);
+        }
+        try (ResourceSink sink = open(batchOutput, EMBEDDED_LIBRARY, executor, filter)) {
+            ResourceUtil.copy(assembler.build(), sink);
+        }
+        return true;
+    }
+
+    private static ResourceSink open(
+            ResourceContainer container, Location location,
+            Executor executor, ResourceSinkFilter filter) throws IOException {
+        ResourceSink sink = new ZipSink(container.addResource(location), executor);
+        if (filter == null) {
+            return sink;
+        }
+        return filter.apply(location, sink);
+    }
 
     private ResourceRepository assemble(ResourceRepository output, Collection<? extends ResourceRepository> embedded) {
         ResourceAssembler assembler = new ResourceAssembler();
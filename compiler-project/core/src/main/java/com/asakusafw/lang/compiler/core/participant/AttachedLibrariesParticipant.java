@@ -32,6 +32,7 @@ import com.asakusafw.lang.compiler.common.Location;
 import com.asakusafw.lang.compiler.common.util.StringUtil;
 import com.asakusafw.lang.compiler.core.BatchCompiler.Context;
 import com.asakusafw.lang.compiler.core.basic.AbstractCompilerParticipant;
+import com.asakusafw.lang.compiler.core.basic.JobflowPackager;
 import com.asakusafw.lang.compiler.model.graph.Batch;
 import com.asakusafw.lang.compiler.packaging.FileContainer;
 import com.asakusafw.lang.compiler.packaging.ResourceRepository;
@@ -83,7 +84,10 @@ public class AttachedLibrariesParticipant extends AbstractCompilerParticipant {
         private final Set<String> saw = new HashSet<>();
 
         Locator() {
-            return;
+            // the shared embedded contents library may be also placed on the same directory
+            if (LOCATION.equals(JobflowPackager.EMBEDDED_LIBRARY.getParent())) {
+                saw.add(JobflowPackager.EMBEDDED_LIBRARY.getName());
+            }
         }
 
         Location getLocation(Location source) {
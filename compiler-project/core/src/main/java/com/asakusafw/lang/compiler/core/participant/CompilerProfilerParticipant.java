@@ -0,0 +1,214 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.core.participant;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.api.reference.BatchReference;
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler.Phase;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler.Record;
+import com.asakusafw.lang.compiler.core.BatchCompiler;
+import com.asakusafw.lang.compiler.core.JobflowCompiler;
+import com.asakusafw.lang.compiler.core.basic.AbstractCompilerParticipant;
+import com.asakusafw.lang.compiler.model.graph.Batch;
+import com.asakusafw.lang.compiler.model.graph.Jobflow;
+import com.asakusafw.lang.compiler.model.info.BatchInfo;
+
+/**
+ * A compiler participant for enabling {@link CompilerProfiler}.
+ * <p>
+ * This records the individual batches and jobflows, and the other compiler elements can record their phases
+ * via {@link CompilerProfiler#start(com.asakusafw.lang.compiler.common.ExtensionContainer, String, String)}.
+ * The report is a tab separated text file: scope (jobflow ID), phase name, elapsed time in nanoseconds,
+ * allocated memory in bytes ({@code -1} if it is not available), and metrics ({@code key=value} list).
+ * </p>
+ * <p>
+ * If a {@link CompilerProfiler} is already registered to the batch compiler context
+ * (e.g. the command line interface records the analysis phase before compiling the batch),
+ * this participant reports its phases together.
+ * If the batch compilation is aborted, this discards its profile.
+ * </p>
+ * <h3> compiler options </h3>
+ * <ul>
+ * <li> {@code profiler.enabled} (optional)
+ *   <ul>
+ *   <li> whether or not the compiler profiler is enabled </li>
+ *   <li> <em>default value</em>: {@code false} </li>
+ *   </ul>
+ * </li>
+ * </ul>
+ * @since 0.4.0
+ */
+public class CompilerProfilerParticipant extends AbstractCompilerParticipant {
+
+    static final Logger LOG = LoggerFactory.getLogger(CompilerProfilerParticipant.class);
+
+    static final Charset ENCODING = StandardCharsets.UTF_8;
+
+    /**
+     * The compiler option key of whether or not the compiler profiler is enabled.
+     */
+    public static final String KEY_ENABLED = "profiler.enabled"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_ENABLED}.
+     */
+    public static final boolean DEFAULT_ENABLED = false;
+
+    /**
+     * The output file path.
+     */
+    static final Location LOCATION = Location.of("etc/profile.tsv"); //$NON-NLS-1$
+
+    static final String PHASE_BATCH = "batch"; //$NON-NLS-1$
+
+    static final String PHASE_JOBFLOW = "jobflow"; //$NON-NLS-1$
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    boolean isActive(String batchId) {
+        return sessions.containsKey(batchId);
+    }
+
+    @Override
+    public void beforeBatch(BatchCompiler.Context context, Batch batch) {
+        if (context.getOptions().get(KEY_ENABLED, DEFAULT_ENABLED) == false) {
+            return;
+        }
+        LOG.debug("enabling {}", CompilerProfiler.class.getName()); //$NON-NLS-1$
+        CompilerProfiler profiler = context.getExtension(CompilerProfiler.class);
+        if (profiler == null) {
+            profiler = new CompilerProfiler();
+            context.registerExtension(CompilerProfiler.class, profiler);
+        }
+        Phase phase = profiler.start(null, PHASE_BATCH)
+                .put("jobflows", batch.getElements().size()); //$NON-NLS-1$
+        Session conflict = sessions.put(batch.getBatchId(), new Session(profiler, phase));
+        if (conflict != null) {
+            LOG.debug("discarding incomplete compiler profile: {}", batch.getBatchId()); //$NON-NLS-1$
+            conflict.close();
+        }
+    }
+
+    @Override
+    public void beforeJobflow(JobflowCompiler.Context context, BatchInfo batch, Jobflow jobflow) {
+        Session session = sessions.get(batch.getBatchId());
+        if (session == null) {
+            return;
+        }
+        context.registerExtension(CompilerProfiler.class, session.profiler);
+        Phase phase = session.profiler.start(jobflow.getFlowId(), PHASE_JOBFLOW)
+                .put("operators", jobflow.getOperatorGraph().getOperators(false).size()); //$NON-NLS-1$
+        session.jobflows.put(jobflow.getFlowId(), phase);
+    }
+
+    @Override
+    public void afterJobflow(JobflowCompiler.Context context, BatchInfo batch, Jobflow jobflow) {
+        Session session = sessions.get(batch.getBatchId());
+        if (session == null) {
+            return;
+        }
+        Phase phase = session.jobflows.remove(jobflow.getFlowId());
+        if (phase != null) {
+            phase.close();
+        }
+        context.registerExtension(CompilerProfiler.class, null);
+    }
+
+    @Override
+    public void abortBatch(BatchCompiler.Context context, Batch batch) {
+        Session session = sessions.remove(batch.getBatchId());
+        if (session == null) {
+            return;
+        }
+        LOG.debug("discarding compiler profile: {}", batch.getBatchId()); //$NON-NLS-1$
+        session.close();
+        context.registerExtension(CompilerProfiler.class, null);
+    }
+
+    @Override
+    public void afterBatch(BatchCompiler.Context context, Batch batch, BatchReference reference) {
+        Session session = sessions.remove(batch.getBatchId());
+        if (session == null) {
+            return;
+        }
+        session.close();
+        context.registerExtension(CompilerProfiler.class, null);
+        LOG.debug("creating compiler profile: {}", batch.getBatchId()); //$NON-NLS-1$
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                context.getOutput().addResource(LOCATION), ENCODING))) {
+            writer.print("# scope\tphase\telapsed_nanos\tallocated_bytes\tmetrics"); //$NON-NLS-1$
+            writer.print('\n');
+            for (Record record : session.profiler.getRecords()) {
+                writer.print(record.getScope() == null ? "-" : record.getScope()); //$NON-NLS-1$
+                writer.print('\t');
+                writer.print(record.getName());
+                writer.print('\t');
+                writer.print(record.getElapsedNanos());
+                writer.print('\t');
+                writer.print(record.getAllocatedBytes());
+                writer.print('\t');
+                StringBuilder metrics = new StringBuilder();
+                for (Map.Entry<String, Long> entry : record.getMetrics().entrySet()) {
+                    if (metrics.length() > 0) {
+                        metrics.append(',');
+                    }
+                    metrics.append(entry.getKey()).append('=').append(entry.getValue());
+                }
+                writer.print(metrics);
+                writer.print('\n');
+            }
+        } catch (IOException e) {
+            LOG.error(MessageFormat.format(
+                    "failed to create compiler profile: {0}",
+                    context.getOutput().toFile(LOCATION)), e);
+        }
+    }
+
+    private static final class Session {
+
+        final CompilerProfiler profiler;
+
+        final Phase phase;
+
+        final Map<String, Phase> jobflows = new ConcurrentHashMap<>();
+
+        Session(CompilerProfiler profiler, Phase phase) {
+            this.profiler = profiler;
+            this.phase = phase;
+        }
+
+        void close() {
+            for (Phase jobflow : jobflows.values()) {
+                jobflow.close();
+            }
+            jobflows.clear();
+            phase.close();
+        }
+    }
+}
@@ -20,18 +20,27 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.asakusafw.lang.compiler.api.reference.BatchReference;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler;
+import com.asakusafw.lang.compiler.core.BatchCompiler;
+import com.asakusafw.lang.compiler.core.CompilerContext;
 import com.asakusafw.lang.compiler.core.JobflowCompiler.Context;
 import com.asakusafw.lang.compiler.core.basic.AbstractCompilerParticipant;
 import com.asakusafw.lang.compiler.javac.BasicJavaCompilerSupport;
+import com.asakusafw.lang.compiler.javac.ClassPathIndex;
+import com.asakusafw.lang.compiler.javac.InMemoryJavaCompilerSupport;
 import com.asakusafw.lang.compiler.javac.JavaCompilerUtil;
 import com.asakusafw.lang.compiler.javac.JavaSourceExtension;
+import com.asakusafw.lang.compiler.model.graph.Batch;
 import com.asakusafw.lang.compiler.model.graph.Jobflow;
 import com.asakusafw.lang.compiler.model.info.BatchInfo;
 import com.asakusafw.lang.compiler.model.info.JobflowInfo;
@@ -54,6 +63,33 @@ import com.asakusafw.lang.compiler.packaging.ResourceUtil;
  *   <li> <em>default value</em>: (current Java VM's boot classpath) </li>
  *   </ul>
  * </li>
+ * <li> {@code javac.memory} (optional)
+ *   <ul>
+ *   <li> whether or not Java source files are kept on memory while compiling them </li>
+ *   <li> <em>default value</em>: {@code false} (puts Java source files onto the temporary directory) </li>
+ *   </ul>
+ * </li>
+ * <li> {@code javac.memory.limit} (optional)
+ *   <ul>
+ *   <li> the max total size of Java source files in bytes, which are kept on memory </li>
+ *   <li> the exceeded Java source files are put onto the temporary directory </li>
+ *   <li> <em>default value</em>: {@code 67108864} (64MB) </li>
+ *   </ul>
+ * </li>
+ * <li> {@code javac.classpath.index} (optional)
+ *   <ul>
+ *   <li> whether or not Java compilers share the index of class path libraries in the same batch </li>
+ *   <li> the shared index is closed at the end of the batch compilation, even if it was aborted </li>
+ *   <li> <em>default value</em>: {@code true} </li>
+ *   </ul>
+ * </li>
+ * <li> {@code javac.parallelism} (optional)
+ *   <ul>
+ *   <li> the max number of Java compiler tasks for each jobflow, which run concurrently </li>
+ *   <li> Java source files are partitioned into groups without dependencies between each other </li>
+ *   <li> <em>default value</em>: {@code 1} (compiles all Java source files at once) </li>
+ *   </ul>
+ * </li>
  * </ul>
  */
 public class JavaSourceExtensionParticipant extends AbstractCompilerParticipant {
@@ -72,25 +108,142 @@ public class JavaSourceExtensionParticipant extends AbstractCompilerParticipant
      */
     public static final String KEY_BOOT_CLASSPATH = KEY_PREFIX + "bootclasspath"; //$NON-NLS-1$
 
+    /**
+     * The compiler option key of whether or not Java source files are kept on memory.
+     * @since 0.4.0
+     */
+    public static final String KEY_MEMORY = KEY_PREFIX + "memory"; //$NON-NLS-1$
+
+    /**
+     * The compiler option key of the max total size of Java source files which are kept on memory.
+     * @since 0.4.0
+     */
+    public static final String KEY_MEMORY_LIMIT = KEY_MEMORY + ".limit"; //$NON-NLS-1$
+
+    /**
+     * The compiler option key of whether or not Java compilers share the index of class path libraries.
+     * @since 0.4.0
+     */
+    public static final String KEY_CLASSPATH_INDEX = KEY_PREFIX + "classpath.index"; //$NON-NLS-1$
+
+    /**
+     * The compiler option key of the max number of Java compiler tasks which run concurrently.
+     * @since 0.4.0
+     */
+    public static final String KEY_PARALLELISM = KEY_PREFIX + "parallelism"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_PARALLELISM}.
+     * @since 0.4.0
+     */
+    public static final int DEFAULT_PARALLELISM = 1;
+
+    private static final String PHASE_NAME = "javac"; //$NON-NLS-1$
+
+    private final Map<String, ClassPathIndex> batchIndices = new ConcurrentHashMap<>();
+
+    @Override
+    public void beforeBatch(BatchCompiler.Context context, Batch batch) {
+        if (isClassPathIndexEnabled(context) == false) {
+            return;
+        }
+        ClassPathIndex index = new ClassPathIndex(JavaCompilerUtil.getLibraries(context.getProject().getClassLoader()));
+        ClassPathIndex conflict = batchIndices.put(batch.getBatchId(), index);
+        if (conflict != null) {
+            close(conflict);
+        }
+    }
+
+    @Override
+    public void afterBatch(BatchCompiler.Context context, Batch batch, BatchReference reference) {
+        closeBatchIndex(batch);
+    }
+
+    @Override
+    public void abortBatch(BatchCompiler.Context context, Batch batch) {
+        closeBatchIndex(batch);
+    }
+
+    private void closeBatchIndex(Batch batch) {
+        ClassPathIndex index = batchIndices.remove(batch.getBatchId());
+        if (index != null) {
+            close(index);
+        }
+    }
+
     @Override
     public void beforeJobflow(Context context, BatchInfo batch, Jobflow jobflow) {
         LOG.debug("enabling {}", JavaSourceExtension.class.getName()); //$NON-NLS-1$
-        List<File> classPath = JavaCompilerUtil.getLibraries(context.getProject().getClassLoader());
+        ClassPathIndex index = getClassPathIndex(context, batch);
+        List<File> classPath = index == null
+                ? JavaCompilerUtil.getLibraries(context.getProject().getClassLoader())
+                : index.getClassPath();
         File sourcePath = createTemporaryOutput(context, jobflow);
-        BasicJavaCompilerSupport extension = new BasicJavaCompilerSupport(
-                sourcePath,
-                classPath,
-                context.getOutput().getBasePath());
-        configure(context, extension);
-        context.registerExtension(JavaSourceExtension.class, extension);
+        String version = getCompliantVersion(context);
+        List<File> bootClassPath = getBootClassPath(context);
+        int parallelism = getParallelism(context);
+        if (context.getOptions().get(KEY_MEMORY, false)) {
+            InMemoryJavaCompilerSupport extension = new InMemoryJavaCompilerSupport(
+                    sourcePath,
+                    classPath,
+                    context.getOutput())
+                .withCompliantVersion(version)
+                .withBootClassPath(bootClassPath)
+                .withClassPathIndex(index)
+                .withParallelism(parallelism)
+                .withSpillThreshold(getMemoryLimit(context));
+            context.registerExtension(JavaSourceExtension.class, extension);
+        } else {
+            BasicJavaCompilerSupport extension = new BasicJavaCompilerSupport(
+                    sourcePath,
+                    classPath,
+                    context.getOutput().getBasePath())
+                .withCompliantVersion(version)
+                .withBootClassPath(bootClassPath)
+                .withClassPathIndex(index)
+                .withParallelism(parallelism);
+            context.registerExtension(JavaSourceExtension.class, extension);
+        }
     }
 
-    private void configure(Context context, BasicJavaCompilerSupport extension) {
+    private static boolean isClassPathIndexEnabled(CompilerContext context) {
+        return context.getOptions().get(KEY_CLASSPATH_INDEX, true);
+    }
+
+    private ClassPathIndex getClassPathIndex(Context context, BatchInfo batch) {
+        if (isClassPathIndexEnabled(context) == false) {
+            return null;
+        }
+        ClassPathIndex shared = batchIndices.get(batch.getBatchId());
+        if (shared != null) {
+            return shared;
+        }
+        // the jobflow is compiled without batch compiler: the index is only available in this jobflow
+        ClassPathIndex index = new ClassPathIndex(JavaCompilerUtil.getLibraries(context.getProject().getClassLoader()));
+        context.registerExtension(ClassPathIndex.class, index);
+        return index;
+    }
+
+    private static void close(ClassPathIndex index) {
+        try {
+            index.close();
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to close class path index: {0}",
+                    index), e);
+        }
+    }
+
+    private static String getCompliantVersion(Context context) {
         String version = context.getOptions().get(KEY_VERSION, null);
         if (version != null && version.isEmpty() == false) {
             LOG.debug("detect option: {} = {}", KEY_VERSION, version); //$NON-NLS-1$
-            extension.withCompliantVersion(version);
+            return version;
         }
+        return null;
+    }
+
+    private static List<File> getBootClassPath(Context context) {
         String bootclasspath = context.getOptions().get(KEY_BOOT_CLASSPATH, null);
         if (bootclasspath != null) {
             List<File> files = new ArrayList<>();
@@ -101,22 +254,72 @@ public class JavaSourceExtensionParticipant extends AbstractCompilerParticipant
             }
             if (files.isEmpty() == false) {
                 LOG.debug("detect option: {} = {}", KEY_BOOT_CLASSPATH, files); //$NON-NLS-1$
-                extension.withBootClassPath(files);
+                return files;
             }
         }
+        return null;
+    }
+
+    private static long getMemoryLimit(Context context) {
+        String value = context.getOptions().get(KEY_MEMORY_LIMIT, null);
+        if (value == null || value.trim().isEmpty()) {
+            return InMemoryJavaCompilerSupport.DEFAULT_SPILL_THRESHOLD;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn(MessageFormat.format(
+                    "invalid Java source memory limit: {0}={1}",
+                    KEY_MEMORY_LIMIT,
+                    value), e);
+            return InMemoryJavaCompilerSupport.DEFAULT_SPILL_THRESHOLD;
+        }
+    }
+
+    private static int getParallelism(Context context) {
+        String value = context.getOptions().get(KEY_PARALLELISM, null);
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_PARALLELISM;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            LOG.debug("detect option: {} = {}", KEY_PARALLELISM, result); //$NON-NLS-1$
+            return Math.max(result, 1);
+        } catch (NumberFormatException e) {
+            LOG.warn(MessageFormat.format(
+                    "invalid Java compiler parallelism: {0}={1}",
+                    KEY_PARALLELISM,
+                    value), e);
+            return DEFAULT_PARALLELISM;
+        }
     }
 
     @Override
     public void afterJobflow(Context context, BatchInfo batch, Jobflow jobflow) {
-        JavaSourceExtension extension = context.getExtension(JavaSourceExtension.class);
-        if ((extension instanceof BasicJavaCompilerSupport) == false) {
-            return;
+        try {
+            JavaSourceExtension extension = context.getExtension(JavaSourceExtension.class);
+            if (extension instanceof BasicJavaCompilerSupport) {
+                context.registerExtension(JavaSourceExtension.class, null);
+                BasicJavaCompilerSupport javac = (BasicJavaCompilerSupport) extension;
+                try (CompilerProfiler.Phase phase = CompilerProfiler.start(context, jobflow.getFlowId(), PHASE_NAME)) {
+                    javac.process();
+                }
+                ResourceUtil.delete(javac.getSourcePath());
+            } else if (extension instanceof InMemoryJavaCompilerSupport) {
+                context.registerExtension(JavaSourceExtension.class, null);
+                InMemoryJavaCompilerSupport javac = (InMemoryJavaCompilerSupport) extension;
+                try (CompilerProfiler.Phase phase = CompilerProfiler.start(context, jobflow.getFlowId(), PHASE_NAME)) {
+                    javac.process();
+                }
+                ResourceUtil.delete(javac.getSpillPath());
+            }
+        } finally {
+            ClassPathIndex index = context.getExtension(ClassPathIndex.class);
+            if (index != null) {
+                context.registerExtension(ClassPathIndex.class, null);
+                close(index);
+            }
         }
-        context.registerExtension(JavaSourceExtension.class, null);
-
-        BasicJavaCompilerSupport javac = (BasicJavaCompilerSupport) extension;
-        javac.process();
-        ResourceUtil.delete(javac.getSourcePath());
     }
 
     private File createTemporaryOutput(Context context, JobflowInfo jobflow) {
@@ -100,6 +100,23 @@ public class CompositeCompilerParticipant extends AbstractCompositeElement<Compi
         }
     }
 
+    @Override
+    public void abortBatch(BatchCompiler.Context context, Batch batch) {
+        boolean error = false;
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        for (CompilerParticipant element : reverse) {
+            try {
+                element.abortBatch(context, batch);
+            } catch (DiagnosticException e) {
+                error = true;
+                diagnostics.addAll(e.getDiagnostics());
+            }
+        }
+        if (error) {
+            throw new DiagnosticException(diagnostics);
+        }
+    }
+
     @Override
     public void beforeJobflow(JobflowCompiler.Context context, BatchInfo batch, Jobflow jobflow) {
         boolean error = false;
@@ -18,11 +18,19 @@ package com.asakusafw.lang.compiler.core.basic;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 import com.asakusafw.lang.compiler.api.reference.BatchReference;
 import com.asakusafw.lang.compiler.api.reference.JobflowReference;
+import com.asakusafw.lang.compiler.common.Location;
 import com.asakusafw.lang.compiler.core.BatchCompiler;
+import com.asakusafw.lang.compiler.core.CompilerContext;
 import com.asakusafw.lang.compiler.core.CompilerTestRoot;
 import com.asakusafw.lang.compiler.core.dummy.SimpleBatchProcessor;
 import com.asakusafw.lang.compiler.core.dummy.SimpleCompilerParticipant;
@@ -31,6 +39,8 @@ import com.asakusafw.lang.compiler.core.util.BatchReferenceCollector;
 import com.asakusafw.lang.compiler.model.graph.Batch;
 import com.asakusafw.lang.compiler.model.graph.BatchElement;
 import com.asakusafw.lang.compiler.packaging.FileContainer;
+import com.asakusafw.lang.compiler.packaging.ResourceRepository;
+import com.asakusafw.lang.compiler.packaging.ZipRepository;
 
 /**
  * Test for {@link BasicBatchCompiler}.
@@ -102,6 +112,51 @@ public class BasicBatchCompilerTest extends CompilerTestRoot {
         assertThat(rj3.getBlockers(), containsInAnyOrder(rj1, rj2));
     }
 
+    /**
+     * diamond w/ parallel compilation.
+     */
+    @Test
+    public void diamond_parallel() {
+        batchProcessors.add(new SimpleBatchProcessor());
+        jobflowProcessors.add(new SimpleJobflowProcessor());
+        compilerParticipants.add(new BatchReferenceCollector());
+        options.withProperty(BasicBatchCompiler.KEY_PARALLELISM, "4");
+
+        Batch batch = new Batch(batchInfo("testing"));
+        BatchElement bj0 = batch.addElement(jobflow("j0"));
+        BatchElement bj1 = batch.addElement(jobflow("j1"));
+        BatchElement bj2 = batch.addElement(jobflow("j2"));
+        BatchElement bj3 = batch.addElement(jobflow("j3"));
+        BatchElement bj4 = batch.addElement(jobflow("j4"));
+        bj1.addBlockerElement(bj0);
+        bj2.addBlockerElement(bj0);
+        bj3.addBlockerElement(bj1);
+        bj3.addBlockerElement(bj2);
+
+        FileContainer output = container();
+        BatchCompiler.Context context = new BatchCompiler.Context(context(true), output);
+        new BasicBatchCompiler().compile(context, batch);
+
+        assertThat(SimpleBatchProcessor.contains(context), is(true));
+        assertThat(SimpleJobflowProcessor.contains(context, "j0"), is(true));
+        assertThat(SimpleJobflowProcessor.contains(context, "j1"), is(true));
+        assertThat(SimpleJobflowProcessor.contains(context, "j2"), is(true));
+        assertThat(SimpleJobflowProcessor.contains(context, "j3"), is(true));
+        assertThat(SimpleJobflowProcessor.contains(context, "j4"), is(true));
+
+        BatchReference result = BatchReferenceCollector.get(context);
+        JobflowReference rj0 = result.find("j0");
+        JobflowReference rj1 = result.find("j1");
+        JobflowReference rj2 = result.find("j2");
+        JobflowReference rj3 = result.find("j3");
+        JobflowReference rj4 = result.find("j4");
+        assertThat(rj0.getBlockers(), is(empty()));
+        assertThat(rj1.getBlockers(), containsInAnyOrder(rj0));
+        assertThat(rj2.getBlockers(), containsInAnyOrder(rj0));
+        assertThat(rj3.getBlockers(), containsInAnyOrder(rj1, rj2));
+        assertThat(rj4.getBlockers(), is(empty()));
+    }
+
     /**
      * w/ compiler participants.
      */
@@ -124,4 +179,62 @@ public class BasicBatchCompilerTest extends CompilerTestRoot {
         assertThat(SimpleCompilerParticipant.contains(context), is(true));
         assertThat(context.getExtension(BatchReference.class), is(notNullValue()));
     }
+
+    /**
+     * w/ reusing compiled jobflows.
+     * @throws Exception if failed
+     */
+    @Test
+    public void reuse() throws Exception {
+        Location location = Location.of("testing.properties");
+        AtomicInteger count = new AtomicInteger();
+        batchProcessors.add(new SimpleBatchProcessor());
+        jobflowProcessors.add(new SimpleJobflowProcessor());
+        jobflowProcessors.add((context, source) -> {
+            count.incrementAndGet();
+            Properties properties = new Properties();
+            properties.setProperty("batchId", context.getBatchId());
+            try (OutputStream output = context.addResourceFile(location)) {
+                properties.store(output, null);
+            }
+        });
+        options.withProperty(BasicBatchCompiler.KEY_REUSE, "true");
+
+        CompilerContext root = context(true);
+        BasicBatchCompiler compiler = new BasicBatchCompiler();
+
+        Batch b0 = new Batch(batchInfo("b0"));
+        b0.addElement(jobflow("j0"));
+        BatchCompiler.Context c0 = new BatchCompiler.Context(root, container());
+        compiler.compile(c0, b0);
+
+        Batch b1 = new Batch(batchInfo("b1"));
+        b1.addElement(jobflow("j0"));
+        BatchCompiler.Context c1 = new BatchCompiler.Context(root, container());
+        compiler.compile(c1, b1);
+
+        assertThat(count.get(), is(1));
+        assertThat(SimpleBatchProcessor.contains(c1), is(true));
+        assertThat(SimpleJobflowProcessor.contains(c1, "j0"), is(true));
+        assertThat(load(c0, "j0", location).getProperty("batchId"), is("b0"));
+        assertThat(load(c1, "j0", location).getProperty("batchId"), is("b1"));
+    }
+
+    private static Properties load(
+            BatchCompiler.Context context, String flowId, Location location) throws IOException {
+        Location path = JobflowPackager.getLibraryLocation(flowId);
+        ZipRepository library = new ZipRepository(context.getOutput().toFile(path));
+        try (ResourceRepository.Cursor cursor = library.createCursor()) {
+            while (cursor.next()) {
+                if (cursor.getLocation().equals(location)) {
+                    Properties properties = new Properties();
+                    try (InputStream input = cursor.openResource()) {
+                        properties.load(input);
+                    }
+                    return properties;
+                }
+            }
+        }
+        throw new AssertionError(location);
+    }
 }
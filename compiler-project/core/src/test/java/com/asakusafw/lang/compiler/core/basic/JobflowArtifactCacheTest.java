@@ -0,0 +1,190 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.core.basic;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.common.Location;
+
+/**
+ * Test for {@link JobflowArtifactCache}.
+ */
+public class JobflowArtifactCacheTest {
+
+    /**
+     * rewrite class files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rewrite_class() throws Exception {
+        byte[] contents = JobflowArtifactCache.rewrite(
+                Location.of("Testing.class"), bytes(Literal.class), "b0", "other.batch");
+        assertThat(contents, is(notNullValue()));
+        Class<?> rewritten = new Loader(Literal.class, contents).loadClass(Literal.class.getName());
+        Supplier<?> supplier = (Supplier<?>) rewritten.newInstance();
+        assertThat(supplier.get(), is("other.batch"));
+    }
+
+    /**
+     * rewrite class files w/o any batch IDs.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rewrite_class_unchanged() throws Exception {
+        byte[] contents = JobflowArtifactCache.rewrite(
+                Location.of("Testing.class"), bytes(Literal.class), "b1", "other.batch");
+        assertThat(contents, is(bytes(Literal.class)));
+    }
+
+    /**
+     * rewrite class files which contains batch IDs in other literals.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rewrite_class_conflict() throws Exception {
+        byte[] contents = JobflowArtifactCache.rewrite(
+                Location.of("Testing.class"), bytes(Literal.class), "b", "other.batch");
+        assertThat(contents, is(nullValue()));
+    }
+
+    /**
+     * rewrite class files which use batch IDs as identifiers.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rewrite_class_identifier() throws Exception {
+        assertThat(JobflowArtifactCache.rewrite(
+                Location.of("Testing.class"), bytes(Identifier.class), "b0", "other.batch"), is(nullValue()));
+        assertThat(JobflowArtifactCache.rewrite(
+                Location.of("Testing.class"), bytes(IdentifierOnly.class), "b0", "other.batch"), is(nullValue()));
+    }
+
+    /**
+     * rewrite properties files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rewrite_properties() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("batchId", "b0");
+        properties.setProperty("flowId", "f0");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        properties.store(output, null);
+
+        byte[] contents = JobflowArtifactCache.rewrite(
+                Location.of("META-INF/testing.properties"), output.toByteArray(), "b0", "other.batch");
+        assertThat(contents, is(notNullValue()));
+        Properties rewritten = new Properties();
+        rewritten.load(new ByteArrayInputStream(contents));
+        assertThat(rewritten.getProperty("batchId"), is("other.batch"));
+        assertThat(rewritten.getProperty("flowId"), is("f0"));
+    }
+
+    /**
+     * rewrite other files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rewrite_other() throws Exception {
+        byte[] unchanged = "Hello, world!".getBytes(StandardCharsets.UTF_8);
+        assertThat(JobflowArtifactCache.rewrite(
+                Location.of("testing.txt"), unchanged, "b0", "other.batch"), is(unchanged));
+
+        byte[] conflict = "Hello, b0!".getBytes(StandardCharsets.UTF_8);
+        assertThat(JobflowArtifactCache.rewrite(
+                Location.of("testing.txt"), conflict, "b0", "other.batch"), is(nullValue()));
+    }
+
+    private static byte[] bytes(Class<?> aClass) throws IOException {
+        String name = aClass.getName().replace('.', '/') + JobflowArtifactCache.EXTENSION_CLASS;
+        try (InputStream input = aClass.getClassLoader().getResourceAsStream(name)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buf = new byte[256];
+            while (true) {
+                int read = input.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                output.write(buf, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    @SuppressWarnings("javadoc")
+    public static class Literal implements Supplier<String> {
+
+        @Override
+        public String get() {
+            return "b0";
+        }
+    }
+
+    @SuppressWarnings("javadoc")
+    public static class Identifier implements Supplier<String> {
+
+        public int b0;
+
+        @Override
+        public String get() {
+            return "b0";
+        }
+    }
+
+    @SuppressWarnings("javadoc")
+    public static class IdentifierOnly {
+
+        public int b0;
+    }
+
+    private static final class Loader extends ClassLoader {
+
+        private final Class<?> target;
+
+        private final byte[] contents;
+
+        Loader(Class<?> target, byte[] contents) {
+            super(target.getClassLoader());
+            this.target = target;
+            this.contents = contents.clone();
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(target.getName())) {
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    if (loaded == null) {
+                        loaded = defineClass(name, contents, 0, contents.length);
+                    }
+                    return loaded;
+                }
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+}
@@ -156,6 +156,31 @@ public class JobflowPackagerTest {
         assertThat(results, not(hasKey(JobflowPackager.FRAGMENT_MARKER.toPath())));
     }
 
+    /**
+     * embedded contents shared between jobflows.
+     * @throws Exception if failed
+     */
+    @Test
+    public void embed_shared() throws Exception {
+        FileContainer batch = container();
+        FileContainer jobflow = container();
+        FileContainer embed = container();
+        put(jobflow, "test.txt", "Hello, world!");
+        put(embed, "embed.txt", "Hello, embed!");
+        put(embed, JarFile.MANIFEST_NAME, "manifest");
+
+        JobflowPackager packager = new JobflowPackager();
+        assertThat(packager.processEmbedded(batch, Arrays.asList(embed), null, null), is(true));
+        assertThat(packager.processEmbedded(batch, Arrays.asList(), null, null), is(false));
+        Map<String, String> shared = dump(new ZipRepository(batch.toFile(JobflowPackager.EMBEDDED_LIBRARY)));
+        assertThat(shared, hasEntry("embed.txt", "Hello, embed!"));
+        assertThat(shared, not(hasKey(JarFile.MANIFEST_NAME)));
+
+        Map<String, String> results = dump(process(batch, jobflow));
+        assertThat(results, hasEntry("test.txt", "Hello, world!"));
+        assertThat(results, not(hasKey("embed.txt")));
+    }
+
     ResourceRepository process(FileContainer batch, FileContainer jobflow, ResourceRepository... embedded) {
         String flowId = "testing";
         try {
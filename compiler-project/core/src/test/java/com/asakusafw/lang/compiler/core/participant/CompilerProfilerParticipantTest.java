@@ -0,0 +1,149 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.core.participant;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.util.CompilerProfiler;
+import com.asakusafw.lang.compiler.core.BatchCompiler;
+import com.asakusafw.lang.compiler.core.CompilerTestRoot;
+import com.asakusafw.lang.compiler.core.basic.BasicBatchCompiler;
+import com.asakusafw.lang.compiler.core.dummy.SimpleExternalPortProcessor;
+import com.asakusafw.lang.compiler.core.dummy.SimpleJobflowProcessor;
+import com.asakusafw.lang.compiler.model.graph.Batch;
+
+/**
+ * Test for {@link CompilerProfilerParticipant}.
+ */
+public class CompilerProfilerParticipantTest extends CompilerTestRoot {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        jobflowProcessors.add(new SimpleJobflowProcessor());
+        externalPortProcessors.add(new SimpleExternalPortProcessor());
+        compilerParticipants.add(new CompilerProfilerParticipant());
+        options.withProperty(CompilerProfilerParticipant.KEY_ENABLED, "true");
+
+        Batch batch = new Batch(batchInfo("testing"));
+        batch.addElement(jobflow("j0"));
+
+        BatchCompiler.Context context = new BatchCompiler.Context(context(true), container());
+        new BasicBatchCompiler().compile(context, batch);
+        assertThat(context.getExtension(CompilerProfiler.class), is(nullValue()));
+
+        List<String> lines = read(context);
+        assertThat(lines.get(0), startsWith("#"));
+        assertThat(lines, hasItem(startsWith("-\tbatch\t")));
+        assertThat(lines, hasItem(endsWith("\tjobflows=1")));
+        assertThat(lines, hasItem(startsWith("j0\tjobflow\t")));
+        assertThat(lines, hasItem(startsWith("j0\tjobflowProcessor\t")));
+    }
+
+    /**
+     * reports phases which were recorded before compiling the batch.
+     * @throws Exception if failed
+     */
+    @Test
+    public void inherit() throws Exception {
+        jobflowProcessors.add(new SimpleJobflowProcessor());
+        externalPortProcessors.add(new SimpleExternalPortProcessor());
+        compilerParticipants.add(new CompilerProfilerParticipant());
+        options.withProperty(CompilerProfilerParticipant.KEY_ENABLED, "true");
+
+        CompilerProfiler profiler = new CompilerProfiler();
+        profiler.start(null, "analysis").close();
+
+        Batch batch = new Batch(batchInfo("testing"));
+        batch.addElement(jobflow("j0"));
+
+        BatchCompiler.Context context = new BatchCompiler.Context(context(true), container());
+        context.registerExtension(CompilerProfiler.class, profiler);
+        new BasicBatchCompiler().compile(context, batch);
+
+        List<String> lines = read(context);
+        assertThat(lines, hasItem(startsWith("-\tanalysis\t")));
+        assertThat(lines, hasItem(startsWith("-\tbatch\t")));
+    }
+
+    /**
+     * profiler is disabled.
+     */
+    @Test
+    public void disabled() {
+        jobflowProcessors.add(new SimpleJobflowProcessor());
+        externalPortProcessors.add(new SimpleExternalPortProcessor());
+        compilerParticipants.add(new CompilerProfilerParticipant());
+
+        Batch batch = new Batch(batchInfo("testing"));
+        batch.addElement(jobflow("j0"));
+
+        BatchCompiler.Context context = new BatchCompiler.Context(context(true), container());
+        new BasicBatchCompiler().compile(context, batch);
+
+        File file = context.getOutput().toFile(CompilerProfilerParticipant.LOCATION);
+        assertThat(file.exists(), is(false));
+    }
+
+    /**
+     * the session is closed if the batch compilation was aborted.
+     */
+    @Test
+    public void abort() {
+        CompilerProfilerParticipant participant = new CompilerProfilerParticipant();
+        jobflowProcessors.add((context, source) -> {
+            throw new IOException("testing");
+        });
+        externalPortProcessors.add(new SimpleExternalPortProcessor());
+        compilerParticipants.add(participant);
+        options.withProperty(CompilerProfilerParticipant.KEY_ENABLED, "true");
+
+        Batch batch = new Batch(batchInfo("testing"));
+        batch.addElement(jobflow("j0"));
+
+        BatchCompiler.Context context = new BatchCompiler.Context(context(true), container());
+        try {
+            new BasicBatchCompiler().compile(context, batch);
+            fail();
+        } catch (DiagnosticException e) {
+            // ok.
+        }
+        assertThat(participant.isActive("testing"), is(false));
+        assertThat(context.getExtension(CompilerProfiler.class), is(nullValue()));
+
+        File file = context.getOutput().toFile(CompilerProfilerParticipant.LOCATION);
+        assertThat(file.exists(), is(false));
+    }
+
+    private static List<String> read(BatchCompiler.Context context) throws IOException {
+        File file = context.getOutput().toFile(CompilerProfilerParticipant.LOCATION);
+        assertThat(file.exists(), is(true));
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+}
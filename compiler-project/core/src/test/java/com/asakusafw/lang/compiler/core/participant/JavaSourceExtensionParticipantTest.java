@@ -69,6 +69,93 @@ public class JavaSourceExtensionParticipantTest extends CompilerTestRoot {
         }
     }
 
+    /**
+     * w/ in-memory Java sources.
+     * @throws Exception if failed
+     */
+    @Test
+    public void memory() throws Exception {
+        ClassDescription aClass = new ClassDescription("com.example.JavaSourceExtension");
+        initialize(aClass, new String[] {
+                "package com.example;",
+                String.format(
+                        "public class %s implements java.util.concurrent.Callable<String> {",
+                        aClass.getSimpleName()),
+                "    public String call() { return \"a\"; }",
+                "}",
+        });
+        options.withProperty(JavaSourceExtensionParticipant.KEY_MEMORY, "true");
+        FileContainer output = container();
+        JobflowCompiler.Context context = new JobflowCompiler.Context(context(true), output);
+        new BasicJobflowCompiler().compile(
+                context,
+                batchInfo("b"),
+                jobflow("testing"));
+
+        try (URLClassLoader loader = loader(output.getBasePath())) {
+            Object result = aClass.resolve(loader).asSubclass(Callable.class).newInstance().call();
+            assertThat(result, is((Object) "a"));
+        }
+    }
+
+    /**
+     * w/o class path index.
+     * @throws Exception if failed
+     */
+    @Test
+    public void classpath_index_disabled() throws Exception {
+        ClassDescription aClass = new ClassDescription("com.example.JavaSourceExtension");
+        initialize(aClass, new String[] {
+                "package com.example;",
+                String.format(
+                        "public class %s implements java.util.concurrent.Callable<String> {",
+                        aClass.getSimpleName()),
+                "    public String call() { return \"a\"; }",
+                "}",
+        });
+        options.withProperty(JavaSourceExtensionParticipant.KEY_CLASSPATH_INDEX, "false");
+        FileContainer output = container();
+        JobflowCompiler.Context context = new JobflowCompiler.Context(context(true), output);
+        new BasicJobflowCompiler().compile(
+                context,
+                batchInfo("b"),
+                jobflow("testing"));
+
+        try (URLClassLoader loader = loader(output.getBasePath())) {
+            Object result = aClass.resolve(loader).asSubclass(Callable.class).newInstance().call();
+            assertThat(result, is((Object) "a"));
+        }
+    }
+
+    /**
+     * w/ parallel Java compiler tasks.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel() throws Exception {
+        ClassDescription aClass = new ClassDescription("com.example.JavaSourceExtension");
+        initialize(aClass, new String[] {
+                "package com.example;",
+                String.format(
+                        "public class %s implements java.util.concurrent.Callable<String> {",
+                        aClass.getSimpleName()),
+                "    public String call() { return \"a\"; }",
+                "}",
+        });
+        options.withProperty(JavaSourceExtensionParticipant.KEY_PARALLELISM, "4");
+        FileContainer output = container();
+        JobflowCompiler.Context context = new JobflowCompiler.Context(context(true), output);
+        new BasicJobflowCompiler().compile(
+                context,
+                batchInfo("b"),
+                jobflow("testing"));
+
+        try (URLClassLoader loader = loader(output.getBasePath())) {
+            Object result = aClass.resolve(loader).asSubclass(Callable.class).newInstance().call();
+            assertThat(result, is((Object) "a"));
+        }
+    }
+
     /**
      * w/ invalid version
      * @throws Exception if failed
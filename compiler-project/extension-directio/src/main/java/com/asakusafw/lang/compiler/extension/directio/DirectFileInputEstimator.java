@@ -0,0 +1,286 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.extension.directio;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.api.CompilerOptions;
+import com.asakusafw.lang.compiler.model.graph.ExternalInput;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimate;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimator;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimators;
+import com.asakusafw.lang.compiler.optimizer.basic.BasicExternalInputEstimator;
+import com.asakusafw.lang.compiler.optimizer.basic.OperatorEstimatorBinding;
+
+/**
+ * Estimates size of Direct I/O file inputs from the actual files.
+ * <p>
+ * This maps the base path of each Direct I/O file input into a file system path, and then sums up
+ * the size of files which match its resource pattern.
+ * The resource pattern is considered as an upper bound: its variables match any names,
+ * and {@code "**"} matches all files in the base path.
+ * If the input is not mapped to any file systems, or there are no such files,
+ * this falls back to {@link BasicExternalInputEstimator}, which only considers the data size hint.
+ * </p>
+ * <h3> compiler options </h3>
+ * <ul>
+ * <li> {@code directio.input.estimator.root} -
+ *      the file system path (URI) of the Direct I/O root, or not defined to disable it </li>
+ * <li> {@code directio.input.estimator.path.<base-path>} -
+ *      the file system path (URI) of the Direct I/O base path </li>
+ * </ul>
+ * @since 0.4.0
+ */
+public class DirectFileInputEstimator extends OperatorEstimatorBinding implements OperatorEstimator {
+
+    static final Logger LOG = LoggerFactory.getLogger(DirectFileInputEstimator.class);
+
+    static final String PREFIX_OPTION = DirectFileIoPortProcessor.PREFIX_OPTION + "input.estimator."; //$NON-NLS-1$
+
+    /**
+     * The compiler option key of the file system path of the Direct I/O root.
+     */
+    public static final String KEY_ROOT = PREFIX_OPTION + "root"; //$NON-NLS-1$
+
+    /**
+     * The compiler option key prefix of the file system path of each Direct I/O base path.
+     */
+    public static final String PREFIX_KEY_PATH = PREFIX_OPTION + "path."; //$NON-NLS-1$
+
+    private final OperatorEstimator fallback;
+
+    /**
+     * Creates a new instance.
+     */
+    public DirectFileInputEstimator() {
+        this(new BasicExternalInputEstimator());
+    }
+
+    /**
+     * Creates a new instance.
+     * @param fallback the estimator for inputs whose files are not available
+     */
+    public DirectFileInputEstimator(OperatorEstimator fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Collection<String> getTargetInputs() {
+        return Collections.singleton(DirectFileIoConstants.MODULE_NAME);
+    }
+
+    @Override
+    public OperatorEstimator getEngine() {
+        return this;
+    }
+
+    @Override
+    public void perform(Context context, Operator operator) {
+        if (operator instanceof ExternalInput) {
+            ExternalInput input = (ExternalInput) operator;
+            if (input.isExternal() && DirectFileIoModels.isSupported(input.getInfo())) {
+                double size = estimate(context, input);
+                if (Double.isNaN(size) == false) {
+                    OperatorEstimators.putSize(context, input, size);
+                    return;
+                }
+            }
+        }
+        fallback.perform(context, operator);
+    }
+
+    private static double estimate(Context context, ExternalInput operator) {
+        NavigableMap<String, String> mapping = getMapping(context.getOptions());
+        if (mapping.isEmpty()) {
+            return OperatorEstimate.UNKNOWN_SIZE;
+        }
+        DirectFileInputModel model;
+        try {
+            model = DirectFileIoModels.resolve(operator.getInfo());
+        } catch (IllegalArgumentException e) {
+            LOG.debug("failed to resolve Direct I/O input: {}", operator, e); //$NON-NLS-1$
+            return OperatorEstimate.UNKNOWN_SIZE;
+        }
+        String root = resolveBasePath(mapping, model.getBasePath());
+        if (root == null) {
+            LOG.debug("Direct I/O base path is not mapped: {}", model.getBasePath()); //$NON-NLS-1$
+            return OperatorEstimate.UNKNOWN_SIZE;
+        }
+        String glob = toGlob(model.getResourcePattern());
+        try {
+            long size = FileSizes.compute(root, glob);
+            if (size < 0) {
+                LOG.debug("Direct I/O input files are not found: {} ({})", root, glob); //$NON-NLS-1$
+                return OperatorEstimate.UNKNOWN_SIZE;
+            }
+            LOG.debug("estimated Direct I/O input size: {} ({}) => {}bytes", root, glob, size); //$NON-NLS-1$
+            return size;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to estimate Direct I/O input size: {0} ({1})",
+                    operator.getName(),
+                    root), e);
+            return OperatorEstimate.UNKNOWN_SIZE;
+        } catch (NoClassDefFoundError e) {
+            LOG.debug("Hadoop file system is not available", e); //$NON-NLS-1$
+            return OperatorEstimate.UNKNOWN_SIZE;
+        }
+    }
+
+    private static NavigableMap<String, String> getMapping(CompilerOptions options) {
+        NavigableMap<String, String> results = new TreeMap<>();
+        String root = options.get(KEY_ROOT, null);
+        if (root != null && root.trim().isEmpty() == false) {
+            results.put("", root.trim()); //$NON-NLS-1$
+        }
+        for (Map.Entry<String, String> entry : options.getProperties(PREFIX_KEY_PATH).entrySet()) {
+            String basePath = normalize(entry.getKey().substring(PREFIX_KEY_PATH.length()));
+            String value = entry.getValue().trim();
+            if (value.isEmpty() == false) {
+                results.put(basePath, value);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the file system path of the Direct I/O base path.
+     * @param mapping the Direct I/O base path prefixes and their file system paths
+     * @param basePath the target base path
+     * @return the file system path, or {@code null} if the base path is not mapped
+     */
+    static String resolveBasePath(NavigableMap<String, String> mapping, String basePath) {
+        String normalized = normalize(basePath);
+        for (Map.Entry<String, String> entry : mapping.headMap(normalized, true).descendingMap().entrySet()) {
+            String prefix = entry.getKey();
+            String rest;
+            if (prefix.isEmpty()) {
+                rest = normalized;
+            } else if (normalized.equals(prefix)) {
+                rest = ""; //$NON-NLS-1$
+            } else if (normalized.startsWith(prefix + '/')) {
+                rest = normalized.substring(prefix.length() + 1);
+            } else {
+                continue;
+            }
+            String root = entry.getValue();
+            if (rest.isEmpty()) {
+                return root;
+            }
+            return root.endsWith("/") ? root + rest : root + '/' + rest; //$NON-NLS-1$
+        }
+        return null;
+    }
+
+    private static String normalize(String path) {
+        String result = path.trim();
+        while (result.startsWith("/")) { //$NON-NLS-1$
+            result = result.substring(1);
+        }
+        while (result.endsWith("/")) { //$NON-NLS-1$
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Converts a Direct I/O resource pattern into a glob pattern of Hadoop file system.
+     * @param pattern the resource pattern
+     * @return the glob pattern, or {@code null} if the pattern may match any files in the base path
+     */
+    static String toGlob(String pattern) {
+        StringBuilder buf = new StringBuilder();
+        boolean selection = false;
+        for (int i = 0, n = pattern.length(); i < n; i++) {
+            char c = pattern.charAt(i);
+            if (c == '$' && i + 1 < n && pattern.charAt(i + 1) == '{') {
+                int end = pattern.indexOf('}', i);
+                if (end < 0) {
+                    return null;
+                }
+                // batch arguments are not available at compile time
+                buf.append('*');
+                i = end;
+            } else if (c == '*') {
+                if (i + 1 < n && pattern.charAt(i + 1) == '*') {
+                    return null;
+                }
+                buf.append('*');
+            } else if (c == '{') {
+                selection = true;
+                buf.append('{');
+            } else if (c == '}') {
+                selection = false;
+                buf.append('}');
+            } else if (c == '|' && selection) {
+                buf.append(',');
+            } else if (c == '?' || c == '[' || c == ']' || c == '\\' || c == ',') {
+                buf.append('\\').append(c);
+            } else {
+                buf.append(c);
+            }
+        }
+        String result = buf.toString();
+        return result.isEmpty() ? null : result;
+    }
+
+    // isolates Hadoop classes, which may not be on the compiler class path
+    private static final class FileSizes {
+
+        private FileSizes() {
+            return;
+        }
+
+        static long compute(String root, String glob) throws IOException {
+            Path path = glob == null ? new Path(root) : new Path(root, glob);
+            FileSystem fs = path.getFileSystem(new Configuration());
+            FileStatus[] stats;
+            if (glob != null) {
+                stats = fs.globStatus(path);
+            } else if (fs.exists(path)) {
+                stats = new FileStatus[] { fs.getFileStatus(path) };
+            } else {
+                stats = null;
+            }
+            if (stats == null || stats.length == 0) {
+                return -1L;
+            }
+            long total = 0L;
+            for (FileStatus stat : stats) {
+                if (stat.isDirectory()) {
+                    total += fs.getContentSummary(stat.getPath()).getLength();
+                } else {
+                    total += stat.getLen();
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.extension.directio;
+
+import static com.asakusafw.lang.compiler.model.description.Descriptions.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.lang.compiler.api.CompilerOptions;
+import com.asakusafw.lang.compiler.api.testing.MockJobflowProcessorContext;
+import com.asakusafw.lang.compiler.mapreduce.testing.mock.MockData;
+import com.asakusafw.lang.compiler.mapreduce.testing.mock.MockDataFormat;
+import com.asakusafw.lang.compiler.model.graph.ExternalInput;
+import com.asakusafw.lang.compiler.model.info.ExternalInputInfo;
+import com.asakusafw.lang.compiler.model.info.ExternalInputInfo.DataSize;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimate;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimator;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimators;
+import com.asakusafw.lang.compiler.optimizer.OptimizerContext;
+import com.asakusafw.lang.compiler.optimizer.adapter.OptimizerContextAdapter;
+import com.asakusafw.lang.compiler.optimizer.basic.BasicExternalInputEstimator;
+import com.asakusafw.runtime.directio.DataFilter;
+import com.asakusafw.runtime.directio.DataFormat;
+import com.asakusafw.vocabulary.directio.DirectFileInputDescription;
+
+/**
+ * Test for {@link DirectFileInputEstimator}.
+ */
+public class DirectFileInputEstimatorTest {
+
+    /**
+     * temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
+    private final OperatorEstimator fallback = new BasicExternalInputEstimator(
+            Collections.singletonMap(DataSize.TINY, 12.0));
+
+    /**
+     * resource pattern to glob.
+     */
+    @Test
+    public void glob() {
+        assertThat(DirectFileInputEstimator.toGlob("data.csv"), is("data.csv"));
+        assertThat(DirectFileInputEstimator.toGlob("*.csv"), is("*.csv"));
+        assertThat(DirectFileInputEstimator.toGlob("{a|b}/*.csv"), is("{a,b}/*.csv"));
+        assertThat(DirectFileInputEstimator.toGlob("${date}/*.csv"), is("*/*.csv"));
+        assertThat(DirectFileInputEstimator.toGlob("a?[b].csv"), is("a\\?\\[b\\].csv"));
+    }
+
+    /**
+     * resource pattern which matches all files.
+     */
+    @Test
+    public void glob_all() {
+        assertThat(DirectFileInputEstimator.toGlob("**/*.csv"), is(nullValue()));
+        assertThat(DirectFileInputEstimator.toGlob(""), is(nullValue()));
+    }
+
+    /**
+     * resolve base paths.
+     */
+    @Test
+    public void base_path() {
+        NavigableMap<String, String> mapping = new TreeMap<>();
+        mapping.put("", "file:/root");
+        mapping.put("master", "hdfs://nn/master/");
+        mapping.put("master/a", "file:/a");
+
+        assertThat(DirectFileInputEstimator.resolveBasePath(mapping, "other"), is("file:/root/other"));
+        assertThat(DirectFileInputEstimator.resolveBasePath(mapping, "master"), is("hdfs://nn/master/"));
+        assertThat(DirectFileInputEstimator.resolveBasePath(mapping, "master/b"), is("hdfs://nn/master/b"));
+        assertThat(DirectFileInputEstimator.resolveBasePath(mapping, "/master/a/c/"), is("file:/a/c"));
+        assertThat(DirectFileInputEstimator.resolveBasePath(mapping, "master-x"), is("file:/root/master-x"));
+    }
+
+    /**
+     * resolve base paths without root.
+     */
+    @Test
+    public void base_path_unmapped() {
+        NavigableMap<String, String> mapping = new TreeMap<>();
+        mapping.put("master", "file:/master");
+
+        assertThat(DirectFileInputEstimator.resolveBasePath(mapping, "other"), is(nullValue()));
+        assertThat(DirectFileInputEstimator.resolveBasePath(mapping, "mastery"), is(nullValue()));
+    }
+
+    /**
+     * estimate from matched files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void perform_files() throws Exception {
+        File root = temporary.newFolder();
+        put(new File(root, "base/a.csv"), 100);
+        put(new File(root, "base/b.csv"), 20);
+        put(new File(root, "base/c.txt"), 3);
+        put(new File(root, "other/d.csv"), 4);
+
+        ExternalInput input = input("base", "*.csv");
+        double size = estimate(context(DirectFileInputEstimator.KEY_ROOT, root.toURI().toString()), input);
+        assertThat(size, closeTo(120.0, 0.0));
+    }
+
+    /**
+     * estimate from all files in the base path.
+     * @throws Exception if failed
+     */
+    @Test
+    public void perform_directory() throws Exception {
+        File root = temporary.newFolder();
+        put(new File(root, "base/a.csv"), 100);
+        put(new File(root, "base/x/b.csv"), 20);
+        put(new File(root, "other/c.csv"), 3);
+
+        ExternalInput input = input("base", "**/*.csv");
+        double size = estimate(context(DirectFileInputEstimator.KEY_ROOT, root.toURI().toString()), input);
+        assertThat(size, closeTo(120.0, 0.0));
+    }
+
+    /**
+     * estimate from files in the mapped base path.
+     * @throws Exception if failed
+     */
+    @Test
+    public void perform_base_path() throws Exception {
+        File root = temporary.newFolder();
+        put(new File(root, "a.csv"), 100);
+
+        ExternalInput input = input("base", "*.csv");
+        String key = DirectFileInputEstimator.PREFIX_KEY_PATH + "base";
+        double size = estimate(context(key, root.toURI().toString()), input);
+        assertThat(size, closeTo(100.0, 0.0));
+    }
+
+    /**
+     * falls back if there are no matched files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void perform_fallback_missing() throws Exception {
+        File root = temporary.newFolder();
+        put(new File(root, "base/a.txt"), 100);
+
+        ExternalInput input = input("base", "*.csv");
+        double size = estimate(context(DirectFileInputEstimator.KEY_ROOT, root.toURI().toString()), input);
+        assertThat(size, closeTo(12.0, 0.0));
+    }
+
+    /**
+     * falls back if the base path is not mapped.
+     * @throws Exception if failed
+     */
+    @Test
+    public void perform_fallback_unmapped() throws Exception {
+        ExternalInput input = input("base", "*.csv");
+        double size = estimate(context(), input);
+        assertThat(size, closeTo(12.0, 0.0));
+    }
+
+    private OptimizerContext context(String... keyValuePairs) throws IOException {
+        CompilerOptions.Builder builder = CompilerOptions.builder();
+        for (int i = 0; i < keyValuePairs.length; i += 2) {
+            builder.withProperty(keyValuePairs[i + 0], keyValuePairs[i + 1]);
+        }
+        MockJobflowProcessorContext context = new MockJobflowProcessorContext(
+                builder.build(),
+                getClass().getClassLoader(),
+                temporary.newFolder());
+        return new OptimizerContextAdapter(context, "testing");
+    }
+
+    private double estimate(OptimizerContext context, ExternalInput input) {
+        OperatorEstimate estimate = OperatorEstimators.apply(
+                context,
+                new DirectFileInputEstimator(fallback),
+                Collections.singleton(input)).get(input);
+        return estimate.getSize(input.getOperatorPort());
+    }
+
+    private static ExternalInput input(String basePath, String resourcePattern) {
+        DirectFileInputModel model = new DirectFileInputModel(new InputDesc(basePath, resourcePattern));
+        return ExternalInput.newInstance("in", new ExternalInputInfo.Basic(
+                classOf(InputDesc.class),
+                DirectFileIoConstants.MODULE_NAME,
+                classOf(MockData.class),
+                DataSize.TINY,
+                valueOf(model)));
+    }
+
+    private static void put(File file, int size) throws IOException {
+        assertThat(file.getParentFile().mkdirs() || file.getParentFile().isDirectory(), is(true));
+        Files.write(file.toPath(), new byte[size]);
+    }
+
+    private static class InputDesc extends DirectFileInputDescription {
+
+        private final String basePath;
+
+        private final String resourcePattern;
+
+        InputDesc(String basePath, String resourcePattern) {
+            this.basePath = basePath;
+            this.resourcePattern = resourcePattern;
+        }
+
+        @Override
+        public Class<?> getModelType() {
+            return MockData.class;
+        }
+
+        @Override
+        public String getBasePath() {
+            return basePath;
+        }
+
+        @Override
+        public String getResourcePattern() {
+            return resourcePattern;
+        }
+
+        @Override
+        public Class<? extends DataFormat<?>> getFormat() {
+            return MockDataFormat.class;
+        }
+
+        @Override
+        public Class<? extends DataFilter<?>> getFilter() {
+            return null;
+        }
+    }
+}
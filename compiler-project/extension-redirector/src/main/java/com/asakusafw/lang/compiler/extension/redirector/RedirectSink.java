@@ -0,0 +1,95 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.extension.redirector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.packaging.ContentProvider;
+import com.asakusafw.lang.compiler.packaging.RawZipEntry;
+import com.asakusafw.lang.compiler.packaging.ResourceSink;
+import com.asakusafw.lang.compiler.redirector.ClassRewriter;
+
+/**
+ * An implementation of {@link ResourceSink} which redirects API invocations in class files on the fly.
+ * @since 0.4.0
+ */
+public class RedirectSink implements ResourceSink {
+
+    static final Logger LOG = LoggerFactory.getLogger(RedirectSink.class);
+
+    static final String CLASS_EXTENSION = ".class"; //$NON-NLS-1$
+
+    private final ResourceSink delegate;
+
+    private final ClassRewriter rewriter;
+
+    /**
+     * Creates a new instance.
+     * @param delegate the destination sink
+     * @param rewriter the class file rewriter
+     */
+    public RedirectSink(ResourceSink delegate, ClassRewriter rewriter) {
+        this.delegate = delegate;
+        this.rewriter = rewriter;
+    }
+
+    @Override
+    public void add(Location location, InputStream contents) throws IOException {
+        if (isTarget(location)) {
+            LOG.trace("rewrite class: {}", location); //$NON-NLS-1$
+            delegate.add(location, output -> rewriter.rewrite(contents, output));
+        } else {
+            delegate.add(location, contents);
+        }
+    }
+
+    @Override
+    public void add(Location location, ContentProvider provider) throws IOException {
+        if (isTarget(location)) {
+            LOG.trace("rewrite class: {}", location); //$NON-NLS-1$
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            provider.writeTo(buffer);
+            delegate.add(location, output -> rewriter.rewrite(new ByteArrayInputStream(buffer.toByteArray()), output));
+        } else {
+            delegate.add(location, provider);
+        }
+    }
+
+    @Override
+    public boolean addRaw(Location location, RawZipEntry entry) throws IOException {
+        if (isTarget(location)) {
+            // class files must be decompressed to rewrite them
+            return false;
+        }
+        return delegate.addRaw(location, entry);
+    }
+
+    private static boolean isTarget(Location location) {
+        return location.getName().endsWith(CLASS_EXTENSION);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -18,7 +18,10 @@ package com.asakusafw.lang.compiler.extension.redirector;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,12 +37,32 @@ import com.asakusafw.lang.compiler.core.BatchCompiler.Context;
 import com.asakusafw.lang.compiler.core.basic.AbstractCompilerParticipant;
 import com.asakusafw.lang.compiler.core.basic.JobflowPackager;
 import com.asakusafw.lang.compiler.model.graph.Batch;
+import com.asakusafw.lang.compiler.packaging.ResourceSinkFilter;
+import com.asakusafw.lang.compiler.redirector.ClassRewriter;
 import com.asakusafw.lang.compiler.redirector.RedirectRule;
 import com.asakusafw.lang.compiler.redirector.ZipRewriter;
 
 /**
  * Redirects API accesses into another classes.
  * An implementation of {@link BatchProcessor} for redirecting API invocations.
+ *
+ * <h3> compiler options </h3>
+ * <ul>
+ * <li> {@code redirector.rule.<from>} (optional)
+ *   <ul>
+ *   <li> redirects API invocations from the class {@code <from>} into the class of the property value </li>
+ *   </ul>
+ * </li>
+ * <li> {@code redirector.streaming} (optional)
+ *   <ul>
+ *   <li> whether or not class files are rewritten while the jobflow packages are being written </li>
+ *   <li> if the batch compiler did not apply the rewriter to some packages,
+ *        this rewrites the finished packages after the batch was compiled instead </li>
+ *   <li> {@code false} - rewrites the finished jobflow packages after the batch was compiled </li>
+ *   <li> <em>default value</em>: {@code true} </li>
+ *   </ul>
+ * </li>
+ * </ul>
  */
 public class RedirectorParticipant extends AbstractCompilerParticipant {
 
@@ -50,31 +73,95 @@ public class RedirectorParticipant extends AbstractCompilerParticipant {
      */
     public static final String KEY_RULE_PREFIX = "redirector.rule."; //$NON-NLS-1$
 
+    /**
+     * The compiler option key of whether or not class files are rewritten while packaging.
+     * @since 0.4.0
+     */
+    public static final String KEY_STREAMING = "redirector.streaming"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_STREAMING}.
+     * @since 0.4.0
+     */
+    public static final boolean DEFAULT_STREAMING = true;
+
+    private final Map<String, Set<Location>> streamingSinks = new ConcurrentHashMap<>();
+
+    @Override
+    public void beforeBatch(Context context, Batch batch) {
+        RedirectRule rule = extractRule(context.getOptions());
+        if (rule.isEmpty() || isStreaming(context.getOptions()) == false) {
+            return;
+        }
+        LOG.debug("redirecting API invocations while packaging: {}", batch.getBatchId()); //$NON-NLS-1$
+        ClassRewriter rewriter = new ClassRewriter(rule);
+        Set<Location> redirected = ConcurrentHashMap.newKeySet();
+        streamingSinks.put(batch.getBatchId(), redirected);
+        ResourceSinkFilter filter = (location, sink) -> {
+            redirected.add(location);
+            return new RedirectSink(sink, rewriter);
+        };
+        ResourceSinkFilter current = context.getExtension(ResourceSinkFilter.class);
+        if (current != null) {
+            filter = current.andThen(filter);
+        }
+        context.registerExtension(ResourceSinkFilter.class, filter);
+    }
+
+    @Override
+    public void abortBatch(Context context, Batch batch) {
+        streamingSinks.remove(batch.getBatchId());
+    }
+
     @Override
     public void afterBatch(Context context, Batch batch, BatchReference reference) {
+        Set<Location> streaming = streamingSinks.remove(batch.getBatchId());
         RedirectRule rule = extractRule(context.getOptions());
         if (rule.isEmpty()) {
             return;
         }
-        ZipRewriter rewriter = new ZipRewriter(rule);
-        LOG.debug("redirecting API invocations: {}", batch.getBatchId()); //$NON-NLS-1$
+        Map<Location, File> targets = new LinkedHashMap<>();
         for (JobflowReference jobflow : reference.getJobflows()) {
             Location location = JobflowPackager.getLibraryLocation(jobflow.getFlowId());
             File file = context.getOutput().toFile(location);
             if (file.isFile()) {
-                try {
-                    rewriter.rewrite(file);
-                } catch (IOException e) {
-                    throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
-                            "error occurred while rewriting jobflow JAR file: {0}",
-                            jobflow.getFlowId()), e);
-                }
+                targets.put(location, file);
             } else {
                 LOG.warn(MessageFormat.format(
                         "jobflow library file is not found: {0}",
                         file));
             }
         }
+        File embedded = context.getOutput().toFile(JobflowPackager.EMBEDDED_LIBRARY);
+        if (embedded.isFile()) {
+            targets.put(JobflowPackager.EMBEDDED_LIBRARY, embedded);
+        }
+        if (streaming != null) {
+            targets.keySet().removeAll(streaming);
+            if (targets.isEmpty()) {
+                LOG.debug("API invocations were redirected while packaging: {}", batch.getBatchId()); //$NON-NLS-1$
+                return;
+            }
+            LOG.warn(MessageFormat.format(
+                    "some packages were not redirected while packaging, rewrites them instead: {0} ({1})",
+                    batch.getBatchId(),
+                    targets.keySet()));
+        }
+        ZipRewriter rewriter = new ZipRewriter(rule);
+        LOG.debug("redirecting API invocations: {}", batch.getBatchId()); //$NON-NLS-1$
+        for (File file : targets.values()) {
+            try {
+                rewriter.rewrite(file);
+            } catch (IOException e) {
+                throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                        "error occurred while rewriting JAR file: {0}",
+                        file), e);
+            }
+        }
+    }
+
+    private static boolean isStreaming(CompilerOptions options) {
+        return options.get(KEY_STREAMING, DEFAULT_STREAMING);
     }
 
     private static RedirectRule extractRule(CompilerOptions options) {
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.extension.redirector;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.extension.redirector.mock.MockCallee0;
+import com.asakusafw.lang.compiler.extension.redirector.mock.MockCallee1;
+import com.asakusafw.lang.compiler.extension.redirector.mock.MockCaller;
+import com.asakusafw.lang.compiler.packaging.ContentProvider;
+import com.asakusafw.lang.compiler.packaging.RawZipEntry;
+import com.asakusafw.lang.compiler.packaging.ResourceSink;
+import com.asakusafw.lang.compiler.packaging.ZipSink;
+import com.asakusafw.lang.compiler.redirector.ClassRewriter;
+import com.asakusafw.lang.compiler.redirector.RedirectRule;
+
+/**
+ * Test for {@link RedirectSink}.
+ */
+public class RedirectSinkTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ResourceSink sink = new RedirectSink(new ZipSink(buffer), rewriter())) {
+            sink.add(Location.of("a.bin"), new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+            sink.add(location(MockCaller.class), new ByteArrayInputStream(VolatileClassLoader.dump(MockCaller.class)));
+        }
+        Map<String, byte[]> contents = dump(buffer);
+        assertThat(contents, hasEntry("a.bin", new byte[] { 1, 2, 3 }));
+        assertThat(apply(contents), is("0:1"));
+    }
+
+    /**
+     * contents are provided by {@link ContentProvider}.
+     * @throws Exception if failed
+     */
+    @Test
+    public void provider() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] bin = VolatileClassLoader.dump(MockCaller.class);
+        try (ResourceSink sink = new RedirectSink(new ZipSink(buffer), rewriter())) {
+            sink.add(Location.of("a.bin"), output -> output.write(new byte[] { 1, 2, 3 }));
+            sink.add(location(MockCaller.class), output -> output.write(bin));
+        }
+        Map<String, byte[]> contents = dump(buffer);
+        assertThat(contents, hasEntry("a.bin", new byte[] { 1, 2, 3 }));
+        assertThat(apply(contents), is("0:1"));
+    }
+
+    /**
+     * raw class file entries are rejected.
+     * @throws Exception if failed
+     */
+    @Test
+    public void raw() throws Exception {
+        List<Location> accepted = new ArrayList<>();
+        ResourceSink delegate = new ResourceSink() {
+            @Override
+            public void add(Location location, ContentProvider provider) throws IOException {
+                throw new AssertionError(location);
+            }
+            @Override
+            public boolean addRaw(Location location, RawZipEntry entry) throws IOException {
+                accepted.add(location);
+                return true;
+            }
+            @Override
+            public void close() {
+                return;
+            }
+        };
+        try (ResourceSink sink = new RedirectSink(delegate, rewriter())) {
+            assertThat(sink.addRaw(location(MockCaller.class), null), is(false));
+            assertThat(sink.addRaw(Location.of("a.bin"), null), is(true));
+        }
+        assertThat(accepted, contains(Location.of("a.bin")));
+    }
+
+    private static ClassRewriter rewriter() {
+        RedirectRule rule = new RedirectRule();
+        rule.add(MockCallee0.class.getName(), MockCallee1.class.getName());
+        return new ClassRewriter(rule);
+    }
+
+    private static Location location(Class<?> aClass) {
+        return Location.of(VolatileClassLoader.toPath(aClass));
+    }
+
+    private static Map<String, byte[]> dump(ByteArrayOutputStream buffer) throws IOException {
+        try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(buffer.toByteArray()))) {
+            return VolatileClassLoader.dump(input);
+        }
+    }
+
+    static String apply(Map<String, byte[]> contents) {
+        String name = VolatileClassLoader.toPath(MockCaller.class);
+        assertThat(contents, hasKey(name));
+        VolatileClassLoader loader = new VolatileClassLoader(RedirectSinkTest.class.getClassLoader());
+        Class<?> aClass = loader.forceLoad(contents.get(name));
+        try {
+            return aClass.newInstance().toString();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.extension.redirector;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.lang.compiler.api.CompilerOptions;
+import com.asakusafw.lang.compiler.api.basic.BasicBatchReference;
+import com.asakusafw.lang.compiler.api.basic.BasicJobflowReference;
+import com.asakusafw.lang.compiler.api.basic.TaskContainerMap;
+import com.asakusafw.lang.compiler.api.reference.BatchReference;
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.core.BatchCompiler;
+import com.asakusafw.lang.compiler.core.basic.JobflowPackager;
+import com.asakusafw.lang.compiler.extension.redirector.mock.MockCallee0;
+import com.asakusafw.lang.compiler.extension.redirector.mock.MockCallee1;
+import com.asakusafw.lang.compiler.extension.redirector.mock.MockCaller;
+import com.asakusafw.lang.compiler.model.description.ClassDescription;
+import com.asakusafw.lang.compiler.model.graph.Batch;
+import com.asakusafw.lang.compiler.model.info.BatchInfo;
+import com.asakusafw.lang.compiler.model.info.JobflowInfo;
+import com.asakusafw.lang.compiler.packaging.FileContainer;
+import com.asakusafw.lang.compiler.packaging.FileContainerRepository;
+import com.asakusafw.lang.compiler.packaging.ResourceSinkFilter;
+
+/**
+ * Test for {@link RedirectorParticipant}.
+ */
+public class RedirectorParticipantTest {
+
+    /**
+     * temporary folder for testing.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
+    /**
+     * class files are redirected while packaging.
+     * @throws Exception if failed
+     */
+    @Test
+    public void streaming() throws Exception {
+        BatchCompiler.Context context = context(CompilerOptions.builder());
+        RedirectorParticipant participant = new RedirectorParticipant();
+        participant.beforeBatch(context, batch());
+
+        ResourceSinkFilter filter = context.getExtension(ResourceSinkFilter.class);
+        assertThat(filter, is(notNullValue()));
+        File file = pack(context, filter);
+        assertThat(apply(file), is("0:1"));
+
+        byte[] packaged = Files.readAllBytes(file.toPath());
+        participant.afterBatch(context, batch(), reference());
+        assertThat(Files.readAllBytes(file.toPath()), is(packaged));
+        assertThat(apply(file), is("0:1"));
+    }
+
+    /**
+     * rewrites the finished packages if the streaming filter was not applied.
+     * @throws Exception if failed
+     */
+    @Test
+    public void streaming_fallback() throws Exception {
+        BatchCompiler.Context context = context(CompilerOptions.builder());
+        RedirectorParticipant participant = new RedirectorParticipant();
+        participant.beforeBatch(context, batch());
+
+        File file = pack(context, null);
+        assertThat(apply(file), is("0:0"));
+
+        participant.afterBatch(context, batch(), reference());
+        assertThat(apply(file), is("0:1"));
+    }
+
+    /**
+     * rewrites only the finished packages which the streaming filter was not applied to.
+     * @throws Exception if failed
+     */
+    @Test
+    public void streaming_partial() throws Exception {
+        BatchCompiler.Context context = context(CompilerOptions.builder());
+        RedirectorParticipant participant = new RedirectorParticipant();
+        participant.beforeBatch(context, batch());
+
+        ResourceSinkFilter filter = context.getExtension(ResourceSinkFilter.class);
+        File f0 = pack(context, "j0", filter);
+        File f1 = pack(context, "j1", null);
+        assertThat(apply(f0), is("0:1"));
+        assertThat(apply(f1), is("0:0"));
+
+        byte[] packaged = Files.readAllBytes(f0.toPath());
+        participant.afterBatch(context, batch(), reference("j0", "j1"));
+        assertThat(Files.readAllBytes(f0.toPath()), is(packaged));
+        assertThat(apply(f1), is("0:1"));
+    }
+
+    /**
+     * rewrites the finished packages if streaming is disabled.
+     * @throws Exception if failed
+     */
+    @Test
+    public void not_streaming() throws Exception {
+        BatchCompiler.Context context = context(CompilerOptions.builder()
+                .withProperty(RedirectorParticipant.KEY_STREAMING, "false"));
+        RedirectorParticipant participant = new RedirectorParticipant();
+        participant.beforeBatch(context, batch());
+        assertThat(context.getExtension(ResourceSinkFilter.class), is(nullValue()));
+
+        File file = pack(context, null);
+        assertThat(apply(file), is("0:0"));
+
+        participant.afterBatch(context, batch(), reference());
+        assertThat(apply(file), is("0:1"));
+    }
+
+    private BatchCompiler.Context context(CompilerOptions.Builder options) throws IOException {
+        options.withProperty(
+                RedirectorParticipant.KEY_RULE_PREFIX + MockCallee0.class.getName(),
+                MockCallee1.class.getName());
+        return new BatchCompiler.Context(
+                options.build(),
+                null,
+                null,
+                new FileContainer(temporary.newFolder()),
+                new FileContainerRepository(temporary.newFolder()));
+    }
+
+    private File pack(BatchCompiler.Context context, ResourceSinkFilter filter) throws IOException {
+        return pack(context, "j0", filter);
+    }
+
+    private File pack(BatchCompiler.Context context, String flowId, ResourceSinkFilter filter) throws IOException {
+        FileContainer jobflow = new FileContainer(temporary.newFolder());
+        jobflow.addResource(
+                Location.of(VolatileClassLoader.toPath(MockCaller.class)),
+                output -> output.write(VolatileClassLoader.dump(MockCaller.class)));
+        new JobflowPackager().process(
+                flowId, context.getOutput(), jobflow, Collections.emptyList(), null, filter);
+        return context.getOutput().toFile(JobflowPackager.getLibraryLocation(flowId));
+    }
+
+    private static Batch batch() {
+        return new Batch(info());
+    }
+
+    private static BatchReference reference() {
+        return reference("j0");
+    }
+
+    private static BatchReference reference(String... flowIds) {
+        List<BasicJobflowReference> jobflows = new ArrayList<>();
+        for (String flowId : flowIds) {
+            jobflows.add(new BasicJobflowReference(
+                    new JobflowInfo.Basic(flowId, new ClassDescription("Flow")),
+                    new TaskContainerMap(),
+                    Collections.emptySet()));
+        }
+        return new BasicBatchReference(info(), jobflows);
+    }
+
+    private static BatchInfo info() {
+        return new BatchInfo.Basic("testing", new ClassDescription("Testing"));
+    }
+
+    private static String apply(File file) throws IOException {
+        Map<String, byte[]> contents;
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(file))) {
+            contents = VolatileClassLoader.dump(input);
+        }
+        return RedirectSinkTest.apply(contents);
+    }
+}
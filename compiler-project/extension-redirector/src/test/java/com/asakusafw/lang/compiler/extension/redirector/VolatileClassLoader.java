@@ -0,0 +1,114 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.extension.redirector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+
+/**
+ * Volatile class loader for directly loading class binary.
+ */
+public class VolatileClassLoader extends ClassLoader {
+
+    /**
+     * Creates a new instance.
+     * @param parent the parent loader
+     */
+    public VolatileClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    /**
+     * Returns a resource path of the target class file.
+     * @param aClass the target class
+     * @return the class file resource path (relative from the classpath)
+     */
+    public static String toPath(Class<?> aClass) {
+        return aClass.getName().replace('.', '/') + ".class";
+    }
+
+    /**
+     * Returns the byte contents of the target class file.
+     * @param aClass the target class
+     * @return the class file contents
+     * @throws IOException if failed to obtain the contents by I/O error
+     */
+    public static byte[] dump(Class<?> aClass) throws IOException {
+        String path = toPath(aClass);
+        try (InputStream input = aClass.getClassLoader().getResourceAsStream(path)) {
+            if (input == null) {
+                throw new FileNotFoundException(path);
+            }
+            return consume(input);
+        }
+    }
+
+    /**
+     * Returns the contents of the ZIP archive.
+     * @param input the ZIP archive
+     * @return the entry contents
+     * @throws IOException if failed to read the archive
+     */
+    public static Map<String, byte[]> dump(ZipInputStream input) throws IOException {
+        Map<String, byte[]> results = new LinkedHashMap<>();
+        while (true) {
+            ZipEntry entry = input.getNextEntry();
+            if (entry == null) {
+                break;
+            }
+            if (entry.isDirectory()) {
+                continue;
+            }
+            results.put(entry.getName(), consume(input));
+        }
+        return results;
+    }
+
+    private static byte[] consume(InputStream contents) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (true) {
+            int read = contents.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            buf.write(buffer, 0, read);
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * Forcibly loads a class in this loader.
+     * @param contents the class file contents
+     * @return the loaded class
+     */
+    public Class<?> forceLoad(byte[] contents) {
+        ClassReader reader = new ClassReader(contents);
+        String binaryName = Type.getObjectType(reader.getClassName()).getClassName();
+        Class<?> loaded = defineClass(binaryName, contents, 0, contents.length);
+        resolveClass(loaded);
+        return loaded;
+    }
+}
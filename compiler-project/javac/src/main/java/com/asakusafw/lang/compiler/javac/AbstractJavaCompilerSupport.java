@@ -16,18 +16,25 @@
 package com.asakusafw.lang.compiler.javac;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
@@ -44,6 +51,7 @@ import org.slf4j.LoggerFactory;
 import com.asakusafw.lang.compiler.common.BasicDiagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
 import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.common.util.ConcurrentUtil;
 import com.asakusafw.lang.compiler.model.description.ClassDescription;
 
 /**
@@ -166,8 +174,96 @@ public abstract class AbstractJavaCompilerSupport implements JavaCompilerSupport
      */
     protected abstract Iterable<? extends JavaFileObject> getSourceFiles(JavaFileManager fileManager);
 
+    /**
+     * Returns the max number of Java compiler tasks which run concurrently.
+     * If this is greater than {@code 1}, the source files are partitioned into independent groups,
+     * and each group is compiled on its own Java compiler task.
+     * @return the max number of concurrent Java compiler tasks
+     * @since 0.4.0
+     */
+    protected int getParallelism() {
+        return 1;
+    }
+
     private void doCompile(JavaCompiler compiler) throws IOException {
         assert compiler != null;
+        int parallelism = getParallelism();
+        List<Set<URI>> partitions = parallelism <= 1 ? null : partition(compiler, parallelism);
+        List<Result> results;
+        if (partitions == null || partitions.size() <= 1) {
+            results = Collections.singletonList(compilePartition(compiler, null));
+        } else {
+            results = compileParallel(compiler, partitions);
+        }
+        report(results);
+    }
+
+    private List<Set<URI>> partition(JavaCompiler compiler, int parallelism) throws IOException {
+        List<URI> files = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<CharSequence> contents = new ArrayList<>();
+        try (JavaFileManager fileManager = getJavaFileManager(compiler, null)) {
+            for (JavaFileObject file : getSourceFiles(fileManager)) {
+                URI uri = file.toUri();
+                String path = uri.getPath();
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                if (name.endsWith(JAVA_EXTENSION)) {
+                    name = name.substring(0, name.length() - JAVA_EXTENSION.length());
+                }
+                files.add(uri);
+                names.add(name);
+                contents.add(file.getCharContent(true));
+            }
+        }
+        List<Set<URI>> results = new ArrayList<>();
+        for (List<Integer> group : SourcePartitioner.partition(names, contents, parallelism)) {
+            if (group.isEmpty() == false) {
+                Set<URI> partition = new HashSet<>();
+                for (int index : group) {
+                    partition.add(files.get(index));
+                }
+                results.add(partition);
+            }
+        }
+        LOG.debug("partitioned Java source files: files={}, partitions={}", files.size(), results.size()); //$NON-NLS-1$
+        return results;
+    }
+
+    private List<Result> compileParallel(JavaCompiler compiler, List<Set<URI>> partitions) throws IOException {
+        ExecutorService executor = ConcurrentUtil.newWorkerThreadPool(
+                "javac-%d", //$NON-NLS-1$
+                partitions.size());
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Set<URI> partition : partitions) {
+                futures.add(executor.submit(() -> compilePartition(compiler, partition)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        throw new IllegalStateException(cause);
+                    }
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("interrupted while compiling Java sources").initCause(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result compilePartition(JavaCompiler compiler, Set<URI> partition) throws IOException {
         DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
         try (JavaFileManager fileManager = getJavaFileManager(compiler, diagnostics)) {
             List<String> arguments = new ArrayList<>();
@@ -179,6 +275,19 @@ public abstract class AbstractJavaCompilerSupport implements JavaCompilerSupport
             Collections.addAll(arguments, "-encoding", getEncoding().name()); //$NON-NLS-1$
             arguments.addAll(getCompilerOptions());
 
+            Iterable<? extends JavaFileObject> sources = getSourceFiles(fileManager);
+            if (partition != null) {
+                // other partitions may be visible from the source path, but must not be generated twice
+                Collections.addAll(arguments, "-implicit:none"); //$NON-NLS-1$
+                List<JavaFileObject> filtered = new ArrayList<>();
+                for (JavaFileObject file : sources) {
+                    if (partition.contains(file.toUri())) {
+                        filtered.add(file);
+                    }
+                }
+                sources = filtered;
+            }
+
             StringWriter errors = new StringWriter();
             boolean success;
             try (PrintWriter pw = new PrintWriter(errors)) {
@@ -191,7 +300,7 @@ public abstract class AbstractJavaCompilerSupport implements JavaCompilerSupport
                             diagnostics,
                             arguments,
                             getAnnotationProcessors(),
-                            getSourceFiles(fileManager));
+                            sources);
                 } catch (RuntimeException e) {
                     throw new DiagnosticException(
                             com.asakusafw.lang.compiler.common.Diagnostic.Level.ERROR,
@@ -202,8 +311,16 @@ public abstract class AbstractJavaCompilerSupport implements JavaCompilerSupport
                 }
                 success = task.call();
             }
-            List<com.asakusafw.lang.compiler.common.Diagnostic> results = new ArrayList<>();
-            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            return new Result(success, diagnostics.getDiagnostics(), errors.toString());
+        }
+    }
+
+    private void report(List<Result> partitions) {
+        List<com.asakusafw.lang.compiler.common.Diagnostic> results = new ArrayList<>();
+        StringBuilder errors = new StringBuilder();
+        boolean success = true;
+        for (Result partition : partitions) {
+            for (Diagnostic<? extends JavaFileObject> diagnostic : partition.diagnostics) {
                 dumpDiagnostic(diagnostic);
                 switch (diagnostic.getKind()) {
                 case ERROR:
@@ -224,22 +341,26 @@ public abstract class AbstractJavaCompilerSupport implements JavaCompilerSupport
                     break;
                 }
             }
-            if (success == false) {
-                if (LOG.isWarnEnabled()) {
-                    try (Scanner scanner = new Scanner(errors.toString())) {
-                        while (scanner.hasNextLine()) {
-                            LOG.warn(scanner.nextLine());
-                        }
+            if (partition.success == false) {
+                success = false;
+                errors.append(partition.errors);
+            }
+        }
+        if (success == false) {
+            if (LOG.isWarnEnabled()) {
+                try (Scanner scanner = new Scanner(errors.toString())) {
+                    while (scanner.hasNextLine()) {
+                        LOG.warn(scanner.nextLine());
                     }
                 }
-                if (results.isEmpty()) {
-                    // fatal error
-                    throw new DiagnosticException(
-                            com.asakusafw.lang.compiler.common.Diagnostic.Level.ERROR,
-                            errors.toString());
-                } else {
-                    throw new DiagnosticException(results);
-                }
+            }
+            if (results.isEmpty()) {
+                // fatal error
+                throw new DiagnosticException(
+                        com.asakusafw.lang.compiler.common.Diagnostic.Level.ERROR,
+                        errors.toString());
+            } else {
+                throw new DiagnosticException(results);
             }
         }
     }
@@ -269,4 +390,19 @@ public abstract class AbstractJavaCompilerSupport implements JavaCompilerSupport
             }
         }
     }
+
+    private static final class Result {
+
+        final boolean success;
+
+        final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+        final String errors;
+
+        Result(boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics, String errors) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.errors = errors;
+        }
+    }
 }
@@ -50,6 +50,10 @@ public class BasicJavaCompilerSupport extends AbstractJavaCompilerSupport {
 
     private volatile String compliantVersion;
 
+    private volatile ClassPathIndex classPathIndex;
+
+    private volatile int parallelism = 1;
+
     /**
      * Creates a new instance.
      * @param sourcePath the source path
@@ -82,6 +86,31 @@ public class BasicJavaCompilerSupport extends AbstractJavaCompilerSupport {
         return this;
     }
 
+    /**
+     * Sets the shared index of the class path.
+     * If it is set, the Java compiler looks up the class path from the index instead of the library files.
+     * @param newValue the index of the class path, or {@code null} to disable it
+     * @return this
+     * @since 0.4.0
+     */
+    public BasicJavaCompilerSupport withClassPathIndex(ClassPathIndex newValue) {
+        this.classPathIndex = newValue;
+        return this;
+    }
+
+    /**
+     * Sets the max number of Java compiler tasks which run concurrently.
+     * If it is greater than {@code 1}, the source files are partitioned into groups without dependencies
+     * between each other, and the individual groups are compiled concurrently.
+     * @param newValue the max number of concurrent Java compiler tasks
+     * @return this
+     * @since 0.4.0
+     */
+    public BasicJavaCompilerSupport withParallelism(int newValue) {
+        this.parallelism = newValue;
+        return this;
+    }
+
     /**
      * Returns the source path.
      * @return the source path
@@ -115,6 +144,11 @@ public class BasicJavaCompilerSupport extends AbstractJavaCompilerSupport {
         return result;
     }
 
+    @Override
+    protected int getParallelism() {
+        return parallelism;
+    }
+
     @Override
     protected boolean isCompileRequired() {
         return isCompileRequired(sourcePath);
@@ -172,11 +206,15 @@ public class BasicJavaCompilerSupport extends AbstractJavaCompilerSupport {
                 getEncoding());
         files.setLocation(StandardLocation.SOURCE_PATH, Arrays.asList(sourcePath));
         files.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(destinationPath));
-        files.setLocation(StandardLocation.CLASS_PATH, classPath);
+        ClassPathIndex index = classPathIndex;
+        files.setLocation(StandardLocation.CLASS_PATH, index == null ? classPath : Collections.emptyList());
         List<File> boot = bootClassPath;
         if (boot != null) {
             files.setLocation(StandardLocation.PLATFORM_CLASS_PATH, boot);
         }
+        if (index != null) {
+            return index.wrap(files);
+        }
         return files;
     }
 
@@ -192,8 +230,9 @@ public class BasicJavaCompilerSupport extends AbstractJavaCompilerSupport {
     @Override
     protected Iterable<? extends JavaFileObject> getSourceFiles(JavaFileManager fileManager) {
         assert isCompileRequired();
-        assert fileManager instanceof StandardJavaFileManager;
-        StandardJavaFileManager files = (StandardJavaFileManager) fileManager;
+        JavaFileManager unwrapped = ClassPathIndex.unwrap(fileManager);
+        assert unwrapped instanceof StandardJavaFileManager;
+        StandardJavaFileManager files = (StandardJavaFileManager) unwrapped;
         List<File> sources = new ArrayList<>();
         collectSourceFiles(sources, sourcePath);
         return files.getJavaFileObjectsFromFiles(sources);
@@ -0,0 +1,326 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.javac;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of class files on the class path, which can be shared between Java compilers.
+ * <p>
+ * Each library archive is opened only once, and kept open until this index is closed.
+ * This class is thread-safe.
+ * </p>
+ * @since 0.4.0
+ */
+public class ClassPathIndex implements Closeable {
+
+    static final Logger LOG = LoggerFactory.getLogger(ClassPathIndex.class);
+
+    static final String CLASS_EXTENSION = JavaFileObject.Kind.CLASS.extension;
+
+    private final List<File> classPath;
+
+    private final AtomicInteger openCount = new AtomicInteger();
+
+    private final List<ZipFile> archives = new ArrayList<>();
+
+    private Map<String, List<Entry>> packages;
+
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance.
+     * @param classPath the class path
+     */
+    public ClassPathIndex(List<File> classPath) {
+        this.classPath = Collections.unmodifiableList(new ArrayList<>(classPath));
+    }
+
+    /**
+     * Returns the class path.
+     * @return the class path
+     */
+    public List<File> getClassPath() {
+        return classPath;
+    }
+
+    /**
+     * Returns the number of opened library archives.
+     * @return the number of opened library archives
+     */
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    /**
+     * Returns a {@link JavaFileManager} which looks up class files on the class path from this index.
+     * The class path location of the given file manager must be empty.
+     * @param fileManager the file manager for the other locations
+     * @return the created file manager
+     * @throws IOException if failed to build this index
+     */
+    public JavaFileManager wrap(JavaFileManager fileManager) throws IOException {
+        return new FileManager(fileManager, getPackages());
+    }
+
+    /**
+     * Returns the original file manager of {@link #wrap(JavaFileManager)}.
+     * @param fileManager the file manager
+     * @return the original file manager, or the given one if it is not wrapped
+     */
+    static JavaFileManager unwrap(JavaFileManager fileManager) {
+        if (fileManager instanceof FileManager) {
+            return ((FileManager) fileManager).getDelegate();
+        }
+        return fileManager;
+    }
+
+    private synchronized Map<String, List<Entry>> getPackages() throws IOException {
+        if (closed) {
+            throw new IOException("class path index has been already closed"); //$NON-NLS-1$
+        }
+        if (packages == null) {
+            LOG.debug("building class path index: {}", classPath); //$NON-NLS-1$
+            Map<String, List<Entry>> results = new HashMap<>();
+            Set<String> saw = new HashSet<>();
+            for (File file : classPath) {
+                if (file.isDirectory()) {
+                    collectDirectory(results, saw, file, null);
+                } else if (file.isFile()) {
+                    ZipFile archive = new ZipFile(file);
+                    openCount.incrementAndGet();
+                    archives.add(archive);
+                    collectArchive(results, saw, file, archive);
+                }
+            }
+            packages = results;
+        }
+        return packages;
+    }
+
+    private static void collectDirectory(
+            Map<String, List<Entry>> results, Set<String> saw,
+            File current, String prefix) {
+        File[] children = current.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = prefix == null ? child.getName() : prefix + '/' + child.getName();
+            if (child.isDirectory()) {
+                collectDirectory(results, saw, child, name);
+            } else if (name.endsWith(CLASS_EXTENSION) && saw.add(name)) {
+                put(results, new Entry(child.toURI(), name, null, child));
+            }
+        }
+    }
+
+    private static void collectArchive(
+            Map<String, List<Entry>> results, Set<String> saw,
+            File file, ZipFile archive) {
+        String base = "jar:" + file.toURI() + "!/"; //$NON-NLS-1$ //$NON-NLS-2$
+        Enumeration<? extends ZipEntry> entries = archive.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() == false && name.endsWith(CLASS_EXTENSION) && saw.add(name)) {
+                put(results, new Entry(URI.create(base + name), name, archive, null));
+            }
+        }
+    }
+
+    private static void put(Map<String, List<Entry>> results, Entry entry) {
+        int index = entry.path.lastIndexOf('/');
+        String packageName = index < 0 ? "" : entry.path.substring(0, index); //$NON-NLS-1$
+        results.computeIfAbsent(packageName, k -> new ArrayList<>()).add(entry);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        packages = null;
+        for (ZipFile archive : archives) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                LOG.warn(MessageFormat.format(
+                        "failed to close library: {0}",
+                        archive.getName()), e);
+            }
+        }
+        archives.clear();
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "ClassPathIndex({0})", //$NON-NLS-1$
+                classPath);
+    }
+
+    private static final class Entry {
+
+        final URI uri;
+
+        final String path;
+
+        final ZipFile archive;
+
+        final File file;
+
+        Entry(URI uri, String path, ZipFile archive, File file) {
+            this.uri = uri;
+            this.path = path;
+            this.archive = archive;
+            this.file = file;
+        }
+
+        String getBinaryName() {
+            return path.substring(0, path.length() - CLASS_EXTENSION.length()).replace('/', '.');
+        }
+
+        String getSimpleName() {
+            int index = path.lastIndexOf('/');
+            return index < 0 ? path : path.substring(index + 1);
+        }
+    }
+
+    private static final class IndexedFile extends SimpleJavaFileObject {
+
+        final Entry entry;
+
+        IndexedFile(Entry entry) {
+            // SimpleJavaFileObject requires a hierarchical URI, but "jar:" URIs are opaque
+            super(URI.create("classpath:///" + entry.path), Kind.CLASS); //$NON-NLS-1$
+            this.entry = entry;
+        }
+
+        @Override
+        public String getName() {
+            return entry.uri.toString();
+        }
+
+        @Override
+        public boolean isNameCompatible(String simpleName, Kind kind) {
+            return kind == Kind.CLASS && entry.getSimpleName().equals(simpleName + kind.extension);
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            if (entry.archive != null) {
+                ZipEntry zipEntry = entry.archive.getEntry(entry.path);
+                if (zipEntry == null) {
+                    throw new IOException(getName());
+                }
+                return entry.archive.getInputStream(zipEntry);
+            }
+            return new FileInputStream(entry.file);
+        }
+
+        @Override
+        public long getLastModified() {
+            return 0L;
+        }
+    }
+
+    private static final class FileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+        private final Map<String, List<Entry>> packages;
+
+        FileManager(JavaFileManager fileManager, Map<String, List<Entry>> packages) {
+            super(fileManager);
+            this.packages = packages;
+        }
+
+        JavaFileManager getDelegate() {
+            return fileManager;
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(
+                Location location,
+                String packageName,
+                Set<JavaFileObject.Kind> kinds,
+                boolean recurse) throws IOException {
+            if (location != StandardLocation.CLASS_PATH) {
+                return super.list(location, packageName, kinds, recurse);
+            }
+            if (kinds.contains(JavaFileObject.Kind.CLASS) == false) {
+                return Collections.emptyList();
+            }
+            String prefix = packageName.replace('.', '/');
+            List<JavaFileObject> results = new ArrayList<>();
+            if (recurse) {
+                for (Map.Entry<String, List<Entry>> entry : packages.entrySet()) {
+                    String name = entry.getKey();
+                    if (prefix.isEmpty() || name.equals(prefix) || name.startsWith(prefix + '/')) {
+                        for (Entry file : entry.getValue()) {
+                            results.add(new IndexedFile(file));
+                        }
+                    }
+                }
+            } else {
+                for (Entry file : packages.getOrDefault(prefix, Collections.emptyList())) {
+                    results.add(new IndexedFile(file));
+                }
+            }
+            return results;
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            if (file instanceof IndexedFile) {
+                return ((IndexedFile) file).entry.getBinaryName();
+            }
+            return super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            if (a instanceof IndexedFile || b instanceof IndexedFile) {
+                return a.toUri().equals(b.toUri());
+            }
+            return super.isSameFile(a, b);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.javac;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.common.ResourceContainer;
+
+/**
+ * An implementation of {@link JavaCompilerSupport} which keeps Java source files on memory,
+ * and puts the compiled class files into the destination container directly.
+ * <p>
+ * If the total size of Java source files exceeds the spill threshold,
+ * this spills the Java source files into the spill path, and then compiles them from there.
+ * </p>
+ * @since 0.4.0
+ */
+public class InMemoryJavaCompilerSupport extends AbstractJavaCompilerSupport {
+
+    static final Logger LOG = LoggerFactory.getLogger(InMemoryJavaCompilerSupport.class);
+
+    /**
+     * The default spill threshold in bytes.
+     */
+    public static final long DEFAULT_SPILL_THRESHOLD = 64L * 1024 * 1024;
+
+    static final String CLASS_EXTENSION = ".class"; //$NON-NLS-1$
+
+    private final List<File> classPath;
+
+    private final ResourceContainer destination;
+
+    private final File spillPath;
+
+    private final Map<Location, ByteArrayOutputStream> sources = new LinkedHashMap<>();
+
+    private final Set<File> spilled = new LinkedHashSet<>();
+
+    private volatile long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+    private long sourceBytes;
+
+    private volatile List<File> bootClassPath;
+
+    private volatile String compliantVersion;
+
+    private volatile ClassPathIndex classPathIndex;
+
+    private volatile int parallelism = 1;
+
+    /**
+     * Creates a new instance.
+     * @param spillPath the path where Java source files are spilled, or {@code null} to never spill them
+     * @param classPath the class path
+     * @param destination the compile output container
+     */
+    public InMemoryJavaCompilerSupport(File spillPath, List<File> classPath, ResourceContainer destination) {
+        this.spillPath = spillPath;
+        this.classPath = Collections.unmodifiableList(new ArrayList<>(classPath));
+        this.destination = destination;
+    }
+
+    /**
+     * Sets the boot class path.
+     * @param newValue the value
+     * @return this
+     */
+    public InMemoryJavaCompilerSupport withBootClassPath(List<File> newValue) {
+        this.bootClassPath = newValue == null ? null : new ArrayList<>(newValue);
+        return this;
+    }
+
+    /**
+     * Sets the Java compliant version.
+     * @param newValue the value
+     * @return this
+     */
+    public InMemoryJavaCompilerSupport withCompliantVersion(String newValue) {
+        this.compliantVersion = newValue;
+        return this;
+    }
+
+    /**
+     * Sets the total size of Java source files in bytes, which this keeps on memory.
+     * @param newValue the value
+     * @return this
+     */
+    public InMemoryJavaCompilerSupport withSpillThreshold(long newValue) {
+        this.spillThreshold = newValue;
+        return this;
+    }
+
+    /**
+     * Sets the shared index of the class path.
+     * If it is set, the Java compiler looks up the class path from the index instead of the library files.
+     * @param newValue the index of the class path, or {@code null} to disable it
+     * @return this
+     */
+    public InMemoryJavaCompilerSupport withClassPathIndex(ClassPathIndex newValue) {
+        this.classPathIndex = newValue;
+        return this;
+    }
+
+    /**
+     * Sets the max number of Java compiler tasks which run concurrently.
+     * If it is greater than {@code 1}, the source files are partitioned into groups without dependencies
+     * between each other, and the individual groups are compiled concurrently.
+     * @param newValue the max number of concurrent Java compiler tasks
+     * @return this
+     */
+    public InMemoryJavaCompilerSupport withParallelism(int newValue) {
+        this.parallelism = newValue;
+        return this;
+    }
+
+    /**
+     * Returns the spill path.
+     * @return the spill path, or {@code null} if Java source files are never spilled
+     */
+    public File getSpillPath() {
+        return spillPath;
+    }
+
+    /**
+     * Returns the class path.
+     * @return the class path
+     */
+    public List<File> getClassPath() {
+        return classPath;
+    }
+
+    /**
+     * Returns the compile output container.
+     * @return the compile output container
+     */
+    public ResourceContainer getDestination() {
+        return destination;
+    }
+
+    @Override
+    protected String getCompliantVersion() {
+        String result = compliantVersion;
+        if (result == null) {
+            return super.getCompliantVersion();
+        }
+        return result;
+    }
+
+    @Override
+    protected int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    protected synchronized boolean isCompileRequired() {
+        return sources.isEmpty() == false || spilled.isEmpty() == false;
+    }
+
+    @Override
+    protected synchronized OutputStream addResource(Location location) throws IOException {
+        if (sources.containsKey(location) || spilled.contains(toSpillFile(location))) {
+            throw new IOException(MessageFormat.format(
+                    "generating file already exists: {0}",
+                    location));
+        }
+        if (sources.isEmpty() == false && sourceBytes > spillThreshold) {
+            spill();
+        }
+        if (spilled.isEmpty() == false) {
+            return createSpillFile(location);
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        sources.put(location, buffer);
+        return new FilterOutputStream(buffer) {
+            @Override
+            public void write(int b) throws IOException {
+                buffer.write(b);
+                addSourceBytes(1);
+            }
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                buffer.write(b, off, len);
+                addSourceBytes(len);
+            }
+        };
+    }
+
+    synchronized void addSourceBytes(long size) {
+        sourceBytes += size;
+    }
+
+    private void spill() throws IOException {
+        if (spillPath == null) {
+            return;
+        }
+        LOG.debug("spilling Java source files: {} ({}bytes)", spillPath, sourceBytes); //$NON-NLS-1$
+        for (Map.Entry<Location, ByteArrayOutputStream> entry : sources.entrySet()) {
+            try (OutputStream output = createSpillFile(entry.getKey())) {
+                entry.getValue().writeTo(output);
+            }
+        }
+        sources.clear();
+        sourceBytes = 0;
+    }
+
+    private OutputStream createSpillFile(Location location) throws IOException {
+        File file = toSpillFile(location);
+        File parent = file.getParentFile();
+        if (parent.mkdirs() == false && parent.isDirectory() == false) {
+            throw new IOException(MessageFormat.format(
+                    "failed to prepare a parent directory: {0}",
+                    file));
+        }
+        spilled.add(file);
+        return new FileOutputStream(file);
+    }
+
+    private File toSpillFile(Location location) {
+        if (spillPath == null) {
+            return null;
+        }
+        return new File(spillPath, location.toPath(File.separatorChar)).getAbsoluteFile();
+    }
+
+    @Override
+    protected JavaFileManager getJavaFileManager(
+            JavaCompiler compiler,
+            DiagnosticListener<JavaFileObject> listener) throws IOException {
+        assert isCompileRequired();
+        StandardJavaFileManager files = compiler.getStandardFileManager(
+                listener,
+                Locale.getDefault(),
+                getEncoding());
+        files.setLocation(StandardLocation.SOURCE_PATH, Collections.emptyList());
+        ClassPathIndex index = classPathIndex;
+        files.setLocation(StandardLocation.CLASS_PATH, index == null ? classPath : Collections.emptyList());
+        List<File> boot = bootClassPath;
+        if (boot != null) {
+            files.setLocation(StandardLocation.PLATFORM_CLASS_PATH, boot);
+        }
+        return new FileManager(index == null ? files : index.wrap(files), files, destination);
+    }
+
+    @Override
+    protected List<String> getCompilerOptions() {
+        List<String> results = new ArrayList<>();
+        Collections.addAll(results, "-proc:none"); //$NON-NLS-1$
+        Collections.addAll(results, "-Xlint:all"); //$NON-NLS-1$
+        Collections.addAll(results, "-Xlint:-options"); //$NON-NLS-1$
+        return results;
+    }
+
+    @Override
+    protected synchronized Iterable<? extends JavaFileObject> getSourceFiles(JavaFileManager fileManager) {
+        assert isCompileRequired();
+        assert fileManager instanceof FileManager;
+        List<JavaFileObject> results = new ArrayList<>();
+        for (Map.Entry<Location, ByteArrayOutputStream> entry : sources.entrySet()) {
+            String contents = new String(entry.getValue().toByteArray(), getEncoding());
+            results.add(new SourceFile(entry.getKey(), contents));
+        }
+        StandardJavaFileManager files = ((FileManager) fileManager).getStandardFileManager();
+        for (JavaFileObject file : files.getJavaFileObjectsFromFiles(spilled)) {
+            results.add(file);
+        }
+        return results;
+    }
+
+    static Location toClassFileLocation(String className) {
+        return Location.of(className.replace('.', '/') + CLASS_EXTENSION);
+    }
+
+    private static final class SourceFile extends SimpleJavaFileObject {
+
+        private final String contents;
+
+        SourceFile(Location location, String contents) {
+            super(URI.create("memory:///" + location.toPath()), Kind.SOURCE); //$NON-NLS-1$
+            this.contents = contents;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return contents;
+        }
+    }
+
+    private static final class ClassFile extends SimpleJavaFileObject {
+
+        private final ResourceContainer destination;
+
+        private final Location location;
+
+        ClassFile(ResourceContainer destination, Location location) {
+            super(URI.create("memory:///" + location.toPath()), Kind.CLASS); //$NON-NLS-1$
+            this.destination = destination;
+            this.location = location;
+        }
+
+        @Override
+        public OutputStream openOutputStream() throws IOException {
+            return destination.addResource(location);
+        }
+    }
+
+    private static final class FileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+        private final StandardJavaFileManager standard;
+
+        private final ResourceContainer destination;
+
+        FileManager(JavaFileManager fileManager, StandardJavaFileManager standard, ResourceContainer destination) {
+            super(fileManager);
+            this.standard = standard;
+            this.destination = destination;
+        }
+
+        StandardJavaFileManager getStandardFileManager() {
+            return standard;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(
+                JavaFileManager.Location location,
+                String className,
+                JavaFileObject.Kind kind,
+                FileObject sibling) throws IOException {
+            if (location == StandardLocation.CLASS_OUTPUT && kind == JavaFileObject.Kind.CLASS) {
+                return new ClassFile(destination, toClassFileLocation(className));
+            }
+            return super.getJavaFileForOutput(location, className, kind, sibling);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            if (a instanceof SimpleJavaFileObject || b instanceof SimpleJavaFileObject) {
+                return a.toUri().equals(b.toUri());
+            }
+            return super.isSameFile(a, b);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.javac;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Partitions Java source files into groups, which can be compiled independently.
+ * <p>
+ * A source file is considered to depend on another one if the former contains the simple name of the latter.
+ * This over-approximates the actual dependencies, so that every group is closed under them.
+ * </p>
+ * @since 0.4.0
+ */
+final class SourcePartitioner {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*"); //$NON-NLS-1$
+
+    private SourcePartitioner() {
+        return;
+    }
+
+    /**
+     * Partitions the source files.
+     * @param names the simple names of the top-level class in each source file
+     * @param contents the contents of each source file
+     * @param count the max number of partitions
+     * @return the partitions, each element is a list of source file index
+     */
+    static List<List<Integer>> partition(List<String> names, List<? extends CharSequence> contents, int count) {
+        assert names.size() == contents.size();
+        int size = names.size();
+        Map<String, List<Integer>> declared = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            declared.computeIfAbsent(names.get(i), k -> new ArrayList<>()).add(i);
+        }
+        int[] parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            parents[i] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            Matcher matcher = IDENTIFIER.matcher(contents.get(i));
+            while (matcher.find()) {
+                List<Integer> targets = declared.get(matcher.group());
+                if (targets != null) {
+                    for (int target : targets) {
+                        union(parents, i, target);
+                    }
+                }
+            }
+        }
+        Map<Integer, List<Integer>> components = new HashMap<>();
+        long[] weights = new long[size];
+        for (int i = 0; i < size; i++) {
+            int root = find(parents, i);
+            components.computeIfAbsent(root, k -> new ArrayList<>()).add(i);
+            weights[root] += contents.get(i).length();
+        }
+        List<List<Integer>> sorted = new ArrayList<>(components.values());
+        Collections.sort(sorted, (a, b) -> {
+            int diff = Long.compare(weights[find(parents, b.get(0))], weights[find(parents, a.get(0))]);
+            if (diff != 0) {
+                return diff;
+            }
+            return Integer.compare(a.get(0), b.get(0));
+        });
+
+        // longest processing time first
+        int bins = Math.max(1, Math.min(count, sorted.size()));
+        List<List<Integer>> results = new ArrayList<>();
+        long[] loads = new long[bins];
+        for (int i = 0; i < bins; i++) {
+            results.add(new ArrayList<>());
+        }
+        for (List<Integer> component : sorted) {
+            int target = 0;
+            for (int i = 1; i < bins; i++) {
+                if (loads[i] < loads[target]) {
+                    target = i;
+                }
+            }
+            results.get(target).addAll(component);
+            loads[target] += weights[find(parents, component.get(0))];
+        }
+        for (List<Integer> partition : results) {
+            Collections.sort(partition);
+        }
+        return results;
+    }
+
+    private static int find(int[] parents, int index) {
+        int current = index;
+        while (parents[current] != current) {
+            parents[current] = parents[parents[current]];
+            current = parents[current];
+        }
+        return current;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        int ra = find(parents, a);
+        int rb = find(parents, b);
+        if (ra != rb) {
+            parents[Math.max(ra, rb)] = Math.min(ra, rb);
+        }
+    }
+}
@@ -123,6 +123,64 @@ public class BasicJavaCompilerSupportTest {
         assertThat(target.exists(), is(false));
     }
 
+    /**
+     * compile partitioned sources concurrently.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel() throws Exception {
+        File source = deployer.getFile("source");
+        File target = deployer.getFile("target");
+        JavaCompilerSupport compiler = new BasicJavaCompilerSupport(source, Collections.emptyList(), target)
+            .withParallelism(4);
+        put(compiler, "com.example.a.Base", new String[] {
+                "package com.example.a;",
+                "public class Base {}",
+        });
+        put(compiler, "com.example.a.Inherit", new String[] {
+                "package com.example.a;",
+                "public class Inherit extends Base {}",
+        });
+        put(compiler, "com.example.b.Other", new String[] {
+                "package com.example.b;",
+                "public class Other extends com.example.a.Inherit {}",
+        });
+        put(compiler, "com.example.c.Hello", new String[] {
+                "package com.example.c;",
+                "public class Hello {}",
+        });
+        compiler.process();
+        try (URLClassLoader loader = loader(target)) {
+            assertThat(loader.loadClass("com.example.b.Other").getSuperclass().getName(),
+                    is("com.example.a.Inherit"));
+            assertThat(loader.loadClass("com.example.c.Hello").getSuperclass(), is((Object) Object.class));
+        }
+    }
+
+    /**
+     * compile errors in individual partitions are merged.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel_error() throws Exception {
+        File source = deployer.getFile("source");
+        File target = deployer.getFile("target");
+        JavaCompilerSupport compiler = new BasicJavaCompilerSupport(source, Collections.emptyList(), target)
+            .withParallelism(2);
+        put(compiler, "com.example.Hello", "?");
+        put(compiler, "com.example.World", "?");
+        try {
+            compiler.process();
+            fail();
+        } catch (DiagnosticException e) {
+            List<String> messages = new ArrayList<>();
+            for (com.asakusafw.lang.compiler.common.Diagnostic diagnostic : e.getDiagnostics()) {
+                messages.add(diagnostic.getMessage());
+            }
+            assertThat(messages.toString(), messages, hasSize(greaterThanOrEqualTo(2)));
+        }
+    }
+
     /**
      * occur compile error.
      * @throws Exception if failed
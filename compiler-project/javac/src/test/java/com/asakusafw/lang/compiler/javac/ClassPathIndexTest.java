@@ -0,0 +1,211 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.javac;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.common.DiagnosticException;
+import com.asakusafw.lang.compiler.common.ResourceContainer;
+import com.asakusafw.lang.compiler.common.testing.FileDeployer;
+import com.asakusafw.lang.compiler.model.description.ClassDescription;
+
+/**
+ * Test for {@link ClassPathIndex}.
+ */
+public class ClassPathIndexTest {
+
+    /**
+     * temporary deployer.
+     */
+    @Rule
+    public final FileDeployer deployer = new FileDeployer();
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        File lib = deployer.copy("example.jar", "classpath/example.jar");
+        File target = deployer.getFile("target");
+        try (ClassPathIndex index = new ClassPathIndex(Arrays.asList(lib))) {
+            assertThat(index.getClassPath(), contains(lib));
+            JavaCompilerSupport compiler = new BasicJavaCompilerSupport(
+                    deployer.getFile("source"),
+                    Collections.emptyList(),
+                    target)
+                .withClassPathIndex(index);
+            put(compiler, "com.example.Inherit", new String[] {
+                    "package com.example;",
+                    "public class Inherit extends com.example.Hello {}",
+            });
+            compiler.process();
+            assertThat(index.getOpenCount(), is(1));
+        }
+        try (URLClassLoader loader = loader(lib, target)) {
+            Class<?> built = loader.loadClass("com.example.Inherit");
+            assertThat(built.getSuperclass().getName(), is("com.example.Hello"));
+        }
+    }
+
+    /**
+     * shared between compilers.
+     * @throws Exception if failed
+     */
+    @Test
+    public void shared() throws Exception {
+        File lib = deployer.copy("example.jar", "classpath/example.jar");
+        File t0 = deployer.getFile("t0");
+        File t1 = deployer.getFile("t1");
+        try (ClassPathIndex index = new ClassPathIndex(Arrays.asList(lib))) {
+            JavaCompilerSupport c0 = new BasicJavaCompilerSupport(
+                    deployer.getFile("s0"),
+                    Collections.emptyList(),
+                    t0)
+                .withClassPathIndex(index);
+            put(c0, "com.example.Inherit", new String[] {
+                    "package com.example;",
+                    "public class Inherit extends Hello {}",
+            });
+            c0.process();
+
+            JavaCompilerSupport c1 = new InMemoryJavaCompilerSupport(
+                    null,
+                    Collections.emptyList(),
+                    container(t1))
+                .withClassPathIndex(index);
+            put(c1, "com.example.Nested", new String[] {
+                    "package com.example;",
+                    "public class Nested extends Hello.World {}",
+            });
+            c1.process();
+            assertThat(index.getOpenCount(), is(1));
+        }
+        try (URLClassLoader loader = loader(lib, t0, t1)) {
+            assertThat(loader.loadClass("com.example.Inherit").getSuperclass().getName(),
+                    is("com.example.Hello"));
+            assertThat(loader.loadClass("com.example.Nested").getSuperclass().getName(),
+                    is("com.example.Hello$World"));
+        }
+    }
+
+    /**
+     * w/ class directories.
+     * @throws Exception if failed
+     */
+    @Test
+    public void directory() throws Exception {
+        File lib = deployer.getFile("lib");
+        JavaCompilerSupport base = new BasicJavaCompilerSupport(
+                deployer.getFile("s0"),
+                Collections.emptyList(),
+                lib);
+        put(base, "com.example.Base", new String[] {
+                "package com.example;",
+                "public class Base {}",
+        });
+        base.process();
+
+        File target = deployer.getFile("target");
+        try (ClassPathIndex index = new ClassPathIndex(Arrays.asList(lib))) {
+            JavaCompilerSupport compiler = new BasicJavaCompilerSupport(
+                    deployer.getFile("s1"),
+                    Collections.emptyList(),
+                    target)
+                .withClassPathIndex(index);
+            put(compiler, "com.example.Inherit", new String[] {
+                    "package com.example;",
+                    "public class Inherit extends Base {}",
+            });
+            compiler.process();
+            assertThat(index.getOpenCount(), is(0));
+        }
+        try (URLClassLoader loader = loader(lib, target)) {
+            Class<?> built = loader.loadClass("com.example.Inherit");
+            assertThat(built.getSuperclass().getName(), is("com.example.Base"));
+        }
+    }
+
+    /**
+     * missing classes on the class path.
+     * @throws Exception if failed
+     */
+    @Test(expected = DiagnosticException.class)
+    public void missing() throws Exception {
+        File lib = deployer.copy("example.jar", "classpath/example.jar");
+        try (ClassPathIndex index = new ClassPathIndex(Arrays.asList(lib))) {
+            JavaCompilerSupport compiler = new BasicJavaCompilerSupport(
+                    deployer.getFile("source"),
+                    Collections.emptyList(),
+                    deployer.getFile("target"))
+                .withClassPathIndex(index);
+            put(compiler, "com.example.Inherit", new String[] {
+                    "package com.example;",
+                    "public class Inherit extends com.example.Missing {}",
+            });
+            compiler.process();
+        }
+    }
+
+    private static ResourceContainer container(File base) {
+        return location -> {
+            File file = new File(base, location.toPath(File.separatorChar));
+            File parent = file.getParentFile();
+            if (parent.mkdirs() == false && parent.isDirectory() == false) {
+                throw new IOException(parent.toString());
+            }
+            return new FileOutputStream(file);
+        };
+    }
+
+    private URLClassLoader loader(File... files) {
+        List<URL> urls = new ArrayList<>();
+        for (File file : files) {
+            try {
+                urls.add(file.toURI().toURL());
+            } catch (MalformedURLException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return URLClassLoader.newInstance(urls.toArray(new URL[urls.size()]), ClassLoader.getSystemClassLoader());
+    }
+
+    private void put(JavaSourceExtension sources, String className, String... lines) {
+        try (PrintWriter writer = new PrintWriter(sources.addJavaFile(new ClassDescription(className)))) {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
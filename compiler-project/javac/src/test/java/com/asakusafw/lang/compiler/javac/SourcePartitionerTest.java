@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.javac;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link SourcePartitioner}.
+ */
+public class SourcePartitionerTest {
+
+    /**
+     * independent sources.
+     */
+    @Test
+    public void independent() {
+        List<List<Integer>> results = SourcePartitioner.partition(
+                Arrays.asList("A", "B", "C"),
+                Arrays.asList("class A {}", "class B {}", "class C {}"),
+                3);
+        assertThat(results, containsInAnyOrder(
+                Arrays.asList(0),
+                Arrays.asList(1),
+                Arrays.asList(2)));
+    }
+
+    /**
+     * dependent sources are in the same partition.
+     */
+    @Test
+    public void dependent() {
+        List<List<Integer>> results = SourcePartitioner.partition(
+                Arrays.asList("A", "B", "C", "D"),
+                Arrays.asList(
+                        "class A {}",
+                        "class B extends A {}",
+                        "class C { com.example.B b; }",
+                        "class D {}"),
+                4);
+        assertThat(results, containsInAnyOrder(
+                Arrays.asList(0, 1, 2),
+                Arrays.asList(3)));
+    }
+
+    /**
+     * the number of partitions is limited.
+     */
+    @Test
+    public void limited() {
+        List<List<Integer>> results = SourcePartitioner.partition(
+                Arrays.asList("A", "B", "C", "D"),
+                Arrays.asList("class A {}", "class B {}", "class C {}", "class D {}"),
+                2);
+        assertThat(results, hasSize(2));
+        assertThat(results.get(0), hasSize(2));
+        assertThat(results.get(1), hasSize(2));
+    }
+
+    /**
+     * larger components are balanced first.
+     */
+    @Test
+    public void balanced() {
+        List<List<Integer>> results = SourcePartitioner.partition(
+                Arrays.asList("A", "B", "C"),
+                Arrays.asList(
+                        "class A { /* ............................................ */ }",
+                        "class B {}",
+                        "class C {}"),
+                2);
+        assertThat(results, containsInAnyOrder(
+                Arrays.asList(0),
+                Arrays.asList(1, 2)));
+    }
+}
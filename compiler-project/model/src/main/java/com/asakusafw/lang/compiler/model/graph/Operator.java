@@ -133,6 +133,15 @@ public abstract class Operator {
         return copy;
     }
 
+    /**
+     * Makes this operator as an original one.
+     * After this, the {@link #getOriginalSerialNumber() original serial number} of this operator is as same as
+     * its {@link #getSerialNumber() normal serial number}.
+     */
+    void renewOriginalSerialNumber() {
+        this.originalSerialNumber = serialNumber;
+    }
+
     /**
      * Disconnects from all neighbor operators.
      * @return this
@@ -25,11 +25,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiPredicate;
 
 /**
  * Represents DAG of operators.
  * @since 0.1.0
- * @version 0.3.1
+ * @version 0.4.0
  */
 public class OperatorGraph {
 
@@ -212,46 +213,63 @@ public class OperatorGraph {
      * @return a map of original operator to the corresponded copy
      */
     public static Map<Operator, Operator> copy(Collection<? extends Operator> operators) {
+        return copy(operators, (upstream, downstream) -> true);
+    }
+
+    /**
+     * Returns a copy of operators.
+     * Each operator is {@link Operator#copy() copied} recursively,
+     * and it connected each other only if the neighbor operators are also copied in this invocation,
+     * and the original connection satisfies the given predicate.
+     * @param operators the target operators (maps an original operator into its copy.
+     * @param connections the predicate which accepts original connections to be copied
+     * @return a map of original operator to the corresponded copy
+     * @since 0.4.0
+     */
+    public static Map<Operator, Operator> copy(
+            Collection<? extends Operator> operators,
+            BiPredicate<? super OperatorOutput, ? super OperatorInput> connections) {
         Map<Operator, Operator> map = new HashMap<>();
-        Map<OperatorInput, OperatorInput> inputs = new HashMap<>();
-        Map<OperatorOutput, OperatorOutput> outputs = new HashMap<>();
         for (Operator operator : operators) {
             Operator copy = operator.copy();
             assert operator.getOriginalSerialNumber() == copy.getOriginalSerialNumber();
             map.put(operator, copy);
-            List<? extends OperatorProperty> from = operator.getProperties();
-            List<? extends OperatorProperty> to = copy.getProperties();
+        }
+        // the copy has the same properties in the same order, so that we can map ports by their position
+        for (Map.Entry<Operator, Operator> entry : map.entrySet()) {
+            List<OperatorProperty> from = entry.getKey().properties;
+            List<OperatorProperty> to = entry.getValue().properties;
             assert from.size() == to.size();
             for (int i = 0, n = from.size(); i < n; i++) {
                 OperatorProperty source = from.get(i);
-                OperatorProperty target = to.get(i);
-                assert source.getPropertyKind() == target.getPropertyKind();
-                switch (source.getPropertyKind()) {
-                case INPUT:
-                    inputs.put((OperatorInput) source, (OperatorInput) target);
-                    break;
-                case OUTPUT:
-                    outputs.put((OperatorOutput) source, (OperatorOutput) target);
-                    break;
-                default:
-                    break;
+                assert source.getPropertyKind() == to.get(i).getPropertyKind();
+                if (source.getPropertyKind() != OperatorProperty.PropertyKind.INPUT) {
+                    continue;
                 }
-            }
-        }
-        for (Map.Entry<OperatorInput, OperatorInput> entry : inputs.entrySet()) {
-            OperatorInput from = entry.getKey();
-            OperatorInput to = entry.getValue();
-            assert to.hasOpposites() == false;
-            for (OperatorOutput upstream : from.getOpposites()) {
-                if (outputs.containsKey(upstream)) {
-                    OperatorOutput mapped = outputs.get(upstream);
-                    to.connect(mapped);
+                OperatorInput downstream = (OperatorInput) source;
+                OperatorInput mappedDownstream = (OperatorInput) to.get(i);
+                assert mappedDownstream.hasOpposites() == false;
+                for (OperatorOutput upstream : downstream.getOpposites()) {
+                    Operator mappedOwner = map.get(upstream.getOwner());
+                    if (mappedOwner != null && connections.test(upstream, downstream)) {
+                        int index = indexOf(upstream.getOwner().properties, upstream);
+                        mappedDownstream.connect((OperatorOutput) mappedOwner.properties.get(index));
+                    }
                 }
             }
         }
         return map;
     }
 
+    private static int indexOf(List<OperatorProperty> properties, OperatorProperty property) {
+        for (int i = 0, n = properties.size(); i < n; i++) {
+            if (properties.get(i) == property) {
+                return i;
+            }
+        }
+        throw new IllegalStateException(property.toString());
+    }
+
     @Override
     public String toString() {
         return MessageFormat.format(
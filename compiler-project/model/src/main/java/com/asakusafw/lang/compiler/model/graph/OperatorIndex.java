@@ -0,0 +1,332 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.model.graph;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * An immutable integer-indexed view of operators and their connections.
+ * <p>
+ * Each operator and each port is numbered densely, and the connections are kept in primitive arrays.
+ * Sets of operators are represented as {@link BitSet} of the operator indices.
+ * This is suitable for read-heavy traversals, and it should be built once for a series of traversals.
+ * </p>
+ * <p>
+ * This does not reflect any modifications of the original operators after it was created,
+ * and it ignores connections to operators which are not members of this index.
+ * </p>
+ * @since 0.4.0
+ * @see Operators
+ */
+public final class OperatorIndex {
+
+    private final Operator[] operators;
+
+    private final Map<Operator, Integer> indices;
+
+    private final Adjacency forward;
+
+    private final Adjacency backward;
+
+    private OperatorIndex(Operator[] operators, Map<Operator, Integer> indices) {
+        this.operators = operators;
+        this.indices = indices;
+        this.forward = Adjacency.build(operators, indices, true);
+        this.backward = Adjacency.build(operators, indices, false);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param operators the member operators
+     * @return the created instance
+     */
+    public static OperatorIndex of(Collection<? extends Operator> operators) {
+        List<Operator> members = new ArrayList<>(operators.size());
+        Map<Operator, Integer> indices = new HashMap<>();
+        for (Operator operator : operators) {
+            if (indices.containsKey(operator) == false) {
+                indices.put(operator, members.size());
+                members.add(operator);
+            }
+        }
+        return new OperatorIndex(members.toArray(new Operator[members.size()]), indices);
+    }
+
+    /**
+     * Returns the number of member operators.
+     * @return the number of member operators
+     */
+    public int size() {
+        return operators.length;
+    }
+
+    /**
+     * Returns the member operator.
+     * @param index the operator index
+     * @return the corresponded operator
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public Operator get(int index) {
+        return operators[index];
+    }
+
+    /**
+     * Returns the index of the operator.
+     * @param operator the target operator
+     * @return the operator index, or {@code -1} if it is not a member of this
+     */
+    public int indexOf(Operator operator) {
+        Integer index = indices.get(operator);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the indices of the operators.
+     * @param members the member operators
+     * @return the operator indices
+     * @throws IllegalArgumentException if some operators are not members of this
+     */
+    public BitSet indicesOf(Collection<? extends Operator> members) {
+        BitSet results = new BitSet(operators.length);
+        for (Operator operator : members) {
+            int index = indexOf(operator);
+            if (index < 0) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "operator is not a member of the index: {0}",
+                        operator));
+            }
+            results.set(index);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the operators of the indices.
+     * @param members the operator indices
+     * @return the corresponded operators
+     */
+    public Set<Operator> getOperators(BitSet members) {
+        Set<Operator> results = new HashSet<>();
+        for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+            results.add(operators[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the indices of operators which satisfy the predicate.
+     * @param predicate the predicate
+     * @return the operator indices
+     */
+    public BitSet select(Predicate<? super Operator> predicate) {
+        BitSet results = new BitSet(operators.length);
+        for (int i = 0; i < operators.length; i++) {
+            if (predicate.test(operators[i])) {
+                results.set(i);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the all transitive successors from the operators.
+     * @param sources the source operator indices
+     * @return the transitive successor indices
+     * @see Operators#getTransitiveSuccessors(Collection)
+     */
+    public BitSet getTransitiveSuccessors(BitSet sources) {
+        return forward.walk(sources, null);
+    }
+
+    /**
+     * Returns the all transitive predecessors from the operators.
+     * @param sources the source operator indices
+     * @return the transitive predecessor indices
+     * @see Operators#getTransitivePredecessors(Collection)
+     */
+    public BitSet getTransitivePredecessors(BitSet sources) {
+        return backward.walk(sources, null);
+    }
+
+    /**
+     * Returns the nearest reachable successors in the targets from the operators.
+     * @param sources the source operator indices
+     * @param targets the target operator indices
+     * @return the found operator indices
+     * @see Operators#findNearestReachableSuccessors(Collection, Predicate)
+     */
+    public BitSet findNearestReachableSuccessors(BitSet sources, BitSet targets) {
+        BitSet results = forward.walk(sources, targets);
+        results.and(targets);
+        return results;
+    }
+
+    /**
+     * Returns the nearest reachable predecessors in the targets from the operators.
+     * @param sources the source operator indices
+     * @param targets the target operator indices
+     * @return the found operator indices
+     * @see Operators#findNearestReachablePredecessors(Collection, Predicate)
+     */
+    public BitSet findNearestReachablePredecessors(BitSet sources, BitSet targets) {
+        BitSet results = backward.walk(sources, targets);
+        results.and(targets);
+        return results;
+    }
+
+    /**
+     * Collects and returns the operators until the nearest reachable successors in the targets are detected
+     * from the operators.
+     * @param sources the source operator indices
+     * @param targets the target operator indices
+     * @param inclusive {@code true} if the result includes the nearest reachable successors
+     * @return the found operator indices
+     * @see Operators#collectUntilNearestReachableSuccessors(Collection, Predicate, boolean)
+     */
+    public BitSet collectUntilNearestReachableSuccessors(BitSet sources, BitSet targets, boolean inclusive) {
+        BitSet results = forward.walk(sources, targets);
+        if (inclusive == false) {
+            results.andNot(targets);
+        }
+        return results;
+    }
+
+    /**
+     * Collects and returns the operators until the nearest reachable predecessors in the targets are detected
+     * from the operators.
+     * @param sources the source operator indices
+     * @param targets the target operator indices
+     * @param inclusive {@code true} if the result includes the nearest reachable predecessors
+     * @return the found operator indices
+     * @see Operators#collectUntilNearestReachablePredecessors(Collection, Predicate, boolean)
+     */
+    public BitSet collectUntilNearestReachablePredecessors(BitSet sources, BitSet targets, boolean inclusive) {
+        BitSet results = backward.walk(sources, targets);
+        if (inclusive == false) {
+            results.andNot(targets);
+        }
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "OperatorIndex({0} operators)", //$NON-NLS-1$
+                operators.length);
+    }
+
+    /**
+     * Connections of operators in a direction, in compressed sparse row form.
+     * The ports of the operator {@code i} are {@code ports[i] .. ports[i + 1] - 1},
+     * and the opposite operators of the port {@code p} are {@code opposites[edges[p] .. edges[p + 1] - 1]}.
+     */
+    private static final class Adjacency {
+
+        private final int[] ports;
+
+        private final int[] edges;
+
+        private final int[] opposites;
+
+        private Adjacency(int[] ports, int[] edges, int[] opposites) {
+            this.ports = ports;
+            this.edges = edges;
+            this.opposites = opposites;
+        }
+
+        static Adjacency build(Operator[] operators, Map<Operator, Integer> indices, boolean forward) {
+            int[] ports = new int[operators.length + 1];
+            int portCount = 0;
+            int edgeCount = 0;
+            for (int i = 0; i < operators.length; i++) {
+                ports[i] = portCount;
+                for (OperatorPort port : getPorts(operators[i], forward)) {
+                    portCount++;
+                    edgeCount += port.getOpposites().size();
+                }
+            }
+            ports[operators.length] = portCount;
+            int[] edges = new int[portCount + 1];
+            int[] opposites = new int[edgeCount];
+            int port = 0;
+            int edge = 0;
+            for (Operator operator : operators) {
+                for (OperatorPort p : getPorts(operator, forward)) {
+                    edges[port++] = edge;
+                    for (OperatorPort opposite : p.getOpposites()) {
+                        Integer index = indices.get(opposite.getOwner());
+                        if (index != null) {
+                            opposites[edge++] = index;
+                        }
+                    }
+                }
+            }
+            edges[portCount] = edge;
+            return new Adjacency(ports, edges, opposites);
+        }
+
+        private static List<? extends OperatorPort> getPorts(Operator operator, boolean forward) {
+            return forward ? operator.getOutputs() : operator.getInputs();
+        }
+
+        /**
+         * Returns the operators which are reachable from the sources via one or more connections.
+         * This never goes beyond the stop operators.
+         * @param sources the source operators
+         * @param stops the stop operators, or {@code null} to walk all reachable operators
+         * @return the reachable operators
+         */
+        BitSet walk(BitSet sources, BitSet stops) {
+            int size = ports.length - 1;
+            BitSet saw = new BitSet(size);
+            int[] work = new int[size];
+            int top = 0;
+            for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+                top = expand(i, saw, work, top);
+            }
+            while (top > 0) {
+                int current = work[--top];
+                if (stops == null || stops.get(current) == false) {
+                    top = expand(current, saw, work, top);
+                }
+            }
+            return saw;
+        }
+
+        private int expand(int operator, BitSet saw, int[] work, int top) {
+            int next = top;
+            for (int port = ports[operator], portEnd = ports[operator + 1]; port < portEnd; port++) {
+                for (int edge = edges[port], edgeEnd = edges[port + 1]; edge < edgeEnd; edge++) {
+                    int opposite = opposites[edge];
+                    if (saw.get(opposite) == false) {
+                        saw.set(opposite);
+                        work[next++] = opposite;
+                    }
+                }
+            }
+            return next;
+        }
+    }
+}
@@ -487,6 +487,34 @@ public final class Operators {
         oldOperator.disconnectAll();
     }
 
+    /**
+     * Returns a copy of the operator, which is considered as a new original operator.
+     * Unlike {@link Operator#copy()}, the copy and its nested operators have their own
+     * {@link Operator#getOriginalSerialNumber() original serial numbers},
+     * so that they are never treated as same as the source operators.
+     * @param operator the source operator
+     * @param <T> the operator type
+     * @return the created copy, which is not connected to any neighbors
+     * @since 0.4.0
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Operator> T duplicate(T operator) {
+        Operator copy = operator.copy();
+        assert copy.getClass() == operator.getClass();
+        renewOriginalSerialNumbers(copy);
+        return (T) copy;
+    }
+
+    private static void renewOriginalSerialNumbers(Operator operator) {
+        operator.renewOriginalSerialNumber();
+        if (operator instanceof FlowOperator) {
+            OperatorGraph graph = ((FlowOperator) operator).getOperatorGraph();
+            for (Operator nested : OperatorGraph.getAllOperators(graph.getOperators())) {
+                renewOriginalSerialNumbers(nested);
+            }
+        }
+    }
+
     private static void checkStraight(List<OperatorInput> inputs, List<OperatorOutput> outputs) {
         if (inputs.size() != 1) {
             throw new IllegalArgumentException();
@@ -145,6 +145,31 @@ public class OperatorGraphTest {
         copy.assertConnected("b", "c");
     }
 
+    /**
+     * range copy w/ connection filter.
+     */
+    @Test
+    public void copy_range_filter() {
+        MockOperators operators = new MockOperators()
+                .operator("a", "in", "o0,o1")
+                .operator("b")
+                .operator("c", "i0,i1", "out")
+                .connect("a.o0", "b")
+                .connect("a.o1", "c.i1")
+                .connect("b", "c.i0");
+
+        Map<Operator, Operator> map = OperatorGraph.copy(
+                operators.all(),
+                (upstream, downstream) -> upstream.getOwner() != operators.get("a")
+                    || downstream.getOwner() != operators.get("c"));
+        assertThat(map.keySet(), is(operators.all()));
+        MockOperators copy = new MockOperators(map.values());
+        copy.assertConnected("a.o0", "b");
+        copy.assertConnected("b", "c.i0");
+        copy.assertConnected("a.o1", "c.i1", false);
+        assertThat(copy.get("a").getOriginalSerialNumber(), is(operators.get("a").getOriginalSerialNumber()));
+    }
+
     /**
      * find inputs.
      */
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.model.graph;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.model.graph.Operator.OperatorKind;
+
+/**
+ * Test for {@link OperatorIndex}.
+ */
+public class OperatorIndexTest {
+
+    private static final Predicate<Operator> MARKERS = operator -> operator.getOperatorKind() == OperatorKind.MARKER;
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        MockOperators mock = new MockOperators()
+            .operator("a")
+            .operator("b").connect("a", "b");
+        OperatorIndex index = OperatorIndex.of(mock.all());
+        assertThat(index.size(), is(2));
+        for (Operator operator : mock.all()) {
+            int i = index.indexOf(operator);
+            assertThat(i, is(greaterThanOrEqualTo(0)));
+            assertThat(index.get(i), is(sameInstance(operator)));
+        }
+        assertThat(index.indexOf(new MockOperators().operator("x").get("x")), is(-1));
+        assertThat(index.getOperators(index.indicesOf(mock.getAsSet("a"))), is(mock.getAsSet("a")));
+    }
+
+    /**
+     * succ*.
+     */
+    @Test
+    public void getTransitiveSuccessors() {
+        MockOperators mock = new MockOperators()
+            .operator("a0")
+            .operator("a1")
+            .operator("b0").connect("a0", "b0").connect("a1", "b0")
+            .operator("b1")
+            .operator("c0").connect("b0", "c0").connect("b1", "c0")
+            .operator("d0").connect("c0", "d0")
+            .operator("d1").connect("c0", "d1")
+            .operator("e0").connect("d0", "e0")
+            .operator("e1").connect("d0", "e1").connect("d1", "e1");
+        OperatorIndex index = OperatorIndex.of(mock.all());
+        assertThat(
+                get(index, index.getTransitiveSuccessors(index.indicesOf(mock.getAsSet("a0")))),
+                is(mock.getAsSet("b0", "c0", "d0", "d1", "e0", "e1")));
+    }
+
+    /**
+     * pred*.
+     */
+    @Test
+    public void getTransitivePredecessors() {
+        MockOperators mock = new MockOperators()
+            .operator("a0")
+            .operator("a1")
+            .operator("b0").connect("b0", "a0").connect("b0", "a1")
+            .operator("b1")
+            .operator("c0").connect("c0", "b0").connect("c0", "b1")
+            .operator("d0").connect("d0", "c0")
+            .operator("d1").connect("d1", "c0")
+            .operator("e0").connect("e0", "d0")
+            .operator("e1").connect("e1", "d0").connect("e1", "d1");
+        OperatorIndex index = OperatorIndex.of(mock.all());
+        assertThat(
+                get(index, index.getTransitivePredecessors(index.indicesOf(mock.getAsSet("a0")))),
+                is(mock.getAsSet("b0", "c0", "d0", "d1", "e0", "e1")));
+    }
+
+    /**
+     * find nearest.
+     */
+    @Test
+    public void findNearestReachableSuccessors() {
+        MockOperators mock = new MockOperators()
+            .operator("m0")
+            .operator("a", "in", "o0,o1").connect("m0", "a")
+            .operator("b").connect("a.o0", "b")
+            .operator("c").connect("b", "c")
+            .marker("m1").connect("c", "m1")
+            .operator("d").connect("m1", "d")
+            .operator("e").connect("d", "e").connect("c", "e")
+            .marker("m2").connect("e", "m2")
+            .marker("m3").connect("d", "m3")
+            .marker("m4").connect("d", "m4").connect("a.o1", "m4");
+        OperatorIndex index = OperatorIndex.of(mock.all());
+        assertThat(
+                get(index, index.findNearestReachableSuccessors(
+                        index.indicesOf(mock.getAsSet("a")), index.select(MARKERS))),
+                is(mock.getAsSet("m1", "m2", "m4")));
+    }
+
+    /**
+     * find nearest.
+     */
+    @Test
+    public void findNearestReachablePredecessors() {
+        MockOperators mock = new MockOperators()
+            .operator("m0")
+            .operator("a", "i0,i1", "out").connect("a", "m0")
+            .operator("b").connect("b", "a.i0")
+            .operator("c").connect("c", "b")
+            .marker("m1").connect("m1", "c")
+            .operator("d").connect("d", "m1")
+            .operator("e").connect("e", "d").connect("e", "c")
+            .marker("m2").connect("m2", "e")
+            .marker("m3").connect("m3", "d")
+            .marker("m4").connect("m4", "d").connect("m4", "a.i1");
+        OperatorIndex index = OperatorIndex.of(mock.all());
+        assertThat(
+                get(index, index.findNearestReachablePredecessors(
+                        index.indicesOf(mock.getAsSet("a")), index.select(MARKERS))),
+                is(mock.getAsSet("m1", "m2", "m4")));
+    }
+
+    /**
+     * collect until nearest.
+     */
+    @Test
+    public void collectUntilNearestReachableSuccessors() {
+        MockOperators mock = new MockOperators()
+            .operator("m0")
+            .operator("a", "in", "o0,o1").connect("m0", "a")
+            .operator("b").connect("a.o0", "b")
+            .operator("c").connect("b", "c")
+            .marker("m1").connect("c", "m1")
+            .operator("d").connect("m1", "d")
+            .operator("e").connect("d", "e").connect("c", "e")
+            .marker("m2").connect("e", "m2")
+            .marker("m3").connect("d", "m3")
+            .marker("m4").connect("d", "m4").connect("a.o1", "m4");
+        OperatorIndex index = OperatorIndex.of(mock.all());
+        BitSet sources = index.indicesOf(mock.getAsSet("a"));
+        BitSet markers = index.select(MARKERS);
+        assertThat(
+                get(index, index.collectUntilNearestReachableSuccessors(sources, markers, false)),
+                is(mock.getAsSet("b", "c", "e")));
+        assertThat(
+                get(index, index.collectUntilNearestReachableSuccessors(sources, markers, true)),
+                is(mock.getAsSet("b", "c", "e", "m1", "m2", "m4")));
+    }
+
+    /**
+     * collect until nearest.
+     */
+    @Test
+    public void collectUntilNearestReachablePredecessors() {
+        MockOperators mock = new MockOperators()
+            .operator("m0")
+            .operator("a", "i0,i1", "out").connect("a", "m0")
+            .operator("b").connect("b", "a.i0")
+            .operator("c").connect("c", "b")
+            .marker("m1").connect("m1", "c")
+            .operator("d").connect("d", "m1")
+            .operator("e").connect("e", "d").connect("e", "c")
+            .marker("m2").connect("m2", "e")
+            .marker("m3").connect("m3", "d")
+            .marker("m4").connect("m4", "d").connect("m4", "a.i1");
+        OperatorIndex index = OperatorIndex.of(mock.all());
+        BitSet sources = index.indicesOf(mock.getAsSet("a"));
+        BitSet markers = index.select(MARKERS);
+        assertThat(
+                get(index, index.collectUntilNearestReachablePredecessors(sources, markers, false)),
+                is(mock.getAsSet("b", "c", "e")));
+        assertThat(
+                get(index, index.collectUntilNearestReachablePredecessors(sources, markers, true)),
+                is(mock.getAsSet("b", "c", "e", "m1", "m2", "m4")));
+    }
+
+    /**
+     * connections to non-member operators are ignored.
+     */
+    @Test
+    public void partial() {
+        MockOperators mock = new MockOperators()
+            .operator("a")
+            .operator("b").connect("a", "b")
+            .operator("c").connect("b", "c");
+        OperatorIndex index = OperatorIndex.of(mock.getAsSet("a", "c"));
+        assertThat(
+                get(index, index.getTransitiveSuccessors(index.indicesOf(mock.getAsSet("a")))),
+                is(empty()));
+    }
+
+    /**
+     * the index is a snapshot.
+     */
+    @Test
+    public void snapshot() {
+        MockOperators mock = new MockOperators()
+            .operator("a")
+            .operator("b").connect("a", "b");
+        OperatorIndex index = OperatorIndex.of(mock.all());
+        mock.get("a").disconnectAll();
+        assertThat(
+                get(index, index.getTransitiveSuccessors(index.indicesOf(mock.getAsSet("a")))),
+                is(mock.getAsSet("b")));
+    }
+
+    private static Set<Operator> get(OperatorIndex index, BitSet indices) {
+        return index.getOperators(indices);
+    }
+}
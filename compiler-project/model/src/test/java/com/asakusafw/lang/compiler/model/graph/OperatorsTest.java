@@ -525,4 +525,31 @@ public class OperatorsTest {
             .assertConnected("b", "c", false)
             .assertConnected("b", "d", false);
     }
+
+    /**
+     * duplicate.
+     */
+    @Test
+    public void duplicate() {
+        MockOperators inner = new MockOperators()
+            .input("in")
+            .operator("x").connect("in", "x")
+            .output("out").connect("x", "out");
+        MockOperators mock = new MockOperators()
+            .flow("f", inner.toGraph());
+        FlowOperator source = (FlowOperator) mock.get("f");
+        FlowOperator copy = Operators.duplicate(source);
+
+        assertThat(copy, is(not(sameInstance(source))));
+        assertThat(copy.getOriginalSerialNumber(), is(copy.getSerialNumber()));
+        assertThat(copy.getOriginalSerialNumber(), is(not(source.getOriginalSerialNumber())));
+
+        MockOperators copied = new MockOperators(copy.getOperatorGraph().getOperators());
+        copied.assertConnected("in", "x").assertConnected("x", "out");
+        for (String id : new String[] { "in", "x", "out" }) {
+            Operator nested = copied.get(id);
+            assertThat(nested, is(not(sameInstance(inner.get(id)))));
+            assertThat(nested.getOriginalSerialNumber(), is(nested.getSerialNumber()));
+        }
+    }
 }
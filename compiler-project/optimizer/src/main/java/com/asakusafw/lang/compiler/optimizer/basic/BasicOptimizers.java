@@ -15,9 +15,17 @@
  */
 package com.asakusafw.lang.compiler.optimizer.basic;
 
+import java.util.Collection;
+import java.util.Map;
+
+import com.asakusafw.lang.compiler.common.Diagnostic;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.optimizer.OperatorCharacterizer;
+import com.asakusafw.lang.compiler.optimizer.OperatorCharacterizers;
 import com.asakusafw.lang.compiler.optimizer.OperatorEstimate;
 import com.asakusafw.lang.compiler.optimizer.OperatorEstimator;
 import com.asakusafw.lang.compiler.optimizer.OperatorRewriter;
+import com.asakusafw.lang.compiler.optimizer.OptimizerContext;
 
 /**
  * Basic implementations of optimizer facilities.
@@ -30,6 +38,7 @@ public final class BasicOptimizers {
 
     /**
      * Returns a builder for the preset basic {@link OperatorEstimator}.
+     * The built estimator prefers the operator history if it is available.
      * @param loader the class loader
      * @return the created builder
      */
@@ -38,13 +47,15 @@ public final class BasicOptimizers {
                 .withInput(new BasicExternalInputEstimator())
                 .withOutput(new BasicConstantEstimator(OperatorEstimate.UNKNOWN_SIZE))
                 .withMarker(new BasicPropagateEstimator())
-                .load(loader, OperatorEstimatorBinding.class);
+                .load(loader, OperatorEstimatorBinding.class)
+                .withHistory(true);
     }
 
     /**
      * Returns a builder for the preset basic operator classifier.
      * @param loader the class loader
      * @return the created builder
+     * @see #classify(OptimizerContext, OperatorEstimator, OperatorCharacterizer, Collection, Collection)
      */
     public static CompositeOperatorCharacterizer.Builder<OperatorClass> getDefaultClassifier(ClassLoader loader) {
         return CompositeOperatorCharacterizer.<OperatorClass>builder()
@@ -54,6 +65,28 @@ public final class BasicOptimizers {
                 .load(loader, OperatorClassifierBinding.class);
     }
 
+    /**
+     * Classifies the target operators.
+     * This also demotes the broadcast joins which exceed the {@link BroadcastJoinBudget broadcast budget}.
+     * @param context the current context
+     * @param estimator the operator estimator
+     * @param classifier the operator classifier
+     * @param operators the target operators
+     * @param diagnostics the sink of diagnostics about the demoted joins
+     * @return the operator classes
+     * @since 0.4.0
+     */
+    public static Map<Operator, OperatorClass> classify(
+            OptimizerContext context,
+            OperatorEstimator estimator,
+            OperatorCharacterizer<? extends OperatorClass> classifier,
+            Collection<? extends Operator> operators,
+            Collection<? super Diagnostic> diagnostics) {
+        OperatorCharacterizer.Context adapter = OperatorCharacterizers.newContext(context, estimator);
+        Map<Operator, OperatorClass> classes = OperatorCharacterizers.apply(adapter, classifier, operators);
+        return BroadcastJoinBudget.apply(adapter, classes, diagnostics);
+    }
+
     /**
      * Returns a builder for the preset basic operator rewriter.
      * @param loader the class loader
@@ -0,0 +1,266 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.basic;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.api.CompilerOptions;
+import com.asakusafw.lang.compiler.common.BasicDiagnostic;
+import com.asakusafw.lang.compiler.common.Diagnostic;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.graph.OperatorInput;
+import com.asakusafw.lang.compiler.model.graph.OperatorOutput;
+import com.asakusafw.lang.compiler.optimizer.OperatorCharacterizer;
+import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass.InputAttribute;
+import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass.InputType;
+import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass.OperatorAttribute;
+import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass.OutputAttribute;
+
+/**
+ * Limits the total size of broadcast inputs in each pipeline.
+ * <p>
+ * Each operator which processes individual records and has secondary inputs is considered as a broadcast join.
+ * This groups the operators into pipelines, which are connected without any shuffle operations,
+ * and then sums up the estimated sizes of the distinct broadcast inputs in each pipeline.
+ * If the total size exceeds the budget, this demotes the joins with the largest broadcast inputs
+ * to shuffle joins (processes individual groups of all inputs) until the total size fits in the budget.
+ * </p>
+ * <p>
+ * Broadcast joins with unknown input sizes are always demoted, and their inputs are not counted in the total size.
+ * </p>
+ * <h3> compiler options </h3>
+ * <ul>
+ * <li> {@code operator.join.broadcast.budget} -
+ *      the max total size of broadcast inputs in each pipeline in bytes, or a negative value to disable it </li>
+ * </ul>
+ * @since 0.4.0
+ */
+public final class BroadcastJoinBudget {
+
+    static final Logger LOG = LoggerFactory.getLogger(BroadcastJoinBudget.class);
+
+    /**
+     * The compiler option key of the max total size of broadcast inputs in each pipeline in bytes.
+     */
+    public static final String KEY_BUDGET = "operator.join.broadcast.budget"; //$NON-NLS-1$
+
+    /**
+     * The default value of {@link #KEY_BUDGET}.
+     */
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    private BroadcastJoinBudget() {
+        return;
+    }
+
+    /**
+     * Demotes broadcast joins which exceed the budget.
+     * @param context the current context
+     * @param classes the original operator classes
+     * @param diagnostics the sink of diagnostics about the demoted joins
+     * @return the operator classes with the demoted joins
+     */
+    public static Map<Operator, OperatorClass> apply(
+            OperatorCharacterizer.Context context,
+            Map<Operator, OperatorClass> classes,
+            Collection<? super Diagnostic> diagnostics) {
+        long budget = getBudget(context.getOptions());
+        Map<Operator, OperatorClass> results = new LinkedHashMap<>(classes);
+        if (budget < 0) {
+            return results;
+        }
+        for (Set<Operator> pipeline : getPipelines(classes)) {
+            List<Broadcast> broadcasts = collectBroadcasts(context, classes, pipeline);
+            Set<Operator> unknowns = new LinkedHashSet<>();
+            for (Broadcast broadcast : broadcasts) {
+                if (Double.isNaN(broadcast.size)) {
+                    demote(results, broadcast, "broadcast join is demoted to shuffle join: {0} "
+                            + "(broadcast=unknown size, budget={3}bytes)",
+                            Double.NaN, budget, diagnostics);
+                    unknowns.addAll(broadcast.consumers);
+                }
+            }
+            // the joins with unknown sizes have been already demoted
+            broadcasts.removeIf(b -> {
+                b.consumers.removeAll(unknowns);
+                return b.consumers.isEmpty();
+            });
+            double total = 0.0;
+            for (Broadcast broadcast : broadcasts) {
+                total += broadcast.size;
+            }
+            if (total <= budget) {
+                continue;
+            }
+            broadcasts.sort(Comparator.comparingDouble((Broadcast b) -> b.size).reversed());
+            for (Broadcast broadcast : broadcasts) {
+                if (total <= budget) {
+                    break;
+                }
+                demote(results, broadcast, "broadcast join is demoted to shuffle join: {0} "
+                        + "(broadcast={1}bytes, pipeline total={2}bytes, budget={3}bytes)",
+                        total, budget, diagnostics);
+                total -= broadcast.size;
+            }
+        }
+        return results;
+    }
+
+    private static void demote(
+            Map<Operator, OperatorClass> results,
+            Broadcast broadcast,
+            String pattern,
+            double total,
+            long budget,
+            Collection<? super Diagnostic> diagnostics) {
+        for (Operator operator : broadcast.consumers) {
+            OperatorClass demoted = demote(results.get(operator));
+            results.put(operator, demoted);
+            String message = MessageFormat.format(pattern, operator, broadcast.size, total, budget);
+            LOG.info(message);
+            diagnostics.add(new BasicDiagnostic(Diagnostic.Level.INFO, message));
+        }
+    }
+
+    private static long getBudget(CompilerOptions options) {
+        String string = options.get(KEY_BUDGET, null);
+        if (string == null) {
+            return DEFAULT_BUDGET;
+        }
+        try {
+            return Long.parseLong(string.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn(MessageFormat.format(
+                    "broadcast budget value must be an integral number: {0}={1}",
+                    KEY_BUDGET,
+                    string), e);
+            return DEFAULT_BUDGET;
+        }
+    }
+
+    private static boolean isBroadcast(OperatorClass info) {
+        return info.getPrimaryInputType() == InputType.RECORD && info.getSecondaryInputs().isEmpty() == false;
+    }
+
+    private static Collection<Set<Operator>> getPipelines(Map<Operator, OperatorClass> classes) {
+        Map<Operator, Operator> parents = new HashMap<>();
+        for (OperatorClass info : classes.values()) {
+            if (info.getPrimaryInputType() == InputType.GROUP) {
+                continue;
+            }
+            Operator operator = info.getOperator();
+            for (OperatorInput input : info.getPrimaryInputs()) {
+                for (OperatorOutput upstream : input.getOpposites()) {
+                    if (classes.containsKey(upstream.getOwner())) {
+                        union(parents, operator, upstream.getOwner());
+                    }
+                }
+            }
+        }
+        Map<Operator, Set<Operator>> results = new LinkedHashMap<>();
+        for (Operator operator : classes.keySet()) {
+            results.computeIfAbsent(find(parents, operator), k -> new LinkedHashSet<>()).add(operator);
+        }
+        return results.values();
+    }
+
+    private static Operator find(Map<Operator, Operator> parents, Operator operator) {
+        Operator current = operator;
+        while (true) {
+            Operator parent = parents.get(current);
+            if (parent == null) {
+                return current;
+            }
+            current = parent;
+        }
+    }
+
+    private static void union(Map<Operator, Operator> parents, Operator a, Operator b) {
+        Operator ra = find(parents, a);
+        Operator rb = find(parents, b);
+        if (ra != rb) {
+            parents.put(ra, rb);
+        }
+    }
+
+    private static List<Broadcast> collectBroadcasts(
+            OperatorCharacterizer.Context context,
+            Map<Operator, OperatorClass> classes,
+            Set<Operator> pipeline) {
+        Map<Set<OperatorOutput>, Broadcast> results = new LinkedHashMap<>();
+        for (Operator operator : pipeline) {
+            OperatorClass info = classes.get(operator);
+            if (isBroadcast(info) == false) {
+                continue;
+            }
+            for (OperatorInput input : info.getSecondaryInputs()) {
+                // the same broadcast data is shared in the pipeline
+                Set<OperatorOutput> source = new LinkedHashSet<>(input.getOpposites());
+                Broadcast broadcast = results.get(source);
+                if (broadcast == null) {
+                    double size = context.estimate(operator).getSize(input);
+                    broadcast = new Broadcast(size);
+                    results.put(source, broadcast);
+                }
+                broadcast.consumers.add(operator);
+            }
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    private static OperatorClass demote(OperatorClass info) {
+        Operator operator = info.getOperator();
+        OperatorClass.Builder builder = OperatorClass.builder(operator, InputType.GROUP);
+        for (OperatorAttribute attribute : info.getAttributes()) {
+            builder.with(attribute);
+        }
+        for (OperatorInput input : info.getInputs()) {
+            builder.with(input, InputAttribute.PRIMARY);
+            for (InputAttribute attribute : info.getAttributes(input)) {
+                builder.with(input, attribute);
+            }
+        }
+        for (OperatorOutput output : info.getOutputs()) {
+            for (OutputAttribute attribute : info.getAttributes(output)) {
+                builder.with(output, attribute);
+            }
+        }
+        return builder.build();
+    }
+
+    private static final class Broadcast {
+
+        final double size;
+
+        final Set<Operator> consumers = new LinkedHashSet<>();
+
+        Broadcast(double size) {
+            this.size = size;
+        }
+    }
+}
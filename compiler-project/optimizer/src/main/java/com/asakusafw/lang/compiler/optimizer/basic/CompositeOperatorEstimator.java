@@ -22,6 +22,7 @@ import com.asakusafw.lang.compiler.model.graph.CoreOperator.CoreOperatorKind;
 import com.asakusafw.lang.compiler.model.graph.Operator;
 import com.asakusafw.lang.compiler.model.graph.Operator.OperatorKind;
 import com.asakusafw.lang.compiler.optimizer.OperatorEstimator;
+import com.asakusafw.lang.compiler.optimizer.history.HistoryOperatorEstimator;
 
 /**
  * Composition of {@link OperatorEstimator}.
@@ -62,6 +63,20 @@ public final class CompositeOperatorEstimator
      */
     public static class Builder extends AbstractBuilder<Builder, OperatorEstimator> {
 
+        private boolean history;
+
+        /**
+         * Sets whether the built estimator prefers the statistics in the operator history or not.
+         * @param enable {@code true} to prefer the operator history, otherwise {@code false}
+         * @return this
+         * @see HistoryOperatorEstimator
+         * @since 0.4.0
+         */
+        public Builder withHistory(boolean enable) {
+            this.history = enable;
+            return this;
+        }
+
         @Override
         protected OperatorEstimator doBuild(
                 OperatorEstimator defaultElement,
@@ -71,10 +86,14 @@ public final class CompositeOperatorEstimator
                 Map<CoreOperatorKind, OperatorEstimator> coreElements,
                 Map<ClassDescription, OperatorEstimator> userElements,
                 Map<String, OperatorEstimator> customElements) {
-            return new CompositeOperatorEstimator(
+            OperatorEstimator result = new CompositeOperatorEstimator(
                     defaultElement, kindElements,
                     inputElements, outputElements,
                     coreElements, userElements, customElements);
+            if (history) {
+                return new HistoryOperatorEstimator(result);
+            }
+            return result;
         }
     }
 }
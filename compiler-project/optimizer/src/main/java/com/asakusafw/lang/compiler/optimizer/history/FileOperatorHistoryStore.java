@@ -0,0 +1,189 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.history;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import com.asakusafw.lang.compiler.optimizer.history.OperatorObservation.Statistics;
+
+/**
+ * An implementation of {@link OperatorHistoryStore} which is backed by a local file.
+ * <p>
+ * The history file is a UTF-8 text file, and each line represents statistics of an operator port:
+ * </p>
+<pre><code>
+&lt;operator-identity&gt; TAB (input|output) TAB &lt;port-name&gt; TAB &lt;records&gt; TAB &lt;bytes&gt;
+</code></pre>
+ * <p>
+ * Empty lines and lines which start with {@code "#"} are ignored.
+ * </p>
+ * @since 0.4.0
+ */
+public class FileOperatorHistoryStore implements OperatorHistoryStore {
+
+    private static final char SEPARATOR = '\t';
+
+    private static final String COMMENT_PREFIX = "#"; //$NON-NLS-1$
+
+    private static final String KIND_INPUT = "input"; //$NON-NLS-1$
+
+    private static final String KIND_OUTPUT = "output"; //$NON-NLS-1$
+
+    private static final int NUMBER_OF_FIELDS = 5;
+
+    private final Map<String, OperatorObservation> entries = new TreeMap<>();
+
+    /**
+     * Creates a new empty instance.
+     */
+    public FileOperatorHistoryStore() {
+        return;
+    }
+
+    /**
+     * Loads the history file.
+     * @param file the history file
+     * @return the loaded store, or an empty store if the file does not exist
+     * @throws IOException if failed to load the history file
+     */
+    public static FileOperatorHistoryStore load(File file) throws IOException {
+        Objects.requireNonNull(file);
+        FileOperatorHistoryStore result = new FileOperatorHistoryStore();
+        if (file.exists() == false) {
+            return result;
+        }
+        Map<String, Map<String, Statistics>> inputs = new LinkedHashMap<>();
+        Map<String, Map<String, Statistics>> outputs = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            while (true) {
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith(COMMENT_PREFIX)) {
+                    continue;
+                }
+                String[] fields = line.split(String.valueOf(SEPARATOR));
+                if (fields.length != NUMBER_OF_FIELDS) {
+                    throw new IOException(MessageFormat.format(
+                            "invalid operator history: {0} (line={1})",
+                            file,
+                            lineNumber));
+                }
+                Map<String, Map<String, Statistics>> target;
+                if (fields[1].equals(KIND_INPUT)) {
+                    target = inputs;
+                } else if (fields[1].equals(KIND_OUTPUT)) {
+                    target = outputs;
+                } else {
+                    throw new IOException(MessageFormat.format(
+                            "invalid operator history port kind: {0} (line={1}, kind={2})",
+                            file,
+                            lineNumber,
+                            fields[1]));
+                }
+                Statistics statistics;
+                try {
+                    statistics = new Statistics(Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+                } catch (NumberFormatException e) {
+                    throw new IOException(MessageFormat.format(
+                            "invalid operator history statistics: {0} (line={1})",
+                            file,
+                            lineNumber), e);
+                }
+                inputs.computeIfAbsent(fields[0], k -> new LinkedHashMap<>());
+                outputs.computeIfAbsent(fields[0], k -> new LinkedHashMap<>());
+                target.get(fields[0]).put(fields[2], statistics);
+            }
+        }
+        for (Map.Entry<String, Map<String, Statistics>> entry : inputs.entrySet()) {
+            String key = entry.getKey();
+            result.put(key, new OperatorObservation(entry.getValue(), outputs.get(key)));
+        }
+        return result;
+    }
+
+    /**
+     * Saves this history into the file.
+     * @param file the destination file
+     * @throws IOException if failed to save the history
+     */
+    public void save(File file) throws IOException {
+        Objects.requireNonNull(file);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent.mkdirs() == false && parent.isDirectory() == false) {
+            throw new IOException(MessageFormat.format(
+                    "failed to prepare a parent directory: {0}",
+                    file));
+        }
+        // writes into a temporary file first, to keep the current history if failed
+        File temporary = File.createTempFile(file.getName(), ".tmp", parent); //$NON-NLS-1$
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary.toPath(), StandardCharsets.UTF_8)) {
+                synchronized (this) {
+                    for (Map.Entry<String, OperatorObservation> entry : entries.entrySet()) {
+                        OperatorObservation observation = entry.getValue();
+                        write(writer, entry.getKey(), KIND_INPUT, observation.getInputs());
+                        write(writer, entry.getKey(), KIND_OUTPUT, observation.getOutputs());
+                    }
+                }
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    private static void write(
+            BufferedWriter writer,
+            String key, String kind, Map<String, Statistics> ports) throws IOException {
+        for (Map.Entry<String, Statistics> entry : ports.entrySet()) {
+            Statistics statistics = entry.getValue();
+            writer.append(key).append(SEPARATOR)
+                    .append(kind).append(SEPARATOR)
+                    .append(entry.getKey()).append(SEPARATOR)
+                    .append(String.valueOf(statistics.getRecords())).append(SEPARATOR)
+                    .append(String.valueOf(statistics.getBytes()));
+            writer.newLine();
+        }
+    }
+
+    @Override
+    public synchronized OperatorObservation find(String key) {
+        Objects.requireNonNull(key);
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, OperatorObservation observation) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(observation);
+        entries.put(key, observation);
+    }
+}
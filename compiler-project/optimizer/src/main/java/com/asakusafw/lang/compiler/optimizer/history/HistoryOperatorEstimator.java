@@ -0,0 +1,229 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.graph.OperatorOutput;
+import com.asakusafw.lang.compiler.model.graph.Operators;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimator;
+import com.asakusafw.lang.compiler.optimizer.history.OperatorObservation.Statistics;
+
+/**
+ * An {@link OperatorEstimator} which prefers the statistics observed in the previous executions.
+ * <p>
+ * If the history store is available, this puts {@link OperatorIdentity} to each target operator as its attribute.
+ * Then, if the store contains the observed output sizes of the operator, this uses them as the estimated sizes,
+ * and puts the {@link OperatorObservation} to the operator as its attribute.
+ * Otherwise, this delegates the estimation to the default estimator.
+ * </p>
+ * <p>
+ * This also puts the identity mapping of the operators into the jobflow output as
+ * {@code etc/operator-identity/<hash>.tsv} for each connected component of the estimated operators,
+ * which is a UTF-8 text file and each line consists of:
+ * </p>
+<pre><code>
+&lt;operator-identity&gt; TAB &lt;original-serial-number&gt; TAB &lt;operator-label&gt;
+</code></pre>
+ * <p>
+ * The compiler never writes the history store by itself.
+ * The tools which collect the execution statistics of the jobflows are responsible to write it,
+ * by relating the observed operators to their identities with the above mapping files.
+ * </p>
+ * <h3> compiler options </h3>
+ * <ul>
+ * <li> {@code estimator.history.file} -
+ *      the local path of the operator history file, or not defined to disable it
+ *      (only if the history store is not specified explicitly) </li>
+ * </ul>
+ * @see FileOperatorHistoryStore
+ * @since 0.4.0
+ */
+public class HistoryOperatorEstimator implements OperatorEstimator {
+
+    static final Logger LOG = LoggerFactory.getLogger(HistoryOperatorEstimator.class);
+
+    /**
+     * The compiler option key of the local path of the operator history file.
+     */
+    public static final String KEY_HISTORY_FILE = "estimator.history.file"; //$NON-NLS-1$
+
+    private final OperatorEstimator delegate;
+
+    private final OperatorHistoryStore store;
+
+    static final Location IDENTITY_BASE = Location.of("etc/operator-identity"); //$NON-NLS-1$
+
+    static final String IDENTITY_EXTENSION = ".tsv"; //$NON-NLS-1$
+
+    private final Map<String, OperatorHistoryStore> loaded = new ConcurrentHashMap<>();
+
+    private final Map<Context, Session> sessions = new WeakHashMap<>();
+
+    private final Set<String> mapped = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new instance, which loads the history store from {@link #KEY_HISTORY_FILE}.
+     * @param delegate the default estimator
+     */
+    public HistoryOperatorEstimator(OperatorEstimator delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param delegate the default estimator
+     * @param store the history store, or {@code null} to load it from {@link #KEY_HISTORY_FILE}
+     */
+    public HistoryOperatorEstimator(OperatorEstimator delegate, OperatorHistoryStore store) {
+        Objects.requireNonNull(delegate);
+        this.delegate = delegate;
+        this.store = store;
+    }
+
+    @Override
+    public void perform(Context context, Operator operator) {
+        OperatorHistoryStore history = getStore(context);
+        if (history != null) {
+            OperatorIdentity identity = getResolver(context, operator).resolve(operator);
+            context.putAttribute(OperatorIdentity.class, identity);
+            OperatorObservation observation = history.find(identity.getValue());
+            if (observation != null && isAvailable(operator, observation)) {
+                LOG.debug("found operator history: {} => {}", operator, observation); //$NON-NLS-1$
+                for (OperatorOutput port : operator.getOutputs()) {
+                    context.putSize(port, observation.getOutputs().get(port.getName()).getBytes());
+                }
+                context.putAttribute(OperatorObservation.class, observation);
+                return;
+            }
+        }
+        delegate.perform(context, operator);
+    }
+
+    private static boolean isAvailable(Operator operator, OperatorObservation observation) {
+        for (OperatorOutput port : operator.getOutputs()) {
+            Statistics statistics = observation.getOutputs().get(port.getName());
+            if (statistics == null || statistics.getBytes() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private OperatorIdentity.Resolver getResolver(Context context, Operator operator) {
+        Session session;
+        synchronized (sessions) {
+            session = sessions.computeIfAbsent(context, Session::new);
+        }
+        Set<Operator> component = session.enter(operator);
+        if (component != null) {
+            putMapping(context, session.resolver, component);
+        }
+        return session.resolver;
+    }
+
+    private void putMapping(Context context, OperatorIdentity.Resolver resolver, Set<Operator> component) {
+        List<Operator> operators = new ArrayList<>(component);
+        Collections.sort(operators, Comparator.comparingLong(Operator::getOriginalSerialNumber));
+        StringBuilder buf = new StringBuilder();
+        for (Operator member : operators) {
+            buf.append(resolver.resolve(member).getValue());
+            buf.append('\t');
+            buf.append(member.getOriginalSerialNumber());
+            buf.append('\t');
+            buf.append(member.toString().replaceAll("\\s+", " ")); //$NON-NLS-1$ //$NON-NLS-2$
+            buf.append('\n');
+        }
+        String contents = buf.toString();
+        Location location = IDENTITY_BASE.append(OperatorIdentity.hash(contents) + IDENTITY_EXTENSION);
+        if (mapped.add(context.getBatchId() + '/' + context.getFlowId() + '/' + location) == false) {
+            return;
+        }
+        LOG.debug("generating operator identity mapping: {}", location); //$NON-NLS-1$
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                context.addResourceFile(location), StandardCharsets.UTF_8))) {
+            writer.print(contents);
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to generate operator identity mapping: {0}",
+                    location), e);
+        }
+    }
+
+    private OperatorHistoryStore getStore(Context context) {
+        if (store != null) {
+            return store;
+        }
+        String path = context.getOptions().get(KEY_HISTORY_FILE, null);
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+        return loaded.computeIfAbsent(path.trim(), HistoryOperatorEstimator::load);
+    }
+
+    private static OperatorHistoryStore load(String path) {
+        File file = new File(path);
+        try {
+            LOG.debug("loading operator history: {}", file); //$NON-NLS-1$
+            return FileOperatorHistoryStore.load(file);
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to load operator history: {0}",
+                    file), e);
+            return new FileOperatorHistoryStore();
+        }
+    }
+
+    private static final class Session {
+
+        final OperatorIdentity.Resolver resolver;
+
+        private final Set<Operator> mapped = new HashSet<>();
+
+        Session(Context context) {
+            this.resolver = new OperatorIdentity.Resolver(context);
+        }
+
+        synchronized Set<Operator> enter(Operator operator) {
+            if (mapped.contains(operator)) {
+                return null;
+            }
+            Set<Operator> component = Operators.getTransitiveConnected(Collections.singleton(operator));
+            mapped.addAll(component);
+            return component;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.history;
+
+/**
+ * A store of {@link OperatorObservation}s from the previous executions.
+ * Each observation is keyed by the value of {@link OperatorIdentity}.
+ * @since 0.4.0
+ */
+public interface OperatorHistoryStore {
+
+    /**
+     * Returns the latest observation of the target operator.
+     * @param key the operator identity
+     * @return the observation, or {@code null} if the operator has not been observed
+     * @see OperatorIdentity#getValue()
+     */
+    OperatorObservation find(String key);
+
+    /**
+     * Records an observation of the target operator.
+     * This replaces the previous observation of the operator.
+     * @param key the operator identity
+     * @param observation the observation
+     * @see OperatorIdentity#getValue()
+     */
+    void put(String key, OperatorObservation observation);
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.history;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.asakusafw.lang.compiler.model.graph.CoreOperator;
+import com.asakusafw.lang.compiler.model.graph.CustomOperator;
+import com.asakusafw.lang.compiler.model.graph.ExternalInput;
+import com.asakusafw.lang.compiler.model.graph.ExternalOutput;
+import com.asakusafw.lang.compiler.model.graph.FlowOperator;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.graph.OperatorArgument;
+import com.asakusafw.lang.compiler.model.graph.OperatorInput;
+import com.asakusafw.lang.compiler.model.graph.OperatorOutput;
+import com.asakusafw.lang.compiler.model.graph.UserOperator;
+import com.asakusafw.lang.compiler.model.info.ExternalPortInfo;
+import com.asakusafw.lang.compiler.optimizer.OptimizerContext;
+
+/**
+ * A stable identity of operators across individual compilations.
+ * <p>
+ * The identity consists of the batch ID, the flow ID, and a digest of the operator.
+ * The digest is computed from the operator definition (e.g. the operator method and its arguments)
+ * and the digests of its upstream operators, and it does not depend on any serial numbers.
+ * That is, the same operator has the same identity unless the DSL of its upstream flow is changed.
+ * </p>
+ * @since 0.4.0
+ */
+public final class OperatorIdentity {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+    private static final int DIGEST_LENGTH = 16;
+
+    private static final String UNKNOWN_ID = "-"; //$NON-NLS-1$
+
+    private final String value;
+
+    private OperatorIdentity(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the identity of the target operator.
+     * @param context the current context
+     * @param operator the target operator
+     * @return the identity
+     */
+    public static OperatorIdentity of(OptimizerContext context, Operator operator) {
+        return of(context.getBatchId(), context.getFlowId(), operator);
+    }
+
+    /**
+     * Returns the identity of the target operator.
+     * @param batchId the batch ID (nullable)
+     * @param flowId the flow ID (nullable)
+     * @param operator the target operator
+     * @return the identity
+     */
+    public static OperatorIdentity of(String batchId, String flowId, Operator operator) {
+        return new Resolver(batchId, flowId).resolve(operator);
+    }
+
+    /**
+     * Returns the identity value.
+     * @return the identity value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Resolves {@link OperatorIdentity} of operators in the same operator graph.
+     * <p>
+     * This keeps the digests of the resolved operators and their upstreams,
+     * so that the operator graph must not be modified while using the same resolver.
+     * </p>
+     * @since 0.4.0
+     */
+    public static final class Resolver {
+
+        private final String batchId;
+
+        private final String flowId;
+
+        private final Map<Operator, String> digests = new HashMap<>();
+
+        /**
+         * Creates a new instance.
+         * @param context the current context
+         */
+        public Resolver(OptimizerContext context) {
+            this(context.getBatchId(), context.getFlowId());
+        }
+
+        /**
+         * Creates a new instance.
+         * @param batchId the batch ID (nullable)
+         * @param flowId the flow ID (nullable)
+         */
+        public Resolver(String batchId, String flowId) {
+            this.batchId = batchId == null ? UNKNOWN_ID : batchId;
+            this.flowId = flowId == null ? UNKNOWN_ID : flowId;
+        }
+
+        /**
+         * Returns the identity of the target operator.
+         * @param operator the target operator
+         * @return the identity
+         */
+        public synchronized OperatorIdentity resolve(Operator operator) {
+            Objects.requireNonNull(operator);
+            String digest = digest(operator, digests);
+            return new OperatorIdentity(String.join("/", batchId, flowId, digest)); //$NON-NLS-1$
+        }
+    }
+
+    private static String digest(Operator operator, Map<Operator, String> digests) {
+        // operator graphs are acyclic
+        String cached = digests.get(operator);
+        if (cached != null) {
+            return cached;
+        }
+        StringBuilder buf = new StringBuilder();
+        appendSignature(buf, operator);
+        for (OperatorInput port : operator.getInputs()) {
+            buf.append("|in:").append(port.getName()).append(':').append(port.getDataType()); //$NON-NLS-1$
+            List<String> upstreams = new ArrayList<>();
+            for (OperatorOutput upstream : port.getOpposites()) {
+                upstreams.add(digest(upstream.getOwner(), digests) + '.' + upstream.getName());
+            }
+            Collections.sort(upstreams);
+            buf.append(upstreams);
+        }
+        for (OperatorOutput port : operator.getOutputs()) {
+            buf.append("|out:").append(port.getName()).append(':').append(port.getDataType()); //$NON-NLS-1$
+        }
+        for (OperatorArgument argument : operator.getArguments()) {
+            buf.append("|arg:").append(argument.getName()).append('=').append(argument.getValue()); //$NON-NLS-1$
+        }
+        String result = hash(buf.toString());
+        digests.put(operator, result);
+        return result;
+    }
+
+    private static void appendSignature(StringBuilder buf, Operator operator) {
+        buf.append(operator.getOperatorKind()).append(':');
+        switch (operator.getOperatorKind()) {
+        case CORE:
+            buf.append(((CoreOperator) operator).getCoreOperatorKind());
+            break;
+        case USER: {
+            UserOperator op = (UserOperator) operator;
+            buf.append(op.getAnnotation().getDeclaringClass().getBinaryName());
+            buf.append(':');
+            buf.append(op.getMethod().getDeclaringClass().getBinaryName());
+            buf.append('#');
+            buf.append(op.getMethod().getName());
+            break;
+        }
+        case FLOW:
+            buf.append(((FlowOperator) operator).getDescriptionClass().getBinaryName());
+            break;
+        case INPUT: {
+            ExternalInput op = (ExternalInput) operator;
+            buf.append(op.getName());
+            appendInfo(buf, op.getInfo());
+            break;
+        }
+        case OUTPUT: {
+            ExternalOutput op = (ExternalOutput) operator;
+            buf.append(op.getName());
+            appendInfo(buf, op.getInfo());
+            break;
+        }
+        case CUSTOM:
+            buf.append(((CustomOperator) operator).getCategory());
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static void appendInfo(StringBuilder buf, ExternalPortInfo info) {
+        if (info != null) {
+            buf.append(':').append(info.getModuleName());
+            buf.append(':').append(info.getDescriptionClass().getBinaryName());
+        }
+    }
+
+    static String hash(String contents) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = digest.digest(contents.getBytes(StandardCharsets.UTF_8));
+        StringBuilder buf = new StringBuilder(DIGEST_LENGTH * 2);
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            buf.append(String.format("%02x", bytes[i] & 0xff)); //$NON-NLS-1$
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        OperatorIdentity other = (OperatorIdentity) obj;
+        return value.equals(other.value);
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
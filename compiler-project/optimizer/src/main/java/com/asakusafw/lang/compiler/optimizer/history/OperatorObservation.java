@@ -0,0 +1,162 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.history;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Observed statistics of an operator in a previous execution.
+ * @since 0.4.0
+ */
+public class OperatorObservation {
+
+    private final Map<String, Statistics> inputs;
+
+    private final Map<String, Statistics> outputs;
+
+    /**
+     * Creates a new instance.
+     * @param inputs the statistics of the individual input ports
+     * @param outputs the statistics of the individual output ports
+     */
+    public OperatorObservation(Map<String, Statistics> inputs, Map<String, Statistics> outputs) {
+        Objects.requireNonNull(inputs);
+        Objects.requireNonNull(outputs);
+        this.inputs = Collections.unmodifiableMap(new LinkedHashMap<>(inputs));
+        this.outputs = Collections.unmodifiableMap(new LinkedHashMap<>(outputs));
+    }
+
+    /**
+     * Returns the statistics of the individual input ports.
+     * @return the statistics (port name -&gt; statistics)
+     */
+    public Map<String, Statistics> getInputs() {
+        return inputs;
+    }
+
+    /**
+     * Returns the statistics of the individual output ports.
+     * @return the statistics (port name -&gt; statistics)
+     */
+    public Map<String, Statistics> getOutputs() {
+        return outputs;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + inputs.hashCode();
+        result = prime * result + outputs.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        OperatorObservation other = (OperatorObservation) obj;
+        return inputs.equals(other.inputs) && outputs.equals(other.outputs);
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "OperatorObservation(inputs={0}, outputs={1})", //$NON-NLS-1$
+                inputs,
+                outputs);
+    }
+
+    /**
+     * Observed statistics of an operator port.
+     * @since 0.4.0
+     */
+    public static class Statistics {
+
+        private final long records;
+
+        private final long bytes;
+
+        /**
+         * Creates a new instance.
+         * @param records the number of records, or {@code -1} if it is not sure
+         * @param bytes the data size in bytes, or {@code -1} if it is not sure
+         */
+        public Statistics(long records, long bytes) {
+            this.records = records;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the number of records.
+         * @return the number of records, or {@code -1} if it is not sure
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * Returns the data size in bytes.
+         * @return the data size, or {@code -1} if it is not sure
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + Long.hashCode(records);
+            result = prime * result + Long.hashCode(bytes);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            Statistics other = (Statistics) obj;
+            return records == other.records && bytes == other.bytes;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format(
+                    "Statistics(records={0}, bytes={1})", //$NON-NLS-1$
+                    String.valueOf(records),
+                    String.valueOf(bytes));
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.basic;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.common.Diagnostic;
+import com.asakusafw.lang.compiler.model.graph.ExternalInput;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.testing.MockOperators;
+import com.asakusafw.lang.compiler.optimizer.OperatorCharacterizer;
+import com.asakusafw.lang.compiler.optimizer.OperatorCharacterizers;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimator;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimators;
+import com.asakusafw.lang.compiler.optimizer.OptimizerTestRoot;
+import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass.InputAttribute;
+import com.asakusafw.lang.compiler.optimizer.basic.OperatorClass.InputType;
+
+/**
+ * Test for {@link BroadcastJoinBudget}.
+ */
+public class BroadcastJoinBudgetTest extends OptimizerTestRoot {
+
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        MockOperators mock = new MockOperators()
+            .input("t")
+            .input("m0")
+            .input("m1")
+            .operator("j0", "t,m", "out").connect("t", "j0.t").connect("m0", "j0.m")
+            .operator("j1", "t,m", "out").connect("j0", "j1.t").connect("m1", "j1.m")
+            .output("o").connect("j1", "o");
+        Map<Operator, OperatorClass> classes = classify(mock, "j0", "j1");
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        Map<Operator, OperatorClass> results = BroadcastJoinBudget.apply(
+                context(mock, 40 * MB, 30 * MB), classes, diagnostics);
+
+        OperatorClass j0 = results.get(mock.get("j0"));
+        assertThat(j0.getPrimaryInputType(), is(InputType.GROUP));
+        assertThat(j0.getSecondaryInputs(), hasSize(0));
+
+        OperatorClass j1 = results.get(mock.get("j1"));
+        assertThat(j1, is(sameInstance(classes.get(mock.get("j1")))));
+        assertThat(diagnostics, hasSize(1));
+    }
+
+    /**
+     * broadcast joins are in the different pipelines.
+     */
+    @Test
+    public void separated() {
+        MockOperators mock = new MockOperators()
+            .input("t")
+            .input("m0")
+            .input("m1")
+            .operator("j0", "t,m", "out").connect("t", "j0.t").connect("m0", "j0.m")
+            .operator("g").connect("j0", "g")
+            .operator("j1", "t,m", "out").connect("g", "j1.t").connect("m1", "j1.m")
+            .output("o").connect("j1", "o");
+        Map<Operator, OperatorClass> classes = classify(mock, "j0", "j1");
+        classes.put(mock.get("g"), OperatorClass.builder(mock.get("g"), InputType.GROUP)
+                .with(mock.getInput("g"), InputAttribute.PRIMARY)
+                .build());
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        Map<Operator, OperatorClass> results = BroadcastJoinBudget.apply(
+                context(mock, 40 * MB, 30 * MB), classes, diagnostics);
+
+        assertThat(results.get(mock.get("j0")).getPrimaryInputType(), is(InputType.RECORD));
+        assertThat(results.get(mock.get("j1")).getPrimaryInputType(), is(InputType.RECORD));
+        assertThat(diagnostics, hasSize(0));
+    }
+
+    /**
+     * shared broadcast inputs are counted only once.
+     */
+    @Test
+    public void shared() {
+        MockOperators mock = new MockOperators()
+            .input("t")
+            .input("m0")
+            .input("m1")
+            .operator("j0", "t,m", "out").connect("t", "j0.t").connect("m0", "j0.m")
+            .operator("j1", "t,m", "out").connect("j0", "j1.t").connect("m0", "j1.m")
+            .output("o").connect("j1", "o");
+        Map<Operator, OperatorClass> classes = classify(mock, "j0", "j1");
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        Map<Operator, OperatorClass> results = BroadcastJoinBudget.apply(
+                context(mock, 40 * MB, 30 * MB), classes, diagnostics);
+
+        assertThat(results.get(mock.get("j0")).getPrimaryInputType(), is(InputType.RECORD));
+        assertThat(results.get(mock.get("j1")).getPrimaryInputType(), is(InputType.RECORD));
+        assertThat(diagnostics, hasSize(0));
+    }
+
+    /**
+     * disabled.
+     */
+    @Test
+    public void disabled() {
+        MockOperators mock = new MockOperators()
+            .input("t")
+            .input("m0")
+            .input("m1")
+            .operator("j0", "t,m", "out").connect("t", "j0.t").connect("m0", "j0.m")
+            .operator("j1", "t,m", "out").connect("j0", "j1.t").connect("m1", "j1.m")
+            .output("o").connect("j1", "o");
+        Map<Operator, OperatorClass> classes = classify(mock, "j0", "j1");
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        Map<Operator, OperatorClass> results = BroadcastJoinBudget.apply(
+                context(mock, 40 * MB, 30 * MB, BroadcastJoinBudget.KEY_BUDGET, "-1"), classes, diagnostics);
+
+        assertThat(results.get(mock.get("j0")).getPrimaryInputType(), is(InputType.RECORD));
+        assertThat(results.get(mock.get("j1")).getPrimaryInputType(), is(InputType.RECORD));
+        assertThat(diagnostics, hasSize(0));
+    }
+
+    /**
+     * broadcast inputs with unknown sizes.
+     */
+    @Test
+    public void unknown() {
+        MockOperators mock = new MockOperators()
+            .input("t")
+            .input("m0")
+            .input("m1")
+            .operator("j0", "t,m", "out").connect("t", "j0.t").connect("m0", "j0.m")
+            .operator("j1", "t,m", "out").connect("j0", "j1.t").connect("m1", "j1.m")
+            .output("o").connect("j1", "o");
+        Map<Operator, OperatorClass> classes = classify(mock, "j0", "j1");
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        Map<Operator, OperatorClass> results = BroadcastJoinBudget.apply(
+                context(mock, 40 * MB, -1), classes, diagnostics);
+
+        assertThat(results.get(mock.get("j0")).getPrimaryInputType(), is(InputType.RECORD));
+        assertThat(results.get(mock.get("j1")).getPrimaryInputType(), is(InputType.GROUP));
+        assertThat(diagnostics, hasSize(1));
+    }
+
+    /**
+     * the budget is applied in classifying operators.
+     */
+    @Test
+    public void classify() {
+        MockOperators mock = new MockOperators()
+            .input("t")
+            .input("m0")
+            .input("m1")
+            .operator("j0", "t,m", "out").connect("t", "j0.t").connect("m0", "j0.m")
+            .operator("j1", "t,m", "out").connect("j0", "j1.t").connect("m1", "j1.m")
+            .output("o").connect("j1", "o");
+        Map<Operator, OperatorClass> classes = classify(mock, "j0", "j1");
+
+        OperatorCharacterizer<OperatorClass> classifier = (context, operator) -> classes.get(operator);
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        Map<Operator, OperatorClass> results = BasicOptimizers.classify(
+                context(), estimator(mock, 40 * MB, 30 * MB), classifier, classes.keySet(), diagnostics);
+
+        assertThat(results.get(mock.get("j0")).getPrimaryInputType(), is(InputType.GROUP));
+        assertThat(results.get(mock.get("j1")).getPrimaryInputType(), is(InputType.RECORD));
+        assertThat(diagnostics, hasSize(1));
+    }
+
+    private static Map<Operator, OperatorClass> classify(MockOperators mock, String... joins) {
+        Map<Operator, OperatorClass> results = new LinkedHashMap<>();
+        for (Operator operator : mock.all()) {
+            if (operator instanceof ExternalInput) {
+                results.put(operator, OperatorClass.builder(operator, InputType.NOTHING).build());
+            } else if (operator.getInputs().size() == 1) {
+                results.put(operator, OperatorClass.builder(operator, InputType.RECORD)
+                        .with(operator.getInputs().get(0), InputAttribute.PRIMARY)
+                        .build());
+            }
+        }
+        for (String id : joins) {
+            Operator operator = mock.get(id);
+            results.put(operator, OperatorClass.builder(operator, InputType.RECORD)
+                    .with(mock.getInput(id + ".t"), InputAttribute.PRIMARY)
+                    .build());
+        }
+        return results;
+    }
+
+    private OperatorCharacterizer.Context context(MockOperators mock, long m0, long m1, String... options) {
+        return OperatorCharacterizers.newContext(context(options), estimator(mock, m0, m1));
+    }
+
+    private static OperatorEstimator estimator(MockOperators mock, long m0, long m1) {
+        return (context, operator) -> {
+            if (operator == mock.get("m0") && m0 >= 0) {
+                OperatorEstimators.putSize(context, operator, m0);
+            } else if (operator == mock.get("m1") && m1 >= 0) {
+                OperatorEstimators.putSize(context, operator, m1);
+            }
+        };
+    }
+}
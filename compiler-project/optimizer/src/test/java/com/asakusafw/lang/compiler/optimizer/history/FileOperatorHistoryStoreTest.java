@@ -0,0 +1,108 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.history;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.lang.compiler.optimizer.history.OperatorObservation.Statistics;
+
+/**
+ * Test for {@link FileOperatorHistoryStore}.
+ */
+public class FileOperatorHistoryStoreTest {
+
+    /**
+     * temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        OperatorObservation a = new OperatorObservation(
+                Collections.singletonMap("in", new Statistics(10, 100)),
+                Collections.singletonMap("out", new Statistics(5, 50)));
+        OperatorObservation b = new OperatorObservation(
+                Collections.emptyMap(),
+                Collections.singletonMap("port", new Statistics(-1, 1000)));
+
+        FileOperatorHistoryStore store = new FileOperatorHistoryStore();
+        store.put("b/f/a", a);
+        store.put("b/f/b", b);
+
+        File file = new File(temporary.getRoot(), "history/testing.tsv");
+        store.save(file);
+
+        FileOperatorHistoryStore restored = FileOperatorHistoryStore.load(file);
+        assertThat(restored.find("b/f/a"), is(a));
+        assertThat(restored.find("b/f/b"), is(b));
+        assertThat(restored.find("b/f/c"), is(nullValue()));
+    }
+
+    /**
+     * load missing file.
+     * @throws Exception if failed
+     */
+    @Test
+    public void missing() throws Exception {
+        FileOperatorHistoryStore store = FileOperatorHistoryStore.load(new File(temporary.getRoot(), "missing"));
+        assertThat(store.find("b/f/a"), is(nullValue()));
+    }
+
+    /**
+     * load file with comments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void comments() throws Exception {
+        File file = temporary.newFile();
+        Files.write(file.toPath(), Arrays.asList(
+                "# comment",
+                "",
+                "b/f/a\toutput\tout\t1\t2"), StandardCharsets.UTF_8);
+        FileOperatorHistoryStore store = FileOperatorHistoryStore.load(file);
+        assertThat(store.find("b/f/a"), is(new OperatorObservation(
+                Collections.emptyMap(),
+                Collections.singletonMap("out", new Statistics(1, 2)))));
+    }
+
+    /**
+     * load broken file.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void invalid() throws Exception {
+        File file = temporary.newFile();
+        Files.write(file.toPath(), Arrays.asList("b/f/a\tunknown\tout\t1\t2"), StandardCharsets.UTF_8);
+        FileOperatorHistoryStore.load(file);
+    }
+}
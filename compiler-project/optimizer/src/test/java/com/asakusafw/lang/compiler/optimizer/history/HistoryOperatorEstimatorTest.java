@@ -0,0 +1,231 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.history;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.api.CompilerOptions;
+import com.asakusafw.lang.compiler.api.testing.MockDataModelLoader;
+import com.asakusafw.lang.compiler.common.BasicResourceContainer;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.testing.MockOperators;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimate;
+import com.asakusafw.lang.compiler.optimizer.OptimizerTestRoot;
+import com.asakusafw.lang.compiler.optimizer.OperatorEstimator;
+import com.asakusafw.lang.compiler.optimizer.adapter.OperatorEstimatorAdapter;
+import com.asakusafw.lang.compiler.optimizer.basic.BasicConstantEstimator;
+import com.asakusafw.lang.compiler.optimizer.history.OperatorObservation.Statistics;
+import com.asakusafw.lang.compiler.optimizer.testing.MockOptimizerContext;
+
+/**
+ * Test for {@link HistoryOperatorEstimator}.
+ */
+public class HistoryOperatorEstimatorTest extends OptimizerTestRoot {
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        MockOperators mock = new MockOperators()
+            .input("i")
+            .operator("o").connect("i", "o");
+        Operator operator = mock.get("o");
+        MockOptimizerContext context = context().withBatchId("b").withFlowId("f");
+
+        FileOperatorHistoryStore store = new FileOperatorHistoryStore();
+        store.put(OperatorIdentity.of(context, operator).getValue(), observation("out", 100));
+
+        HistoryOperatorEstimator estimator = new HistoryOperatorEstimator(new BasicConstantEstimator(10.0), store);
+        OperatorEstimate estimate = perform(context, estimator, operator);
+        assertThat(estimate.getSize(mock.getOutput("o")), closeTo(100.0, 0.0));
+        assertThat(estimate.getAttribute(OperatorIdentity.class), is(OperatorIdentity.of(context, operator)));
+        assertThat(estimate.getAttribute(OperatorObservation.class), is(observation("out", 100)));
+    }
+
+    /**
+     * operator is not in history.
+     */
+    @Test
+    public void missing() {
+        MockOperators mock = new MockOperators()
+            .input("i")
+            .operator("o").connect("i", "o");
+        Operator operator = mock.get("o");
+        MockOptimizerContext context = context().withBatchId("b").withFlowId("f");
+
+        FileOperatorHistoryStore store = new FileOperatorHistoryStore();
+        store.put(OperatorIdentity.of(context, mock.get("i")).getValue(), observation("port", 100));
+
+        HistoryOperatorEstimator estimator = new HistoryOperatorEstimator(new BasicConstantEstimator(10.0), store);
+        OperatorEstimate estimate = perform(context, estimator, operator);
+        assertThat(estimate.getSize(mock.getOutput("o")), closeTo(10.0, 0.0));
+        assertThat(estimate.getAttribute(OperatorIdentity.class), is(OperatorIdentity.of(context, operator)));
+        assertThat(estimate.getAttribute(OperatorObservation.class), is(nullValue()));
+    }
+
+    /**
+     * output size is not sure in history.
+     */
+    @Test
+    public void unknown_size() {
+        MockOperators mock = new MockOperators()
+            .input("i")
+            .operator("o").connect("i", "o");
+        Operator operator = mock.get("o");
+        MockOptimizerContext context = context().withBatchId("b").withFlowId("f");
+
+        FileOperatorHistoryStore store = new FileOperatorHistoryStore();
+        store.put(OperatorIdentity.of(context, operator).getValue(), observation("out", -1));
+
+        HistoryOperatorEstimator estimator = new HistoryOperatorEstimator(new BasicConstantEstimator(10.0), store);
+        OperatorEstimate estimate = perform(context, estimator, operator);
+        assertThat(estimate.getSize(mock.getOutput("o")), closeTo(10.0, 0.0));
+    }
+
+    /**
+     * history file from compiler options.
+     * @throws Exception if failed
+     */
+    @Test
+    public void options() throws Exception {
+        MockOperators mock = new MockOperators()
+            .input("i")
+            .operator("o").connect("i", "o");
+        Operator operator = mock.get("o");
+
+        File file = new File(temporary.getRoot(), "history.tsv");
+        MockOptimizerContext context = context(HistoryOperatorEstimator.KEY_HISTORY_FILE, file.getPath())
+                .withBatchId("b")
+                .withFlowId("f");
+
+        FileOperatorHistoryStore store = new FileOperatorHistoryStore();
+        store.put(OperatorIdentity.of(context, operator).getValue(), observation("out", 100));
+        store.save(file);
+
+        HistoryOperatorEstimator estimator = new HistoryOperatorEstimator(new BasicConstantEstimator(10.0));
+        OperatorEstimate estimate = perform(context, estimator, operator);
+        assertThat(estimate.getSize(mock.getOutput("o")), closeTo(100.0, 0.0));
+    }
+
+    /**
+     * history is disabled.
+     */
+    @Test
+    public void disabled() {
+        MockOperators mock = new MockOperators()
+            .input("i")
+            .operator("o").connect("i", "o");
+        Operator operator = mock.get("o");
+
+        HistoryOperatorEstimator estimator = new HistoryOperatorEstimator(new BasicConstantEstimator(10.0));
+        OperatorEstimate estimate = perform(context(), estimator, operator);
+        assertThat(estimate.getSize(mock.getOutput("o")), closeTo(10.0, 0.0));
+        assertThat(estimate.getAttribute(OperatorIdentity.class), is(nullValue()));
+    }
+
+    /**
+     * identity mapping is generated.
+     * @throws Exception if failed
+     */
+    @Test
+    public void mapping() throws Exception {
+        MockOperators mock = new MockOperators()
+            .input("i")
+            .operator("o0").connect("i", "o0")
+            .operator("o1").connect("o0", "o1");
+        File output = temporary.newFolder();
+        ClassLoader loader = getClass().getClassLoader();
+        MockOptimizerContext context = new MockOptimizerContext(
+                CompilerOptions.builder().build(),
+                loader,
+                new MockDataModelLoader(loader),
+                new BasicResourceContainer(output)).withBatchId("b").withFlowId("f");
+
+        HistoryOperatorEstimator estimator = new HistoryOperatorEstimator(
+                new BasicConstantEstimator(10.0), new FileOperatorHistoryStore());
+        OperatorEstimator.Context session = new OperatorEstimatorAdapter(context);
+        OperatorEstimate e0 = perform(session, estimator, mock.get("o0"));
+        OperatorEstimate e1 = perform(session, estimator, mock.get("o1"));
+        perform(context, estimator, mock.get("o1"));
+
+        File[] files = new File(output, HistoryOperatorEstimator.IDENTITY_BASE.toPath()).listFiles();
+        assertThat(files, is(notNullValue()));
+        assertThat(files.length, is(1));
+
+        List<String> lines = Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8);
+        assertThat(lines, hasSize(3));
+        assertThat(lines.get(0), startsWith(OperatorIdentity.of(context, mock.get("i")).getValue() + '\t'));
+        assertThat(lines.get(1), startsWith(e0.getAttribute(OperatorIdentity.class).getValue() + '\t'));
+        assertThat(lines.get(2), startsWith(e1.getAttribute(OperatorIdentity.class).getValue() + '\t'));
+        assertThat(lines.get(1), containsString(String.valueOf(mock.get("o0").getOriginalSerialNumber())));
+    }
+
+    /**
+     * identity mapping is generated for each disconnected flow.
+     * @throws Exception if failed
+     */
+    @Test
+    public void mapping_disconnected() throws Exception {
+        MockOperators mock = new MockOperators()
+            .input("i0")
+            .operator("o0").connect("i0", "o0")
+            .input("i1")
+            .operator("o1").connect("i1", "o1");
+        File output = temporary.newFolder();
+        ClassLoader loader = getClass().getClassLoader();
+        MockOptimizerContext context = new MockOptimizerContext(
+                CompilerOptions.builder().build(),
+                loader,
+                new MockDataModelLoader(loader),
+                new BasicResourceContainer(output)).withBatchId("b").withFlowId("f");
+
+        HistoryOperatorEstimator estimator = new HistoryOperatorEstimator(
+                new BasicConstantEstimator(10.0), new FileOperatorHistoryStore());
+        OperatorEstimator.Context session = new OperatorEstimatorAdapter(context);
+        OperatorEstimate e0 = perform(session, estimator, mock.get("o0"));
+        OperatorEstimate e1 = perform(session, estimator, mock.get("o1"));
+
+        File[] files = new File(output, HistoryOperatorEstimator.IDENTITY_BASE.toPath()).listFiles();
+        assertThat(files, is(notNullValue()));
+        assertThat(files.length, is(2));
+
+        List<String> lines = new ArrayList<>();
+        for (File file : files) {
+            List<String> contents = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertThat(contents, hasSize(2));
+            lines.addAll(contents);
+        }
+        assertThat(lines, hasItem(startsWith(e0.getAttribute(OperatorIdentity.class).getValue() + '\t')));
+        assertThat(lines, hasItem(startsWith(e1.getAttribute(OperatorIdentity.class).getValue() + '\t')));
+    }
+
+    private static OperatorObservation observation(String port, long bytes) {
+        return new OperatorObservation(
+                Collections.emptyMap(),
+                Collections.singletonMap(port, new Statistics(-1, bytes)));
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.optimizer.history;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.testing.MockOperators;
+import com.asakusafw.lang.compiler.optimizer.OptimizerTestRoot;
+
+/**
+ * Test for {@link OperatorIdentity}.
+ */
+public class OperatorIdentityTest extends OptimizerTestRoot {
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        Operator a = new MockOperators()
+            .input("i")
+            .operator("o").connect("i", "o")
+            .get("o");
+        Operator b = new MockOperators()
+            .input("i")
+            .operator("o").connect("i", "o")
+            .get("o");
+        OperatorIdentity ia = OperatorIdentity.of("b", "f", a);
+        OperatorIdentity ib = OperatorIdentity.of("b", "f", b);
+        assertThat(ia, is(ib));
+        assertThat(ia.getValue(), startsWith("b/f/"));
+    }
+
+    /**
+     * identities depend on their upstreams.
+     */
+    @Test
+    public void upstreams() {
+        MockOperators mock = new MockOperators()
+            .input("i0")
+            .input("i1")
+            .operator("o0").connect("i0", "o0")
+            .operator("o1").connect("i1", "o1")
+            .operator("o2").connect("i0", "o2");
+        OperatorIdentity i0 = OperatorIdentity.of("b", "f", mock.get("o0"));
+        OperatorIdentity i1 = OperatorIdentity.of("b", "f", mock.get("o1"));
+        OperatorIdentity i2 = OperatorIdentity.of("b", "f", mock.get("o2"));
+        assertThat(i0, is(not(i1)));
+        assertThat(i0, is(not(i2)));
+        assertThat(i1, is(not(i2)));
+    }
+
+    /**
+     * identities depend on the current flow.
+     */
+    @Test
+    public void flow() {
+        Operator operator = new MockOperators()
+            .input("i")
+            .get("i");
+        OperatorIdentity i0 = OperatorIdentity.of(context().withBatchId("b").withFlowId("f0"), operator);
+        OperatorIdentity i1 = OperatorIdentity.of(context().withBatchId("b").withFlowId("f1"), operator);
+        assertThat(i0, is(not(i1)));
+    }
+
+    /**
+     * resolver.
+     */
+    @Test
+    public void resolver() {
+        MockOperators mock = new MockOperators()
+            .input("i")
+            .operator("o0").connect("i", "o0")
+            .operator("o1").connect("o0", "o1");
+        OperatorIdentity.Resolver resolver = new OperatorIdentity.Resolver("b", "f");
+        assertThat(resolver.resolve(mock.get("o1")), is(OperatorIdentity.of("b", "f", mock.get("o1"))));
+        assertThat(resolver.resolve(mock.get("o0")), is(OperatorIdentity.of("b", "f", mock.get("o0"))));
+        assertThat(resolver.resolve(mock.get("i")), is(OperatorIdentity.of("b", "f", mock.get("i"))));
+    }
+}
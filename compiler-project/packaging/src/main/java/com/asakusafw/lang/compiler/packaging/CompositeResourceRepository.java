@@ -117,6 +117,12 @@ public class CompositeResourceRepository implements ResourceRepository {
             return current.openResource();
         }
 
+        @Override
+        public RawZipEntry getRawEntry() throws IOException {
+            checkCurrent();
+            return current.getRawEntry();
+        }
+
         private void checkCurrent() {
             if (current == null) {
                 throw new IllegalStateException();
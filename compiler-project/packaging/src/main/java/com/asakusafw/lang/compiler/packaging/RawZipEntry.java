@@ -0,0 +1,113 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.packaging;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.MessageFormat;
+
+/**
+ * Represents a compressed entry in a ZIP archive, which can be transferred into another archive as is.
+ * Each object is only available while its source cursor is on the entry.
+ * @since 0.4.0
+ * @see ResourceRepository.Cursor#getRawEntry()
+ * @see ResourceSink#addRaw(com.asakusafw.lang.compiler.common.Location, RawZipEntry)
+ */
+public final class RawZipEntry {
+
+    private final FileChannel channel;
+
+    private final ZipCentralDirectory.Entry entry;
+
+    RawZipEntry(FileChannel channel, ZipCentralDirectory.Entry entry) {
+        this.channel = channel;
+        this.entry = entry;
+    }
+
+    /**
+     * Returns the compression method.
+     * @return the compression method
+     * @see java.util.zip.ZipEntry#getMethod()
+     */
+    public int getMethod() {
+        return entry.getMethod();
+    }
+
+    /**
+     * Returns the CRC-32 checksum of the uncompressed contents.
+     * @return the CRC-32 checksum
+     */
+    public long getCrc() {
+        return entry.getCrc();
+    }
+
+    /**
+     * Returns the compressed size.
+     * @return the compressed size in bytes
+     */
+    public long getCompressedSize() {
+        return entry.getCompressedSize();
+    }
+
+    /**
+     * Returns the uncompressed size.
+     * @return the uncompressed size in bytes
+     */
+    public long getSize() {
+        return entry.getSize();
+    }
+
+    int getFlags() {
+        return entry.getFlags();
+    }
+
+    long getDosTime() {
+        return entry.getDosTime();
+    }
+
+    /**
+     * Transfers the compressed contents into the target channel.
+     * @param target the target channel
+     * @throws IOException if failed to transfer the contents by I/O error
+     */
+    void transferTo(WritableByteChannel target) throws IOException {
+        long position = entry.getDataOffset(channel);
+        long remaining = entry.getCompressedSize();
+        while (remaining > 0) {
+            long transferred = channel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                if (position >= channel.size()) {
+                    throw new EOFException(entry.getName());
+                }
+                continue;
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "RawZipEntry(name={0}, method={1}, size={2}/{3})", //$NON-NLS-1$
+                entry.getName(),
+                entry.getMethod(),
+                entry.getCompressedSize(),
+                entry.getSize());
+    }
+}
@@ -213,6 +213,11 @@ public class ResourceAssembler {
             return cursor.openResource();
         }
 
+        @Override
+        public RawZipEntry getRawEntry() throws IOException {
+            return cursor.getRawEntry();
+        }
+
         @Override
         public void close() throws IOException {
             cursor.close();
@@ -283,6 +288,12 @@ public class ResourceAssembler {
             return current.openResource();
         }
 
+        @Override
+        public RawZipEntry getRawEntry() throws IOException {
+            checkCurrent();
+            return current.getRawEntry();
+        }
+
         private void checkCurrent() {
             if (current == null) {
                 throw new IllegalStateException();
@@ -83,5 +83,15 @@ public interface ResourceRepository {
          * @throws IOException if failed to open the resource by I/O error
          */
         InputStream openResource() throws IOException;
+
+        /**
+         * Returns the resource on this cursor as an already compressed ZIP entry.
+         * @return the raw ZIP entry, or {@code null} if the resource is not available as is
+         * @throws IOException if failed to obtain the entry by I/O error
+         * @since 0.4.0
+         */
+        default RawZipEntry getRawEntry() throws IOException {
+            return null;
+        }
     }
 }
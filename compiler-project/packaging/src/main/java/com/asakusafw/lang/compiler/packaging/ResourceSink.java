@@ -45,4 +45,17 @@ public interface ResourceSink extends Closeable {
      * @throws IOException if failed to accept the resource by I/O error
      */
     void add(Location location, ContentProvider provider) throws IOException;
+
+    /**
+     * Accepts an already compressed ZIP entry as is, without decompressing and re-compressing it.
+     * @param location the resource location
+     * @param entry the source entry
+     * @return {@code true} if this accepted the entry, or {@code false} if this does not support raw entries
+     *     and the caller must add the resource via {@link #add(Location, InputStream)} instead
+     * @throws IOException if failed to accept the entry by I/O error
+     * @since 0.4.0
+     */
+    default boolean addRaw(Location location, RawZipEntry entry) throws IOException {
+        return false;
+    }
 }
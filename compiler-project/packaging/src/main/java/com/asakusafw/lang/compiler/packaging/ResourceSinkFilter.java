@@ -0,0 +1,45 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.packaging;
+
+import com.asakusafw.lang.compiler.common.Location;
+
+/**
+ * Decorates {@link ResourceSink} to modify resources on the fly.
+ * @since 0.4.0
+ */
+@FunctionalInterface
+public interface ResourceSinkFilter {
+
+    /**
+     * Returns a decorated sink.
+     * Closing the returned sink must also close the original sink.
+     * @param location the location of the package which the sink writes into
+     * @param sink the original sink
+     * @return the decorated sink
+     */
+    ResourceSink apply(Location location, ResourceSink sink);
+
+    /**
+     * Returns a filter which first applies this filter and then the given one.
+     * That is, resources are passed to the {@code next} filter before this filter.
+     * @param next the next filter
+     * @return the composite filter
+     */
+    default ResourceSinkFilter andThen(ResourceSinkFilter next) {
+        return (location, sink) -> next.apply(location, apply(location, sink));
+    }
+}
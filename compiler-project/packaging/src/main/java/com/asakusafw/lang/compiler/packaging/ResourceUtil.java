@@ -114,6 +114,7 @@ public final class ResourceUtil {
 
     /**
      * Copies resources from {@link ResourceRepository} into {@link ResourceSink}.
+     * If both support {@link RawZipEntry raw ZIP entries}, this transfers the compressed contents as is.
      * @param source the source repository
      * @param sink the target sink
      * @throws IOException if error occurred while copying resources
@@ -121,8 +122,13 @@ public final class ResourceUtil {
     public static void copy(ResourceRepository source, ResourceSink sink) throws IOException {
         try (ResourceRepository.Cursor cursor = source.createCursor()) {
             while (cursor.next()) {
+                Location location = cursor.getLocation();
+                RawZipEntry entry = cursor.getRawEntry();
+                if (entry != null && sink.addRaw(location, entry)) {
+                    continue;
+                }
                 try (InputStream contents = cursor.openResource()) {
-                    sink.add(cursor.getLocation(), contents);
+                    sink.add(location, contents);
                 }
             }
         }
@@ -0,0 +1,432 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.packaging;
+
+import static com.asakusafw.lang.compiler.packaging.ZipFormat.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.asakusafw.lang.compiler.common.Location;
+
+/**
+ * The central directory of ZIP archives.
+ * This is immutable and can be shared between threads.
+ * @since 0.4.0
+ */
+final class ZipCentralDirectory {
+
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+    private static final int INFLATER_BUFFER_SIZE = 8192;
+
+    private final List<Entry> entries;
+
+    private final Map<Location, Entry> index;
+
+    private final long endOffset;
+
+    private final ByteBuffer endRecord;
+
+    private ZipCentralDirectory(List<Entry> entries, long endOffset, ByteBuffer endRecord) {
+        this.entries = entries;
+        this.endOffset = endOffset;
+        this.endRecord = endRecord;
+        Map<Location, Entry> map = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            if (entry.isDirectory() == false) {
+                map.putIfAbsent(entry.getLocation(), entry);
+            }
+        }
+        this.index = map;
+    }
+
+    /**
+     * Loads the central directory of the ZIP archive.
+     * @param source the source archive (for diagnostics)
+     * @param channel the channel of the source archive
+     * @return the loaded central directory
+     * @throws IOException if failed to load the central directory
+     */
+    static ZipCentralDirectory load(File source, FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < SIZE_END) {
+            throw invalid(source);
+        }
+        int tailSize = (int) Math.min(fileSize, SIZE_END + MAX_COMMENT_LENGTH);
+        long tailOffset = fileSize - tailSize;
+        ByteBuffer tail = read(channel, tailOffset, tailSize);
+        int end = findEnd(tail);
+        if (end < 0) {
+            throw invalid(source);
+        }
+        ByteBuffer endRecord = copy(tail, end, SIZE_END + u16(tail, end + 20));
+        long count = u16(tail, end + 10);
+        long directorySize = u32(tail, end + 12);
+        long directoryOffset = u32(tail, end + 16);
+        if (count == MAGIC_16 || directorySize == MAGIC_32 || directoryOffset == MAGIC_32) {
+            long locatorOffset = tailOffset + end - SIZE_ZIP64_LOCATOR;
+            if (locatorOffset < 0) {
+                throw invalid(source);
+            }
+            ByteBuffer locator = read(channel, locatorOffset, SIZE_ZIP64_LOCATOR);
+            if (locator.getInt(0) == SIG_ZIP64_LOCATOR) {
+                long zip64Offset = locator.getLong(8);
+                if (zip64Offset < 0 || zip64Offset + SIZE_ZIP64_END > fileSize) {
+                    throw invalid(source);
+                }
+                ByteBuffer zip64 = read(channel, zip64Offset, SIZE_ZIP64_END);
+                if (zip64.getInt(0) != SIG_ZIP64_END) {
+                    throw invalid(source);
+                }
+                count = zip64.getLong(32);
+                directorySize = zip64.getLong(40);
+                directoryOffset = zip64.getLong(48);
+            }
+        }
+        if (directoryOffset < 0 || directorySize < 0 || directorySize > Integer.MAX_VALUE
+                || directoryOffset + directorySize > fileSize) {
+            throw invalid(source);
+        }
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>();
+        int offset = 0;
+        while (offset + SIZE_CENTRAL_HEADER <= directory.limit()
+                && directory.getInt(offset) == SIG_CENTRAL_HEADER) {
+            Entry entry = readEntry(source, directory, offset);
+            entries.add(entry);
+            offset += SIZE_CENTRAL_HEADER
+                    + u16(directory, offset + 28)
+                    + u16(directory, offset + 30)
+                    + u16(directory, offset + 32);
+        }
+        if (entries.size() != count && count != MAGIC_16) {
+            throw invalid(source);
+        }
+        return new ZipCentralDirectory(entries, tailOffset + end, endRecord);
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+        ByteBuffer result = ByteBuffer.allocate(length).order(buffer.order());
+        result.put(slice);
+        result.flip();
+        return result.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns whether or not the archive still has the same end of central directory record as this.
+     * @param channel the channel of the source archive
+     * @return {@code true} if the record is not changed, otherwise {@code false}
+     * @throws IOException if failed to read the archive
+     */
+    boolean isSameEnd(FileChannel channel) throws IOException {
+        int length = endRecord.remaining();
+        if (endOffset + length > channel.size()) {
+            return false;
+        }
+        return read(channel, endOffset, length).equals(endRecord);
+    }
+
+    private static int findEnd(ByteBuffer tail) {
+        for (int i = tail.limit() - SIZE_END; i >= 0; i--) {
+            if (tail.getInt(i) == SIG_END && i + SIZE_END + u16(tail, i + 20) <= tail.limit()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Entry readEntry(File source, ByteBuffer directory, int offset) throws IOException {
+        int flags = u16(directory, offset + 8);
+        int method = u16(directory, offset + 10);
+        long dosTime = u32(directory, offset + 12);
+        long crc = u32(directory, offset + 16);
+        long compressedSize = u32(directory, offset + 20);
+        long size = u32(directory, offset + 24);
+        int nameLength = u16(directory, offset + 28);
+        int extraLength = u16(directory, offset + 30);
+        long localOffset = u32(directory, offset + 42);
+        int nameOffset = offset + SIZE_CENTRAL_HEADER;
+        if (nameOffset + nameLength + extraLength > directory.limit()) {
+            throw invalid(source);
+        }
+        byte[] nameBytes = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            nameBytes[i] = directory.get(nameOffset + i);
+        }
+        String name = new String(nameBytes, ENCODING);
+        if (size == MAGIC_32 || compressedSize == MAGIC_32 || localOffset == MAGIC_32) {
+            int extra = nameOffset + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = u16(directory, extra);
+                int length = u16(directory, extra + 2);
+                int field = extra + 4;
+                if (id == EXTRA_ZIP64) {
+                    int fieldEnd = Math.min(field + length, extraEnd);
+                    if (size == MAGIC_32 && field + 8 <= fieldEnd) {
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == MAGIC_32 && field + 8 <= fieldEnd) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localOffset == MAGIC_32 && field + 8 <= fieldEnd) {
+                        localOffset = directory.getLong(field);
+                    }
+                    break;
+                }
+                extra = field + length;
+            }
+        }
+        return new Entry(name, flags, method, dosTime, crc, compressedSize, size, localOffset);
+    }
+
+    private static IOException invalid(File source) {
+        return new IOException(MessageFormat.format(
+                "invalid ZIP format: {0}",
+                source));
+    }
+
+    /**
+     * Returns the entries in this directory.
+     * @return the entries, in order of the central directory
+     */
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Returns the locations of the file entries in this directory.
+     * @return the file entry locations
+     */
+    Set<Location> getLocations() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Returns the file entry on the location.
+     * @param location the target location
+     * @return the corresponding entry, or {@code null} if it does not exist
+     */
+    Entry find(Location location) {
+        return index.get(location);
+    }
+
+    /**
+     * Opens the uncompressed contents of the entry.
+     * @param channel the channel of the source archive
+     * @param entry the target entry
+     * @return the uncompressed contents
+     * @throws IOException if failed to open the entry
+     */
+    static InputStream open(FileChannel channel, Entry entry) throws IOException {
+        if (entry.isReadable() == false) {
+            throw new IOException(MessageFormat.format(
+                    "unsupported ZIP entry (method={1}, flags={2}): {0}",
+                    entry.getName(),
+                    entry.getMethod(),
+                    entry.getFlags()));
+        }
+        InputStream input = new RegionInputStream(channel, entry.getDataOffset(channel), entry.getCompressedSize());
+        if (entry.getMethod() == METHOD_STORED) {
+            return input;
+        }
+        // the "nowrap" inflater may require an extra dummy byte
+        InputStream padded = new SequenceInputStream(input, new ByteArrayInputStream(new byte[1]));
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(padded, inflater, INFLATER_BUFFER_SIZE) {
+            private boolean closed = false;
+            @Override
+            public void close() throws IOException {
+                if (closed == false) {
+                    closed = true;
+                    inflater.end();
+                    super.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * An entry in {@link ZipCentralDirectory}.
+     * @since 0.4.0
+     */
+    static final class Entry {
+
+        private final String name;
+
+        private final int flags;
+
+        private final int method;
+
+        private final long dosTime;
+
+        private final long crc;
+
+        private final long compressedSize;
+
+        private final long size;
+
+        private final long localOffset;
+
+        private volatile long dataOffset = -1L;
+
+        Entry(String name, int flags, int method, long dosTime,
+                long crc, long compressedSize, long size, long localOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Location getLocation() {
+            return Location.of(name.replace('\\', '/'));
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/"); //$NON-NLS-1$
+        }
+
+        boolean isReadable() {
+            return (flags & FLAG_ENCRYPTED) == 0
+                    && (method == METHOD_STORED || method == METHOD_DEFLATED);
+        }
+
+        int getFlags() {
+            return flags;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        long getDosTime() {
+            return dosTime;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getDataOffset(FileChannel channel) throws IOException {
+            long result = dataOffset;
+            if (result < 0) {
+                ByteBuffer header = read(channel, localOffset, SIZE_LOCAL_HEADER);
+                if (header.getInt(0) != SIG_LOCAL_HEADER) {
+                    throw new IOException(MessageFormat.format(
+                            "invalid ZIP local header: {0}",
+                            name));
+                }
+                result = localOffset + SIZE_LOCAL_HEADER + u16(header, 26) + u16(header, 28);
+                dataOffset = result;
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class RegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private long position;
+
+        private long remaining;
+
+        RegionInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buf = new byte[1];
+            int read = read(buf, 0, 1);
+            return read < 0 ? -1 : buf[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return -1;
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skip = Math.max(0L, Math.min(n, remaining));
+            position += skip;
+            remaining -= skip;
+            return skip;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+}
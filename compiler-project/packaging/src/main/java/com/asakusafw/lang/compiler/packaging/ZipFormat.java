@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.packaging;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+
+/**
+ * Constants and utilities about the ZIP archive format.
+ * @since 0.4.0
+ */
+final class ZipFormat {
+
+    static final Charset ENCODING = StandardCharsets.UTF_8;
+
+    static final int SIG_LOCAL_HEADER = 0x04034b50;
+
+    static final int SIG_DATA_DESCRIPTOR = 0x08074b50;
+
+    static final int SIG_CENTRAL_HEADER = 0x02014b50;
+
+    static final int SIG_END = 0x06054b50;
+
+    static final int SIG_ZIP64_END = 0x06064b50;
+
+    static final int SIG_ZIP64_LOCATOR = 0x07064b50;
+
+    static final int SIZE_LOCAL_HEADER = 30;
+
+    static final int SIZE_CENTRAL_HEADER = 46;
+
+    static final int SIZE_END = 22;
+
+    static final int SIZE_ZIP64_END = 56;
+
+    static final int SIZE_ZIP64_LOCATOR = 20;
+
+    static final int METHOD_STORED = 0;
+
+    static final int METHOD_DEFLATED = 8;
+
+    static final int FLAG_ENCRYPTED = 1 << 0;
+
+    static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+    static final int FLAG_UTF8 = 1 << 11;
+
+    static final int VERSION_DEFAULT = 20;
+
+    static final int VERSION_ZIP64 = 45;
+
+    static final int EXTRA_ZIP64 = 0x0001;
+
+    static final long MAGIC_32 = 0xffffffffL;
+
+    static final int MAGIC_16 = 0xffff;
+
+    private static final long DOS_TIME_MIN = (1 << 21) | (1 << 16);
+
+    private ZipFormat() {
+        return;
+    }
+
+    static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = allocate(size);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static int u16(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xffff;
+    }
+
+    static long u32(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & MAGIC_32;
+    }
+
+    static long toDosTime(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return DOS_TIME_MIN;
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+}
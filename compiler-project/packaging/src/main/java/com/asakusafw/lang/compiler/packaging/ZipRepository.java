@@ -16,12 +16,14 @@
 package com.asakusafw.lang.compiler.packaging;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.Iterator;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +32,11 @@ import com.asakusafw.lang.compiler.common.Location;
 
 /**
  * An implementation of {@link ResourceRepository} on a local ZIP archive.
+ * This reads the central directory of the archive only once unless the archive is modified,
+ * and it is shared between cursors and threads.
+ * The archive is considered as modified if its size, last modified time,
+ * or end of central directory record is changed.
+ * Note that, archives without any entries are rejected as invalid ZIP format.
  */
 public class ZipRepository implements ResourceRepository {
 
@@ -37,6 +44,8 @@ public class ZipRepository implements ResourceRepository {
 
     private final File archive;
 
+    private Snapshot snapshot;
+
     /**
      * Creates a new instance.
      * @param archive the repository archive
@@ -53,19 +62,105 @@ public class ZipRepository implements ResourceRepository {
 
     @Override
     public Cursor createCursor() throws IOException {
-        FileInputStream input = new FileInputStream(archive);
+        FileChannel channel = open();
         boolean success = false;
         try {
-            Cursor cursor = new EntryCursor(archive, new ZipInputStream(input));
+            Cursor cursor = new EntryCursor(channel, getDirectory(channel));
             success = true;
             return cursor;
         } finally {
             if (success == false) {
-                input.close();
+                channel.close();
             }
         }
     }
 
+    /**
+     * Returns the locations of resources in this repository.
+     * This only reads the central directory of the archive, and does not decompress any contents.
+     * @return the resource locations
+     * @throws IOException if failed to read the archive
+     * @since 0.4.0
+     */
+    public Set<Location> getLocations() throws IOException {
+        try (FileChannel channel = open()) {
+            return getDirectory(channel).getLocations();
+        }
+    }
+
+    /**
+     * Returns whether or not this repository contains a resource on the location.
+     * @param location the resource location
+     * @return {@code true} if it exists, otherwise {@code false}
+     * @throws IOException if failed to read the archive
+     * @since 0.4.0
+     */
+    public boolean contains(Location location) throws IOException {
+        try (FileChannel channel = open()) {
+            return getDirectory(channel).find(location) != null;
+        }
+    }
+
+    /**
+     * Opens the resource on the location.
+     * This only decompresses the target resource.
+     * @param location the resource location
+     * @return the resource contents, or {@code null} if it does not exist
+     * @throws IOException if failed to open the resource
+     * @since 0.4.0
+     */
+    public InputStream openResource(Location location) throws IOException {
+        FileChannel channel = open();
+        boolean success = false;
+        try {
+            ZipCentralDirectory.Entry entry = getDirectory(channel).find(location);
+            if (entry == null) {
+                return null;
+            }
+            InputStream result = new FilterInputStream(ZipCentralDirectory.open(channel, entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        channel.close();
+                    }
+                }
+            };
+            success = true;
+            return result;
+        } finally {
+            if (success == false) {
+                channel.close();
+            }
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+    }
+
+    private synchronized ZipCentralDirectory getDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long lastModified = archive.lastModified();
+        Snapshot current = snapshot;
+        if (current == null
+                || current.size != size
+                || current.lastModified != lastModified
+                || current.directory.isSameEnd(channel) == false) {
+            LOG.debug("loading ZIP central directory: {}", archive); //$NON-NLS-1$
+            ZipCentralDirectory directory = ZipCentralDirectory.load(archive, channel);
+            if (directory.getEntries().isEmpty()) {
+                throw new IOException(MessageFormat.format(
+                        "invalid ZIP format: {0}",
+                        archive));
+            }
+            current = new Snapshot(size, lastModified, directory);
+            snapshot = current;
+        }
+        return current.directory;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -99,101 +194,78 @@ public class ZipRepository implements ResourceRepository {
                 archive);
     }
 
-    private static class EntryCursor implements Cursor {
+    private static final class Snapshot {
 
-        private final File source;
+        final long size;
 
-        private final ZipInputStream stream;
+        final long lastModified;
 
-        private ZipEntry current;
+        final ZipCentralDirectory directory;
 
-        private int entries;
+        Snapshot(long size, long lastModified, ZipCentralDirectory directory) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.directory = directory;
+        }
+    }
+
+    private static class EntryCursor implements Cursor {
+
+        private final FileChannel channel;
 
-        EntryCursor(File source, ZipInputStream stream) {
-            assert source != null;
-            assert stream != null;
-            this.source = source;
-            this.stream = stream;
-            this.entries = 0;
+        private final Iterator<ZipCentralDirectory.Entry> entries;
+
+        private ZipCentralDirectory.Entry current;
+
+        EntryCursor(FileChannel channel, ZipCentralDirectory directory) {
+            assert channel != null;
+            assert directory != null;
+            this.channel = channel;
+            this.entries = directory.getEntries().iterator();
         }
 
         @Override
         public boolean next() throws IOException {
-            while (true) {
-                current = stream.getNextEntry();
-                if (current == null) {
-                    if (entries == 0) {
-                        throw new IOException(MessageFormat.format(
-                                "invalid ZIP format: {0}",
-                                source));
-                    }
-                    return false;
-                }
-                entries++;
+            while (entries.hasNext()) {
+                current = entries.next();
                 if (current.isDirectory() == false) {
                     return true;
                 }
             }
+            current = null;
+            return false;
         }
 
         @Override
         public Location getLocation() {
-            return Location.of(current.getName().replace('\\', '/'));
+            checkCurrent();
+            return current.getLocation();
         }
 
         @Override
         public InputStream openResource() throws IOException {
-            return new ZipEntryInputStream(stream);
-        }
-
-        @Override
-        public void close() throws IOException {
-            stream.close();
-        }
-    }
-
-    private static class ZipEntryInputStream extends InputStream {
-
-        private final ZipInputStream zipped;
-
-        private boolean closed = false;
-
-        ZipEntryInputStream(ZipInputStream zipped) {
-            this.zipped = zipped;
-        }
-
-        @Override
-        public int read(byte[] b) throws IOException {
-            return zipped.read(b);
-        }
-
-        @Override
-        public int read() throws IOException {
-            return zipped.read();
-        }
-
-        @Override
-        public int available() throws IOException {
-            return zipped.available();
+            checkCurrent();
+            return ZipCentralDirectory.open(channel, current);
         }
 
         @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            return zipped.read(b, off, len);
+        public RawZipEntry getRawEntry() {
+            checkCurrent();
+            if (current.isReadable() == false) {
+                return null;
+            }
+            return new RawZipEntry(channel, current);
         }
 
-        @Override
-        public long skip(long n) throws IOException {
-            return zipped.skip(n);
+        private void checkCurrent() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
         }
 
         @Override
         public void close() throws IOException {
-            if (closed) {
-                return;
-            }
-            zipped.closeEntry();
-            closed = true;
+            channel.close();
         }
     }
 }
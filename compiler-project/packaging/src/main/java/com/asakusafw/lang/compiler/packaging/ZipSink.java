@@ -15,12 +15,19 @@
  */
 package com.asakusafw.lang.compiler.packaging;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -28,47 +35,257 @@ import com.asakusafw.lang.compiler.common.Location;
 
 /**
  * An implementation of {@link ResourceSink} which adds resources into ZIP archive.
+ * Unless this is created from a {@link ZipOutputStream}, this can also accept
+ * {@link RawZipEntry already compressed entries} without re-compressing them.
+ * If an {@link Executor} is given, this compresses the individual entries on it,
+ * and then writes them in order of addition.
+ * Entries larger than the buffer threshold are compressed in the caller thread instead.
  */
 public class ZipSink implements ResourceSink {
 
-    private static final Charset ENCODING = StandardCharsets.UTF_8;
+    private static final int MAX_PENDING_ENTRIES = 256;
+
+    private static final long MAX_PENDING_BYTES = 64L * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    static final int MAX_BUFFER_SIZE = 4 * 1024 * 1024;
 
     private final ZipOutputStream output;
 
+    private final ZipWriter writer;
+
+    private final Executor executor;
+
+    private final Deque<Pending> pendings = new ArrayDeque<>();
+
+    private long pendingBytes = 0L;
+
     /**
      * Creates a new instance.
      * @param output the target file
      * @throws IOException if failed to create ZIP file
      */
     public ZipSink(File output) throws IOException {
-        this(new ZipOutputStream(ResourceUtil.create(output), ENCODING));
+        this(ResourceUtil.create(output));
     }
 
     /**
      * Creates a new instance.
+     * @param output the target output stream
+     * @since 0.4.0
+     */
+    public ZipSink(OutputStream output) {
+        this(output, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param output the target output stream
+     * @param executor the executor for compressing entries, or {@code null} to compress them in the caller thread
+     * @since 0.4.0
+     */
+    public ZipSink(OutputStream output, Executor executor) {
+        this.output = null;
+        this.writer = new ZipWriter(output);
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a new instance.
+     * Note that, the created sink does not accept {@link #addRaw(Location, RawZipEntry) raw entries}.
      * @param output the target ZIP output stream
      */
     public ZipSink(ZipOutputStream output) {
         this.output = output;
+        this.writer = null;
+        this.executor = null;
     }
 
     @Override
     public void add(Location location, InputStream contents) throws IOException {
-        output.putNextEntry(new ZipEntry(location.toPath()));
-        ResourceUtil.copy(contents, output);
+        if (executor != null) {
+            try (OutputStream entry = new BufferedEntryOutputStream(location)) {
+                ResourceUtil.copy(contents, entry);
+            }
+        } else if (writer != null) {
+            try (OutputStream entry = writer.open(location.toPath())) {
+                ResourceUtil.copy(contents, entry);
+            }
+        } else {
+            output.putNextEntry(new ZipEntry(location.toPath()));
+            ResourceUtil.copy(contents, output);
+        }
     }
 
     @Override
     public void add(Location location, ContentProvider provider) throws IOException {
-        output.putNextEntry(new ZipEntry(location.toPath()));
-        try (OutputStream contents = new ZipEntryOutputStream(output)) {
-            provider.writeTo(output);
+        if (executor != null) {
+            try (OutputStream entry = new BufferedEntryOutputStream(location)) {
+                provider.writeTo(entry);
+            }
+        } else if (writer != null) {
+            try (OutputStream entry = writer.open(location.toPath())) {
+                provider.writeTo(entry);
+            }
+        } else {
+            output.putNextEntry(new ZipEntry(location.toPath()));
+            try (OutputStream contents = new ZipEntryOutputStream(output)) {
+                provider.writeTo(output);
+            }
+        }
+    }
+
+    @Override
+    public boolean addRaw(Location location, RawZipEntry entry) throws IOException {
+        if (writer == null) {
+            return false;
+        }
+        // the raw entry is only available until the source cursor advances
+        flush(true);
+        writer.putRaw(location.toPath(), entry);
+        return true;
+    }
+
+    private void submit(Location location, byte[] contents) throws IOException {
+        CompletableFuture<Deflated> future = CompletableFuture.supplyAsync(() -> Deflated.of(contents), executor);
+        pendings.addLast(new Pending(location, contents.length, future));
+        pendingBytes += contents.length;
+        flush(false);
+    }
+
+    private void flush(boolean all) throws IOException {
+        while (pendings.isEmpty() == false) {
+            Pending next = pendings.getFirst();
+            boolean force = all || pendings.size() > MAX_PENDING_ENTRIES || pendingBytes > MAX_PENDING_BYTES;
+            if (force == false && next.future.isDone() == false) {
+                break;
+            }
+            Deflated deflated;
+            try {
+                deflated = next.future.join();
+            } catch (CompletionException e) {
+                throw new IOException(MessageFormat.format(
+                        "failed to compress ZIP entry: {0}",
+                        next.location), e.getCause());
+            }
+            pendings.removeFirst();
+            pendingBytes -= next.size;
+            writer.putDeflated(next.location.toPath(), deflated.crc, next.size, deflated.data, deflated.data.length);
         }
     }
 
     @Override
     public void close() throws IOException {
-        output.close();
+        if (writer != null) {
+            try {
+                flush(true);
+            } finally {
+                pendings.clear();
+                writer.close();
+            }
+        } else {
+            output.close();
+        }
+    }
+
+    private final class BufferedEntryOutputStream extends OutputStream {
+
+        private final Location location;
+
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private OutputStream entry;
+
+        private boolean closed = false;
+
+        BufferedEntryOutputStream(Location location) {
+            this.location = location;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            prepare(1).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            prepare(len).write(b, off, len);
+        }
+
+        private OutputStream prepare(int length) throws IOException {
+            if (entry != null) {
+                return entry;
+            }
+            if (buffer.size() + (long) length <= MAX_BUFFER_SIZE) {
+                return buffer;
+            }
+            // too large to buffer: writes the preceding entries, and then streams this entry
+            ZipSink.this.flush(true);
+            entry = writer.open(location.toPath());
+            buffer.writeTo(entry);
+            buffer = null;
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (entry == null) {
+                submit(location, buffer.toByteArray());
+            } else {
+                entry.close();
+            }
+        }
+    }
+
+    private static final class Pending {
+
+        final Location location;
+
+        final int size;
+
+        final CompletableFuture<Deflated> future;
+
+        Pending(Location location, int size, CompletableFuture<Deflated> future) {
+            this.location = location;
+            this.size = size;
+            this.future = future;
+        }
+    }
+
+    private static final class Deflated {
+
+        final long crc;
+
+        final byte[] data;
+
+        private Deflated(long crc, byte[] data) {
+            this.crc = crc;
+            this.data = data;
+        }
+
+        static Deflated of(byte[] contents) {
+            CRC32 crc = new CRC32();
+            crc.update(contents);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(contents);
+                deflater.finish();
+                ByteArrayOutputStream output = new ByteArrayOutputStream(contents.length / 2 + 64);
+                byte[] buf = new byte[BUFFER_SIZE];
+                while (deflater.finished() == false) {
+                    int length = deflater.deflate(buf);
+                    output.write(buf, 0, length);
+                }
+                return new Deflated(crc.getValue(), output.toByteArray());
+            } finally {
+                deflater.end();
+            }
+        }
     }
 
     private static class ZipEntryOutputStream extends OutputStream {
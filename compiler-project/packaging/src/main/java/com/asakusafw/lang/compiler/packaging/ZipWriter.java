@@ -0,0 +1,380 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.packaging;
+
+import static com.asakusafw.lang.compiler.packaging.ZipFormat.*;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Writes ZIP archives, which can accept already compressed entries as is.
+ * @since 0.4.0
+ */
+final class ZipWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CountingOutputStream output;
+
+    private final WritableByteChannel channel;
+
+    private final List<Header> headers = new ArrayList<>();
+
+    private final Set<String> names = new HashSet<>();
+
+    private final long dosTime = toDosTime(System.currentTimeMillis());
+
+    private boolean writing = false;
+
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance.
+     * @param output the target output stream
+     */
+    ZipWriter(OutputStream output) {
+        this.output = new CountingOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        this.channel = Channels.newChannel(this.output);
+    }
+
+    /**
+     * Starts a new entry and returns an output stream for its uncompressed contents.
+     * The entry will be finished when the returned stream is closed.
+     * @param name the entry name
+     * @return the output stream for the entry contents
+     * @throws IOException if failed to start the entry
+     */
+    OutputStream open(String name) throws IOException {
+        Header header = begin(name, FLAG_DATA_DESCRIPTOR | FLAG_UTF8, METHOD_DEFLATED, dosTime);
+        writeLocalHeader(header);
+        long start = output.getCount();
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        OutputStream shield = new FilterOutputStream(output) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+            @Override
+            public void close() {
+                return;
+            }
+        };
+        return new DeflaterOutputStream(shield, deflater, BUFFER_SIZE) {
+            private long size = 0L;
+            private boolean finished = false;
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                super.write(b, off, len);
+                crc.update(b, off, len);
+                size += len;
+            }
+            @Override
+            public void close() throws IOException {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                try {
+                    finish();
+                } finally {
+                    deflater.end();
+                }
+                header.crc = crc.getValue();
+                header.compressedSize = output.getCount() - start;
+                header.size = size;
+                writeDataDescriptor(header);
+                end(header);
+            }
+        };
+    }
+
+    /**
+     * Adds an already compressed entry.
+     * @param name the entry name
+     * @param entry the source entry
+     * @throws IOException if failed to add the entry
+     */
+    void putRaw(String name, RawZipEntry entry) throws IOException {
+        int flags = (entry.getFlags() & ~FLAG_DATA_DESCRIPTOR) | FLAG_UTF8;
+        Header header = begin(name, flags, entry.getMethod(), entry.getDosTime());
+        header.crc = entry.getCrc();
+        header.compressedSize = entry.getCompressedSize();
+        header.size = entry.getSize();
+        writeLocalHeader(header);
+        long start = output.getCount();
+        entry.transferTo(channel);
+        if (output.getCount() - start != header.compressedSize) {
+            throw new ZipException(MessageFormat.format(
+                    "inconsistent compressed size: {0}",
+                    name));
+        }
+        end(header);
+    }
+
+    /**
+     * Adds an entry which contents are already compressed by the raw deflate format.
+     * @param name the entry name
+     * @param crc the CRC-32 checksum of the uncompressed contents
+     * @param size the uncompressed size in bytes
+     * @param compressed the compressed contents
+     * @param length the compressed size in bytes
+     * @throws IOException if failed to add the entry
+     */
+    void putDeflated(String name, long crc, long size, byte[] compressed, int length) throws IOException {
+        Header header = begin(name, FLAG_UTF8, METHOD_DEFLATED, dosTime);
+        header.crc = crc;
+        header.compressedSize = length;
+        header.size = size;
+        writeLocalHeader(header);
+        output.write(compressed, 0, length);
+        end(header);
+    }
+
+    private Header begin(String name, int flags, int method, long time) throws IOException {
+        if (closed) {
+            throw new IOException("ZIP archive is already closed");
+        }
+        if (writing) {
+            throw new IllegalStateException();
+        }
+        if (names.add(name) == false) {
+            throw new ZipException(MessageFormat.format(
+                    "duplicate entry: {0}",
+                    name));
+        }
+        writing = true;
+        return new Header(name.getBytes(ENCODING), flags, method, time, output.getCount());
+    }
+
+    private void end(Header header) {
+        headers.add(header);
+        writing = false;
+    }
+
+    private void writeLocalHeader(Header header) throws IOException {
+        boolean zip64 = header.isLocalZip64();
+        ByteBuffer buf = allocate(SIZE_LOCAL_HEADER + header.name.length + (zip64 ? 20 : 0));
+        buf.putInt(SIG_LOCAL_HEADER);
+        buf.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+        buf.putShort((short) header.flags);
+        buf.putShort((short) header.method);
+        buf.putInt((int) header.dosTime);
+        if ((header.flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            buf.putInt(0);
+            buf.putInt(0);
+            buf.putInt(0);
+        } else {
+            buf.putInt((int) header.crc);
+            buf.putInt((int) (zip64 ? MAGIC_32 : header.compressedSize));
+            buf.putInt((int) (zip64 ? MAGIC_32 : header.size));
+        }
+        buf.putShort((short) header.name.length);
+        buf.putShort((short) (zip64 ? 20 : 0));
+        buf.put(header.name);
+        if (zip64) {
+            buf.putShort((short) EXTRA_ZIP64);
+            buf.putShort((short) 16);
+            buf.putLong(header.size);
+            buf.putLong(header.compressedSize);
+        }
+        output.write(buf.array());
+    }
+
+    private void writeDataDescriptor(Header header) throws IOException {
+        boolean zip64 = header.compressedSize >= MAGIC_32 || header.size >= MAGIC_32;
+        ByteBuffer buf = allocate(zip64 ? 24 : 16);
+        buf.putInt(SIG_DATA_DESCRIPTOR);
+        buf.putInt((int) header.crc);
+        if (zip64) {
+            buf.putLong(header.compressedSize);
+            buf.putLong(header.size);
+        } else {
+            buf.putInt((int) header.compressedSize);
+            buf.putInt((int) header.size);
+        }
+        output.write(buf.array());
+    }
+
+    private void writeCentralHeader(Header header) throws IOException {
+        boolean size64 = header.size >= MAGIC_32;
+        boolean compressedSize64 = header.compressedSize >= MAGIC_32;
+        boolean offset64 = header.offset >= MAGIC_32;
+        int extraLength = (size64 ? 8 : 0) + (compressedSize64 ? 8 : 0) + (offset64 ? 8 : 0);
+        if (extraLength > 0) {
+            extraLength += 4;
+        }
+        int version = extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFAULT;
+        ByteBuffer buf = allocate(SIZE_CENTRAL_HEADER + header.name.length + extraLength);
+        buf.putInt(SIG_CENTRAL_HEADER);
+        buf.putShort((short) version);
+        buf.putShort((short) version);
+        buf.putShort((short) header.flags);
+        buf.putShort((short) header.method);
+        buf.putInt((int) header.dosTime);
+        buf.putInt((int) header.crc);
+        buf.putInt((int) (compressedSize64 ? MAGIC_32 : header.compressedSize));
+        buf.putInt((int) (size64 ? MAGIC_32 : header.size));
+        buf.putShort((short) header.name.length);
+        buf.putShort((short) extraLength);
+        buf.putShort((short) 0); // comment
+        buf.putShort((short) 0); // disk number
+        buf.putShort((short) 0); // internal attributes
+        buf.putInt(0); // external attributes
+        buf.putInt((int) (offset64 ? MAGIC_32 : header.offset));
+        buf.put(header.name);
+        if (extraLength > 0) {
+            buf.putShort((short) EXTRA_ZIP64);
+            buf.putShort((short) (extraLength - 4));
+            if (size64) {
+                buf.putLong(header.size);
+            }
+            if (compressedSize64) {
+                buf.putLong(header.compressedSize);
+            }
+            if (offset64) {
+                buf.putLong(header.offset);
+            }
+        }
+        output.write(buf.array());
+    }
+
+    private void writeEnd(long directoryOffset, long directorySize) throws IOException {
+        long count = headers.size();
+        boolean zip64 = count >= MAGIC_16 || directoryOffset >= MAGIC_32 || directorySize >= MAGIC_32;
+        if (zip64) {
+            long zip64Offset = output.getCount();
+            ByteBuffer buf = allocate(SIZE_ZIP64_END + SIZE_ZIP64_LOCATOR);
+            buf.putInt(SIG_ZIP64_END);
+            buf.putLong(SIZE_ZIP64_END - 12);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putInt(0);
+            buf.putInt(0);
+            buf.putLong(count);
+            buf.putLong(count);
+            buf.putLong(directorySize);
+            buf.putLong(directoryOffset);
+            buf.putInt(SIG_ZIP64_LOCATOR);
+            buf.putInt(0);
+            buf.putLong(zip64Offset);
+            buf.putInt(1);
+            output.write(buf.array());
+        }
+        ByteBuffer buf = allocate(SIZE_END);
+        buf.putInt(SIG_END);
+        buf.putShort((short) 0);
+        buf.putShort((short) 0);
+        buf.putShort((short) Math.min(count, MAGIC_16));
+        buf.putShort((short) Math.min(count, MAGIC_16));
+        buf.putInt((int) Math.min(directorySize, MAGIC_32));
+        buf.putInt((int) Math.min(directoryOffset, MAGIC_32));
+        buf.putShort((short) 0);
+        output.write(buf.array());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (writing) {
+                throw new IOException("ZIP archive is closed while writing an entry");
+            }
+            long directoryOffset = output.getCount();
+            for (Header header : headers) {
+                writeCentralHeader(header);
+            }
+            writeEnd(directoryOffset, output.getCount() - directoryOffset);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static final class Header {
+
+        final byte[] name;
+
+        final int flags;
+
+        final int method;
+
+        final long dosTime;
+
+        final long offset;
+
+        long crc;
+
+        long compressedSize;
+
+        long size;
+
+        Header(byte[] name, int flags, int method, long dosTime, long offset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.offset = offset;
+        }
+
+        boolean isLocalZip64() {
+            return (flags & FLAG_DATA_DESCRIPTOR) == 0 && (compressedSize >= MAGIC_32 || size >= MAGIC_32);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -19,7 +19,10 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -27,6 +30,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -98,6 +103,26 @@ public class ZipRepositoryTest {
         assertThat(entries, is(expected));
     }
 
+    /**
+     * random access.
+     * @throws Exception if failed
+     */
+    @Test
+    public void random_access() throws Exception {
+        ZipRepository repository = new ZipRepository(open("structured.zip"));
+        assertThat(repository.getLocations(), containsInAnyOrder(
+                Location.of("a.txt"),
+                Location.of("a/b.txt"),
+                Location.of("a/b/c.txt")));
+        assertThat(repository.contains(Location.of("a/b.txt")), is(true));
+        assertThat(repository.contains(Location.of("a/b")), is(false));
+        assertThat(repository.contains(Location.of("missing.txt")), is(false));
+        try (Scanner scanner = new Scanner(repository.openResource(Location.of("a/b/c.txt")), "UTF-8")) {
+            assertThat(scanner.nextLine(), is("ccc"));
+        }
+        assertThat(repository.openResource(Location.of("missing.txt")), is(nullValue()));
+    }
+
     /**
      * not a zip archive.
      * @throws Exception if failed
@@ -109,6 +134,43 @@ public class ZipRepositoryTest {
         drain(cur);
     }
 
+    /**
+     * empty archive.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void empty() throws Exception {
+        File file = deployer.getFile("empty.zip");
+        byte[] end = new byte[22];
+        end[0] = 'P';
+        end[1] = 'K';
+        end[2] = 5;
+        end[3] = 6;
+        Files.write(file.toPath(), end);
+        ZipRepository repository = new ZipRepository(file);
+        Cursor cur = repository.createCursor();
+        drain(cur);
+    }
+
+    /**
+     * archive is replaced without changing its size nor last modified time.
+     * @throws Exception if failed
+     */
+    @Test
+    public void replaced() throws Exception {
+        File file = deployer.getFile("replaced.zip");
+        write(file, "a.txt", "A");
+        long lastModified = file.lastModified();
+        ZipRepository repository = new ZipRepository(file);
+        assertThat(repository.getLocations(), contains(Location.of("a.txt")));
+
+        long size = file.length();
+        write(file, "b.txt", "B");
+        assertThat(file.setLastModified(lastModified), is(true));
+        assertThat(file.length(), is(size));
+        assertThat(repository.getLocations(), contains(Location.of("b.txt")));
+    }
+
     /**
      * missing file.
      * @throws Exception if failed
@@ -136,6 +198,14 @@ public class ZipRepositoryTest {
         assertThat(repo, is(not(new ZipRepository(b))));
     }
 
+    private static void write(File file, String name, String comment) throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file))) {
+            output.setComment(comment);
+            output.putNextEntry(new ZipEntry(name));
+            output.write("Hello, world!".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
     private File open(String name) {
         String path = "ResourceRepository.files/" + name;
         return deployer.copy(path, name);
@@ -18,8 +18,20 @@ package com.asakusafw.lang.compiler.packaging;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -90,4 +102,127 @@ public class ZipSinkTest extends ResourceTestRoot {
         assertThat(items, hasEntry("b.txt", "B"));
         assertThat(items, hasEntry("c.txt", "C"));
     }
+
+    /**
+     * copy entries as is.
+     * @throws Exception if failed
+     */
+    @Test
+    public void raw() throws Exception {
+        File source = folder.newFile();
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(source))) {
+            output.putNextEntry(new ZipEntry("a.txt"));
+            output.write(repeat("A", 1000));
+            byte[] stored = repeat("B", 100);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            ZipEntry entry = new ZipEntry("b/c.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCompressedSize(stored.length);
+            entry.setCrc(crc.getValue());
+            output.putNextEntry(entry);
+            output.write(stored);
+        }
+        File base = folder.newFile();
+        try (ZipSink sink = new ZipSink(base)) {
+            put(sink, item("x.txt", "X"));
+            ResourceUtil.copy(new ZipRepository(source), sink);
+        }
+        Map<String, String> items = dump(new ZipRepository(base));
+        assertThat(items.keySet(), hasSize(3));
+        assertThat(items, hasEntry("x.txt", "X"));
+        assertThat(items, hasEntry("a.txt", new String(repeat("A", 1000), StandardCharsets.UTF_8)));
+        assertThat(items, hasEntry("b/c.txt", new String(repeat("B", 100), StandardCharsets.UTF_8)));
+
+        try (ZipFile expect = new ZipFile(source); ZipFile actual = new ZipFile(base)) {
+            for (String name : new String[] { "a.txt", "b/c.txt" }) {
+                ZipEntry e = expect.getEntry(name);
+                ZipEntry a = actual.getEntry(name);
+                assertThat(name, a.getMethod(), is(e.getMethod()));
+                assertThat(name, a.getCrc(), is(e.getCrc()));
+                assertThat(name, a.getCompressedSize(), is(e.getCompressedSize()));
+                assertThat(name, a.getSize(), is(e.getSize()));
+            }
+        }
+    }
+
+    /**
+     * compress entries in parallel.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel() throws Exception {
+        File base = folder.newFile();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ZipSink sink = new ZipSink(new FileOutputStream(base), executor)) {
+            for (int i = 0; i < 100; i++) {
+                put(sink, item(String.format("%03d.txt", i), String.valueOf(i)));
+            }
+            sink.add(Location.of("x.txt"), provider("X"));
+        } finally {
+            executor.shutdownNow();
+        }
+        Map<String, String> items = dump(new ZipRepository(base));
+        assertThat(items.keySet(), hasSize(101));
+        assertThat(items, hasEntry("000.txt", "0"));
+        assertThat(items, hasEntry("099.txt", "99"));
+        assertThat(items, hasEntry("x.txt", "X"));
+
+        List<String> names = new ArrayList<>();
+        try (ZipFile file = new ZipFile(base)) {
+            Collections.list(file.entries()).forEach(e -> names.add(e.getName()));
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(String.format("%03d.txt", i));
+        }
+        expected.add("x.txt");
+        assertThat(names, is(expected));
+    }
+
+    /**
+     * adds entries larger than the buffer threshold in parallel.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel_large() throws Exception {
+        File base = folder.newFile();
+        byte[] large = new byte[ZipSink.MAX_BUFFER_SIZE + 1];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) ('a' + i % 26);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ZipSink sink = new ZipSink(new FileOutputStream(base), executor)) {
+            put(sink, item("a.txt", "A"));
+            sink.add(Location.of("b.txt"), new ByteArrayInputStream(large));
+            put(sink, item("c.txt", "C"));
+            sink.add(Location.of("d.txt"), output -> output.write(large));
+            put(sink, item("e.txt", "E"));
+        } finally {
+            executor.shutdownNow();
+        }
+        String expect = new String(large, StandardCharsets.UTF_8);
+        Map<String, String> items = dump(new ZipRepository(base));
+        assertThat(items.keySet(), hasSize(5));
+        assertThat(items, hasEntry("a.txt", "A"));
+        assertThat(items, hasEntry("b.txt", expect));
+        assertThat(items, hasEntry("c.txt", "C"));
+        assertThat(items, hasEntry("d.txt", expect));
+        assertThat(items, hasEntry("e.txt", "E"));
+
+        List<String> names = new ArrayList<>();
+        try (ZipFile file = new ZipFile(base)) {
+            Collections.list(file.entries()).forEach(e -> names.add(e.getName()));
+        }
+        assertThat(names, contains("a.txt", "b.txt", "c.txt", "d.txt", "e.txt"));
+    }
+
+    private static byte[] repeat(String value, int count) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            buf.append(value);
+        }
+        return buf.toString().getBytes(StandardCharsets.UTF_8);
+    }
 }
@@ -19,8 +19,8 @@ import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 
@@ -246,33 +246,56 @@ public final class PlanBuilder {
 
     private Map<Operator, Operator> copyRange(Set<MarkerOperator> in, Set<MarkerOperator> out) {
         Set<Operator> members = computeRange(in, out);
-        Map<Operator, Operator> sourceToCopy = OperatorGraph.copy(members);
-        Set<Operator> copyEdges = new LinkedHashSet<>();
-        for (Operator source : in) {
-            Operator copy = sourceToCopy.get(source);
-            copyEdges.add(copy);
-            assert copy != null;
-            for (OperatorPort port : copy.getInputs()) {
-                port.disconnectAll();
+        Set<Operator> availables = collectAvailables(members, in, out);
+        if (LOG.isTraceEnabled()) {
+            for (Operator operator : members) {
+                if (availables.contains(operator) == false) {
+                    LOG.trace("removing redundant operator: {}", operator); //$NON-NLS-1$
+                }
             }
         }
-        for (Operator source : out) {
-            Operator copy = sourceToCopy.get(source);
-            copyEdges.add(copy);
-            assert copy != null;
-            for (OperatorPort port : copy.getOutputs()) {
-                port.disconnectAll();
+        // copies only available operators, and drops connections into inputs or from outputs
+        return OperatorGraph.copy(availables, (upstream, downstream) ->
+                out.contains(upstream.getOwner()) == false && in.contains(downstream.getOwner()) == false);
+    }
+
+    /**
+     * Collects operators which are connected to the inputs or outputs in the range,
+     * without going through the upstream of the inputs nor the downstream of the outputs.
+     * @param members the operators in the range
+     * @param in the inputs
+     * @param out the outputs
+     * @return the available operators
+     */
+    private static Set<Operator> collectAvailables(
+            Set<Operator> members, Set<MarkerOperator> in, Set<MarkerOperator> out) {
+        Set<Operator> results = new HashSet<>();
+        results.addAll(in);
+        results.addAll(out);
+        LinkedList<Operator> work = new LinkedList<>(results);
+        while (work.isEmpty() == false) {
+            Operator current = work.removeFirst();
+            if (in.contains(current) == false) {
+                collectAvailables(current.getInputs(), members, results, work);
+            }
+            if (out.contains(current) == false) {
+                collectAvailables(current.getOutputs(), members, results, work);
             }
         }
-        Set<Operator> availables = Operators.getTransitiveConnected(copyEdges);
-        for (Iterator<Map.Entry<Operator, Operator>> iter = sourceToCopy.entrySet().iterator(); iter.hasNext();) {
-            Map.Entry<Operator, Operator> entry = iter.next();
-            if (availables.contains(entry.getValue()) == false) {
-                iter.remove();
-                LOG.trace("removing redundant operator: {}", entry.getKey()); //$NON-NLS-1$
+        return results;
+    }
+
+    private static void collectAvailables(
+            Collection<? extends OperatorPort> ports,
+            Set<Operator> members, Set<Operator> results, LinkedList<Operator> work) {
+        for (OperatorPort port : ports) {
+            for (OperatorPort opposite : port.getOpposites()) {
+                Operator neighbor = opposite.getOwner();
+                if (members.contains(neighbor) && results.add(neighbor)) {
+                    work.addLast(neighbor);
+                }
             }
         }
-        return sourceToCopy;
     }
 
     private Set<Operator> computeRange(Set<MarkerOperator> in, Set<MarkerOperator> out) {
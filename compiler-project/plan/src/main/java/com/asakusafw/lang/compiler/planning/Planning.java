@@ -16,10 +16,9 @@
 package com.asakusafw.lang.compiler.planning;
 
 import java.text.MessageFormat;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Predicate;
 
 import com.asakusafw.lang.compiler.model.graph.ExternalInput;
@@ -30,6 +29,7 @@ import com.asakusafw.lang.compiler.model.graph.Operator;
 import com.asakusafw.lang.compiler.model.graph.Operator.OperatorKind;
 import com.asakusafw.lang.compiler.model.graph.OperatorConstraint;
 import com.asakusafw.lang.compiler.model.graph.OperatorGraph;
+import com.asakusafw.lang.compiler.model.graph.OperatorIndex;
 import com.asakusafw.lang.compiler.model.graph.OperatorInput;
 import com.asakusafw.lang.compiler.model.graph.OperatorOutput;
 import com.asakusafw.lang.compiler.model.graph.OperatorPort;
@@ -243,20 +243,20 @@ public final class Planning {
      */
     public static void removeDeadFlow(OperatorGraph graph) {
         graph.rebuild();
-        Set<Operator> operators = new HashSet<>(graph.getOperators());
+        OperatorIndex index = OperatorIndex.of(graph.getOperators());
 
         // effective operators = (reachable to generator) \cap (reachable to at-least-once)
-        Set<Operator> effective = new HashSet<>();
-        effective.addAll(collectInputReachables(operators));
-        effective.retainAll(collectOutputReachables(operators));
+        BitSet effective = collectInputReachables(index);
+        effective.and(collectOutputReachables(index));
         if (effective.isEmpty()) {
             throw new IllegalStateException("there are no effective operators"); //$NON-NLS-1$
         }
 
         // add only effective operators (this may includes terminators)
         graph.clear();
-        for (Operator operator : operators) {
-            if (effective.contains(operator)) {
+        for (int i = 0, n = index.size(); i < n; i++) {
+            Operator operator = index.get(i);
+            if (effective.get(i)) {
                 graph.add(operator);
             } else {
                 operator.disconnectAll();
@@ -267,29 +267,19 @@ public final class Planning {
         insertTerminatorsForPorts(graph);
     }
 
-    private static Set<Operator> collectInputReachables(Set<Operator> operators) {
-        Set<Operator> results = new HashSet<>();
-        Set<OperatorOutput> edges = new HashSet<>();
-        for (Operator operator : operators) {
-            if (operator.getConstraints().contains(OperatorConstraint.GENERATOR)) {
-                results.add(operator);
-                edges.addAll(operator.getOutputs());
-            }
-        }
-        results.addAll(Operators.getTransitiveSuccessors(edges));
+    private static BitSet collectInputReachables(OperatorIndex index) {
+        BitSet generators = index.select(
+                operator -> operator.getConstraints().contains(OperatorConstraint.GENERATOR));
+        BitSet results = index.getTransitiveSuccessors(generators);
+        results.or(generators);
         return results;
     }
 
-    private static Set<Operator> collectOutputReachables(Set<Operator> operators) {
-        Set<Operator> results = new HashSet<>();
-        Set<OperatorInput> edges = new HashSet<>();
-        for (Operator operator : operators) {
-            if (operator.getConstraints().contains(OperatorConstraint.AT_LEAST_ONCE)) {
-                results.add(operator);
-                edges.addAll(operator.getInputs());
-            }
-        }
-        results.addAll(Operators.getTransitivePredecessors(edges));
+    private static BitSet collectOutputReachables(OperatorIndex index) {
+        BitSet consumers = index.select(
+                operator -> operator.getConstraints().contains(OperatorConstraint.AT_LEAST_ONCE));
+        BitSet results = index.getTransitivePredecessors(consumers);
+        results.or(consumers);
         return results;
     }
 
@@ -17,9 +17,10 @@ package com.asakusafw.lang.compiler.planning.basic;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.asakusafw.lang.compiler.planning.OperatorEquivalence;
 import com.asakusafw.lang.compiler.planning.Planning;
@@ -38,6 +39,8 @@ final class BasicPlanEditor {
 
     private final List<BasicSubPlanEditor> backward = new ArrayList<>();
 
+    private final Map<SubPlan, BasicSubPlanEditor> editors = new HashMap<>();
+
     /**
      * Creates a new instance.
      * @param target the target plan
@@ -45,7 +48,6 @@ final class BasicPlanEditor {
      */
     BasicPlanEditor(BasicPlan target, OperatorEquivalence equivalence) {
         this.target = target;
-        Map<SubPlan, BasicSubPlanEditor> editors = new HashMap<>();
         for (BasicSubPlan s : target.getElements()) {
             editors.put(s, new BasicSubPlanEditor(s, equivalence));
         }
@@ -85,23 +87,48 @@ final class BasicPlanEditor {
     }
 
     /**
-     * Re-validates the plan constraints and removes redundant elements.
-     * @return {@code true} if any element was changed, otherwise {@code false}
+     * Returns sub-plan editors which are directly connected to the specified sub-plan.
+     * @param sub the target sub-plan editor
+     * @return the neighbor sub-plan editors
      */
-    public boolean revalidate() {
-        boolean changed = false;
-        for (BasicSubPlanEditor sub : forward) {
-            changed |= sub.revalidate();
+    public Set<BasicSubPlanEditor> getNeighbors(BasicSubPlanEditor sub) {
+        Set<BasicSubPlanEditor> results = new HashSet<>();
+        for (BasicSubPlan.BasicInput port : sub.getTarget().getInputs()) {
+            for (BasicSubPlan.BasicOutput opposite : port.getOpposites()) {
+                addEditor(results, opposite.getOwner());
+            }
         }
-        for (Iterator<BasicSubPlanEditor> iter = forward.iterator(); iter.hasNext();) {
-            BasicSubPlanEditor sub = iter.next();
-            if (sub.isEmpty()) {
-                iter.remove();
-                backward.remove(sub);
-                target.removeElement(sub.getTarget());
-                changed = true;
+        for (BasicSubPlan.BasicOutput port : sub.getTarget().getOutputs()) {
+            for (BasicSubPlan.BasicInput opposite : port.getOpposites()) {
+                addEditor(results, opposite.getOwner());
             }
         }
+        results.remove(sub);
+        return results;
+    }
+
+    private void addEditor(Set<BasicSubPlanEditor> results, SubPlan sub) {
+        BasicSubPlanEditor editor = editors.get(sub);
+        if (editor != null) {
+            results.add(editor);
+        }
+    }
+
+    /**
+     * Re-validates the constraints of the specified sub-plan and removes redundant elements.
+     * If the sub-plan becomes empty, this also removes it from the plan.
+     * @param sub the target sub-plan editor
+     * @return {@code true} if any element was changed, otherwise {@code false}
+     */
+    public boolean revalidate(BasicSubPlanEditor sub) {
+        boolean changed = sub.revalidate();
+        if (sub.isEmpty()) {
+            forward.remove(sub);
+            backward.remove(sub);
+            editors.remove(sub.getTarget());
+            target.removeElement(sub.getTarget());
+            changed = true;
+        }
         return changed;
     }
 }
@@ -15,21 +15,47 @@
  */
 package com.asakusafw.lang.compiler.planning.basic;
 
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.asakusafw.lang.compiler.planning.OperatorEquivalence;
 
 /**
  * Optimizes {@link BasicPlan}s.
+ * <p>
+ * This keeps a work-list of sub-plans, and only revisits the sub-plans which were changed by the previous rewrite,
+ * or which are directly connected to them.
+ * </p>
  */
 public class BasicPlanOptimizer {
 
+    static final Logger LOG = LoggerFactory.getLogger(BasicPlanOptimizer.class);
+
+    private static final List<Option> RULES = Arrays.asList(new Option[] {
+            Option.REDUNDANT_OUTPUT_ELIMINATION,
+            Option.UNION_PUSH_DOWN,
+            Option.TRIVIAL_OUTPUT_ELIMINATION,
+            Option.DUPLICATE_CHECKPOINT_ELIMINATION,
+    });
+
     private final Set<Option> options = EnumSet.noneOf(Option.class);
 
     private final OperatorEquivalence equivalence;
 
+    private volatile Statistics statistics = new Statistics.Builder().build();
+
     /**
      * Creates a new instance.
      * @param equivalence tester for operator isomorphism
@@ -40,80 +66,204 @@ public class BasicPlanOptimizer {
         this.equivalence = equivalence;
     }
 
+    /**
+     * Returns the statistics of the last completed optimization.
+     * @return the statistics
+     * @since 0.4.0
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * Optimizes the target plan.
      * @param plan the target plan
      */
     public void optimize(BasicPlan plan) {
+        Statistics.Builder stats = new Statistics.Builder();
         if (options.isEmpty()) {
+            this.statistics = stats.build();
             return;
         }
         BasicPlanEditor editor = new BasicPlanEditor(plan, equivalence);
-        boolean changed;
-        do {
-            changed = doOptimize(editor);
-        } while (changed);
+        Set<BasicSubPlanEditor> dirty = new HashSet<>(editor.getSubEditorsForward());
+        while (dirty.isEmpty() == false) {
+            stats.rounds++;
+            Set<BasicSubPlanEditor> touched = new HashSet<>();
+            for (Option rule : RULES) {
+                if (options.contains(rule)) {
+                    doOptimize(editor, rule, dirty, touched, stats);
+                }
+            }
+            doRevalidate(editor, dirty, touched, stats);
+            dirty = touched;
+        }
+        Statistics result = stats.build();
+        this.statistics = result;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("plan optimization: {}", result); //$NON-NLS-1$
+        }
         if (options.contains(Option.SORT_RESULT)) {
             plan.sort();
         }
     }
 
-    private boolean doOptimize(BasicPlanEditor editor) {
-        boolean changed = false;
-        if (options.contains(Option.REDUNDANT_OUTPUT_ELIMINATION)) {
-            changed |= applyRedundantOutputElimination(editor);
-        }
-        if (options.contains(Option.UNION_PUSH_DOWN)) {
-            changed |= applyUnionPushDown(editor);
-        }
-        if (options.contains(Option.TRIVIAL_OUTPUT_ELIMINATION)) {
-            changed |= applyTrivialOutputElimination(editor);
-        }
-        if (options.contains(Option.DUPLICATE_CHECKPOINT_ELIMINATION)) {
-            changed |= applyDuplicateCheckpointElimination(editor);
+    private static void doOptimize(
+            BasicPlanEditor editor, Option rule,
+            Set<BasicSubPlanEditor> dirty, Set<BasicSubPlanEditor> touched,
+            Statistics.Builder stats) {
+        boolean backward = rule == Option.UNION_PUSH_DOWN;
+        List<BasicSubPlanEditor> subs = backward ? editor.getSubEditorsBackward() : editor.getSubEditorsForward();
+        for (BasicSubPlanEditor sub : subs) {
+            if (dirty.contains(sub) == false) {
+                continue;
+            }
+            // the rewrite may detach the current neighbors
+            Set<BasicSubPlanEditor> neighbors = editor.getNeighbors(sub);
+            boolean changed = false;
+            for (OperatorGroup group : backward ? sub.getOperatorGroupsBackward() : sub.getOperatorGroupsForward()) {
+                changed |= apply(rule, group);
+            }
+            stats.count(rule, changed);
+            if (changed) {
+                neighbors.addAll(editor.getNeighbors(sub));
+                touched.add(sub);
+                touched.addAll(neighbors);
+                // the succeeding sub-plans in this round also should reflect the change
+                dirty.addAll(neighbors);
+            }
         }
-        changed |= editor.revalidate();
-        return changed;
     }
 
-    private boolean applyRedundantOutputElimination(BasicPlanEditor editor) {
-        boolean changed = false;
-        for (BasicSubPlanEditor sub : editor.getSubEditorsForward()) {
-            for (OperatorGroup group : sub.getOperatorGroupsForward()) {
-                changed |= group.applyRedundantOutputElimination();
-            }
+    private static boolean apply(Option rule, OperatorGroup group) {
+        switch (rule) {
+        case REDUNDANT_OUTPUT_ELIMINATION:
+            return group.applyRedundantOutputElimination();
+        case UNION_PUSH_DOWN:
+            return group.applyUnionPushDown();
+        case TRIVIAL_OUTPUT_ELIMINATION:
+            return group.applyTrivialOutputElimination();
+        case DUPLICATE_CHECKPOINT_ELIMINATION:
+            return group.applyDuplicateCheckpointElimination();
+        default:
+            throw new AssertionError(rule);
         }
-        return changed;
     }
 
-    private boolean applyUnionPushDown(BasicPlanEditor editor) {
-        boolean changed = false;
-        for (BasicSubPlanEditor sub : editor.getSubEditorsBackward()) {
-            for (OperatorGroup group : sub.getOperatorGroupsBackward()) {
-                changed |= group.applyUnionPushDown();
+    private static void doRevalidate(
+            BasicPlanEditor editor,
+            Set<BasicSubPlanEditor> dirty, Set<BasicSubPlanEditor> touched,
+            Statistics.Builder stats) {
+        for (BasicSubPlanEditor sub : new ArrayList<>(editor.getSubEditorsForward())) {
+            if (dirty.contains(sub) == false) {
+                continue;
+            }
+            Set<BasicSubPlanEditor> neighbors = editor.getNeighbors(sub);
+            boolean changed = editor.revalidate(sub);
+            stats.revalidations++;
+            if (changed) {
+                touched.add(sub);
+                touched.addAll(neighbors);
             }
         }
-        return changed;
     }
 
-    private boolean applyTrivialOutputElimination(BasicPlanEditor editor) {
-        boolean changed = false;
-        for (BasicSubPlanEditor sub : editor.getSubEditorsForward()) {
-            for (OperatorGroup group : sub.getOperatorGroupsForward()) {
-                changed |= group.applyTrivialOutputElimination();
+    /**
+     * Statistics of {@link BasicPlanOptimizer}.
+     * @since 0.4.0
+     */
+    public static final class Statistics {
+
+        private final int rounds;
+
+        private final int revalidations;
+
+        private final Map<Option, Integer> applications;
+
+        private final Map<Option, Integer> changes;
+
+        Statistics(Builder builder) {
+            this.rounds = builder.rounds;
+            this.revalidations = builder.revalidations;
+            this.applications = Collections.unmodifiableMap(new EnumMap<>(builder.applications));
+            this.changes = Collections.unmodifiableMap(new EnumMap<>(builder.changes));
+        }
+
+        /**
+         * Returns the number of optimization rounds.
+         * @return the number of rounds
+         */
+        public int getRounds() {
+            return rounds;
+        }
+
+        /**
+         * Returns the number of sub-plan re-validations.
+         * @return the number of re-validations
+         */
+        public int getRevalidations() {
+            return revalidations;
+        }
+
+        /**
+         * Returns the number of sub-plans which the optimization rule was applied to.
+         * @param rule the target rule
+         * @return the number of rule applications
+         */
+        public int getApplications(Option rule) {
+            return applications.getOrDefault(rule, 0);
+        }
+
+        /**
+         * Returns the number of sub-plans which were changed by the optimization rule.
+         * @param rule the target rule
+         * @return the number of changes
+         */
+        public int getChanges(Option rule) {
+            return changes.getOrDefault(rule, 0);
+        }
+
+        @Override
+        public String toString() {
+            List<String> rules = new ArrayList<>();
+            for (Map.Entry<Option, Integer> entry : applications.entrySet()) {
+                rules.add(MessageFormat.format(
+                        "{0}={1}/{2}", //$NON-NLS-1$
+                        entry.getKey(),
+                        changes.getOrDefault(entry.getKey(), 0),
+                        entry.getValue()));
             }
+            return MessageFormat.format(
+                    "Statistics(rounds={0}, revalidations={1}, changes/applications={2})", //$NON-NLS-1$
+                    rounds,
+                    revalidations,
+                    rules);
         }
-        return changed;
-    }
 
-    private boolean applyDuplicateCheckpointElimination(BasicPlanEditor editor) {
-        boolean changed = false;
-        for (BasicSubPlanEditor sub : editor.getSubEditorsForward()) {
-            for (OperatorGroup group : sub.getOperatorGroupsForward()) {
-                changed |= group.applyDuplicateCheckpointElimination();
+        /**
+         * Collects counts while a plan is being optimized.
+         */
+        static final class Builder {
+
+            int rounds;
+
+            int revalidations;
+
+            final Map<Option, Integer> applications = new EnumMap<>(Option.class);
+
+            final Map<Option, Integer> changes = new EnumMap<>(Option.class);
+
+            void count(Option rule, boolean changed) {
+                applications.merge(rule, 1, Integer::sum);
+                if (changed) {
+                    changes.merge(rule, 1, Integer::sum);
+                }
+            }
+
+            Statistics build() {
+                return new Statistics(this);
             }
         }
-        return changed;
     }
 
     /**
@@ -17,14 +17,19 @@ package com.asakusafw.lang.compiler.planning.basic;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
 
 import com.asakusafw.lang.compiler.common.util.EnumUtil;
 import com.asakusafw.lang.compiler.model.graph.MarkerOperator;
@@ -133,7 +138,9 @@ final class OperatorGroup {
     }
 
     public boolean applyRedundantOutputElimination() {
-        return applyCombination((base, target) -> applyRedundantOutputElimination(base, target));
+        return applyCombination(
+                operator -> getInputSignature(operator),
+                (base, target) -> applyRedundantOutputElimination(base, target));
     }
 
     boolean applyRedundantOutputElimination(Operator base, Operator target) {
@@ -185,7 +192,9 @@ final class OperatorGroup {
                 || attributes.contains(Attribute.GENERATOR)) {
             return false;
         }
-        return applyCombination((base, target) -> applyUnionPushDown(base, target));
+        return applyCombination(
+                operator -> Arrays.asList(getOutputSignature(operator), getBroadcastInputSignature(operator)),
+                (base, target) -> applyUnionPushDown(base, target));
     }
 
     boolean applyUnionPushDown(Operator base, Operator target) {
@@ -232,13 +241,28 @@ final class OperatorGroup {
         }
     }
 
-    private boolean applyCombination(Applier applier) {
+    private boolean applyCombination(Function<Operator, Object> signature, Applier applier) {
         if (operators.size() <= 1) {
             return false;
         }
+        // operators with different signatures are never combined, so that we only compare them in each bucket
+        Map<Object, List<Operator>> buckets = new LinkedHashMap<>();
+        for (Operator operator : operators) {
+            buckets.computeIfAbsent(signature.apply(operator), k -> new ArrayList<>()).add(operator);
+        }
+        boolean changed = false;
+        for (List<Operator> bucket : buckets.values()) {
+            if (bucket.size() >= 2) {
+                changed |= applyCombination(bucket, applier);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean applyCombination(List<Operator> candidates, Applier applier) {
         boolean changed = false;
         BitSet applied = new BitSet();
-        Operator[] ops = operators.toArray(new Operator[operators.size()]);
+        Operator[] ops = candidates.toArray(new Operator[candidates.size()]);
         for (int baseIndex = 0; baseIndex < ops.length - 1; baseIndex++) {
             if (applied.get(baseIndex)) {
                 continue;
@@ -425,6 +449,55 @@ final class OperatorGroup {
         return changed;
     }
 
+    // has-same-inputs(a, b) <=> input-signature(a).equals(input-signature(b))
+    private Object getInputSignature(Operator operator) {
+        assert operators.contains(operator);
+        if (attributes.contains(Attribute.INPUT)) {
+            SubPlan.Input port = owner.findInput(operator);
+            assert port != null;
+            return port.getOpposites();
+        } else {
+            List<OperatorInput> ports = operator.getInputs();
+            List<Set<OperatorOutput>> results = new ArrayList<>(ports.size());
+            for (OperatorInput port : ports) {
+                results.add(new HashSet<>(port.getOpposites()));
+            }
+            return results;
+        }
+    }
+
+    // has-same-outputs(a, b) <=> output-signature(a).equals(output-signature(b))
+    private Object getOutputSignature(Operator operator) {
+        assert operators.contains(operator);
+        if (attributes.contains(Attribute.OUTPUT)) {
+            SubPlan.Output port = owner.findOutput(operator);
+            assert port != null;
+            return port.getOpposites();
+        } else {
+            List<OperatorOutput> ports = operator.getOutputs();
+            List<Set<OperatorInput>> results = new ArrayList<>(ports.size());
+            for (OperatorOutput port : ports) {
+                results.add(new HashSet<>(port.getOpposites()));
+            }
+            return results;
+        }
+    }
+
+    // has-same-broadcast-inputs(a, b) <=> broadcast-input-signature(a).equals(broadcast-input-signature(b))
+    private Object getBroadcastInputSignature(Operator operator) {
+        assert operators.contains(operator);
+        BitSet indices = broadcastInputIndices;
+        if (indices.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<OperatorInput> ports = operator.getInputs();
+        List<Set<OperatorOutput>> results = new ArrayList<>();
+        for (int i = indices.nextSetBit(0), n = ports.size(); i >= 0 && i < n; i = indices.nextSetBit(i + 1)) {
+            results.add(new HashSet<>(ports.get(i).getOpposites()));
+        }
+        return results;
+    }
+
     // has-same-inputs and is-isomorphic => has-equivalent-outputs
     private boolean hasSameInputs(Operator a, Operator b) {
         assert operators.contains(a);
@@ -16,6 +16,7 @@
 package com.asakusafw.lang.compiler.planning.basic;
 
 import java.text.MessageFormat;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -24,6 +25,7 @@ import java.util.Set;
 
 import com.asakusafw.lang.compiler.model.graph.MarkerOperator;
 import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.graph.OperatorIndex;
 import com.asakusafw.lang.compiler.model.graph.Operators;
 import com.asakusafw.lang.compiler.planning.PlanBuilder;
 import com.asakusafw.lang.compiler.planning.PlanDetail;
@@ -43,9 +45,15 @@ public final class PrimitivePlanner {
 
     private final Set<MarkerOperator> planMarkers;
 
+    private final OperatorIndex index;
+
+    private final BitSet planMarkerIndices;
+
     private PrimitivePlanner(Set<Operator> operators) {
         this.operators = operators;
         this.planMarkers = collectPlanMarkers(operators);
+        this.index = OperatorIndex.of(operators);
+        this.planMarkerIndices = index.indicesOf(planMarkers);
     }
 
     /**
@@ -189,9 +197,9 @@ public final class PrimitivePlanner {
         }
         // detects gathering input group
         Operator gathering = successors.iterator().next();
-        Set<Operator> gatherGroupCandidates = Operators.findNearestReachablePredecessors(
-                gathering.getInputs(),
-                PlanMarkers::exists);
+        Set<Operator> gatherGroupCandidates = index.getOperators(index.findNearestReachablePredecessors(
+                index.indicesOf(Collections.singleton(gathering)),
+                planMarkerIndices));
         assert gatherGroupCandidates.contains(gather);
         Set<MarkerOperator> results = new HashSet<>();
         for (Operator operator : gatherGroupCandidates) {
@@ -232,9 +240,9 @@ public final class PrimitivePlanner {
      * @return the possible output operators
      */
     private Set<MarkerOperator> collectPossibleOutputOperatorsFor(Set<MarkerOperator> inputs) {
-        Set<MarkerOperator> outputCandidates = toMarkers(Operators.findNearestReachableSuccessors(
-                Operators.getOutputs(inputs),
-                PlanMarkers::exists));
+        Set<MarkerOperator> outputCandidates = toMarkers(index.getOperators(index.findNearestReachableSuccessors(
+                index.indicesOf(inputs),
+                planMarkerIndices)));
         return outputCandidates;
     }
 
@@ -253,19 +261,19 @@ public final class PrimitivePlanner {
             return Collections.emptySet();
         }
         // detects body operators from inputs and output
-        Set<Operator> bodyOperators = new HashSet<>();
-        bodyOperators.addAll(Operators.collectUntilNearestReachableSuccessors(
-                Operators.getOutputs(inputs),
-                PlanMarkers::exists,
-                false));
-        bodyOperators.retainAll(Operators.collectUntilNearestReachablePredecessors(
-                Operators.getInputs(outputs),
-                PlanMarkers::exists,
+        BitSet bodyOperators = index.collectUntilNearestReachableSuccessors(
+                index.indicesOf(inputs),
+                planMarkerIndices,
+                false);
+        bodyOperators.and(index.collectUntilNearestReachablePredecessors(
+                index.indicesOf(outputs),
+                planMarkerIndices,
                 false));
 
         // find for broadcast consumers, and returns the corresponded BROADCAST plan markers
         Set<MarkerOperator> results = new HashSet<>();
-        for (Operator operator : bodyOperators) {
+        for (int i = bodyOperators.nextSetBit(0); i >= 0; i = bodyOperators.nextSetBit(i + 1)) {
+            Operator operator = index.get(i);
             Set<MarkerOperator> broadcasts = broadcastConsumers.get(operator);
             if (broadcasts != null) {
                 results.addAll(broadcasts);
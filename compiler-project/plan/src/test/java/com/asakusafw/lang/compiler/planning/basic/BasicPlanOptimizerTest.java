@@ -0,0 +1,131 @@
+/**
+ * Copyright 2011-2016 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.lang.compiler.planning.basic;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.model.graph.OperatorGraph;
+import com.asakusafw.lang.compiler.model.testing.MockOperators;
+import com.asakusafw.lang.compiler.planning.PlanAssembler;
+import com.asakusafw.lang.compiler.planning.PlanDetail;
+import com.asakusafw.lang.compiler.planning.Planning;
+import com.asakusafw.lang.compiler.planning.PlanningTestRoot;
+import com.asakusafw.lang.compiler.planning.SubPlan;
+import com.asakusafw.lang.compiler.planning.basic.BasicPlanOptimizer.Option;
+import com.asakusafw.lang.compiler.planning.basic.BasicPlanOptimizer.Statistics;
+
+/**
+ * Test for {@link BasicPlanOptimizer}.
+ */
+public class BasicPlanOptimizerTest extends PlanningTestRoot {
+
+    /**
+     * already optimized.
+<pre>{@code
+s0 --- o0 --- d0
+s1 --- o1 --- d1
+}</pre>
+     */
+    @Test
+    public void stable() {
+        MockOperators mock = new MockOperators()
+            .input("s0")
+            .input("s1")
+            .operator("o0").connect("s0", "o0")
+            .operator("o1").connect("s1", "o1")
+            .output("d0").connect("o0", "d0")
+            .output("d1").connect("o1", "d1");
+        PlanDetail detail = prepare(mock);
+        int elements = detail.getPlan().getElements().size();
+
+        BasicPlanOptimizer optimizer = new BasicPlanOptimizer(
+                PlanAssembler.DEFAULT_EQUIVALENCE,
+                EnumSet.allOf(Option.class));
+        optimizer.optimize((BasicPlan) detail.getPlan());
+        assertThat(detail.getPlan().getElements(), hasSize(elements));
+
+        Statistics stats = optimizer.getStatistics();
+        assertThat(stats.toString(), stats.getRounds(), is(1));
+        assertThat(stats.toString(), stats.getRevalidations(), is(elements));
+        for (Option rule : Arrays.asList(
+                Option.REDUNDANT_OUTPUT_ELIMINATION,
+                Option.UNION_PUSH_DOWN,
+                Option.TRIVIAL_OUTPUT_ELIMINATION,
+                Option.DUPLICATE_CHECKPOINT_ELIMINATION)) {
+            assertThat(stats.toString(), stats.getApplications(rule), is(elements));
+            assertThat(stats.toString(), stats.getChanges(rule), is(0));
+        }
+    }
+
+    /**
+     * only revisits changed sub-plans.
+<pre>{@code
+s0 --- o0 +-- d0
+           \- d1
+s1 --- o1 --- d2
+}</pre>
+     */
+    @Test
+    public void worklist() {
+        MockOperators mock = new MockOperators()
+            .input("s0")
+            .input("s1")
+            .operator("o0").connect("s0", "o0")
+            .operator("o1").connect("s1", "o1")
+            .output("d0").connect("o0", "d0")
+            .output("d1").connect("o0", "d1")
+            .output("d2").connect("o1", "d2");
+        PlanDetail origin = prepare(mock);
+        Set<SubPlan> s0Sources = ownersOf(origin, mock.getAsSet("o0"));
+        SubPlanMerger merger = new SubPlanMerger(origin).add(s0Sources);
+        for (SubPlan sub : origin.getPlan().getElements()) {
+            if (s0Sources.contains(sub) == false) {
+                merger.add(sub);
+            }
+        }
+        PlanDetail detail = merger.build();
+        int elements = detail.getPlan().getElements().size();
+        SubPlan s0 = ownerOf(detail, mock.get("o0"));
+        int operators = s0.getOperators().size();
+
+        BasicPlanOptimizer optimizer = new BasicPlanOptimizer(
+                PlanAssembler.DEFAULT_EQUIVALENCE,
+                EnumSet.of(Option.REDUNDANT_OUTPUT_ELIMINATION));
+        optimizer.optimize((BasicPlan) detail.getPlan());
+        assertThat(s0.getOperators().size(), is(lessThan(operators)));
+
+        // 1st round: all sub-plans, 2nd round: only the changed sub-plan
+        Statistics stats = optimizer.getStatistics();
+        assertThat(stats.toString(), stats.getRounds(), is(2));
+        assertThat(stats.toString(), stats.getApplications(Option.REDUNDANT_OUTPUT_ELIMINATION), is(elements + 1));
+        assertThat(stats.toString(), stats.getChanges(Option.REDUNDANT_OUTPUT_ELIMINATION), is(1));
+        assertThat(stats.toString(), stats.getApplications(Option.UNION_PUSH_DOWN), is(0));
+    }
+
+    private PlanDetail prepare(MockOperators mock) {
+        OperatorGraph g = mock.toGraph();
+        Planning.normalize(g);
+        Planning.simplifyTerminators(g);
+        return Planning.createPrimitivePlan(g);
+    }
+}
@@ -219,6 +219,52 @@ b1 --- o1 --- e1
         assertThat(group.applyRedundantOutputElimination(), is(false));
     }
 
+    /**
+     * redundant output elimination - mixed upstreams.
+<pre>{@code
+b0 +-- o0 --- e0
+    \- o1 --- e1
+b1 +-- o2 --- e2
+    \- o3 --- e3
+==>
+b0 --- o0 +-- e0
+           \- e1
+b1 --- o2 +-- e2
+           \- e3
+}</pre>
+     */
+    @Test
+    public void redundant_output_elimination_mixed_upstreams() {
+        MockOperators mock = new MockOperators()
+            .marker("b0", PlanMarker.BEGIN)
+            .marker("b1", PlanMarker.BEGIN)
+            .operator("o0").connect("b0", "o0")
+            .operator("o1").connect("b0", "o1")
+            .operator("o2").connect("b1", "o2")
+            .operator("o3").connect("b1", "o3")
+            .marker("e0", PlanMarker.END).connect("o0", "e0")
+            .marker("e1", PlanMarker.END).connect("o1", "e1")
+            .marker("e2", PlanMarker.END).connect("o2", "e2")
+            .marker("e3", PlanMarker.END).connect("o3", "e3");
+        PlanDetail detail = PlanBuilder.from(mock.all())
+            .add(mock.getAsSet("b0", "b1"), mock.getAsSet("e0", "e1", "e2", "e3"))
+            .build();
+        SubPlan s0 = ownerOf(detail, mock.get("o0"));
+        OperatorGroup group = group(s0, toCopies(detail, mock.getAsSet("o3", "o2", "o1", "o0")));
+        assertThat(group.toString(), group.applyRedundantOutputElimination(), is(true));
+        assertThat(group.toString(), group.applyRedundantOutputElimination(), is(false));
+
+        Set<Operator> e0preds = Operators.getPredecessors(copyOf(detail, mock.get("e0")));
+        Set<Operator> e1preds = Operators.getPredecessors(copyOf(detail, mock.get("e1")));
+        Set<Operator> e2preds = Operators.getPredecessors(copyOf(detail, mock.get("e2")));
+        Set<Operator> e3preds = Operators.getPredecessors(copyOf(detail, mock.get("e3")));
+        assertThat(e0preds, hasSize(1));
+        assertThat(e1preds, equalTo(e0preds));
+        assertThat(e2preds, hasSize(1));
+        assertThat(e3preds, equalTo(e2preds));
+        assertThat(e2preds, not(equalTo(e0preds)));
+    }
+
     /**
      * redundant output elimination - sub-plan io.
 <pre>{@code